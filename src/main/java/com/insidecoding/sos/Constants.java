@@ -20,6 +20,29 @@ public final class Constants {
 	 */
 	public static final String DEFAULT_SCREENSHOT_FOLDER = "logs/screenshots";
 
+	/**
+	 * Holds the default location for the <b>sessionFolder</b> property. The
+	 * sessions hold credentials, so they are kept in the build folder instead
+	 * of next to the logs.
+	 */
+	public static final String DEFAULT_SESSION_FOLDER = "target/sessions";
+
+	/**
+	 * Holds the default value in minutes for the <b>sessionTtl</b> property.
+	 */
+	public static final int DEFAULT_SESSION_TTL = 30;
+
+	/**
+	 * Holds the default location for the <b>driverMetricsFolder</b> property.
+	 */
+	public static final String DEFAULT_METRICS_FOLDER = "logs/metrics";
+
+	/**
+	 * Holds the default value in megabytes for the
+	 * <b>flightRecorderMemory</b> property.
+	 */
+	public static final int DEFAULT_FLIGHT_RECORDER_MEMORY = 64;
+
 	/**
 	 * Class holdings the browser names that need special configuration.
 	 * 
@@ -85,4 +108,28 @@ public final class Constants {
 		public static final String LINUX = "LINUX";
 	}
 
+	/**
+	 * Holds the default values for the driver pool properties.
+	 * 
+	 * @author ludovicianul
+	 * 
+	 */
+	public static class DriverPool {
+		/**
+		 * Default value for the <b>driverPoolSize</b> property.
+		 */
+		public static final int DEFAULT_SIZE = 4;
+
+		/**
+		 * Default value for the <b>driverPoolMaxLeases</b> property.
+		 */
+		public static final int DEFAULT_MAX_LEASES = 50;
+
+		/**
+		 * Default value in seconds for the <b>driverPoolIdleTimeout</b>
+		 * property.
+		 */
+		public static final int DEFAULT_IDLE_TIMEOUT = 300;
+	}
+
 }
@@ -10,6 +10,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
@@ -19,6 +20,7 @@ import java.util.MissingResourceException;
 import java.util.Properties;
 import java.util.PropertyResourceBundle;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
@@ -34,6 +36,8 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
  * It allows you to read/write/append to/from text files, properties files, CSV
  * files and Microsoft Excel files. <br/>
  * This is very helpful for data driven testing. <br/>
+ * The class can be used from multiple threads. The properties files are parsed
+ * only once per run and shared between all the instances. <br/>
  * 
  * @author ludovicianul
  * 
@@ -43,18 +47,26 @@ public final class FileUtils {
 	 * Simple cache that holds all the workbooks that will be used within the
 	 * current run.
 	 */
-	private Map<String, Workbook> workbooks = new HashMap<String, Workbook>();
+	private Map<String, Workbook> workbooks = new ConcurrentHashMap<String, Workbook>();
 
 	/**
 	 * Holds all the resources that were opened so that they can be released at
 	 * the end of the execution cycle.
 	 */
-	private List<InputStream> fis = new ArrayList<InputStream>();
+	private List<InputStream> fis = Collections
+			.synchronizedList(new ArrayList<InputStream>());
 
 	/**
 	 * Simple cache that holds all the bunldes used within in the application.
 	 */
-	private Map<String, ResourceBundle> bundles = new HashMap<String, ResourceBundle>();
+	private Map<String, ResourceBundle> bundles = new ConcurrentHashMap<String, ResourceBundle>();
+
+	/**
+	 * Read-only cache shared by all the instances holding the properties files
+	 * already parsed. The key contains the file path and the last modified
+	 * date so that changed files are parsed again.
+	 */
+	private static final Map<String, ResourceBundle> PARSED_BUNDLES = new ConcurrentHashMap<String, ResourceBundle>();
 
 	/**
 	 * Logger for this class.
@@ -112,13 +124,37 @@ public final class FileUtils {
 						f.getName().indexOf("properties") - 1);
 
 				LOG.info("Loading: " + bundleName);
-				ResourceBundle bundle = new PropertyResourceBundle(
-						new FileInputStream(f));
-				bundles.put(bundleName, bundle);
+				bundles.put(bundleName, parseBundle(f));
 			}
 		}
 	}
 
+	/**
+	 * Parses the properties file or returns it from the shared cache if it was
+	 * already parsed.
+	 * 
+	 * @param file
+	 *            the properties file
+	 * @return the bundle corresponding to the file
+	 * @throws IOException
+	 *             if something goes wrong while reading the file
+	 */
+	private static ResourceBundle parseBundle(final File file)
+			throws IOException {
+		String key = file.getCanonicalPath() + ":" + file.lastModified();
+		ResourceBundle bundle = PARSED_BUNDLES.get(key);
+		if (bundle == null) {
+			InputStream inputStream = new FileInputStream(file);
+			try {
+				bundle = new PropertyResourceBundle(inputStream);
+			} finally {
+				inputStream.close();
+			}
+			PARSED_BUNDLES.put(key, bundle);
+		}
+		return bundle;
+	}
+
 	/**
 	 * Loads a locale specific bundle.
 	 * 
@@ -455,7 +491,8 @@ public final class FileUtils {
 	 * @throws IOException
 	 *             if something goes wrong while reading the file
 	 */
-	private Workbook getWorkbook(final String fileName) throws IOException {
+	private synchronized Workbook getWorkbook(final String fileName)
+			throws IOException {
 		if (workbooks.get(fileName) == null) {
 			FileInputStream fiStream = new FileInputStream(new File(fileName));
 			fis.add(fiStream);
@@ -503,11 +540,13 @@ public final class FileUtils {
 	 * worry about it
 	 */
 	public void releaseResources() {
-		for (InputStream str : fis) {
-			try {
-				str.close();
-			} catch (Exception e) {
-				LOG.info("Exception while trying to close streams", e);
+		synchronized (fis) {
+			for (InputStream str : fis) {
+				try {
+					str.close();
+				} catch (Exception e) {
+					LOG.info("Exception while trying to close streams", e);
+				}
 			}
 		}
 	}
@@ -1,25 +1,51 @@
 package com.insidecoding.sos.junit;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Rule;
+import org.junit.rules.TestName;
 import org.openqa.selenium.WebDriver;
 
-import com.insidecoding.sos.Constants;
 import com.insidecoding.sos.io.FileUtils;
 import com.insidecoding.sos.net.HttpCallUtils;
+import com.insidecoding.sos.webdriver.DriverBuildStats;
+import com.insidecoding.sos.webdriver.DriverMetrics;
+import com.insidecoding.sos.webdriver.DriverPool;
+import com.insidecoding.sos.webdriver.DriverWarmUpService;
+import com.insidecoding.sos.webdriver.FlightRecorder;
+import com.insidecoding.sos.webdriver.SessionStore;
 import com.insidecoding.sos.webdriver.WebDriverHelper;
+import com.insidecoding.sos.webdriver.WebDriverPool;
 import com.insidecoding.sos.xml.XMLUtils;
 
 /**
  * This is the base class for all your JUNIT/Selenium tests. By extending this
  * class you'll have access to a preconfigured WebDriver instance based on your
  * parameters from {@code selenium.properties}. You can set various properties
- * that allows you to configure the WebDriver instance
+ * that allows you to configure the WebDriver instance <br/>
+ * Tests can run in parallel (see {@link ParallelSoSRunner}): each test gets
+ * its own WebDriver and helpers, which are also reachable from the test thread
+ * through {@link #getCurrentDriver()} and {@link #getCurrentHelper()}. <br/>
+ * When {@code lazyDriver} is set to true, the browser is started only when
+ * the test first uses {@link #driver} or {@link #helper}, so tests using only
+ * {@link #fileUtil}, {@link #xmlUtils} or {@link #httpUtils} never start one.
+ * The lazy driver implements {@link WebDriver},
+ * {@link org.openqa.selenium.JavascriptExecutor},
+ * {@link org.openqa.selenium.TakesScreenshot},
+ * {@link org.openqa.selenium.HasCapabilities},
+ * {@link org.openqa.selenium.interactions.HasInputDevices} and
+ * {@link org.openqa.selenium.internal.WrapsDriver}, but it cannot be cast to
+ * the concrete driver class; use
+ * {@link org.openqa.selenium.internal.WrapsDriver#getWrappedDriver()} for
+ * that. The same applies when {@code trackPageChanges} is set to true, which
+ * wraps the drivers so that {@link WebDriverHelper#takeSnapshot()} can be
+ * used.
  * 
  * @author ludovicianul
  * 
@@ -55,12 +81,79 @@ public abstract class AbstractSoSBase {
 	 */
 	private static final Logger LOG = Logger.getLogger(AbstractSoSBase.class);
 
+	/**
+	 * How long to wait for the pending screenshots at the end of the run.
+	 */
+	private static final long SCREENSHOT_FLUSH_TIMEOUT = 30000;
+
+	/**
+	 * The driver pool shared by all the tests.
+	 */
+	private static DriverPool sharedPool;
+
+	/**
+	 * The logged in sessions shared by all the tests.
+	 */
+	private static SessionStore sharedSessions;
+
+	/**
+	 * The driver metrics shared by all the tests.
+	 */
+	private static DriverMetrics sharedMetrics;
+
+	/**
+	 * The folder where the shared driver metrics are written.
+	 */
+	private static File sharedMetricsFolder;
+
+	/**
+	 * The memory shared by the flight recorders of all the tests.
+	 */
+	private static FlightRecorder.Budget sharedRecorderBudget;
+
+	/**
+	 * The screenshot store shared by all the tests.
+	 */
+	private static ScreenshotStore sharedScreenshotStore;
+
+	/**
+	 * Set once the end of the run is hooked to the JVM exit.
+	 */
+	private static boolean runEndHooked;
+
 	/**
 	 * JUNIT Rule used to take screenshots on failure.
 	 */
 	@Rule
 	public TakeScreenshotOnFailureRule screen = new TakeScreenshotOnFailureRule();
 
+	/**
+	 * JUNIT Rule holding the name of the running test.
+	 */
+	@Rule
+	public TestName testName = new TestName();
+
+	/**
+	 * The helper used by the test running on the current thread.
+	 */
+	private static final ThreadLocal<WebDriverHelper> CURRENT_HELPER = new ThreadLocal<WebDriverHelper>();
+
+	/**
+	 * Set once the driver warm-up was started.
+	 */
+	private static boolean warmUpStarted;
+
+	/**
+	 * Starts creating drivers in background before the first test of the class
+	 * runs. This does nothing if {@code driverWarmUp} is not set, if
+	 * {@code driverPool} is not enabled or if the warm-up was already started
+	 * by the {@link DriverWarmUpListener}.
+	 */
+	@BeforeClass
+	public static void warmUpDrivers() {
+		startDriverWarmUp(SeleniumSettings.getInstance());
+	}
+
 	/**
 	 * Method called before starting each test.
 	 */
@@ -72,145 +165,373 @@ public abstract class AbstractSoSBase {
 
 		fileUtil.loadPropertiesBundle("selenium");
 
-		String browserName = fileUtil
-				.getPropertyAsString("selenium", "browser");
-		String browserVersion = fileUtil.getPropertyAsString("selenium",
-				"browserVersion");
-		String runMode = fileUtil.getPropertyAsString("selenium", "runMode");
-		String proxyHost = fileUtil
-				.getPropertyAsString("selenium", "proxyHost");
-		String proxyPort = fileUtil
-				.getPropertyAsString("selenium", "proxyPort");
-		String gridUrl = fileUtil.getPropertyAsString("selenium", "gridUrl");
-		String platform = fileUtil.getPropertyAsString("selenium", "platform");
-		String userAgent = fileUtil
-				.getPropertyAsString("selenium", "userAgent");
-		String noProxyFor = fileUtil.getPropertyAsString("selenium",
-				"noProxyFor");
-		String screenShotFolder = fileUtil.getPropertyAsString("selenium",
-				"screenshotFolder");
-
-		boolean assumeAllCertsUntrusted = fileUtil.getPropertyAsBoolean(
-				"selenium", "assumeAllCertsUntrusted");
-		String jsEnabled = fileUtil
-				.getPropertyAsString("selenium", "jsEnabled");
-		boolean flakiness = fileUtil.getPropertyAsBoolean("selenium",
-				"flakiness");
-		boolean acceptAllCerts = fileUtil.getPropertyAsBoolean("selenium",
-				"acceptAllCerts");
-		String profileLocation = fileUtil.getPropertyAsString("selenium",
-				"browserProfile");
-		String takeScreenshots = fileUtil.getPropertyAsString("selenium",
-				"takeScreenshots");
-
-		boolean jsEnabledBoolean = Boolean.getBoolean(jsEnabled);
-		boolean takeScreenshotsBoolean = Boolean.getBoolean(takeScreenshots);
+		SeleniumSettings settings = SeleniumSettings.getInstance();
+		screen.setTakeScreenshot(settings.isTakeScreenshots());
+		screen.setScreenshotFolder(settings.getScreenshotFolder());
+		screen.setScreenshotStore(getSharedScreenshotStore(settings));
 
-		/**
-		 * assign default values if these are null
-		 */
-		if (isPropertyNotSet(profileLocation)) {
-			profileLocation = null;
+		DriverMetrics metrics = getSharedDriverMetrics(settings);
+		if (metrics != null) {
+			metrics.startTest(getClass().getName() + "."
+					+ testName.getMethodName());
 		}
-		if (isPropertyNotSet(userAgent)) {
-			userAgent = null;
+		WebDriverHelper.Builder driverBuilder = newDriverBuilder(settings);
+		DriverPool pool = getDriverPool();
+		if (settings.isLazyDriver()) {
+			driver = LazyDriver.create(driverBuilder, pool);
+		} else {
+			driver = acquireDriver(driverBuilder, pool);
+			LOG.info("Driver returned: " + driver);
 		}
 
-		if (isPropertyNotSet(screenShotFolder)) {
-			screenShotFolder = Constants.DEFAULT_SCREENSHOT_FOLDER;
+		helper = new WebDriverHelper(driver);
+		helper.getElementCache().setEnabled(settings.isElementCache());
+		helper.getCookieJar().setEnabled(settings.isCookieCache());
+		if (settings.getImplicitWait() > 0) {
+			final WebDriverHelper testHelper = helper;
+			final int implicitWait = settings.getImplicitWait();
+			Runnable setImplicitWait = new Runnable() {
+				public void run() {
+					testHelper.setImplicitWait(implicitWait, TimeUnit.SECONDS);
+				}
+			};
+			if (!LazyDriver.whenCreated(driver, setImplicitWait)) {
+				setImplicitWait.run();
+			}
 		}
-
-		if (isPropertyNotSet(noProxyFor)) {
-			noProxyFor = null;
+		if (settings.getFlightRecorder() > 0) {
+			FlightRecorder recorder = new FlightRecorder(
+					settings.getFlightRecorder(),
+					getSharedRecorderBudget(settings));
+			helper.setFlightRecorder(recorder);
+			screen.setFlightRecorder(recorder);
 		}
+		CURRENT_HELPER.set(helper);
+		screen.setDriver(driver);
+		screen.setDriverPool(pool);
 
-		if (isPropertyNotSet(browserVersion)) {
-			browserVersion = null;
-		}
+		this.doAdditionalSetUp();
+	}
 
-		if (isPropertyNotSet(browserName)) {
-			browserName = Constants.Browsers.HTML_UNIT;
+	/**
+	 * Method called after executing each test.
+	 */
+	@After
+	public final void tearDown() {
+		try {
+			/**
+			 * helper is null when setUp failed before creating it
+			 */
+			if (helper != null && helper.getElementCache().isEnabled()) {
+				LOG.info(helper.getElementCache());
+			}
+			fileUtil.releaseResources();
+			this.doAdditionalTearDown();
+		} finally {
+			CURRENT_HELPER.remove();
+			if (sharedMetrics != null) {
+				sharedMetrics.endTest();
+			}
 		}
+	}
 
-		if (isPropertyNotSet(runMode)) {
-			runMode = Constants.RunMode.NORMAL;
+	/**
+	 * Returns the WebDriver instance used by the test running on the current
+	 * thread. This is useful for page objects when tests run in parallel.
+	 * 
+	 * @return the WebDriver instance or null if no test is running on the
+	 *         current thread
+	 */
+	public static WebDriver getCurrentDriver() {
+		WebDriverHelper current = CURRENT_HELPER.get();
+		if (current == null) {
+			return null;
 		}
+		return current.getDriver();
+	}
 
-		if (isPropertyNotSet(platform)) {
-			platform = Constants.Platform.WINDOWS;
-		}
+	/**
+	 * Returns the WebDriverHelper instance used by the test running on the
+	 * current thread.
+	 * 
+	 * @return the WebDriverHelper instance or null if no test is running on
+	 *         the current thread
+	 */
+	public static WebDriverHelper getCurrentHelper() {
+		return CURRENT_HELPER.get();
+	}
 
-		if (isPropertyNotSet(proxyHost)) {
-			proxyHost = null;
-		}
+	/**
+	 * This method is called by the {@link #setpUp()} method at the beginning of
+	 * each test in order to create the WebDriver instance that will be used in
+	 * your tests mock data. Add any data that needs to be in place in order to
+	 * run your tests
+	 */
+	protected abstract void doAdditionalSetUp();
 
-		if (isPropertyNotSet(proxyPort)) {
-			proxyPort = null;
-		}
+	/**
+	 * This method is called by the {@link #tearDown()} method at the end of
+	 * each test in order to release resources (like for example quiting the
+	 * WebDriver instance). You can add your own logic for releasing the
+	 * resources created in the {@link #setUp()} method
+	 */
+	protected abstract void doAdditionalTearDown();
+
+	/**
+	 * Returns the pool used to lease the WebDriver instances. By default all
+	 * the tests share the same pool configured through the
+	 * {@code driverPool*} properties from {@code selenium.properties}.
+	 * Override this method to plug in your own pool or return {@code null} to
+	 * create and quit a new driver for every test.
+	 * 
+	 * @return the DriverPool used by the tests or null if pooling is disabled
+	 */
+	protected DriverPool getDriverPool() {
+		return getSharedDriverPool(SeleniumSettings.getInstance());
+	}
 
-		if (isPropertyNotSet(jsEnabled)) {
-			jsEnabledBoolean = true;
+	/**
+	 * Returns the store used to save and restore logged in sessions, so that
+	 * tests can skip the login flow:
+	 * 
+	 * <pre>
+	 * getSessionStore().open(helper, url, SessionStore.key(&quot;frodo&quot;, &quot;qa&quot;),
+	 * 		new FrodoLogin());
+	 * </pre>
+	 * 
+	 * The sessions are saved in the {@code sessionFolder} and reused for
+	 * {@code sessionTtl} minutes. The session files hold the auth cookies and
+	 * tokens of the users as plain text.
+	 * 
+	 * @return the session store shared by all the tests
+	 */
+	protected static synchronized SessionStore getSessionStore() {
+		if (sharedSessions == null) {
+			SeleniumSettings settings = SeleniumSettings.getInstance();
+			sharedSessions = new SessionStore(settings.getSessionFolder(),
+					settings.getSessionTtl(), TimeUnit.MINUTES);
 		}
+		return sharedSessions;
+	}
+
+	/**
+	 * Returns the latency metrics of the driver commands, recorded when
+	 * {@code driverMetrics} is set in {@code selenium.properties}. The metrics
+	 * can be queried while the tests run, for example the round trips of each
+	 * test or the latency of each locator, and are written as JSON and CSV to
+	 * the {@code driverMetricsFolder} at the end of the run.
+	 * 
+	 * @return the metrics shared by all the tests or null if the drivers are
+	 *         not instrumented
+	 */
+	protected static DriverMetrics getDriverMetrics() {
+		return getSharedDriverMetrics(SeleniumSettings.getInstance());
+	}
 
-		if (isPropertyNotSet(takeScreenshots)) {
-			takeScreenshotsBoolean = true;
+	/**
+	 * Returns the metrics shared by all the tests, creating them on first
+	 * use.
+	 * 
+	 * @param settings
+	 *            the settings of the run
+	 * @return the shared metrics or null if the drivers are not instrumented
+	 */
+	static synchronized DriverMetrics getSharedDriverMetrics(
+			final SeleniumSettings settings) {
+		if (sharedMetrics == null && settings.isDriverMetrics()) {
+			hookRunEnd();
+			sharedMetrics = new DriverMetrics();
+			sharedMetricsFolder = settings.getDriverMetricsFolder();
 		}
+		return sharedMetrics;
+	}
 
-		screen.setTakeScreenshot(takeScreenshotsBoolean);
-		screen.setScreenshotFolder(new File(screenShotFolder));
+	/**
+	 * Leases a driver from the pool, or builds a new one if there is no pool.
+	 * 
+	 * @param builder
+	 *            builds the driver
+	 * @param pool
+	 *            the driver pool or null
+	 * @return the driver
+	 */
+	static WebDriver acquireDriver(final WebDriverHelper.Builder builder,
+			final DriverPool pool) {
+		if (pool != null) {
+			return pool.acquire(builder);
+		}
+		return builder.buildDriver();
+	}
 
-		WebDriverHelper.Builder driverBuilder = new WebDriverHelper.Builder();
-		driver = driverBuilder.browser(browserName).runMode(runMode)
-				.proxy(proxyHost, proxyPort, noProxyFor)
-				.acceptAllCerts(acceptAllCerts).grid(gridUrl)
-				.platform(platform).flackinessForIe(flakiness)
-				.profileLocation(profileLocation).userAgent(userAgent)
-				.jsEnabled(jsEnabledBoolean).browserVersion(browserVersion)
-				.assumeAllCertsUtrusted(assumeAllCertsUntrusted).buildDriver();
+	/**
+	 * Returns the screenshot store shared by all the tests, creating it on
+	 * first use. The index of the store is written when the JVM exits.
+	 * 
+	 * @param settings
+	 *            the settings of the run
+	 * @return the shared store or null if the screenshots are not
+	 *         deduplicated
+	 */
+	static synchronized ScreenshotStore getSharedScreenshotStore(
+			final SeleniumSettings settings) {
+		if (sharedScreenshotStore == null
+				&& settings.isScreenshotDeduplication()) {
+			hookRunEnd();
+			sharedScreenshotStore = new ScreenshotStore(
+					settings.getScreenshotFolder(),
+					ScreenshotWriter.getShared());
+		}
+		return sharedScreenshotStore;
+	}
 
-		LOG.info("Driver returned: " + driver);
+	/**
+	 * Finishes the run: waits for the pending screenshots, writes the
+	 * screenshot index and the driver metrics report, logs the driver build
+	 * timings and finally shuts down the shared driver pool, so that the
+	 * reports are written before the drivers quit. This runs when the JVM
+	 * exits, once any test or the driver warm-up has started.
+	 */
+	static void finishRun() {
+		ScreenshotStore store;
+		DriverMetrics metrics;
+		File metricsFolder;
+		DriverPool pool;
+		synchronized (AbstractSoSBase.class) {
+			store = sharedScreenshotStore;
+			metrics = sharedMetrics;
+			metricsFolder = sharedMetricsFolder;
+			pool = sharedPool;
+		}
+		ScreenshotWriter.flushShared(SCREENSHOT_FLUSH_TIMEOUT);
+		if (store != null) {
+			try {
+				store.writeIndex();
+			} catch (IOException e) {
+				LOG.warn("Unable to write the screenshot index: "
+						+ e.getMessage());
+			}
+		}
+		if (metrics != null) {
+			try {
+				metrics.writeReport(metricsFolder);
+			} catch (IOException e) {
+				LOG.warn("Unable to write the driver metrics: "
+						+ e.getMessage());
+			}
+		}
+		DriverBuildStats builds = DriverBuildStats.getInstance();
+		if (builds.getBuildCount() > 0) {
+			LOG.info(builds.getReport());
+		}
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
 
-		helper = new WebDriverHelper(driver);
-		screen.setDriver(driver);
+	/**
+	 * Runs {@link #finishRun()} when the JVM exits. Only the first call has
+	 * any effect.
+	 */
+	private static synchronized void hookRunEnd() {
+		if (runEndHooked) {
+			return;
+		}
+		runEndHooked = true;
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				finishRun();
+			}
+		});
+	}
 
-		this.doAdditionalSetUp();
+	/**
+	 * Returns the memory budget shared by the flight recorders, creating it
+	 * on first use.
+	 * 
+	 * @param settings
+	 *            the settings of the run
+	 * @return the shared budget
+	 */
+	static synchronized FlightRecorder.Budget getSharedRecorderBudget(
+			final SeleniumSettings settings) {
+		if (sharedRecorderBudget == null) {
+			sharedRecorderBudget = new FlightRecorder.Budget(
+					settings.getFlightRecorderMemory() * 1024L * 1024L);
+		}
+		return sharedRecorderBudget;
 	}
 
 	/**
-	 * Method called after executing each test.
+	 * Creates the Builder used for the tests, instrumenting the drivers when
+	 * the driver metrics are enabled.
+	 * 
+	 * @param settings
+	 *            the settings of the run
+	 * @return a new Builder
 	 */
-	@After
-	public final void tearDown() {
-		fileUtil.releaseResources();
-		this.doAdditionalTearDown();
+	static WebDriverHelper.Builder newDriverBuilder(
+			final SeleniumSettings settings) {
+		hookRunEnd();
+		return settings.newDriverBuilder().metrics(
+				getSharedDriverMetrics(settings));
 	}
 
 	/**
-	 * This method is called by the {@link #setpUp()} method at the beginning of
-	 * each test in order to create the WebDriver instance that will be used in
-	 * your tests mock data. Add any data that needs to be in place in order to
-	 * run your tests
+	 * Returns the pool shared by all the tests, creating it on first use. The
+	 * pool is shut down by {@link #finishRun()} when the JVM exits.
+	 * 
+	 * @param settings
+	 *            the settings used to configure the pool
+	 * @return the shared pool or null if pooling is disabled
 	 */
-	protected abstract void doAdditionalSetUp();
+	static synchronized DriverPool getSharedDriverPool(
+			final SeleniumSettings settings) {
+		if (sharedPool == null && settings.isDriverPoolEnabled()) {
+			hookRunEnd();
+			sharedPool = new WebDriverPool(settings.getDriverPoolSize(),
+					settings.getDriverPoolMaxLeases(),
+					settings.getDriverPoolIdleTimeout(),
+					settings.isDriverPoolHealthCheck());
+		}
+		return sharedPool;
+	}
 
 	/**
-	 * This method is called by the {@link #tearDown()} method at the end of
-	 * each test in order to release resources (like for example quiting the
-	 * WebDriver instance). You can add your own logic for releasing the
-	 * resources created in the {@link #setUp()} method
+	 * Warms up the shared pool with the number of drivers configured through
+	 * the {@code driverWarmUp} property. The warmed drivers are only handed
+	 * out by the pool, so nothing is warmed up if {@code driverPool} is not
+	 * enabled. Only the first call has any effect.
+	 * 
+	 * @param settings
+	 *            the settings used to configure the drivers
 	 */
-	protected abstract void doAdditionalTearDown();
+	static synchronized void startDriverWarmUp(final SeleniumSettings settings) {
+		if (warmUpStarted || settings.getDriverWarmUp() <= 0) {
+			return;
+		}
+		warmUpStarted = true;
+		DriverPool pool = getSharedDriverPool(settings);
+		if (pool instanceof WebDriverPool) {
+			((WebDriverPool) pool).warmUp(newDriverBuilder(settings),
+					settings.getDriverWarmUp());
+		}
+	}
 
 	/**
-	 * Checks if the property is empty or is not set.
+	 * Returns the warm-up statistics of the shared pool.
 	 * 
-	 * @param property
-	 *            the name of the property
-	 * @return true if the property is set or false is null, empty or starts
-	 *         with $
+	 * @return the warm-up report or null if the pool was not warmed up
 	 */
-	private boolean isPropertyNotSet(final String property) {
-		return StringUtils.isEmpty(property) || property.startsWith("$");
+	static synchronized String getDriverWarmUpReport() {
+		if (sharedPool instanceof WebDriverPool) {
+			DriverWarmUpService warmUp = ((WebDriverPool) sharedPool)
+					.getWarmUpService();
+			if (warmUp != null) {
+				return warmUp.getReport();
+			}
+		}
+		return null;
 	}
 
 }
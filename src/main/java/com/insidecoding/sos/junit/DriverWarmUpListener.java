@@ -0,0 +1,49 @@
+package com.insidecoding.sos.junit;
+
+import org.apache.log4j.Logger;
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.RunListener;
+
+/**
+ * JUNIT listener that starts creating WebDriver instances as soon as the run
+ * begins, so that the browser startup overlaps with the test class loading.
+ * The number of drivers is configured through the {@code driverWarmUp}
+ * property from {@code selenium.properties}; the warmed drivers are handed out
+ * by the driver pool, so {@code driverPool} must be enabled as well. The
+ * warm-up statistics are logged at the end of the run. <br/>
+ * With Maven you can register the listener in the surefire configuration:
+ * 
+ * <pre>
+ * &lt;properties&gt;
+ *   &lt;property&gt;
+ *     &lt;name&gt;listener&lt;/name&gt;
+ *     &lt;value&gt;com.insidecoding.sos.junit.DriverWarmUpListener&lt;/value&gt;
+ *   &lt;/property&gt;
+ * &lt;/properties&gt;
+ * </pre>
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class DriverWarmUpListener extends RunListener {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger
+			.getLogger(DriverWarmUpListener.class);
+
+	@Override
+	public void testRunStarted(final Description description) {
+		AbstractSoSBase.startDriverWarmUp(SeleniumSettings.getInstance());
+	}
+
+	@Override
+	public void testRunFinished(final Result result) {
+		String report = AbstractSoSBase.getDriverWarmUpReport();
+		if (report != null) {
+			LOG.info(report);
+		}
+	}
+}
@@ -0,0 +1,210 @@
+package com.insidecoding.sos.junit;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.HasCapabilities;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.interactions.HasInputDevices;
+import org.openqa.selenium.internal.WrapsDriver;
+
+import com.insidecoding.sos.webdriver.DriverPool;
+import com.insidecoding.sos.webdriver.Screenshots;
+import com.insidecoding.sos.webdriver.WebDriverHelper;
+
+/**
+ * Creates the driver of a test only when the test first uses it, so that
+ * tests which never touch the browser do not pay for starting one. The
+ * driver is a dynamic proxy implementing {@link WebDriver},
+ * {@link JavascriptExecutor}, {@link HasInputDevices},
+ * {@link HasCapabilities}, {@link TakesScreenshot} and {@link WrapsDriver};
+ * the actual driver is built, or leased from the pool, on the first command.
+ * Screenshots are taken through {@link Screenshots#cameraFor(WebDriver)}, so
+ * remote drivers are augmented as needed. Quitting or closing a driver which
+ * was never created does nothing. <br/>
+ * The proxy is not an instance of the concrete driver class, nor of the other
+ * interfaces the actual driver may implement, so casts like
+ * {@code (FirefoxDriver) driver} fail; use
+ * {@link WrapsDriver#getWrappedDriver()} to reach the actual driver.
+ * 
+ * @author ludovicianul
+ * 
+ */
+final class LazyDriver implements InvocationHandler {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger.getLogger(LazyDriver.class);
+
+	/**
+	 * The interfaces implemented by the proxy.
+	 */
+	private static final Class<?>[] INTERFACES = { WebDriver.class,
+			JavascriptExecutor.class, HasInputDevices.class,
+			HasCapabilities.class, TakesScreenshot.class, WrapsDriver.class };
+
+	private final WebDriverHelper.Builder builder;
+	private final DriverPool pool;
+
+	/**
+	 * The actions run once the driver is created.
+	 */
+	private final List<Runnable> onCreate = new ArrayList<Runnable>();
+
+	/**
+	 * The actual driver, or null until the first command.
+	 */
+	private WebDriver driver;
+
+	private LazyDriver(final WebDriverHelper.Builder driverBuilder,
+			final DriverPool driverPool) {
+		this.builder = driverBuilder;
+		this.pool = driverPool;
+	}
+
+	/**
+	 * Creates a driver which is built on first use.
+	 * 
+	 * @param builder
+	 *            builds the actual driver
+	 * @param pool
+	 *            the pool the driver is leased from or null to build a new
+	 *            driver
+	 * @return the lazy driver
+	 */
+	static WebDriver create(final WebDriverHelper.Builder builder,
+			final DriverPool pool) {
+		return (WebDriver) Proxy.newProxyInstance(
+				LazyDriver.class.getClassLoader(), INTERFACES, new LazyDriver(
+						builder, pool));
+	}
+
+	/**
+	 * Returns the actual driver behind the supplied driver, without creating
+	 * it.
+	 * 
+	 * @param driver
+	 *            any driver
+	 * @return the actual driver, null if the driver is lazy and was not
+	 *         created yet, or the driver itself if it is not lazy
+	 */
+	static WebDriver getCreated(final WebDriver driver) {
+		LazyDriver handler = handlerOf(driver);
+		if (handler == null) {
+			return driver;
+		}
+		synchronized (handler) {
+			return handler.driver;
+		}
+	}
+
+	/**
+	 * Runs the supplied action once the actual driver is created. The action
+	 * runs immediately if the driver was already created.
+	 * 
+	 * @param driver
+	 *            the lazy driver
+	 * @param action
+	 *            the action to run
+	 * @return true if the driver is lazy or false if it is not, in which case
+	 *         the action is not run
+	 */
+	static boolean whenCreated(final WebDriver driver, final Runnable action) {
+		LazyDriver handler = handlerOf(driver);
+		if (handler == null) {
+			return false;
+		}
+		synchronized (handler) {
+			if (handler.driver == null) {
+				handler.onCreate.add(action);
+				return true;
+			}
+		}
+		action.run();
+		return true;
+	}
+
+	public Object invoke(final Object proxy, final Method method,
+			final Object[] args) throws Throwable {
+		String name = method.getName();
+		if (method.getDeclaringClass() == Object.class) {
+			if ("equals".equals(name)) {
+				return proxy == args[0];
+			}
+			if ("hashCode".equals(name)) {
+				return System.identityHashCode(proxy);
+			}
+			synchronized (this) {
+				return "LazyDriver["
+						+ (driver == null ? "not created" : driver) + "]";
+			}
+		}
+		if (("quit".equals(name) || "close".equals(name))
+				&& getCreated((WebDriver) proxy) == null) {
+			return null;
+		}
+		WebDriver target = get();
+		if (method.getDeclaringClass() == WrapsDriver.class) {
+			return target;
+		}
+		Object receiver = target;
+		if (method.getDeclaringClass() == TakesScreenshot.class) {
+			receiver = Screenshots.cameraFor(target);
+			if (receiver == null) {
+				throw new WebDriverException(target.getClass().getName()
+						+ " cannot take screenshots");
+			}
+		}
+		if (!method.getDeclaringClass().isInstance(receiver)) {
+			throw new WebDriverException(target.getClass().getName()
+					+ " does not implement "
+					+ method.getDeclaringClass().getName());
+		}
+		try {
+			return method.invoke(receiver, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Returns the actual driver, creating it on first use.
+	 * 
+	 * @return the actual driver
+	 */
+	private WebDriver get() {
+		List<Runnable> actions;
+		synchronized (this) {
+			if (driver != null) {
+				return driver;
+			}
+			driver = AbstractSoSBase.acquireDriver(builder, pool);
+			LOG.info("Driver created on first use: " + driver);
+			actions = new ArrayList<Runnable>(onCreate);
+			onCreate.clear();
+		}
+		for (Runnable action : actions) {
+			action.run();
+		}
+		return driver;
+	}
+
+	private static LazyDriver handlerOf(final WebDriver driver) {
+		if (driver != null && Proxy.isProxyClass(driver.getClass())) {
+			InvocationHandler handler = Proxy.getInvocationHandler(driver);
+			if (handler instanceof LazyDriver) {
+				return (LazyDriver) handler;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,71 @@
+package com.insidecoding.sos.junit;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.junit.runners.model.RunnerScheduler;
+
+/**
+ * JUNIT scheduler running the children of a runner on a fixed number of
+ * worker threads.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class ParallelScheduler implements RunnerScheduler {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger.getLogger(ParallelScheduler.class);
+
+	/**
+	 * Used to number the worker threads.
+	 */
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+	/**
+	 * The executor running the tests.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * Creates a new scheduler.
+	 * 
+	 * @param workers
+	 *            the number of worker threads
+	 */
+	public ParallelScheduler(final int workers) {
+		if (workers < 1) {
+			throw new IllegalArgumentException(
+					"The number of workers must be greater than 0!");
+		}
+		executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				return new Thread(r, "sos-worker-"
+						+ THREAD_COUNT.incrementAndGet());
+			}
+		});
+	}
+
+	@Override
+	public void schedule(final Runnable childStatement) {
+		executor.submit(childStatement);
+	}
+
+	@Override
+	public void finished() {
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			LOG.warn("Interrupted while waiting for the tests to finish");
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package com.insidecoding.sos.junit;
+
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.model.InitializationError;
+
+/**
+ * JUNIT runner executing the test methods of a class in parallel. The number
+ * of worker threads is configured through the {@code parallelWorkers} property
+ * from {@code selenium.properties}. <br/>
+ * Use it on classes extending {@link AbstractSoSBase}:
+ * {@code @RunWith(ParallelSoSRunner.class)}. Each test gets its own WebDriver
+ * instance leased from the shared driver pool.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class ParallelSoSRunner extends BlockJUnit4ClassRunner {
+
+	/**
+	 * Creates a runner for the supplied class.
+	 * 
+	 * @param klass
+	 *            the test class
+	 * @throws InitializationError
+	 *             if the test class is malformed
+	 */
+	public ParallelSoSRunner(final Class<?> klass) throws InitializationError {
+		super(klass);
+		setScheduler(new ParallelScheduler(SeleniumSettings.getInstance()
+				.getParallelWorkers()));
+	}
+}
@@ -0,0 +1,212 @@
+package com.insidecoding.sos.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.log4j.Logger;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * Stores the screenshots by the hash of their content, so that identical
+ * screenshots, like the same error page captured by many failing tests, are
+ * written only once. Each screenshot keeps the name it would have had
+ * otherwise in an index mapping the names to the stored files. The index is
+ * written to {@value #INDEX_FILE} in the screenshot folder with
+ * {@link #writeIndex()}. <br/>
+ * Files already present in the folder, for example from a previous run, are
+ * reused.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class ScreenshotStore {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger.getLogger(ScreenshotStore.class);
+
+	/**
+	 * The name of the index file.
+	 */
+	public static final String INDEX_FILE = "index.html";
+
+	/**
+	 * The digits used to format the hashes.
+	 */
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final File folder;
+	private final ScreenshotWriter writer;
+
+	/**
+	 * The hashes of the files already stored.
+	 */
+	private final ConcurrentMap<String, Boolean> stored = new ConcurrentHashMap<String, Boolean>();
+
+	/**
+	 * The stored file of each screenshot, sorted by screenshot name.
+	 */
+	private final Map<String, String> index = new TreeMap<String, String>();
+
+	private final AtomicInteger duplicates = new AtomicInteger();
+	private final AtomicLong savedBytes = new AtomicLong();
+
+	/**
+	 * Creates a new ScreenshotStore.
+	 * 
+	 * @param screenshotFolder
+	 *            the folder where the screenshots are stored
+	 * @param screenshotWriter
+	 *            writes the new files to disk
+	 */
+	public ScreenshotStore(final File screenshotFolder,
+			final ScreenshotWriter screenshotWriter) {
+		this.folder = screenshotFolder;
+		this.writer = screenshotWriter;
+	}
+
+	/**
+	 * Stores the supplied content. The content is written only if no file
+	 * with the same content was stored before.
+	 * 
+	 * @param name
+	 *            the name of the screenshot, for example
+	 *            {@code MyTest_testLogin.png}
+	 * @param bytes
+	 *            the content
+	 * @return the file holding the content
+	 */
+	public File store(final String name, final byte[] bytes) {
+		String fileName = hash(bytes) + extensionOf(name);
+		File file = new File(folder, fileName);
+		if (stored.putIfAbsent(fileName, Boolean.TRUE) == null
+				&& !file.isFile()) {
+			writer.write(bytes, file);
+		} else {
+			duplicates.incrementAndGet();
+			savedBytes.addAndGet(bytes.length);
+			LOG.debug("Screenshot " + name + " is identical to " + fileName);
+		}
+		synchronized (index) {
+			index.put(name, fileName);
+		}
+		return file;
+	}
+
+	/**
+	 * Returns the stored file of each screenshot.
+	 * 
+	 * @return a copy of the index, sorted by screenshot name
+	 */
+	public Map<String, String> getIndex() {
+		synchronized (index) {
+			return new TreeMap<String, String>(index);
+		}
+	}
+
+	/**
+	 * Returns the number of screenshots which were not written because the
+	 * same content was already stored.
+	 * 
+	 * @return the number of duplicates
+	 */
+	public int getDuplicateCount() {
+		return duplicates.get();
+	}
+
+	/**
+	 * Returns the number of bytes which were not written because the same
+	 * content was already stored.
+	 * 
+	 * @return the number of bytes
+	 */
+	public long getSavedBytes() {
+		return savedBytes.get();
+	}
+
+	/**
+	 * Writes the index to {@value #INDEX_FILE} in the screenshot folder. The
+	 * index is written only if screenshots were stored.
+	 * 
+	 * @return the index file or null if no screenshots were stored
+	 * @throws IOException
+	 *             if the index cannot be written
+	 */
+	public File writeIndex() throws IOException {
+		Map<String, String> entries = getIndex();
+		if (entries.isEmpty()) {
+			return null;
+		}
+		StringBuilder html = new StringBuilder();
+		html.append("<html><head><title>Screenshots</title></head><body>\n");
+		html.append("<table>\n<tr><th>Screenshot</th><th>File</th></tr>\n");
+		for (Entry<String, String> entry : entries.entrySet()) {
+			String file = StringEscapeUtils.escapeHtml(entry.getValue());
+			html.append("<tr><td>")
+					.append(StringEscapeUtils.escapeHtml(entry.getKey()))
+					.append("</td><td><a href=\"").append(file).append("\">")
+					.append(file).append("</a></td></tr>\n");
+		}
+		html.append("</table>\n</body></html>\n");
+
+		folder.mkdirs();
+		File file = new File(folder, INDEX_FILE);
+		Files.write(html.toString(), file, Charsets.UTF_8);
+		LOG.info(toString());
+		return file;
+	}
+
+	@Override
+	public String toString() {
+		return "ScreenshotStore[screenshots=" + getIndex().size() + ", files="
+				+ stored.size() + ", duplicates=" + duplicates.get()
+				+ ", savedBytes=" + savedBytes.get() + "]";
+	}
+
+	/**
+	 * Computes the SHA-1 hash of the content.
+	 * 
+	 * @param bytes
+	 *            the content
+	 * @return the hash as lowercase hex digits
+	 */
+	static String hash(final byte[] bytes) {
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		}
+		char[] hex = new char[digest.length * 2];
+		for (int i = 0; i < digest.length; i++) {
+			hex[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+			hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+		}
+		return new String(hex);
+	}
+
+	/**
+	 * Returns the extension of the supplied file name.
+	 * 
+	 * @param name
+	 *            the file name
+	 * @return the extension, including the dot, or an empty string
+	 */
+	private static String extensionOf(final String name) {
+		int dot = name.lastIndexOf('.');
+		return dot < 0 ? "" : name.substring(dot);
+	}
+}
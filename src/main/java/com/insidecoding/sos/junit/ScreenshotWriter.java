@@ -0,0 +1,233 @@
+package com.insidecoding.sos.junit;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.io.Files;
+
+/**
+ * Writes screenshots to disk on a background thread, so that tests failing
+ * at the same time do not wait for each other's disk writes. The queue of
+ * pending screenshots is bounded: when it is full the test thread writes the
+ * screenshot itself, which slows the failing tests down instead of using
+ * more memory. <br/>
+ * The pending screenshots are written before the JVM exits, and can be
+ * flushed at the end of the run with {@link #flush(long)}.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class ScreenshotWriter {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger.getLogger(ScreenshotWriter.class);
+
+	/**
+	 * The default number of screenshots waiting to be written.
+	 */
+	public static final int DEFAULT_CAPACITY = 32;
+
+	/**
+	 * How long the shutdown hook waits for the pending screenshots.
+	 */
+	private static final long SHUTDOWN_TIMEOUT = 30000;
+
+	/**
+	 * The writer shared by all the tests.
+	 */
+	private static ScreenshotWriter shared;
+
+	private final ThreadPoolExecutor executor;
+	private final AtomicInteger written = new AtomicInteger();
+	private final AtomicInteger failed = new AtomicInteger();
+	private final AtomicInteger callerWrites = new AtomicInteger();
+
+	/**
+	 * The number of screenshots submitted and not yet written.
+	 */
+	private int pending;
+
+	/**
+	 * Creates a new ScreenshotWriter.
+	 * 
+	 * @param capacity
+	 *            the number of screenshots which can wait to be written
+	 *            before the callers have to write them themselves
+	 */
+	public ScreenshotWriter(final int capacity) {
+		executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(capacity),
+				new ThreadFactory() {
+					public Thread newThread(final Runnable r) {
+						Thread thread = new Thread(r, "screenshot-writer");
+						thread.setDaemon(true);
+						return thread;
+					}
+				}, new RejectedExecutionHandler() {
+					public void rejectedExecution(final Runnable r,
+							final ThreadPoolExecutor e) {
+						callerWrites.incrementAndGet();
+						r.run();
+					}
+				});
+	}
+
+	/**
+	 * Returns the writer shared by all the tests, creating it on first use.
+	 * The shared writer is flushed when the JVM exits.
+	 * 
+	 * @return the shared writer
+	 */
+	public static synchronized ScreenshotWriter getShared() {
+		if (shared == null) {
+			final ScreenshotWriter writer = new ScreenshotWriter(
+					DEFAULT_CAPACITY);
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					writer.shutdown(SHUTDOWN_TIMEOUT);
+				}
+			});
+			shared = writer;
+		}
+		return shared;
+	}
+
+	/**
+	 * Waits for the screenshots of the shared writer, if it was used.
+	 * 
+	 * @param timeoutMillis
+	 *            the maximum number of milliseconds to wait
+	 * @return true if all the screenshots were written or false otherwise
+	 */
+	static boolean flushShared(final long timeoutMillis) {
+		ScreenshotWriter writer;
+		synchronized (ScreenshotWriter.class) {
+			writer = shared;
+		}
+		return writer == null || writer.flush(timeoutMillis);
+	}
+
+	/**
+	 * Queues the screenshot to be written to the supplied file. If the queue
+	 * is full the screenshot is written by the calling thread.
+	 * 
+	 * @param bytes
+	 *            the PNG bytes of the screenshot
+	 * @param file
+	 *            the file where the screenshot is written
+	 */
+	public void write(final byte[] bytes, final File file) {
+		synchronized (this) {
+			pending++;
+		}
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					Files.write(bytes, file);
+					written.incrementAndGet();
+					LOG.info("Screenshot saved: " + file.getAbsolutePath());
+				} catch (IOException e) {
+					failed.incrementAndGet();
+					LOG.warn("Error while writing screenshot " + file.getName()
+							+ ": " + e);
+				} finally {
+					done();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Waits until all the submitted screenshots are written.
+	 * 
+	 * @param timeoutMillis
+	 *            the maximum number of milliseconds to wait
+	 * @return true if all the screenshots were written or false if the time
+	 *         elapsed first
+	 */
+	public synchronized boolean flush(final long timeoutMillis) {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		long remaining = timeoutMillis;
+		while (pending > 0 && remaining > 0) {
+			try {
+				wait(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			remaining = deadline - System.currentTimeMillis();
+		}
+		if (pending > 0) {
+			LOG.warn(pending + " screenshots were not written in time");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the pending screenshots and stops the background thread. The
+	 * screenshots submitted afterwards are written by the calling thread.
+	 * 
+	 * @param timeoutMillis
+	 *            the maximum number of milliseconds to wait
+	 */
+	public void shutdown(final long timeoutMillis) {
+		flush(timeoutMillis);
+		executor.shutdown();
+	}
+
+	/**
+	 * Returns the number of screenshots written.
+	 * 
+	 * @return the number of screenshots written
+	 */
+	public int getWrittenCount() {
+		return written.get();
+	}
+
+	/**
+	 * Returns the number of screenshots which could not be written.
+	 * 
+	 * @return the number of failed writes
+	 */
+	public int getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * Returns the number of screenshots written by the calling thread
+	 * because the queue was full.
+	 * 
+	 * @return the number of writes done by the callers
+	 */
+	public int getCallerWriteCount() {
+		return callerWrites.get();
+	}
+
+	/**
+	 * Returns the number of screenshots waiting to be written.
+	 * 
+	 * @return the number of pending screenshots
+	 */
+	public synchronized int getPendingCount() {
+		return pending;
+	}
+
+	private synchronized void done() {
+		pending--;
+		if (pending == 0) {
+			notifyAll();
+		}
+	}
+}
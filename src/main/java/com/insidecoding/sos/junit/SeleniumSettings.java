@@ -0,0 +1,605 @@
+package com.insidecoding.sos.junit;
+
+import java.io.File;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+
+import com.insidecoding.sos.Constants;
+import com.insidecoding.sos.io.FileUtils;
+import com.insidecoding.sos.webdriver.WebDriverHelper;
+
+/**
+ * Holds the settings read from {@code selenium.properties}. The properties are
+ * read only once per run and the resulting object is immutable, so the same
+ * instance can be safely shared between tests.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class SeleniumSettings {
+
+	/**
+	 * The name of the bundle holding the settings.
+	 */
+	public static final String BUNDLE_NAME = "selenium";
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger.getLogger(SeleniumSettings.class);
+
+	/**
+	 * The instance shared by all the tests.
+	 */
+	private static SeleniumSettings instance;
+
+	/**
+	 * The browser the tests run on.
+	 */
+	private final String browserName;
+
+	/**
+	 * The version of the browser requested from the grid or null for any
+	 * version.
+	 */
+	private final String browserVersion;
+
+	/**
+	 * Runs the browser locally or on the grid.
+	 */
+	private final String runMode;
+
+	/**
+	 * The proxy host or null if no proxy is used.
+	 */
+	private final String proxyHost;
+
+	/**
+	 * The proxy port or null if no proxy is used.
+	 */
+	private final String proxyPort;
+
+	/**
+	 * The URL of the grid hub.
+	 */
+	private final String gridUrl;
+
+	/**
+	 * The platform requested from the grid.
+	 */
+	private final String platform;
+
+	/**
+	 * The user agent sent by the browser or null for the default one.
+	 */
+	private final String userAgent;
+
+	/**
+	 * The hosts reached without the proxy or null.
+	 */
+	private final String noProxyFor;
+
+	/**
+	 * The folder where the screenshots are saved.
+	 */
+	private final String screenShotFolder;
+
+	/**
+	 * Makes Firefox assume that all the certificates are untrusted.
+	 */
+	private final boolean assumeAllCertsUntrusted;
+
+	/**
+	 * Enables JavaScript in HtmlUnit.
+	 */
+	private final boolean jsEnabled;
+
+	/**
+	 * Makes Internet Explorer ignore the flakiness of its protected mode.
+	 */
+	private final boolean flakiness;
+
+	/**
+	 * Makes the browser accept all the certificates.
+	 */
+	private final boolean acceptAllCerts;
+
+	/**
+	 * The location of the browser profile or null for a new profile.
+	 */
+	private final String profileLocation;
+
+	/**
+	 * Takes a screenshot when a test fails.
+	 */
+	private final boolean takeScreenshots;
+
+	/**
+	 * Reuses the drivers between tests.
+	 */
+	private final boolean driverPoolEnabled;
+
+	/**
+	 * The maximum number of idle drivers kept for each configuration.
+	 */
+	private final int driverPoolSize;
+
+	/**
+	 * The number of tests a pooled driver serves before being quit.
+	 */
+	private final int driverPoolMaxLeases;
+
+	/**
+	 * The number of seconds an idle driver is kept in the pool.
+	 */
+	private final int driverPoolIdleTimeout;
+
+	/**
+	 * Checks the pooled drivers before reusing them.
+	 */
+	private final boolean driverPoolHealthCheck;
+
+	/**
+	 * The number of drivers created in background when the run starts. The
+	 * warmed drivers are handed out by the driver pool, so this is ignored
+	 * unless {@code driverPool} is enabled.
+	 */
+	private final int driverWarmUp;
+
+	/**
+	 * The number of threads running the tests in parallel.
+	 */
+	private final int parallelWorkers;
+
+	/**
+	 * Caches the elements found by the helper.
+	 */
+	private final boolean elementCache;
+
+	/**
+	 * Keeps the cookie snapshot of the helper between calls.
+	 */
+	private final boolean cookieCache;
+
+	/**
+	 * The number of seconds the driver waits for missing elements.
+	 */
+	private final int implicitWait;
+
+	/**
+	 * The folder where the logged in sessions are saved. The session files
+	 * hold the cookies and the local storage of the logged in users, auth
+	 * tokens included, as plain text; only the current user can read them
+	 * where the file system allows it. Keep the folder out of version control
+	 * and of the published build artifacts.
+	 */
+	private final String sessionFolder;
+
+	/**
+	 * The number of minutes a saved session can be reused.
+	 */
+	private final int sessionTtl;
+
+	/**
+	 * Records the latency of the driver commands.
+	 */
+	private final boolean driverMetrics;
+
+	/**
+	 * The folder where the driver metrics report is written.
+	 */
+	private final String driverMetricsFolder;
+
+	/**
+	 * The number of steps kept by the flight recorder of each test.
+	 */
+	private final int flightRecorder;
+
+	/**
+	 * The memory, in megabytes, shared by the flight recorder screenshots.
+	 */
+	private final int flightRecorderMemory;
+
+	/**
+	 * Saves identical screenshots only once.
+	 */
+	private final boolean screenshotDeduplication;
+
+	/**
+	 * Creates the driver of each test on first use.
+	 */
+	private final boolean lazyDriver;
+
+	/**
+	 * Makes the drivers count the page changes for the DOM snapshots.
+	 */
+	private final boolean trackPageChanges;
+
+	/**
+	 * Reads the settings from the {@code selenium} bundle of the supplied
+	 * FileUtils instance. The bundle must already be loaded.
+	 * 
+	 * @param fileUtil
+	 *            the FileUtils instance holding the {@code selenium} bundle
+	 */
+	public SeleniumSettings(final FileUtils fileUtil) {
+		browserName = getString(fileUtil, "browser",
+				Constants.Browsers.HTML_UNIT);
+		browserVersion = getString(fileUtil, "browserVersion", null);
+		runMode = getString(fileUtil, "runMode", Constants.RunMode.NORMAL);
+		proxyHost = getString(fileUtil, "proxyHost", null);
+		proxyPort = getString(fileUtil, "proxyPort", null);
+		gridUrl = fileUtil.getPropertyAsString(BUNDLE_NAME, "gridUrl");
+		platform = getString(fileUtil, "platform", Constants.Platform.WINDOWS);
+		userAgent = getString(fileUtil, "userAgent", null);
+		noProxyFor = getString(fileUtil, "noProxyFor", null);
+		screenShotFolder = getString(fileUtil, "screenshotFolder",
+				Constants.DEFAULT_SCREENSHOT_FOLDER);
+
+		assumeAllCertsUntrusted = fileUtil.getPropertyAsBoolean(BUNDLE_NAME,
+				"assumeAllCertsUntrusted");
+		flakiness = fileUtil.getPropertyAsBoolean(BUNDLE_NAME, "flakiness");
+		acceptAllCerts = fileUtil.getPropertyAsBoolean(BUNDLE_NAME,
+				"acceptAllCerts");
+		profileLocation = getString(fileUtil, "browserProfile", null);
+
+		String jsEnabledValue = fileUtil.getPropertyAsString(BUNDLE_NAME,
+				"jsEnabled");
+		jsEnabled = isPropertyNotSet(jsEnabledValue)
+				|| Boolean.getBoolean(jsEnabledValue);
+		String takeScreenshotsValue = fileUtil.getPropertyAsString(
+				BUNDLE_NAME, "takeScreenshots");
+		takeScreenshots = isPropertyNotSet(takeScreenshotsValue)
+				|| Boolean.getBoolean(takeScreenshotsValue);
+
+		driverPoolEnabled = getBoolean(fileUtil, "driverPool", false);
+		parallelWorkers = Math.max(1, getInteger(fileUtil, "parallelWorkers",
+				Runtime.getRuntime().availableProcessors()));
+		driverPoolSize = getInteger(fileUtil, "driverPoolSize",
+				Math.max(Constants.DriverPool.DEFAULT_SIZE, parallelWorkers));
+		driverPoolMaxLeases = getInteger(fileUtil, "driverPoolMaxLeases",
+				Constants.DriverPool.DEFAULT_MAX_LEASES);
+		driverPoolIdleTimeout = getInteger(fileUtil, "driverPoolIdleTimeout",
+				Constants.DriverPool.DEFAULT_IDLE_TIMEOUT);
+		driverPoolHealthCheck = getBoolean(fileUtil, "driverPoolHealthCheck",
+				true);
+		driverWarmUp = getInteger(fileUtil, "driverWarmUp", 0);
+		if (driverWarmUp > 0 && !driverPoolEnabled) {
+			LOG.warn("driverWarmUp=" + driverWarmUp
+					+ " is ignored because driverPool is not enabled");
+		}
+		elementCache = getBoolean(fileUtil, "elementCache", false);
+		cookieCache = getBoolean(fileUtil, "cookieCache", false);
+		implicitWait = getInteger(fileUtil, "implicitWait", 0);
+		sessionFolder = getString(fileUtil, "sessionFolder",
+				Constants.DEFAULT_SESSION_FOLDER);
+		sessionTtl = getInteger(fileUtil, "sessionTtl",
+				Constants.DEFAULT_SESSION_TTL);
+		driverMetrics = getBoolean(fileUtil, "driverMetrics", false);
+		driverMetricsFolder = getString(fileUtil, "driverMetricsFolder",
+				Constants.DEFAULT_METRICS_FOLDER);
+		flightRecorder = getInteger(fileUtil, "flightRecorder", 0);
+		flightRecorderMemory = getInteger(fileUtil, "flightRecorderMemory",
+				Constants.DEFAULT_FLIGHT_RECORDER_MEMORY);
+		screenshotDeduplication = getBoolean(fileUtil,
+				"screenshotDeduplication", true);
+		lazyDriver = getBoolean(fileUtil, "lazyDriver", false);
+		trackPageChanges = getBoolean(fileUtil, "trackPageChanges", false);
+	}
+
+	/**
+	 * Returns the settings shared by all the tests. The {@code selenium}
+	 * bundle is read the first time this method is called.
+	 * 
+	 * @return the shared settings
+	 */
+	public static synchronized SeleniumSettings getInstance() {
+		if (instance == null) {
+			FileUtils fileUtil = new FileUtils();
+			fileUtil.loadPropertiesBundle(BUNDLE_NAME);
+			instance = new SeleniumSettings(fileUtil);
+			fileUtil.releaseResources();
+			LOG.info("Selenium settings loaded");
+		}
+		return instance;
+	}
+
+	/**
+	 * Creates a new Builder configured with these settings.
+	 * 
+	 * @return a new WebDriverHelper.Builder instance
+	 */
+	public WebDriverHelper.Builder newDriverBuilder() {
+		WebDriverHelper.Builder driverBuilder = new WebDriverHelper.Builder();
+		return driverBuilder.browser(browserName).runMode(runMode)
+				.proxy(proxyHost, proxyPort, noProxyFor)
+				.acceptAllCerts(acceptAllCerts).grid(gridUrl)
+				.platform(platform).flackinessForIe(flakiness)
+				.profileLocation(profileLocation).userAgent(userAgent)
+				.jsEnabled(jsEnabled).browserVersion(browserVersion)
+				.assumeAllCertsUtrusted(assumeAllCertsUntrusted)
+				.trackPageChanges(trackPageChanges);
+	}
+
+	/**
+	 * Returns the folder where the screenshots will be saved.
+	 * 
+	 * @return the screenshot folder
+	 */
+	public File getScreenshotFolder() {
+		return new File(screenShotFolder);
+	}
+
+	/**
+	 * Checks if screenshots are taken on failure.
+	 * 
+	 * @return true if screenshots are taken on failure or false otherwise
+	 */
+	public boolean isTakeScreenshots() {
+		return takeScreenshots;
+	}
+
+	/**
+	 * Checks if the WebDriver instances are reused between tests. Pooled
+	 * drivers keep the cookies and storage of the domains other than the last
+	 * one visited, so the pool is off unless {@code driverPool} is set to
+	 * true.
+	 * 
+	 * @return true if the driver pool is enabled or false otherwise
+	 */
+	public boolean isDriverPoolEnabled() {
+		return driverPoolEnabled;
+	}
+
+	/**
+	 * Returns the maximum number of idle drivers kept for each configuration.
+	 * 
+	 * @return the pool size
+	 */
+	public int getDriverPoolSize() {
+		return driverPoolSize;
+	}
+
+	/**
+	 * Returns the number of tests a driver can serve before being quit.
+	 * 
+	 * @return the maximum number of leases per driver
+	 */
+	public int getDriverPoolMaxLeases() {
+		return driverPoolMaxLeases;
+	}
+
+	/**
+	 * Returns the number of seconds an idle driver is kept in the pool.
+	 * 
+	 * @return the idle timeout in seconds
+	 */
+	public int getDriverPoolIdleTimeout() {
+		return driverPoolIdleTimeout;
+	}
+
+	/**
+	 * Checks if pooled drivers are checked before being reused.
+	 * 
+	 * @return true if health checks are enabled or false otherwise
+	 */
+	public boolean isDriverPoolHealthCheck() {
+		return driverPoolHealthCheck;
+	}
+
+	/**
+	 * Returns the number of drivers created in background when the run
+	 * starts. The warmed drivers are handed out by the driver pool, so the
+	 * warm-up is skipped, with a warning, if {@code driverPool} is not set to
+	 * true.
+	 * 
+	 * @return the number of drivers to warm up
+	 */
+	public int getDriverWarmUp() {
+		return driverWarmUp;
+	}
+
+	/**
+	 * Returns the number of threads used to run the tests in parallel.
+	 * 
+	 * @return the number of parallel workers
+	 */
+	public int getParallelWorkers() {
+		return parallelWorkers;
+	}
+
+	/**
+	 * Checks if the helper caches the elements found by its methods.
+	 * 
+	 * @return true if the element cache is enabled or false otherwise
+	 */
+	public boolean isElementCache() {
+		return elementCache;
+	}
+
+	/**
+	 * Checks if the helper keeps the cookie snapshot between calls.
+	 * 
+	 * @return true if the cookie cache is enabled or false otherwise
+	 */
+	public boolean isCookieCache() {
+		return cookieCache;
+	}
+
+	/**
+	 * Returns the number of seconds the driver waits for missing elements.
+	 * 
+	 * @return the implicit wait in seconds
+	 */
+	public int getImplicitWait() {
+		return implicitWait;
+	}
+
+	/**
+	 * Returns the folder where the logged in sessions are saved. The sessions
+	 * are saved as plain text, auth cookies and tokens included.
+	 * 
+	 * @return the session folder, {@code target/sessions} by default
+	 */
+	public File getSessionFolder() {
+		return new File(sessionFolder);
+	}
+
+	/**
+	 * Returns the number of minutes a saved session can be reused.
+	 * 
+	 * @return the session time to live in minutes
+	 */
+	public int getSessionTtl() {
+		return sessionTtl;
+	}
+
+	/**
+	 * Checks if the latency of the driver commands is recorded.
+	 * 
+	 * @return true if the drivers are instrumented or false otherwise
+	 */
+	public boolean isDriverMetrics() {
+		return driverMetrics;
+	}
+
+	/**
+	 * Returns the folder where the driver metrics report is written at the
+	 * end of the run.
+	 * 
+	 * @return the metrics folder
+	 */
+	public File getDriverMetricsFolder() {
+		return new File(driverMetricsFolder);
+	}
+
+	/**
+	 * Returns the number of steps kept by the flight recorder of each test.
+	 * 
+	 * @return the number of frames or 0 if the flight recorder is disabled
+	 */
+	public int getFlightRecorder() {
+		return flightRecorder;
+	}
+
+	/**
+	 * Returns the memory shared by the flight recorder screenshots of all the
+	 * tests.
+	 * 
+	 * @return the memory in megabytes
+	 */
+	public int getFlightRecorderMemory() {
+		return flightRecorderMemory;
+	}
+
+	/**
+	 * Checks if identical screenshots are saved only once.
+	 * 
+	 * @return true if the screenshots are stored by content or false
+	 *         otherwise
+	 */
+	public boolean isScreenshotDeduplication() {
+		return screenshotDeduplication;
+	}
+
+	/**
+	 * Checks if the driver of each test is created only when the test first
+	 * uses it. The lazy driver is a proxy which cannot be cast to the
+	 * concrete driver class, so it is off unless {@code lazyDriver} is set to
+	 * true.
+	 * 
+	 * @return true if the drivers are created on first use or false otherwise
+	 */
+	public boolean isLazyDriver() {
+		return lazyDriver;
+	}
+
+	/**
+	 * Checks if the drivers count the commands which may change the page, so
+	 * that {@link WebDriverHelper#takeSnapshot()} can be used. The counting
+	 * driver is a proxy which cannot be cast to the concrete driver class, so
+	 * this is off unless {@code trackPageChanges} or {@code driverMetrics} is
+	 * set to true.
+	 * 
+	 * @return true if the page changes are tracked or false otherwise
+	 */
+	public boolean isTrackPageChanges() {
+		return trackPageChanges;
+	}
+
+	/**
+	 * Reads a string property falling back to the default value if the
+	 * property is not set.
+	 * 
+	 * @param fileUtil
+	 *            the FileUtils instance holding the bundle
+	 * @param key
+	 *            the property name
+	 * @param defaultValue
+	 *            the value returned if the property is not set
+	 * @return the value of the property
+	 */
+	private static String getString(final FileUtils fileUtil,
+			final String key, final String defaultValue) {
+		String value = fileUtil.getPropertyAsString(BUNDLE_NAME, key);
+		if (isPropertyNotSet(value)) {
+			return defaultValue;
+		}
+		return value;
+	}
+
+	/**
+	 * Reads an integer property falling back to the default value if the
+	 * property is not set or not valid.
+	 * 
+	 * @param fileUtil
+	 *            the FileUtils instance holding the bundle
+	 * @param key
+	 *            the property name
+	 * @param defaultValue
+	 *            the value returned if the property is not set
+	 * @return the value of the property
+	 */
+	private static int getInteger(final FileUtils fileUtil, final String key,
+			final int defaultValue) {
+		int value = fileUtil.getPropertyAsInteger(BUNDLE_NAME, key);
+		if (value < 0) {
+			return defaultValue;
+		}
+		return value;
+	}
+
+	/**
+	 * Reads a boolean property falling back to the default value if the
+	 * property is not set.
+	 * 
+	 * @param fileUtil
+	 *            the FileUtils instance holding the bundle
+	 * @param key
+	 *            the property name
+	 * @param defaultValue
+	 *            the value returned if the property is not set
+	 * @return the value of the property
+	 */
+	private static boolean getBoolean(final FileUtils fileUtil,
+			final String key, final boolean defaultValue) {
+		String value = fileUtil.getPropertyAsString(BUNDLE_NAME, key);
+		if (isPropertyNotSet(value)) {
+			return defaultValue;
+		}
+		return Boolean.valueOf(value.trim());
+	}
+
+	/**
+	 * Checks if the property is empty or is not set.
+	 * 
+	 * @param property
+	 *            the name of the property
+	 * @return true if the property is set or false is null, empty or starts
+	 *         with $
+	 */
+	private static boolean isPropertyNotSet(final String property) {
+		return StringUtils.isEmpty(property) || property.startsWith("$");
+	}
+}
@@ -1,18 +1,25 @@
 package com.insidecoding.sos.junit;
 
 import java.io.File;
-import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 import org.junit.rules.TestRule;
 import org.junit.runner.Description;
+import org.junit.runner.RunWith;
 import org.junit.runners.model.Statement;
 import org.openqa.selenium.OutputType;
 import org.openqa.selenium.TakesScreenshot;
 import org.openqa.selenium.WebDriver;
-import org.openqa.selenium.remote.Augmenter;
+import org.openqa.selenium.WebDriverException;
 
-import com.google.common.io.Files;
+import com.insidecoding.sos.webdriver.DriverPool;
+import com.insidecoding.sos.webdriver.FlightRecorder;
+import com.insidecoding.sos.webdriver.Screenshots;
 
 /**
  * This is a test rule used by the JUNIT framework and WebDriver to take
@@ -33,6 +40,11 @@ public final class TakeScreenshotOnFailureRule implements TestRule {
 	 */
 	private WebDriver driver;
 
+	/**
+	 * the pool the driver was leased from, if any.
+	 */
+	private DriverPool driverPool;
+
 	/**
 	 * the folder where the screenshots will be saved.
 	 */
@@ -44,6 +56,32 @@ public final class TakeScreenshotOnFailureRule implements TestRule {
 	private static final Logger LOG = Logger
 			.getLogger(TakeScreenshotOnFailureRule.class);
 
+	/**
+	 * Sequence number added to the screenshot names which would otherwise
+	 * collide, like when the same test runs on multiple threads.
+	 */
+	private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+	/**
+	 * The base names already used during this run.
+	 */
+	private static final ConcurrentMap<String, Boolean> USED_NAMES = new ConcurrentHashMap<String, Boolean>();
+
+	/**
+	 * Writes the screenshots to disk.
+	 */
+	private ScreenshotWriter writer;
+
+	/**
+	 * Keeps the screenshots of the last steps of the test, if enabled.
+	 */
+	private FlightRecorder flightRecorder;
+
+	/**
+	 * Stores the screenshots by content, if enabled.
+	 */
+	private ScreenshotStore store;
+
 	/**
 	 * Set the folder where we save screenshots.
 	 * 
@@ -76,6 +114,62 @@ public final class TakeScreenshotOnFailureRule implements TestRule {
 		this.driver = drv;
 	}
 
+	/**
+	 * Sets the writer used to save the screenshots. By default the
+	 * screenshots are saved by the writer shared by all the tests.
+	 * 
+	 * @param screenshotWriter
+	 *            the ScreenshotWriter instance
+	 */
+	public void setScreenshotWriter(final ScreenshotWriter screenshotWriter) {
+		this.writer = screenshotWriter;
+	}
+
+	/**
+	 * Returns the writer used to save the screenshots.
+	 * 
+	 * @return the ScreenshotWriter instance
+	 */
+	public ScreenshotWriter getScreenshotWriter() {
+		if (writer == null) {
+			writer = ScreenshotWriter.getShared();
+		}
+		return writer;
+	}
+
+	/**
+	 * Sets the store used to save the screenshots by content. When no store
+	 * is set every screenshot is written to its own file.
+	 * 
+	 * @param screenshotStore
+	 *            the ScreenshotStore instance or null
+	 */
+	public void setScreenshotStore(final ScreenshotStore screenshotStore) {
+		this.store = screenshotStore;
+	}
+
+	/**
+	 * Sets the flight recorder of the test. The recorded steps are saved in
+	 * the screenshot folder only if the test fails, and discarded otherwise.
+	 * 
+	 * @param recorder
+	 *            the FlightRecorder instance or null
+	 */
+	public void setFlightRecorder(final FlightRecorder recorder) {
+		this.flightRecorder = recorder;
+	}
+
+	/**
+	 * Sets the pool the driver was leased from. When a pool is set the driver
+	 * is given back to the pool at the end of the test instead of being quit.
+	 * 
+	 * @param pool
+	 *            the DriverPool instance or null to quit the driver
+	 */
+	public void setDriverPool(final DriverPool pool) {
+		this.driverPool = pool;
+	}
+
 	/**
 	 * You must supply the folder where the screenshots will be stored in.
 	 * 
@@ -95,22 +189,24 @@ public final class TakeScreenshotOnFailureRule implements TestRule {
 						st.evaluate();
 					} catch (Throwable throwable) {
 
+						String baseName = baseNameFor(desc);
 						try {
-							if (TakeScreenshotOnFailureRule.this.takeScreenshot) {
+							if (TakeScreenshotOnFailureRule.this.takeScreenshot
+									&& LazyDriver.getCreated(driver) != null) {
 
-								silentlySaveScreenshotTo(filenameFor(desc));
+								silentlySaveScreenshotTo(baseName + ".png");
 							}
 						} catch (Exception e) {
 							LOG.debug("Error while taking screenshot "
 									+ e.getMessage());
 						}
+						saveFlightRecording(baseName);
 						throw throwable;
 					} finally {
-						try {
-							driver.quit();
-						} catch (Exception e) {
-							LOG.warn("Browser might be already closed!");
+						if (flightRecorder != null) {
+							flightRecorder.clear();
 						}
+						releaseDriver();
 					}
 				}
 			};
@@ -120,56 +216,157 @@ public final class TakeScreenshotOnFailureRule implements TestRule {
 	}
 
 	/**
-	 * Gets the name of the image file with the screenshot.
+	 * Gives the driver back to the pool or quits it if no pool is used. This
+	 * does nothing if the test never created its driver.
+	 */
+	private void releaseDriver() {
+		WebDriver created = LazyDriver.getCreated(driver);
+		if (created == null) {
+			LOG.debug("No driver was created by the test");
+			return;
+		}
+		try {
+			if (driverPool != null) {
+				driverPool.release(created);
+			} else {
+				created.quit();
+			}
+		} catch (Exception e) {
+			LOG.warn("Browser might be already closed!");
+		}
+	}
+
+	/**
+	 * Gets the base name of the files saved for a failed test. The name is
+	 * made of the class and method names. When the test class runs with the
+	 * {@link ParallelSoSRunner}, or when the name was already used, it also
+	 * contains the id of the thread running the test and a sequence number
+	 * so that the screenshots never overwrite each other.
 	 * 
 	 * @param method
 	 *            the method name
-	 * @return the file that will cotain the screenshot
+	 * @return the base name of the screenshot files
 	 */
-	private File filenameFor(final Description method) {
-		String className = method.getClassName();
-		String methodName = method.getMethodName();
+	private String baseNameFor(final Description method) {
+		String baseName = method.getClassName() + "_" + method.getMethodName();
+
+		if (!runsInParallel(method)
+				&& USED_NAMES.putIfAbsent(baseName, Boolean.TRUE) == null
+				&& (directory == null || !new File(directory, baseName
+						+ ".png").exists())) {
+			return baseName;
+		}
+		return baseName + "_t" + Thread.currentThread().getId() + "_"
+				+ SEQUENCE.incrementAndGet();
+	}
+
+	/**
+	 * Checks if the test class of the supplied test runs with the
+	 * {@link ParallelSoSRunner}.
+	 * 
+	 * @param method
+	 *            the test
+	 * @return true if the tests of the class run in parallel
+	 */
+	private static boolean runsInParallel(final Description method) {
+		Class<?> testClass = method.getTestClass();
+		if (testClass == null) {
+			return false;
+		}
+		RunWith runWith = testClass.getAnnotation(RunWith.class);
+		return runWith != null
+				&& ParallelSoSRunner.class.equals(runWith.value());
+	}
 
-		return new File(directory, className + "_" + methodName + ".png");
+	/**
+	 * Hands the frames of the flight recorder to the writer, together with a
+	 * log of the recorded steps.
+	 * 
+	 * @param baseName
+	 *            the base name of the files
+	 */
+	private void saveFlightRecording(final String baseName) {
+		if (flightRecorder == null) {
+			return;
+		}
+		List<FlightRecorder.Frame> frames = flightRecorder.getFrames();
+		if (frames.isEmpty()) {
+			return;
+		}
+		for (int i = 0; i < frames.size(); i++) {
+			byte[] png = frames.get(i).getScreenshot();
+			if (png != null) {
+				save(String.format("%s_step%02d.png", baseName, i + 1), png);
+			}
+		}
+		try {
+			save(baseName + "_steps.txt",
+					flightRecorder.getStepLog().getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			LOG.warn("Unable to save the step log: " + e.getMessage());
+		}
 	}
 
 	/**
 	 * Saves the actual screenshot without interrupting the running of the
 	 * tests. It will log an error if unable to store take the screenshot.
 	 * 
-	 * @param file
-	 *            the file that will store the screenshot
+	 * @param name
+	 *            the name of the screenshot file
 	 */
-	private void silentlySaveScreenshotTo(final File file) {
+	private void silentlySaveScreenshotTo(final String name) {
 		try {
-			saveScreenshotTo(file);
-			LOG.info("Screenshot saved: " + file.getAbsolutePath());
+			saveScreenshotTo(name);
 		} catch (Exception e) {
-			LOG.warn("Error while taking screenshot " + file.getName() + ": "
-					+ e);
+			LOG.warn("Error while taking screenshot " + name + ": " + e);
 		}
 	}
 
 	/**
-	 * Saves the screenshot to the file.
+	 * Takes the screenshot and saves it.
 	 * 
-	 * @param file
-	 *            the file where to save the screenshot
-	 * @throws IOException
-	 *             if something goes wrong while saving
+	 * @param name
+	 *            the name of the screenshot file
 	 */
-	private void saveScreenshotTo(final File file) throws IOException {
-		byte[] bytes = null;
-		try {
-			bytes = ((TakesScreenshot) driver)
-					.getScreenshotAs(OutputType.BYTES);
-		} catch (ClassCastException e) {
-			WebDriver augmentedDriver = new Augmenter().augment(driver);
-			bytes = ((TakesScreenshot) augmentedDriver)
-					.getScreenshotAs(OutputType.BYTES);
+	private void saveScreenshotTo(final String name) {
+		byte[] bytes = screenshotterFor(LazyDriver.getCreated(driver))
+				.getScreenshotAs(OutputType.BYTES);
+		save(name, bytes);
+	}
+
+	/**
+	 * Saves the content in the screenshot folder, through the store if there
+	 * is one.
+	 * 
+	 * @param name
+	 *            the name of the file
+	 * @param bytes
+	 *            the content
+	 */
+	private void save(final String name, final byte[] bytes) {
+		if (store != null) {
+			store.store(name, bytes);
+		} else {
+			getScreenshotWriter().write(bytes, new File(directory, name));
 		}
+	}
 
-		Files.write(bytes, file);
+	/**
+	 * Returns the object taking the screenshots of the driver.
+	 * 
+	 * @param drv
+	 *            the driver
+	 * @return the driver able to take screenshots
+	 * @throws WebDriverException
+	 *             if the driver cannot take screenshots
+	 */
+	private static TakesScreenshot screenshotterFor(final WebDriver drv) {
+		TakesScreenshot camera = Screenshots.cameraFor(drv);
+		if (camera == null) {
+			throw new WebDriverException("The driver cannot take screenshots: "
+					+ drv);
+		}
+		return camera;
 	}
 
 }
@@ -0,0 +1,188 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Assert;
+
+/**
+ * Holds the outcome of a {@link HelperBatch}. There is one item for each
+ * recorded step, in the order in which the steps were recorded.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class BatchResult {
+
+	/**
+	 * The outcome of every step.
+	 */
+	private final List<Item> items;
+
+	/**
+	 * Creates a new BatchResult.
+	 * 
+	 * @param results
+	 *            the outcome of every step
+	 */
+	BatchResult(final List<Item> results) {
+		this.items = Collections.unmodifiableList(new ArrayList<Item>(results));
+	}
+
+	/**
+	 * Returns the outcome of every step.
+	 * 
+	 * @return an unmodifiable list of items
+	 */
+	public List<Item> getItems() {
+		return items;
+	}
+
+	/**
+	 * Returns the outcome of the step with the supplied index.
+	 * 
+	 * @param index
+	 *            the index of the step, starting with 0
+	 * @return the item for the step
+	 */
+	public Item get(final int index) {
+		return items.get(index);
+	}
+
+	/**
+	 * Returns the value read by the step with the supplied index.
+	 * 
+	 * @param index
+	 *            the index of the step, starting with 0
+	 * @return the value read or null if the element or cookie was not found
+	 */
+	public String getValue(final int index) {
+		return items.get(index).getValue();
+	}
+
+	/**
+	 * Checks if all the verifications passed.
+	 * 
+	 * @return true if all the steps passed or false otherwise
+	 */
+	public boolean isPassed() {
+		return getFailures().isEmpty();
+	}
+
+	/**
+	 * Returns the steps that failed.
+	 * 
+	 * @return the failed items
+	 */
+	public List<Item> getFailures() {
+		List<Item> failures = new ArrayList<Item>();
+		for (Item item : items) {
+			if (!item.isPassed()) {
+				failures.add(item);
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * Fails the test if any of the verifications failed. The failure message
+	 * lists all the failed steps.
+	 */
+	public void assertPassed() {
+		List<Item> failures = getFailures();
+		if (!failures.isEmpty()) {
+			StringBuilder message = new StringBuilder();
+			message.append(failures.size()).append(" of ").append(items.size())
+					.append(" batch verifications failed:");
+			for (Item item : failures) {
+				message.append("\n  ").append(item);
+			}
+			Assert.fail(message.toString());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "BatchResult" + items;
+	}
+
+	/**
+	 * The outcome of a single step.
+	 * 
+	 * @author ludovicianul
+	 * 
+	 */
+	public static final class Item {
+
+		private final String description;
+		private final String expected;
+		private final String value;
+		private final boolean passed;
+
+		/**
+		 * Creates a new Item.
+		 * 
+		 * @param description
+		 *            describes the step
+		 * @param expected
+		 *            describes the expected value or null for reads
+		 * @param value
+		 *            the value read
+		 * @param passed
+		 *            true if the verification passed
+		 */
+		Item(final String description, final String expected,
+				final String value, final boolean passed) {
+			this.description = description;
+			this.expected = expected;
+			this.value = value;
+			this.passed = passed;
+		}
+
+		/**
+		 * Returns the description of the step.
+		 * 
+		 * @return the description
+		 */
+		public String getDescription() {
+			return description;
+		}
+
+		/**
+		 * Returns the description of the expected value.
+		 * 
+		 * @return the expected value or null if the step is a read
+		 */
+		public String getExpected() {
+			return expected;
+		}
+
+		/**
+		 * Returns the value read by the step.
+		 * 
+		 * @return the value or null if the element or cookie was not found
+		 */
+		public String getValue() {
+			return value;
+		}
+
+		/**
+		 * Checks if the step passed. Reads always pass.
+		 * 
+		 * @return true if the step passed or false otherwise
+		 */
+		public boolean isPassed() {
+			return passed;
+		}
+
+		@Override
+		public String toString() {
+			if (expected == null) {
+				return description + " = " + value;
+			}
+			return description + ": expected " + expected + " but was "
+					+ value + (passed ? " [passed]" : " [failed]");
+		}
+	}
+}
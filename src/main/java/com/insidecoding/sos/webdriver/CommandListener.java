@@ -0,0 +1,25 @@
+package com.insidecoding.sos.webdriver;
+
+/**
+ * Receives the commands run through a driver wrapped by
+ * {@link InstrumentedDriver}.
+ * 
+ * @author ludovicianul
+ * 
+ */
+interface CommandListener {
+
+	/**
+	 * Called after each command, whether it succeeded or not.
+	 * 
+	 * @param command
+	 *            the command type, like {@code WebElement.click}
+	 * @param locator
+	 *            the locator used by the command or null
+	 * @param args
+	 *            the arguments of the command or null
+	 * @param nanos
+	 *            the duration of the command in nanoseconds
+	 */
+	void commandRun(String command, String locator, Object[] args, long nanos);
+}
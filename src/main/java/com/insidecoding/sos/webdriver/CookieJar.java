@@ -0,0 +1,325 @@
+package com.insidecoding.sos.webdriver;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+/**
+ * A view over the cookies of the current session. The cookies are read with a
+ * single {@code getCookies()} call into a map indexed by name, so that
+ * checking many cookies does not read and scan all the cookies every time.
+ * <br/>
+ * When caching is enabled the snapshot is kept until the helper navigates,
+ * refreshes the page or switches windows, or until the cookies are changed
+ * through this jar. Cookies set by the page in the meantime, for example
+ * after clicking a login button, are seen only after {@link #invalidate()}.
+ * Caching is disabled by default, in which case every lookup takes a new
+ * snapshot.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class CookieJar {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger.getLogger(CookieJar.class);
+
+	/**
+	 * The format of the cookie expiry date.
+	 */
+	private static final String EXPIRES_FORMAT = "EEE, dd MMM yyyy HH:mm:ss 'GMT'";
+
+	private final WebDriver driver;
+	private final ScriptRunner scripts;
+
+	/**
+	 * The cookies of the last snapshot indexed by name.
+	 */
+	private Map<String, Cookie> snapshot;
+
+	/**
+	 * Is the snapshot kept between lookups.
+	 */
+	private boolean enabled;
+
+	/**
+	 * The number of times the cookies were read from the driver.
+	 */
+	private long snapshots;
+
+	/**
+	 * Creates a new CookieJar.
+	 * 
+	 * @param d
+	 *            the WebDriver instance
+	 * @param runner
+	 *            the ScriptRunner of the driver
+	 */
+	CookieJar(final WebDriver d, final ScriptRunner runner) {
+		this.driver = d;
+		this.scripts = runner;
+	}
+
+	/**
+	 * Enables or disables caching the snapshot. Disabling the cache also
+	 * discards the current snapshot.
+	 * 
+	 * @param enable
+	 *            true to keep the snapshot between lookups
+	 */
+	public synchronized void setEnabled(final boolean enable) {
+		this.enabled = enable;
+		if (!enable) {
+			snapshot = null;
+		}
+	}
+
+	/**
+	 * Checks if the snapshot is kept between lookups.
+	 * 
+	 * @return true if caching is enabled or false otherwise
+	 */
+	public synchronized boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Discards the current snapshot. The next lookup reads the cookies from
+	 * the driver again.
+	 */
+	public synchronized void invalidate() {
+		snapshot = null;
+	}
+
+	/**
+	 * Returns the cookies of the current session indexed by name.
+	 * 
+	 * @return an unmodifiable map of the cookies
+	 */
+	public synchronized Map<String, Cookie> getCookies() {
+		if (snapshot != null) {
+			return snapshot;
+		}
+		Map<String, Cookie> cookies = new LinkedHashMap<String, Cookie>();
+		for (Cookie cookie : driver.manage().getCookies()) {
+			cookies.put(cookie.getName(), cookie);
+		}
+		snapshots++;
+		Map<String, Cookie> result = Collections.unmodifiableMap(cookies);
+		if (enabled) {
+			snapshot = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the cookie with the supplied name. The match is case sensitive.
+	 * 
+	 * @param name
+	 *            the name of the cookie
+	 * @return the cookie or null if there is no such cookie
+	 */
+	public Cookie get(final String name) {
+		return getCookies().get(name);
+	}
+
+	/**
+	 * Returns the value of the cookie with the supplied name.
+	 * 
+	 * @param name
+	 *            the name of the cookie
+	 * @return the value or null if there is no such cookie
+	 */
+	public String getValue(final String name) {
+		Cookie cookie = get(name);
+		return cookie == null ? null : cookie.getValue();
+	}
+
+	/**
+	 * Checks if the session has a cookie with the supplied name.
+	 * 
+	 * @param name
+	 *            the name of the cookie
+	 * @return true if the cookie exists or false otherwise
+	 */
+	public boolean contains(final String name) {
+		return getCookies().containsKey(name);
+	}
+
+	/**
+	 * Adds the supplied cookies, using the current domain and the root path.
+	 * 
+	 * @param cookies
+	 *            the cookie values keyed by cookie name
+	 */
+	public void addCookies(final Map<String, String> cookies) {
+		List<Cookie> list = new ArrayList<Cookie>();
+		for (Entry<String, String> entry : cookies.entrySet()) {
+			list.add(new Cookie(entry.getKey(), entry.getValue()));
+		}
+		addCookies(list);
+	}
+
+	/**
+	 * Adds the supplied cookies to the current domain. All the cookies are
+	 * set by a single script call when the driver can execute JavaScript;
+	 * the cookies the page cannot set, or reads back with another value, are
+	 * added one by one through WebDriver. The values are stored as they are,
+	 * so the values {@code document.cookie} would cut, like the ones holding
+	 * a semicolon, are always added through WebDriver.
+	 * 
+	 * @param cookies
+	 *            the cookies to add
+	 */
+	public void addCookies(final Collection<Cookie> cookies) {
+		invalidate();
+		Set<String> missing = addWithScript(cookies);
+		for (Cookie cookie : cookies) {
+			if (missing == null || missing.contains(cookie.getName())) {
+				driver.manage().addCookie(cookie);
+			}
+		}
+		invalidate();
+	}
+
+	/**
+	 * Deletes the cookie with the supplied name.
+	 * 
+	 * @param name
+	 *            the name of the cookie
+	 */
+	public void deleteCookie(final String name) {
+		invalidate();
+		driver.manage().deleteCookieNamed(name);
+	}
+
+	/**
+	 * Deletes all the cookies of the current domain.
+	 */
+	public void deleteAllCookies() {
+		invalidate();
+		driver.manage().deleteAllCookies();
+	}
+
+	/**
+	 * Returns the number of times the cookies were read from the driver.
+	 * 
+	 * @return the number of snapshots taken
+	 */
+	public synchronized long getSnapshotCount() {
+		return snapshots;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "CookieJar[enabled=" + enabled + ", snapshots=" + snapshots
+				+ "]";
+	}
+
+	/**
+	 * Sets the cookies with the cookies script.
+	 * 
+	 * @param cookies
+	 *            the cookies to set
+	 * @return the names of the cookies the page did not accept or null if the
+	 *         script cannot be run
+	 */
+	private Set<String> addWithScript(final Collection<Cookie> cookies) {
+		if (cookies.isEmpty() || !scripts.isAvailable()) {
+			return null;
+		}
+		Set<String> names = new HashSet<String>();
+		List<List<String>> values = new ArrayList<List<String>>();
+		for (Cookie cookie : cookies) {
+			if (!isScriptSafe(cookie)) {
+				names.add(cookie.getName());
+				continue;
+			}
+			List<String> value = new ArrayList<String>();
+			value.add(cookie.getName());
+			value.add(cookie.getValue());
+			value.add(toHeader(cookie));
+			values.add(value);
+		}
+		if (values.isEmpty()) {
+			return names;
+		}
+		try {
+			List<?> missing = (List<?>) scripts.run("cookies", values);
+			for (Object name : missing) {
+				names.add(String.valueOf(name));
+			}
+			LOG.debug("Set " + (cookies.size() - names.size()) + " of "
+					+ cookies.size() + " cookies with one script call");
+			return names;
+		} catch (UnsupportedOperationException e) {
+			return null;
+		} catch (WebDriverException e) {
+			LOG.debug("Cookies script failed, falling back to WebDriver calls: "
+					+ e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Checks if the cookie can be written to {@code document.cookie} as it
+	 * is. A semicolon would end the value and start an attribute, and the
+	 * browsers trim the blanks around the name and the value.
+	 * 
+	 * @param cookie
+	 *            the cookie
+	 * @return true if the cookie can be set by the script or false otherwise
+	 */
+	private static boolean isScriptSafe(final Cookie cookie) {
+		String name = cookie.getName();
+		String value = cookie.getValue();
+		return name.length() > 0 && name.indexOf('=') < 0
+				&& name.indexOf(';') < 0 && value.indexOf(';') < 0
+				&& name.trim().equals(name) && value.trim().equals(value);
+	}
+
+	/**
+	 * Formats the cookie as expected by {@code document.cookie}.
+	 * 
+	 * @param cookie
+	 *            the cookie
+	 * @return the cookie string
+	 */
+	private static String toHeader(final Cookie cookie) {
+		StringBuilder header = new StringBuilder();
+		header.append(cookie.getName()).append('=').append(cookie.getValue());
+		header.append("; path=").append(
+				cookie.getPath() == null || cookie.getPath().length() == 0 ? "/"
+						: cookie.getPath());
+		if (cookie.getDomain() != null) {
+			header.append("; domain=").append(cookie.getDomain());
+		}
+		if (cookie.getExpiry() != null) {
+			SimpleDateFormat format = new SimpleDateFormat(EXPIRES_FORMAT,
+					Locale.US);
+			format.setTimeZone(TimeZone.getTimeZone("GMT"));
+			header.append("; expires=").append(
+					format.format(cookie.getExpiry()));
+		}
+		if (cookie.isSecure()) {
+			header.append("; secure");
+		}
+		return header.toString();
+	}
+}
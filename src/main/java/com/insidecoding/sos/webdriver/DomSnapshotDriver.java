@@ -0,0 +1,192 @@
+package com.insidecoding.sos.webdriver;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.openqa.selenium.htmlunit.HtmlUnitWebElement;
+
+import com.gargoylesoftware.htmlunit.StringWebResponse;
+import com.gargoylesoftware.htmlunit.WebWindow;
+import com.gargoylesoftware.htmlunit.html.HTMLParser;
+import com.gargoylesoftware.htmlunit.html.HtmlElement;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.util.UrlUtils;
+
+/**
+ * A read-only driver holding a copy of a page parsed in process. The elements
+ * are searched with the usual {@link By} locators without any round trip to
+ * the browser. Scripts are not run, so the copy never changes. <br/>
+ * The snapshot becomes stale as soon as the driver it was taken from runs a
+ * command that may change the page; searching a stale snapshot throws an
+ * IllegalStateException. Actions which would change the copy, like clicking or
+ * typing, throw an UnsupportedOperationException.
+ * 
+ * @author ludovicianul
+ * 
+ */
+final class DomSnapshotDriver extends HtmlUnitDriver {
+
+	/**
+	 * Counts the page changes done through the driver the snapshot was taken
+	 * from.
+	 */
+	private final AtomicInteger changes;
+
+	/**
+	 * The number of changes when the snapshot was taken.
+	 */
+	private final int version;
+
+	/**
+	 * Set once the page source is parsed. HtmlUnitDriver opens a blank page
+	 * while it is constructed.
+	 */
+	private boolean parsed;
+
+	/**
+	 * Parses the page source.
+	 * 
+	 * @param source
+	 *            the page source
+	 * @param url
+	 *            the URL of the page, used to resolve relative links
+	 * @param pageChanges
+	 *            counts the page changes done through the driver
+	 */
+	DomSnapshotDriver(final String source, final String url,
+			final AtomicInteger pageChanges) {
+		super(false);
+		this.changes = pageChanges;
+		this.version = pageChanges.get();
+		WebWindow window = getWebClient().getCurrentWindow();
+		try {
+			HtmlPage page = HTMLParser.parseHtml(new StringWebResponse(source,
+					UrlUtils.toUrlUnsafe(url)), window);
+			window.setEnclosedPage(page);
+			parsed = true;
+		} catch (IOException e) {
+			throw new WebDriverException("Unable to parse the page source", e);
+		}
+	}
+
+	/**
+	 * Checks if the page was changed since the snapshot was taken.
+	 * 
+	 * @return true if the snapshot is stale or false otherwise
+	 */
+	boolean isStale() {
+		return changes.get() != version;
+	}
+
+	@Override
+	public WebElement findElement(final By by) {
+		assertFresh();
+		return super.findElement(by);
+	}
+
+	@Override
+	public List<WebElement> findElements(final By by) {
+		assertFresh();
+		return super.findElements(by);
+	}
+
+	@Override
+	public String getPageSource() {
+		assertFresh();
+		return super.getPageSource();
+	}
+
+	@Override
+	public void get(final String url) {
+		if (!parsed) {
+			super.get(url);
+			return;
+		}
+		throw new UnsupportedOperationException(
+				"DOM snapshots cannot navigate");
+	}
+
+	@Override
+	public Object executeScript(final String script, final Object... args) {
+		throw new UnsupportedOperationException(
+				"DOM snapshots cannot run scripts");
+	}
+
+	@Override
+	public Object executeAsyncScript(final String script,
+			final Object... args) {
+		throw new UnsupportedOperationException(
+				"DOM snapshots cannot run scripts");
+	}
+
+	@Override
+	protected WebElement newHtmlUnitWebElement(final HtmlElement element) {
+		return new SnapshotElement(this, element);
+	}
+
+	/**
+	 * Throws an exception if the snapshot is stale.
+	 */
+	private void assertFresh() {
+		if (isStale()) {
+			throw new IllegalStateException(
+					"The page changed since the DOM snapshot was taken");
+		}
+	}
+
+	/**
+	 * An element of the snapshot which cannot be changed.
+	 */
+	private static final class SnapshotElement extends HtmlUnitWebElement {
+
+		private final DomSnapshotDriver snapshot;
+
+		SnapshotElement(final DomSnapshotDriver driver,
+				final HtmlElement element) {
+			super(driver, element);
+			this.snapshot = driver;
+		}
+
+		@Override
+		public WebElement findElement(final By by) {
+			snapshot.assertFresh();
+			return super.findElement(by);
+		}
+
+		@Override
+		public List<WebElement> findElements(final By by) {
+			snapshot.assertFresh();
+			return super.findElements(by);
+		}
+
+		@Override
+		public void click() {
+			throw readOnly();
+		}
+
+		@Override
+		public void submit() {
+			throw readOnly();
+		}
+
+		@Override
+		public void clear() {
+			throw readOnly();
+		}
+
+		@Override
+		public void sendKeys(final CharSequence... value) {
+			throw readOnly();
+		}
+
+		private UnsupportedOperationException readOnly() {
+			return new UnsupportedOperationException(
+					"DOM snapshots are read only");
+		}
+	}
+}
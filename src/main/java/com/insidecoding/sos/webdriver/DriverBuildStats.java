@@ -0,0 +1,136 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.insidecoding.sos.webdriver.DriverBuildTiming.Stage;
+import com.insidecoding.sos.webdriver.DriverMetrics.Latency;
+
+/**
+ * Aggregates the {@link DriverBuildTiming}s of all the drivers built during
+ * the run. The latency of each stage shows where the driver creation time
+ * goes: copying profiles, starting browsers or waiting in the grid queue.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class DriverBuildStats {
+
+	/**
+	 * The instance shared by all the builds.
+	 */
+	private static final DriverBuildStats INSTANCE = new DriverBuildStats();
+
+	private final Map<Stage, Latency> stages = new EnumMap<Stage, Latency>(
+			Stage.class);
+	private final Latency total = new Latency();
+	private final AtomicInteger builds = new AtomicInteger();
+	private final AtomicInteger failures = new AtomicInteger();
+	private volatile DriverBuildTiming lastBuild;
+
+	private DriverBuildStats() {
+		for (Stage stage : Stage.values()) {
+			stages.put(stage, new Latency());
+		}
+	}
+
+	/**
+	 * Returns the statistics of the run.
+	 * 
+	 * @return the shared instance
+	 */
+	public static DriverBuildStats getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Adds a build to the statistics.
+	 * 
+	 * @param timing
+	 *            the timing of the build
+	 */
+	void record(final DriverBuildTiming timing) {
+		for (Map.Entry<Stage, Long> entry : timing.getStageNanos().entrySet()) {
+			stages.get(entry.getKey()).add(entry.getValue());
+		}
+		total.add(timing.getTotalNanos());
+		builds.incrementAndGet();
+		if (timing.isFailed()) {
+			failures.incrementAndGet();
+		}
+		lastBuild = timing;
+	}
+
+	/**
+	 * Returns the number of drivers built.
+	 * 
+	 * @return the number of builds, including the failed ones
+	 */
+	public int getBuildCount() {
+		return builds.get();
+	}
+
+	/**
+	 * Returns the number of builds which did not create a driver.
+	 * 
+	 * @return the number of failed builds
+	 */
+	public int getFailureCount() {
+		return failures.get();
+	}
+
+	/**
+	 * Returns the latency of a build stage across the run.
+	 * 
+	 * @param stage
+	 *            the stage
+	 * @return the latency of the stage
+	 */
+	public Latency getStageLatency(final Stage stage) {
+		return stages.get(stage);
+	}
+
+	/**
+	 * Returns the latency of the whole builds across the run.
+	 * 
+	 * @return the build latency
+	 */
+	public Latency getTotalLatency() {
+		return total;
+	}
+
+	/**
+	 * Returns the timing of the last build.
+	 * 
+	 * @return the last timing or null if no driver was built
+	 */
+	public DriverBuildTiming getLastBuild() {
+		return lastBuild;
+	}
+
+	/**
+	 * Returns a human readable summary of the build statistics.
+	 * 
+	 * @return the build report
+	 */
+	public String getReport() {
+		StringBuilder report = new StringBuilder("Driver builds: "
+				+ getBuildCount() + " (" + getFailureCount() + " failed), "
+				+ describe("total", total));
+		for (Stage stage : Stage.values()) {
+			Latency latency = stages.get(stage);
+			if (latency.getCount() > 0) {
+				report.append(", ").append(
+						describe(stage.name().toLowerCase(Locale.US), latency));
+			}
+		}
+		return report.toString();
+	}
+
+	private static String describe(final String name, final Latency latency) {
+		return String.format(Locale.US, "%s mean=%.1f ms max=%.1f ms", name,
+				latency.getMeanMillis(), latency.getMaxMillis());
+	}
+}
@@ -0,0 +1,201 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * The time spent in each stage of a driver build. Every build done through
+ * {@link WebDriverHelper.Builder#buildDriver()} is timed, logged and added to
+ * the run totals kept by {@link DriverBuildStats}.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class DriverBuildTiming {
+
+	/**
+	 * The stages of a driver build.
+	 */
+	public enum Stage {
+		/**
+		 * Resolving the factory and filling the capabilities.
+		 */
+		CAPABILITIES,
+		/**
+		 * Setting up the proxy.
+		 */
+		PROXY,
+		/**
+		 * Adding the browser specific settings, like creating or copying the
+		 * Firefox profile.
+		 */
+		PROFILE,
+		/**
+		 * Starting the local browser process.
+		 */
+		LOCAL_START,
+		/**
+		 * Negotiating the session with the grid, including the time spent
+		 * in the grid queue.
+		 */
+		REMOTE_SESSION
+	}
+
+	private final String browser;
+	private final String runMode;
+	private final long start = System.nanoTime();
+	private final Map<Stage, Long> stages = new EnumMap<Stage, Long>(
+			Stage.class);
+	private Stage current;
+	private long currentStart;
+	private long totalNanos;
+	private String failure;
+
+	/**
+	 * Starts timing a build.
+	 * 
+	 * @param browserName
+	 *            the browser being built
+	 * @param mode
+	 *            the run mode
+	 */
+	DriverBuildTiming(final String browserName, final String mode) {
+		this.browser = browserName;
+		this.runMode = mode;
+	}
+
+	/**
+	 * Ends the current stage and starts the supplied one. A stage can be
+	 * entered several times; its durations are added.
+	 * 
+	 * @param stage
+	 *            the stage starting now
+	 */
+	void begin(final Stage stage) {
+		end();
+		current = stage;
+		currentStart = System.nanoTime();
+	}
+
+	/**
+	 * Records that the current stage failed. Only the first failure is kept.
+	 * 
+	 * @param e
+	 *            the failure
+	 */
+	void fail(final Throwable e) {
+		if (failure == null) {
+			failure = (current == null ? "" : current + ": ") + e;
+		}
+	}
+
+	/**
+	 * Ends the build.
+	 */
+	void finish() {
+		end();
+		totalNanos = System.nanoTime() - start;
+	}
+
+	private void end() {
+		if (current != null) {
+			Long previous = stages.get(current);
+			long elapsed = System.nanoTime() - currentStart;
+			stages.put(current, previous == null ? elapsed : previous
+					+ elapsed);
+			current = null;
+		}
+	}
+
+	/**
+	 * Returns the browser name of the build.
+	 * 
+	 * @return the browser name
+	 */
+	public String getBrowser() {
+		return browser;
+	}
+
+	/**
+	 * Returns the run mode of the build.
+	 * 
+	 * @return the run mode
+	 */
+	public String getRunMode() {
+		return runMode;
+	}
+
+	/**
+	 * Returns the duration of each stage the build went through.
+	 * 
+	 * @return an unmodifiable map of durations in nanoseconds, in stage order
+	 */
+	public Map<Stage, Long> getStageNanos() {
+		return Collections.unmodifiableMap(stages);
+	}
+
+	/**
+	 * Returns the duration of the supplied stage.
+	 * 
+	 * @param stage
+	 *            the stage
+	 * @return the duration in milliseconds or 0 if the build skipped the stage
+	 */
+	public double getStageMillis(final Stage stage) {
+		Long nanos = stages.get(stage);
+		return nanos == null ? 0 : nanos / 1e6;
+	}
+
+	/**
+	 * Returns the duration of the whole build.
+	 * 
+	 * @return the duration in milliseconds
+	 */
+	public double getTotalMillis() {
+		return totalNanos / 1e6;
+	}
+
+	long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * Checks if the build failed.
+	 * 
+	 * @return true if no driver was created or false otherwise
+	 */
+	public boolean isFailed() {
+		return failure != null;
+	}
+
+	/**
+	 * Returns the failed stage and the cause of the failure.
+	 * 
+	 * @return the failure or null if the build succeeded
+	 */
+	public String getFailure() {
+		return failure;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder("Driver build [" + browser
+				+ ", " + runMode + "]: ");
+		for (Entry<Stage, Long> entry : stages.entrySet()) {
+			text.append(entry.getKey().name().toLowerCase(Locale.US))
+					.append('=')
+					.append(String.format(Locale.US, "%.1f",
+							entry.getValue() / 1e6)).append(" ms, ");
+		}
+		text.append("total=").append(
+				String.format(Locale.US, "%.1f", getTotalMillis()))
+				.append(" ms");
+		if (failure != null) {
+			text.append(", failed in ").append(failure);
+		}
+		return text.toString();
+	}
+}
@@ -0,0 +1,45 @@
+package com.insidecoding.sos.webdriver;
+
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+/**
+ * Creates WebDriver instances for one or more browser names. Factories are
+ * registered in the {@link DriverFactoryRegistry}. <br/>
+ * You can add your own browsers by implementing this interface and listing the
+ * implementation in a
+ * {@code META-INF/services/com.insidecoding.sos.webdriver.DriverFactory} file
+ * on the classpath. Implementations must have a public no-argument
+ * constructor.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public interface DriverFactory {
+
+	/**
+	 * Returns the browser names handled by this factory. The names are matched
+	 * against the {@code browser} property ignoring the case.
+	 * 
+	 * @return the browser names
+	 */
+	String[] getBrowserNames();
+
+	/**
+	 * Returns the capabilities template for this browser. The template is
+	 * copied before each build so it must not be modified by the caller.
+	 * 
+	 * @return the default capabilities of the browser
+	 */
+	DesiredCapabilities getCapabilities();
+
+	/**
+	 * Creates a new local WebDriver instance.
+	 * 
+	 * @param capabilities
+	 *            the capabilities of the new driver
+	 * @return a new WebDriver instance
+	 */
+	WebDriver newDriver(Capabilities capabilities);
+}
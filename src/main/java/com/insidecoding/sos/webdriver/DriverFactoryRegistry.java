@@ -0,0 +1,159 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+/**
+ * Holds the {@link DriverFactory} instances used to create the WebDriver
+ * instances. The Selenium browsers are registered by default; additional
+ * factories are discovered through {@link ServiceLoader} and take precedence
+ * over the default ones.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class DriverFactoryRegistry {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger
+			.getLogger(DriverFactoryRegistry.class);
+
+	/**
+	 * The registry used by the WebDriverHelper.Builder.
+	 */
+	private static final DriverFactoryRegistry INSTANCE = new DriverFactoryRegistry();
+
+	/**
+	 * The factories indexed by the lower case browser name.
+	 */
+	private final Map<String, DriverFactory> factories = new ConcurrentHashMap<String, DriverFactory>();
+
+	/**
+	 * Creates the registry holding the default browsers and the factories
+	 * found on the classpath.
+	 */
+	private DriverFactoryRegistry() {
+		registerDefaults();
+		loadServices();
+	}
+
+	/**
+	 * Returns the registry instance.
+	 * 
+	 * @return the registry
+	 */
+	public static DriverFactoryRegistry getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Registers a factory for all the browser names it handles, replacing any
+	 * factory previously registered for these names.
+	 * 
+	 * @param factory
+	 *            the factory to register
+	 */
+	public void register(final DriverFactory factory) {
+		for (String name : factory.getBrowserNames()) {
+			LOG.info("Registering driver factory for " + name + ": "
+					+ factory);
+			factories.put(name.toLowerCase(Locale.ENGLISH), factory);
+		}
+	}
+
+	/**
+	 * Returns the factory for the supplied browser name. <br/>
+	 * For browser names which are not registered a factory is created based on
+	 * the Selenium naming conventions ({@code org.openqa.selenium.<browser>.
+	 * <Browser>Driver}) with the Firefox capabilities and registered for
+	 * later use.
+	 * 
+	 * @param browser
+	 *            the browser name
+	 * @return the corresponding factory
+	 */
+	public DriverFactory getFactory(final String browser) {
+		String key = browser.toLowerCase(Locale.ENGLISH);
+		DriverFactory factory = factories.get(key);
+		if (factory == null) {
+			LOG.debug("Browser: " + browser
+					+ " is not registered. Defaulting to Firefox capabilities!");
+			String browserPackage = key.startsWith("internet") ? "ie" : key;
+			factory = new ReflectiveDriverFactory(new String[] { browser },
+					DesiredCapabilities.firefox(), "org.openqa.selenium."
+							+ browserPackage + "."
+							+ StringUtils.capitalize(browser + "Driver"));
+			factories.put(key, factory);
+		}
+		return factory;
+	}
+
+	/**
+	 * Registers the browsers supported by Selenium.
+	 */
+	private void registerDefaults() {
+		register(new ReflectiveDriverFactory(new String[] { "firefox" },
+				DesiredCapabilities.firefox(),
+				"org.openqa.selenium.firefox.FirefoxDriver"));
+		register(new ReflectiveDriverFactory(new String[] { "chrome" },
+				DesiredCapabilities.chrome(),
+				"org.openqa.selenium.chrome.ChromeDriver"));
+		register(new ReflectiveDriverFactory(new String[] {
+				"internetExplorer", "ie" },
+				DesiredCapabilities.internetExplorer(),
+				"org.openqa.selenium.ie.InternetExplorerDriver"));
+		register(new ReflectiveDriverFactory(new String[] { "htmlUnit" },
+				DesiredCapabilities.htmlUnit(),
+				"org.openqa.selenium.htmlunit.HtmlUnitDriver"));
+		register(new ReflectiveDriverFactory(new String[] { "htmlUnitWithJs" },
+				DesiredCapabilities.htmlUnitWithJs(),
+				"org.openqa.selenium.htmlunit.HtmlUnitDriver"));
+		register(new ReflectiveDriverFactory(new String[] { "safari" },
+				DesiredCapabilities.safari(),
+				"org.openqa.selenium.safari.SafariDriver"));
+		register(new ReflectiveDriverFactory(new String[] { "android" },
+				DesiredCapabilities.android(),
+				"org.openqa.selenium.android.AndroidDriver"));
+		register(new ReflectiveDriverFactory(new String[] { "iphone" },
+				DesiredCapabilities.iphone(),
+				"org.openqa.selenium.iphone.IPhoneDriver"));
+		register(new ReflectiveDriverFactory(new String[] { "ipad" },
+				DesiredCapabilities.ipad(),
+				"org.openqa.selenium.iphone.IPhoneDriver"));
+		register(new ReflectiveDriverFactory(new String[] { "opera" },
+				DesiredCapabilities.opera(), "com.opera.core.systems.OperaDriver"));
+		register(new ReflectiveDriverFactory(new String[] { "phantomjs" },
+				DesiredCapabilities.phantomjs(),
+				"org.openqa.selenium.phantomjs.PhantomJSDriver"));
+	}
+
+	/**
+	 * Registers the factories listed in the
+	 * {@code META-INF/services/com.insidecoding.sos.webdriver.DriverFactory}
+	 * files.
+	 */
+	private void loadServices() {
+		Iterator<DriverFactory> it = ServiceLoader.load(DriverFactory.class)
+				.iterator();
+		while (true) {
+			try {
+				if (!it.hasNext()) {
+					break;
+				}
+				register(it.next());
+			} catch (ServiceConfigurationError e) {
+				LOG.warn("Unable to load driver factory: " + e.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,490 @@
+package com.insidecoding.sos.webdriver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.log4j.Logger;
+import org.openqa.selenium.WebDriver;
+
+/**
+ * Records the latency of every command sent to the instrumented drivers. The
+ * latencies are grouped by command type, like {@code WebElement.click}, and
+ * by the {@link org.openqa.selenium.By} locator used to find elements. The
+ * number of round trips is also counted for each test, between
+ * {@link #startTest(String)} and {@link #endTest()}. <br/>
+ * Drivers are instrumented with {@link #instrument(WebDriver)}, or by
+ * supplying the metrics to
+ * {@link WebDriverHelper.Builder#metrics(DriverMetrics)}. The results can be
+ * queried while the tests run and exported as JSON or CSV with
+ * {@link #writeReport(File)}.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class DriverMetrics {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger.getLogger(DriverMetrics.class);
+
+	/**
+	 * The name of the report files, without extension.
+	 */
+	private static final String REPORT_NAME = "driver-metrics";
+
+	/**
+	 * The upper bounds of the histogram buckets in milliseconds. The last
+	 * bucket holds the slower commands.
+	 */
+	private static final long[] BUCKETS = { 1, 2, 5, 10, 25, 50, 100, 250,
+			500, 1000, 2500, 5000, 10000 };
+
+	private final ConcurrentMap<String, Latency> commands = new ConcurrentHashMap<String, Latency>();
+	private final ConcurrentMap<String, Latency> locators = new ConcurrentHashMap<String, Latency>();
+	private final ConcurrentMap<String, AtomicLong> tests = new ConcurrentHashMap<String, AtomicLong>();
+	private final AtomicLong roundTrips = new AtomicLong();
+
+	/**
+	 * The test running on the current thread.
+	 */
+	private final ThreadLocal<String> currentTest = new ThreadLocal<String>();
+
+	/**
+	 * Wraps the driver so that every command it executes is recorded. The
+	 * returned driver implements the same interfaces as the supplied one and
+	 * {@link org.openqa.selenium.internal.WrapsDriver}, and counts the page
+	 * changes for {@link WebDriverHelper#takeSnapshot()}.
+	 * 
+	 * @param driver
+	 *            the driver to instrument
+	 * @return the instrumented driver
+	 */
+	public WebDriver instrument(final WebDriver driver) {
+		return InstrumentedDriver.wrap(driver, new CommandListener() {
+			public void commandRun(final String command, final String locator,
+					final Object[] args, final long nanos) {
+				record(command, locator, nanos);
+			}
+		});
+	}
+
+	/**
+	 * Starts counting the round trips of a test running on the current
+	 * thread.
+	 * 
+	 * @param name
+	 *            the name of the test
+	 */
+	public void startTest(final String name) {
+		currentTest.set(name);
+		roundTripsOf(name);
+	}
+
+	/**
+	 * Stops counting the round trips of the test running on the current
+	 * thread.
+	 * 
+	 * @return the number of round trips of the test
+	 */
+	public long endTest() {
+		String name = currentTest.get();
+		currentTest.remove();
+		if (name == null) {
+			return 0;
+		}
+		long count = roundTripsOf(name).get();
+		LOG.info("Test " + name + " made " + count + " driver round trips");
+		return count;
+	}
+
+	/**
+	 * Records a command.
+	 * 
+	 * @param command
+	 *            the command type
+	 * @param locator
+	 *            the locator used by the command or null
+	 * @param nanos
+	 *            the duration of the command in nanoseconds
+	 */
+	void record(final String command, final String locator, final long nanos) {
+		roundTrips.incrementAndGet();
+		latencyOf(commands, command).add(nanos);
+		if (locator != null) {
+			latencyOf(locators, locator).add(nanos);
+		}
+		String test = currentTest.get();
+		if (test != null) {
+			roundTripsOf(test).incrementAndGet();
+		}
+	}
+
+	/**
+	 * Returns the total number of commands recorded.
+	 * 
+	 * @return the number of round trips
+	 */
+	public long getRoundTrips() {
+		return roundTrips.get();
+	}
+
+	/**
+	 * Returns the latencies of each command type.
+	 * 
+	 * @return an unmodifiable map of latencies sorted by command type
+	 */
+	public Map<String, Latency> getCommandLatencies() {
+		return Collections.unmodifiableMap(new TreeMap<String, Latency>(
+				commands));
+	}
+
+	/**
+	 * Returns the latencies of the commands using each locator.
+	 * 
+	 * @return an unmodifiable map of latencies sorted by locator
+	 */
+	public Map<String, Latency> getLocatorLatencies() {
+		return Collections.unmodifiableMap(new TreeMap<String, Latency>(
+				locators));
+	}
+
+	/**
+	 * Returns the number of round trips of each test.
+	 * 
+	 * @return an unmodifiable map of round trips sorted by test name
+	 */
+	public Map<String, Long> getRoundTripsPerTest() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Entry<String, AtomicLong> entry : tests.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().get());
+		}
+		return Collections.unmodifiableMap(result);
+	}
+
+	/**
+	 * Discards all the recorded metrics.
+	 */
+	public void reset() {
+		commands.clear();
+		locators.clear();
+		tests.clear();
+		roundTrips.set(0);
+	}
+
+	/**
+	 * Formats the metrics as JSON.
+	 * 
+	 * @return the JSON report
+	 */
+	public String toJson() {
+		StringBuilder json = new StringBuilder();
+		json.append("{\n  \"roundTrips\": ").append(getRoundTrips());
+		json.append(",\n  \"commands\": ");
+		appendJson(json, getCommandLatencies());
+		json.append(",\n  \"locators\": ");
+		appendJson(json, getLocatorLatencies());
+		json.append(",\n  \"tests\": {");
+		String separator = "\n";
+		for (Entry<String, Long> entry : getRoundTripsPerTest().entrySet()) {
+			json.append(separator).append("    ")
+					.append(quote(entry.getKey())).append(": ")
+					.append(entry.getValue());
+			separator = ",\n";
+		}
+		json.append("\n  }\n}\n");
+		return json.toString();
+	}
+
+	/**
+	 * Formats the metrics as CSV, with one line for each command type,
+	 * locator and test.
+	 * 
+	 * @return the CSV report
+	 */
+	public String toCsv() {
+		StringBuilder csv = new StringBuilder();
+		csv.append("type,name,count,totalMillis,meanMillis,minMillis,maxMillis,p50Millis,p95Millis,p99Millis\n");
+		appendCsv(csv, "command", getCommandLatencies());
+		appendCsv(csv, "locator", getLocatorLatencies());
+		for (Entry<String, Long> entry : getRoundTripsPerTest().entrySet()) {
+			csv.append("test,").append(csvValue(entry.getKey())).append(',')
+					.append(entry.getValue()).append(",,,,,,,\n");
+		}
+		return csv.toString();
+	}
+
+	/**
+	 * Writes the {@code driver-metrics.json} and {@code driver-metrics.csv}
+	 * reports in the supplied folder.
+	 * 
+	 * @param folder
+	 *            the folder where the reports are written
+	 * @throws IOException
+	 *             if the reports cannot be written
+	 */
+	public void writeReport(final File folder) throws IOException {
+		FileUtils.writeStringToFile(new File(folder, REPORT_NAME + ".json"),
+				toJson(), "UTF-8");
+		FileUtils.writeStringToFile(new File(folder, REPORT_NAME + ".csv"),
+				toCsv(), "UTF-8");
+		LOG.info("Driver metrics written to " + folder.getAbsolutePath());
+	}
+
+	@Override
+	public String toString() {
+		return "DriverMetrics[roundTrips=" + getRoundTrips() + ", commands="
+				+ commands.size() + ", locators=" + locators.size()
+				+ ", tests=" + tests.size() + "]";
+	}
+
+	private static Latency latencyOf(final ConcurrentMap<String, Latency> map,
+			final String key) {
+		Latency latency = map.get(key);
+		if (latency == null) {
+			latency = new Latency();
+			Latency existing = map.putIfAbsent(key, latency);
+			if (existing != null) {
+				latency = existing;
+			}
+		}
+		return latency;
+	}
+
+	/**
+	 * Returns the round trip counter of a test, creating it if needed, for
+	 * example after {@link #reset()}.
+	 * 
+	 * @param test
+	 *            the name of the test
+	 * @return the counter
+	 */
+	private AtomicLong roundTripsOf(final String test) {
+		AtomicLong count = tests.get(test);
+		if (count == null) {
+			count = new AtomicLong();
+			AtomicLong existing = tests.putIfAbsent(test, count);
+			if (existing != null) {
+				count = existing;
+			}
+		}
+		return count;
+	}
+
+	private static void appendJson(final StringBuilder json,
+			final Map<String, Latency> latencies) {
+		json.append('{');
+		String separator = "\n";
+		for (Entry<String, Latency> entry : latencies.entrySet()) {
+			Latency latency = entry.getValue();
+			json.append(separator).append("    ")
+					.append(quote(entry.getKey())).append(": {");
+			json.append("\"count\": ").append(latency.getCount());
+			json.append(", \"totalMillis\": ").append(
+					format(latency.getTotalMillis()));
+			json.append(", \"meanMillis\": ").append(
+					format(latency.getMeanMillis()));
+			json.append(", \"minMillis\": ").append(
+					format(latency.getMinMillis()));
+			json.append(", \"maxMillis\": ").append(
+					format(latency.getMaxMillis()));
+			json.append(", \"p50Millis\": ").append(
+					format(latency.getPercentileMillis(50)));
+			json.append(", \"p95Millis\": ").append(
+					format(latency.getPercentileMillis(95)));
+			json.append(", \"p99Millis\": ").append(
+					format(latency.getPercentileMillis(99)));
+			json.append(", \"buckets\": {");
+			long[] counts = latency.getBucketCounts();
+			for (int i = 0; i < counts.length; i++) {
+				json.append(i == 0 ? "" : ", ")
+						.append(i < BUCKETS.length ? "\"" + BUCKETS[i] + "\""
+								: "\"+Inf\"").append(": ").append(counts[i]);
+			}
+			json.append("}}");
+			separator = ",\n";
+		}
+		json.append(latencies.isEmpty() ? "}" : "\n  }");
+	}
+
+	private static void appendCsv(final StringBuilder csv, final String type,
+			final Map<String, Latency> latencies) {
+		for (Entry<String, Latency> entry : latencies.entrySet()) {
+			Latency latency = entry.getValue();
+			csv.append(type).append(',').append(csvValue(entry.getKey()))
+					.append(',').append(latency.getCount()).append(',')
+					.append(format(latency.getTotalMillis())).append(',')
+					.append(format(latency.getMeanMillis())).append(',')
+					.append(format(latency.getMinMillis())).append(',')
+					.append(format(latency.getMaxMillis())).append(',')
+					.append(format(latency.getPercentileMillis(50)))
+					.append(',')
+					.append(format(latency.getPercentileMillis(95)))
+					.append(',')
+					.append(format(latency.getPercentileMillis(99)))
+					.append('\n');
+		}
+	}
+
+	private static String format(final double millis) {
+		return String.format(Locale.US, "%.3f", millis);
+	}
+
+	private static String quote(final String value) {
+		StringBuilder quoted = new StringBuilder("\"");
+		for (char c : value.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			} else if (c < ' ') {
+				quoted.append(String.format("\\u%04x", (int) c));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	private static String csvValue(final String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+				&& value.indexOf('\n') < 0) {
+			return value;
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	/**
+	 * A latency histogram. The buckets have fixed bounds, from 1 millisecond
+	 * to 10 seconds, so percentiles are approximated by the upper bound of
+	 * the bucket they fall in.
+	 */
+	public static final class Latency {
+
+		private final long[] buckets = new long[BUCKETS.length + 1];
+		private long count;
+		private long totalNanos;
+		private long minNanos = Long.MAX_VALUE;
+		private long maxNanos;
+
+		Latency() {
+			// created by DriverMetrics
+		}
+
+		/**
+		 * Records a duration.
+		 * 
+		 * @param nanos
+		 *            the duration in nanoseconds
+		 */
+		synchronized void add(final long nanos) {
+			count++;
+			totalNanos += nanos;
+			minNanos = Math.min(minNanos, nanos);
+			maxNanos = Math.max(maxNanos, nanos);
+			long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+			int bucket = 0;
+			while (bucket < BUCKETS.length && millis >= BUCKETS[bucket]) {
+				bucket++;
+			}
+			buckets[bucket]++;
+		}
+
+		/**
+		 * Returns the number of recorded commands.
+		 * 
+		 * @return the count
+		 */
+		public synchronized long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns the total time spent in the recorded commands.
+		 * 
+		 * @return the total time in milliseconds
+		 */
+		public synchronized double getTotalMillis() {
+			return totalNanos / 1e6;
+		}
+
+		/**
+		 * Returns the mean duration of the recorded commands.
+		 * 
+		 * @return the mean in milliseconds or 0 if nothing was recorded
+		 */
+		public synchronized double getMeanMillis() {
+			return count == 0 ? 0 : totalNanos / 1e6 / count;
+		}
+
+		/**
+		 * Returns the shortest duration recorded.
+		 * 
+		 * @return the minimum in milliseconds or 0 if nothing was recorded
+		 */
+		public synchronized double getMinMillis() {
+			return count == 0 ? 0 : minNanos / 1e6;
+		}
+
+		/**
+		 * Returns the longest duration recorded.
+		 * 
+		 * @return the maximum in milliseconds
+		 */
+		public synchronized double getMaxMillis() {
+			return maxNanos / 1e6;
+		}
+
+		/**
+		 * Returns an approximation of the supplied percentile: the upper
+		 * bound of the bucket holding it, but never more than the maximum
+		 * duration recorded.
+		 * 
+		 * @param percentile
+		 *            the percentile, between 0 and 100
+		 * @return the percentile in milliseconds or 0 if nothing was recorded
+		 */
+		public synchronized double getPercentileMillis(final double percentile) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(percentile / 100 * count);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS.length; i++) {
+				seen += buckets[i];
+				if (seen >= rank && seen > 0) {
+					return Math.min(BUCKETS[i], getMaxMillis());
+				}
+			}
+			return getMaxMillis();
+		}
+
+		/**
+		 * Returns the number of commands in each bucket. The bucket
+		 * {@code i} holds the commands faster than {@code 1, 2, 5, 10, 25,
+		 * 50, 100, 250, 500, 1000, 2500, 5000, 10000} milliseconds and not
+		 * in a previous bucket; the last bucket holds the slower ones.
+		 * 
+		 * @return a copy of the bucket counts
+		 */
+		public synchronized long[] getBucketCounts() {
+			return buckets.clone();
+		}
+
+		@Override
+		public synchronized String toString() {
+			return "Latency[count=" + count + ", mean="
+					+ format(getMeanMillis()) + " ms, p95="
+					+ format(getPercentileMillis(95)) + " ms, max="
+					+ format(getMaxMillis()) + " ms]";
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package com.insidecoding.sos.webdriver;
+
+import org.openqa.selenium.WebDriver;
+
+/**
+ * A pool of WebDriver instances that can be reused between tests. Drivers are
+ * leased based on the settings of a {@link WebDriverHelper.Builder} and must be
+ * given back to the pool once the test is finished.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public interface DriverPool {
+
+	/**
+	 * Leases a driver matching the settings of the supplied Builder. A new
+	 * driver is created if there is no idle driver available.
+	 * 
+	 * @param builder
+	 *            the Builder holding the driver settings
+	 * @return a WebDriver instance ready to be used
+	 */
+	WebDriver acquire(WebDriverHelper.Builder builder);
+
+	/**
+	 * Gives the driver back to the pool so that it can be reused by other
+	 * tests.
+	 * 
+	 * @param driver
+	 *            a driver previously returned by
+	 *            {@link #acquire(WebDriverHelper.Builder)}
+	 */
+	void release(WebDriver driver);
+
+	/**
+	 * Removes the driver from the pool and quits it.
+	 * 
+	 * @param driver
+	 *            a driver previously returned by
+	 *            {@link #acquire(WebDriverHelper.Builder)}
+	 */
+	void invalidate(WebDriver driver);
+
+	/**
+	 * Quits all the drivers held by the pool.
+	 */
+	void shutdown();
+}
@@ -0,0 +1,301 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.WebDriver;
+
+/**
+ * Creates WebDriver instances in background threads so that the browser
+ * startup overlaps with the test class loading and fixture setup. Drivers are
+ * handed out through {@link #take(String)}, which blocks only if the driver is
+ * still starting. <br/>
+ * The service records the time needed to get the first driver and how many
+ * times a test had to wait for a driver to be ready.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class DriverWarmUpService {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger
+			.getLogger(DriverWarmUpService.class);
+
+	/**
+	 * Used to number the warm-up threads.
+	 */
+	private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+	/**
+	 * Runs the driver builds.
+	 */
+	private final ExecutorService executor = Executors
+			.newCachedThreadPool(new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					Thread thread = new Thread(r, "sos-driver-warmup-"
+							+ THREAD_COUNT.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/**
+	 * The drivers being created grouped by the Builder key.
+	 */
+	private final Map<String, LinkedList<Future<WebDriver>>> pending = new HashMap<String, LinkedList<Future<WebDriver>>>();
+
+	/**
+	 * The time when the warm-up started.
+	 */
+	private volatile long startTime;
+
+	/**
+	 * The time when the first driver was ready.
+	 */
+	private final AtomicLong firstDriverTime = new AtomicLong();
+
+	/**
+	 * The number of drivers that were ready when requested.
+	 */
+	private final AtomicInteger readyHits = new AtomicInteger();
+
+	/**
+	 * The number of times a test had to wait for a driver.
+	 */
+	private final AtomicInteger waits = new AtomicInteger();
+
+	/**
+	 * The total time spent waiting for drivers.
+	 */
+	private final AtomicLong waitMillis = new AtomicLong();
+
+	/**
+	 * Set when the service is shut down.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Starts creating {@code count} drivers with the settings of the supplied
+	 * Builder. This method returns immediately.
+	 * 
+	 * @param builder
+	 *            the Builder used to create the drivers
+	 * @param count
+	 *            the number of drivers to create
+	 */
+	public synchronized void start(final WebDriverHelper.Builder builder,
+			final int count) {
+		if (closed) {
+			throw new IllegalStateException("Warm-up service is shut down!");
+		}
+		if (startTime == 0) {
+			startTime = System.currentTimeMillis();
+		}
+		LOG.info("Warming up " + count + " drivers with: " + builder);
+
+		String key = builder.getDriverKey();
+		LinkedList<Future<WebDriver>> futures = pending.get(key);
+		if (futures == null) {
+			futures = new LinkedList<Future<WebDriver>>();
+			pending.put(key, futures);
+		}
+		for (int i = 0; i < count; i++) {
+			futures.add(executor.submit(new Callable<WebDriver>() {
+				@Override
+				public WebDriver call() {
+					return buildDriver(builder);
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Takes a warmed driver for the supplied Builder key. Drivers that are
+	 * already started are returned first; otherwise the method waits for the
+	 * next driver to be ready.
+	 * 
+	 * @param key
+	 *            the key returned by
+	 *            {@link WebDriverHelper.Builder#getDriverKey()}
+	 * @return a WebDriver instance or null if there is no driver being warmed
+	 *         for this key or if the warm-up failed
+	 */
+	public WebDriver take(final String key) {
+		Future<WebDriver> future = nextFuture(key);
+		if (future == null) {
+			return null;
+		}
+
+		boolean ready = future.isDone();
+		long start = System.currentTimeMillis();
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOG.warn("Interrupted while waiting for a warmed driver");
+		} catch (ExecutionException e) {
+			LOG.warn("Driver warm-up failed: " + e.getCause());
+		} finally {
+			if (ready) {
+				readyHits.incrementAndGet();
+			} else {
+				waits.incrementAndGet();
+				waitMillis.addAndGet(System.currentTimeMillis() - start);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Stops the warm-up and quits the drivers that were not taken.
+	 */
+	public void shutdown() {
+		List<Future<WebDriver>> leftovers = new ArrayList<Future<WebDriver>>();
+		synchronized (this) {
+			closed = true;
+			for (List<Future<WebDriver>> futures : pending.values()) {
+				leftovers.addAll(futures);
+			}
+			pending.clear();
+		}
+		executor.shutdown();
+		for (Future<WebDriver> future : leftovers) {
+			if (future.isDone()) {
+				quitQuietly(future);
+			} else {
+				future.cancel(false);
+			}
+		}
+		LOG.info(getReport());
+	}
+
+	/**
+	 * Returns the number of milliseconds between the warm-up start and the
+	 * moment the first driver was ready.
+	 * 
+	 * @return the time to first driver or -1 if no driver was created yet
+	 */
+	public long getTimeToFirstDriver() {
+		long first = firstDriverTime.get();
+		if (first == 0) {
+			return -1;
+		}
+		return first - startTime;
+	}
+
+	/**
+	 * Returns the number of times a driver was ready when requested.
+	 * 
+	 * @return the number of ready hits
+	 */
+	public int getReadyCount() {
+		return readyHits.get();
+	}
+
+	/**
+	 * Returns the number of times a test had to wait for a driver to start.
+	 * 
+	 * @return the number of waits
+	 */
+	public int getWaitCount() {
+		return waits.get();
+	}
+
+	/**
+	 * Returns the total time spent by tests waiting for drivers to start.
+	 * 
+	 * @return the total wait time in milliseconds
+	 */
+	public long getTotalWaitMillis() {
+		return waitMillis.get();
+	}
+
+	/**
+	 * Returns a human readable summary of the warm-up statistics.
+	 * 
+	 * @return the warm-up report
+	 */
+	public String getReport() {
+		return "Driver warm-up: time to first driver=" + getTimeToFirstDriver()
+				+ "ms, ready=" + getReadyCount() + ", waited="
+				+ getWaitCount() + ", total wait=" + getTotalWaitMillis()
+				+ "ms";
+	}
+
+	/**
+	 * Builds a driver and records the time when the first driver is ready.
+	 * 
+	 * @param builder
+	 *            the Builder used to create the driver
+	 * @return the new WebDriver instance
+	 */
+	private WebDriver buildDriver(final WebDriverHelper.Builder builder) {
+		WebDriver driver = builder.buildDriver();
+		if (driver != null) {
+			firstDriverTime.compareAndSet(0, System.currentTimeMillis());
+			if (closed) {
+				driver.quit();
+				return null;
+			}
+		}
+		return driver;
+	}
+
+	/**
+	 * Removes the next future for the supplied key, preferring the drivers
+	 * which are already started.
+	 * 
+	 * @param key
+	 *            the Builder key
+	 * @return a future or null if there is no driver being warmed for the key
+	 */
+	private synchronized Future<WebDriver> nextFuture(final String key) {
+		LinkedList<Future<WebDriver>> futures = pending.get(key);
+		if (futures == null || futures.isEmpty()) {
+			return null;
+		}
+		Iterator<Future<WebDriver>> it = futures.iterator();
+		while (it.hasNext()) {
+			Future<WebDriver> future = it.next();
+			if (future.isDone()) {
+				it.remove();
+				return future;
+			}
+		}
+		return futures.removeFirst();
+	}
+
+	/**
+	 * Quits the driver held by a completed future ignoring any error.
+	 * 
+	 * @param future
+	 *            a completed future
+	 */
+	private void quitQuietly(final Future<WebDriver> future) {
+		try {
+			WebDriver driver = future.get();
+			if (driver != null) {
+				driver.quit();
+			}
+		} catch (Exception e) {
+			LOG.debug("Unable to quit warmed driver: " + e.getMessage());
+		}
+	}
+}
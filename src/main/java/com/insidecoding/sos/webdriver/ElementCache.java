@@ -0,0 +1,230 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.By;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebElement;
+
+import com.google.common.base.Function;
+
+/**
+ * Caches the elements found by {@link WebDriverHelper} so that repeated calls
+ * using the same {@link By} do not search the page again. The cache is
+ * disabled by default. <br/>
+ * Elements are cached per search context (the driver or a parent element).
+ * The cache is cleared when the helper navigates, refreshes the page or
+ * switches windows. If a cached element became stale it is searched again
+ * and the operation is retried once.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class ElementCache {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger.getLogger(ElementCache.class);
+
+	/**
+	 * The cached elements.
+	 */
+	private final Map<Key, WebElement> elements = new HashMap<Key, WebElement>();
+
+	/**
+	 * Is the cache enabled.
+	 */
+	private boolean enabled;
+
+	/**
+	 * The number of lookups served from the cache.
+	 */
+	private long hits;
+
+	/**
+	 * The number of lookups which searched the page.
+	 */
+	private long misses;
+
+	/**
+	 * The number of cached elements found stale.
+	 */
+	private long stale;
+
+	/**
+	 * Enables or disables the cache. Disabling the cache also clears it.
+	 * 
+	 * @param on
+	 *            true to enable the cache
+	 */
+	public synchronized void setEnabled(final boolean on) {
+		this.enabled = on;
+		if (!on) {
+			elements.clear();
+		}
+	}
+
+	/**
+	 * Checks if the cache is enabled.
+	 * 
+	 * @return true if the cache is enabled or false otherwise
+	 */
+	public synchronized boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Removes all the cached elements.
+	 */
+	public synchronized void invalidate() {
+		if (!elements.isEmpty()) {
+			LOG.debug("Clearing " + elements.size() + " cached elements");
+			elements.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of lookups served from the cache. Each hit is a
+	 * WebDriver round-trip saved.
+	 * 
+	 * @return the number of hits
+	 */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups which had to search the page.
+	 * 
+	 * @return the number of misses
+	 */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of cached elements which were found stale and had to
+	 * be searched again.
+	 * 
+	 * @return the number of stale elements
+	 */
+	public synchronized long getStaleCount() {
+		return stale;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ElementCache [enabled=" + enabled + ", size="
+				+ elements.size() + ", hits=" + hits + ", misses=" + misses
+				+ ", stale=" + stale + "]";
+	}
+
+	/**
+	 * Finds the element and applies the supplied function to it. If the
+	 * element was taken from the cache and is stale, it is searched again and
+	 * the function is applied once more.
+	 * 
+	 * @param context
+	 *            the driver or the parent element
+	 * @param by
+	 *            the method of identifying the element
+	 * @param function
+	 *            the operation to perform on the element
+	 * @param <T>
+	 *            the type of the result
+	 * @return the result of the function
+	 */
+	<T> T apply(final SearchContext context, final By by,
+			final Function<WebElement, T> function) {
+		if (!isEnabled()) {
+			return function.apply(context.findElement(by));
+		}
+
+		Key key = new Key(context, by);
+		WebElement cached = get(key);
+		if (cached != null) {
+			try {
+				return function.apply(cached);
+			} catch (StaleElementReferenceException e) {
+				LOG.debug("Cached element is stale: " + by);
+				markStale(key);
+			}
+		}
+		WebElement element = context.findElement(by);
+		put(key, element);
+		return function.apply(element);
+	}
+
+	/**
+	 * Returns the cached element and updates the counters.
+	 * 
+	 * @param key
+	 *            the cache key
+	 * @return the cached element or null
+	 */
+	private synchronized WebElement get(final Key key) {
+		WebElement element = elements.get(key);
+		if (element == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return element;
+	}
+
+	/**
+	 * Caches an element if the cache is still enabled.
+	 * 
+	 * @param key
+	 *            the cache key
+	 * @param element
+	 *            the element
+	 */
+	private synchronized void put(final Key key, final WebElement element) {
+		if (enabled) {
+			elements.put(key, element);
+		}
+	}
+
+	/**
+	 * Removes a stale element.
+	 * 
+	 * @param key
+	 *            the cache key
+	 */
+	private synchronized void markStale(final Key key) {
+		stale++;
+		elements.remove(key);
+	}
+
+	/**
+	 * The cache key made of the search context and the By.
+	 */
+	private static final class Key {
+		private final SearchContext context;
+		private final By by;
+
+		Key(final SearchContext c, final By b) {
+			this.context = c;
+			this.by = b;
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * context.hashCode() + by.hashCode();
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return context.equals(other.context) && by.equals(other.by);
+		}
+	}
+}
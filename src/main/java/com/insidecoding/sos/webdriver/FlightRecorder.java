@@ -0,0 +1,313 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+/**
+ * Keeps the screenshots, URLs and titles of the last steps of a test, so that
+ * a failure can be investigated from the step which actually went wrong. The
+ * helper records a frame after each action changing the page; tests can add
+ * their own steps with {@link WebDriverHelper#recordStep(String)}. <br/>
+ * Frames are kept in memory only: the oldest frame is dropped when the
+ * recorder is full, and nothing is written to disk unless the test fails.
+ * The screenshots of all the recorders share a {@link Budget}, so the memory
+ * used stays bounded when many tests run in parallel; when the budget is
+ * exhausted the oldest screenshots of the recorder are dropped first, then
+ * the new frame is kept without its screenshot.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class FlightRecorder {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger.getLogger(FlightRecorder.class);
+
+	private final int capacity;
+	private final Budget budget;
+	private final Deque<Frame> frames = new ArrayDeque<Frame>();
+
+	/**
+	 * The number of screenshots dropped to stay within the budget.
+	 */
+	private int dropped;
+
+	/**
+	 * Creates a new FlightRecorder.
+	 * 
+	 * @param maxFrames
+	 *            the number of steps to keep
+	 * @param memoryBudget
+	 *            the memory shared by the screenshots of all the recorders
+	 */
+	public FlightRecorder(final int maxFrames, final Budget memoryBudget) {
+		if (maxFrames <= 0) {
+			throw new IllegalArgumentException(
+					"The recorder must keep at least one frame!");
+		}
+		this.capacity = maxFrames;
+		this.budget = memoryBudget;
+	}
+
+	/**
+	 * Records the current state of the page.
+	 * 
+	 * @param driver
+	 *            the driver
+	 * @param action
+	 *            the action which was just performed
+	 */
+	void record(final WebDriver driver, final String action) {
+		String url = null;
+		String title = null;
+		byte[] screenshot = null;
+		try {
+			url = driver.getCurrentUrl();
+			title = driver.getTitle();
+			TakesScreenshot camera = Screenshots.cameraFor(driver);
+			if (camera != null) {
+				screenshot = camera.getScreenshotAs(OutputType.BYTES);
+			}
+		} catch (WebDriverException e) {
+			LOG.debug("Unable to record step " + action + ": "
+					+ e.getMessage());
+		}
+		add(new Frame(action, url, title, System.currentTimeMillis(),
+				screenshot));
+	}
+
+	/**
+	 * Adds a frame, evicting the oldest frames or screenshots if needed.
+	 * 
+	 * @param frame
+	 *            the new frame
+	 */
+	synchronized void add(final Frame frame) {
+		if (frames.size() == capacity) {
+			release(frames.removeFirst());
+		}
+		if (frame.screenshot != null) {
+			long size = frame.screenshot.length;
+			boolean reserved = budget.reserve(size);
+			while (!reserved && dropOldestScreenshot()) {
+				reserved = budget.reserve(size);
+			}
+			if (!reserved) {
+				frame.screenshot = null;
+				dropped++;
+			}
+		}
+		frames.addLast(frame);
+	}
+
+	/**
+	 * Returns the recorded frames, oldest first.
+	 * 
+	 * @return a copy of the frames
+	 */
+	public synchronized List<Frame> getFrames() {
+		return new ArrayList<Frame>(frames);
+	}
+
+	/**
+	 * Returns the number of screenshots dropped to stay within the memory
+	 * budget.
+	 * 
+	 * @return the number of dropped screenshots
+	 */
+	public synchronized int getDroppedCount() {
+		return dropped;
+	}
+
+	/**
+	 * Discards all the frames and gives their memory back to the budget.
+	 */
+	public synchronized void clear() {
+		while (!frames.isEmpty()) {
+			release(frames.removeFirst());
+		}
+	}
+
+	/**
+	 * Formats the recorded steps, one line per frame.
+	 * 
+	 * @return the step log
+	 */
+	public synchronized String getStepLog() {
+		StringBuilder log = new StringBuilder();
+		int index = 1;
+		for (Frame frame : frames) {
+			log.append(index++).append('\t').append(new Date(frame.time))
+					.append('\t').append(frame.action).append('\t')
+					.append(frame.url).append('\t').append(frame.title)
+					.append(frame.screenshot == null ? "\t(no screenshot)" : "")
+					.append('\n');
+		}
+		return log.toString();
+	}
+
+	private boolean dropOldestScreenshot() {
+		for (Frame frame : frames) {
+			if (frame.screenshot != null) {
+				release(frame);
+				dropped++;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void release(final Frame frame) {
+		if (frame.screenshot != null) {
+			budget.release(frame.screenshot.length);
+			frame.screenshot = null;
+		}
+	}
+
+	/**
+	 * The state of the page after a step.
+	 */
+	public static final class Frame {
+
+		private final String action;
+		private final String url;
+		private final String title;
+		private final long time;
+		private volatile byte[] screenshot;
+
+		Frame(final String frameAction, final String frameUrl,
+				final String frameTitle, final long frameTime,
+				final byte[] png) {
+			this.action = frameAction;
+			this.url = frameUrl;
+			this.title = frameTitle;
+			this.time = frameTime;
+			this.screenshot = png;
+		}
+
+		/**
+		 * Returns the action performed before the frame was recorded.
+		 * 
+		 * @return the action
+		 */
+		public String getAction() {
+			return action;
+		}
+
+		/**
+		 * Returns the URL of the page.
+		 * 
+		 * @return the URL or null if it could not be read
+		 */
+		public String getUrl() {
+			return url;
+		}
+
+		/**
+		 * Returns the title of the page.
+		 * 
+		 * @return the title or null if it could not be read
+		 */
+		public String getTitle() {
+			return title;
+		}
+
+		/**
+		 * Returns the time when the frame was recorded.
+		 * 
+		 * @return the time in milliseconds
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * Returns the screenshot of the page.
+		 * 
+		 * @return the PNG bytes or null if the driver cannot take screenshots
+		 *         or the screenshot was dropped to save memory
+		 */
+		public byte[] getScreenshot() {
+			return screenshot;
+		}
+	}
+
+	/**
+	 * The memory available to the screenshots of a group of recorders.
+	 */
+	public static final class Budget {
+
+		private final long maxBytes;
+		private final AtomicLong used = new AtomicLong();
+
+		/**
+		 * Creates a new Budget.
+		 * 
+		 * @param bytes
+		 *            the maximum number of bytes used by the screenshots
+		 */
+		public Budget(final long bytes) {
+			this.maxBytes = bytes;
+		}
+
+		/**
+		 * Reserves memory for a screenshot.
+		 * 
+		 * @param bytes
+		 *            the size of the screenshot
+		 * @return true if the memory was reserved or false if the budget is
+		 *         exhausted
+		 */
+		boolean reserve(final long bytes) {
+			while (true) {
+				long current = used.get();
+				if (current + bytes > maxBytes) {
+					return false;
+				}
+				if (used.compareAndSet(current, current + bytes)) {
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * Gives memory back.
+		 * 
+		 * @param bytes
+		 *            the size of the released screenshot
+		 */
+		void release(final long bytes) {
+			used.addAndGet(-bytes);
+		}
+
+		/**
+		 * Returns the memory used by the screenshots.
+		 * 
+		 * @return the used bytes
+		 */
+		public long getUsedBytes() {
+			return used.get();
+		}
+
+		/**
+		 * Returns the memory available to the screenshots.
+		 * 
+		 * @return the maximum number of bytes
+		 */
+		public long getMaxBytes() {
+			return maxBytes;
+		}
+	}
+}
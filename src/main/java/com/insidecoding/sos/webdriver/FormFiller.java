@@ -0,0 +1,197 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.support.ui.Select;
+
+/**
+ * Fills form fields with a single script call instead of typing every value
+ * with {@code sendKeys}. The script sets the values directly and fires the
+ * {@code input}, {@code change} and {@code blur} events so that the page
+ * scripts still react to the new values. <br/>
+ * The fields which must receive real keystrokes, the fields whose locator
+ * cannot be evaluated by the page and all the fields when the driver cannot
+ * execute JavaScript are filled through the WebDriver API.
+ * 
+ * @author ludovicianul
+ * 
+ */
+final class FormFiller {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger.getLogger(FormFiller.class);
+
+	/**
+	 * The values that check a checkbox.
+	 */
+	private static final Set<String> CHECKED = new HashSet<String>(
+			Arrays.asList("true", "on", "checked", "yes"));
+
+	private final WebDriver driver;
+	private final ScriptRunner scripts;
+
+	/**
+	 * Creates a new FormFiller.
+	 * 
+	 * @param d
+	 *            the WebDriver instance
+	 * @param runner
+	 *            the ScriptRunner of the driver
+	 */
+	FormFiller(final WebDriver d, final ScriptRunner runner) {
+		this.driver = d;
+		this.scripts = runner;
+	}
+
+	/**
+	 * Fills the supplied fields. The fields filled by the script are filled
+	 * first, followed by the other fields in the iteration order of the map.
+	 * 
+	 * @param values
+	 *            the value of each field
+	 * @param typed
+	 *            the fields that must receive real keystrokes
+	 * @throws NoSuchElementException
+	 *             if one of the fields cannot be found
+	 */
+	void fill(final Map<By, String> values, final Collection<By> typed) {
+		List<By> scripted = new ArrayList<By>();
+		List<List<String>> scriptFields = new ArrayList<List<String>>();
+		for (Entry<By, String> entry : values.entrySet()) {
+			String[] locator = typed.contains(entry.getKey()) ? null
+					: PageCondition.toScriptLocator(entry.getKey());
+			if (locator != null) {
+				scripted.add(entry.getKey());
+				scriptFields.add(Arrays.asList(locator[0], locator[1],
+						valueOf(entry)));
+			}
+		}
+
+		Set<By> filled = new HashSet<By>();
+		List<?> results = fillWithScript(scriptFields);
+		if (results != null) {
+			for (int i = 0; i < scripted.size(); i++) {
+				if (Boolean.TRUE.equals(results.get(i))) {
+					filled.add(scripted.get(i));
+				}
+			}
+		}
+		LOG.debug("Filled " + filled.size() + " of " + values.size()
+				+ " fields with one script call");
+
+		for (Entry<By, String> entry : values.entrySet()) {
+			if (!filled.contains(entry.getKey())) {
+				fillWithDriver(entry.getKey(), valueOf(entry));
+			}
+		}
+	}
+
+	/**
+	 * Fills the fields with the form script.
+	 * 
+	 * @param fields
+	 *            the fields to fill
+	 * @return the outcome for each field or null if the script cannot be run
+	 */
+	private List<?> fillWithScript(final List<List<String>> fields) {
+		if (fields.isEmpty() || !scripts.isAvailable()) {
+			return null;
+		}
+		try {
+			return (List<?>) scripts.run("form", fields);
+		} catch (UnsupportedOperationException e) {
+			return null;
+		} catch (WebDriverException e) {
+			LOG.debug("Form script failed, falling back to WebDriver calls: "
+					+ e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Fills a single field through the WebDriver API.
+	 * 
+	 * @param by
+	 *            the method of identifying the field
+	 * @param value
+	 *            the value of the field
+	 */
+	private void fillWithDriver(final By by, final String value) {
+		WebElement element = driver.findElement(by);
+		String type = String.valueOf(element.getAttribute("type"))
+				.toLowerCase();
+		if ("select".equalsIgnoreCase(element.getTagName())) {
+			Select select = new Select(element);
+			try {
+				select.selectByValue(value);
+			} catch (NoSuchElementException e) {
+				select.selectByVisibleText(value);
+			}
+		} else if ("checkbox".equals(type)) {
+			if (element.isSelected() != isChecked(value)) {
+				element.click();
+			}
+		} else if ("radio".equals(type)) {
+			selectRadio(element.getAttribute("name"), value);
+		} else {
+			element.clear();
+			element.sendKeys(value);
+		}
+	}
+
+	/**
+	 * Clicks the radio button having the supplied value, ignoring the case.
+	 * 
+	 * @param name
+	 *            the name of the radio button group
+	 * @param value
+	 *            the value of the radio button
+	 */
+	private void selectRadio(final String name, final String value) {
+		for (WebElement radio : driver.findElements(By.name(name))) {
+			if (value.equalsIgnoreCase(radio.getAttribute("value"))) {
+				radio.click();
+				return;
+			}
+		}
+		throw new NoSuchElementException("Cannot locate radio button " + name
+				+ " with value: " + value);
+	}
+
+	/**
+	 * Returns the value of a field, treating null as an empty value.
+	 * 
+	 * @param entry
+	 *            the field and its value
+	 * @return the value of the field
+	 */
+	private static String valueOf(final Entry<By, String> entry) {
+		return entry.getValue() == null ? "" : entry.getValue();
+	}
+
+	/**
+	 * Checks if the value checks a checkbox.
+	 * 
+	 * @param value
+	 *            the value of the field
+	 * @return true for "true", "on", "checked" and "yes", ignoring the case
+	 */
+	private static boolean isChecked(final String value) {
+		return value != null && CHECKED.contains(value.toLowerCase());
+	}
+}
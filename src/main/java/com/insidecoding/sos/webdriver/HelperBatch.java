@@ -0,0 +1,487 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.By;
+import org.openqa.selenium.Cookie;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+
+/**
+ * Records several reads and verifications and executes them together. All the
+ * element steps are evaluated by a single script call and all the cookie steps
+ * by a single {@code getCookies()} call, instead of one or two WebDriver round
+ * trips per step. <br/>
+ * Steps using locators that cannot be evaluated by a script, or all the steps
+ * if the driver cannot execute JavaScript, are evaluated through the WebDriver
+ * API. A batch can be executed several times.
+ * 
+ * <pre>
+ * BatchResult result = helper.batch().verifyText(By.id(&quot;title&quot;), &quot;Home&quot;)
+ * 		.verifyChecked(By.id(&quot;remember&quot;)).readAttribute(By.id(&quot;user&quot;), &quot;value&quot;)
+ * 		.execute();
+ * result.assertPassed();
+ * </pre>
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class HelperBatch {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger.getLogger(HelperBatch.class);
+
+	/**
+	 * The operations supported by the batch script.
+	 */
+	private static final String TEXT = "text";
+	private static final String ATTRIBUTE = "attribute";
+	private static final String CHECKED = "checked";
+	private static final String PRESENT = "present";
+	private static final String COOKIE = "cookie";
+
+	/**
+	 * How the value read by a step is checked.
+	 */
+	private enum Check {
+		NONE, EQUALS, FOUND, NOT_FOUND
+	}
+
+	private final WebDriver driver;
+	private final ScriptRunner scripts;
+	private final ImplicitWait implicitWait;
+
+	/**
+	 * The recorded steps.
+	 */
+	private final List<Step> steps = new ArrayList<Step>();
+
+	/**
+	 * Creates a new HelperBatch.
+	 * 
+	 * @param d
+	 *            the WebDriver instance
+	 * @param runner
+	 *            the ScriptRunner of the driver
+	 * @param wait
+	 *            the implicit wait of the driver
+	 */
+	HelperBatch(final WebDriver d, final ScriptRunner runner,
+			final ImplicitWait wait) {
+		this.driver = d;
+		this.scripts = runner;
+		this.implicitWait = wait;
+	}
+
+	/**
+	 * Reads the visible text of the element.
+	 * 
+	 * @param by
+	 *            the method of identifying the element
+	 * @return this batch
+	 */
+	public HelperBatch readText(final By by) {
+		return add(new Step(TEXT, by, null, Check.NONE, null));
+	}
+
+	/**
+	 * Reads the value of an attribute of the element.
+	 * 
+	 * @param by
+	 *            the method of identifying the element
+	 * @param attribute
+	 *            the name of the attribute
+	 * @return this batch
+	 */
+	public HelperBatch readAttribute(final By by, final String attribute) {
+		return add(new Step(ATTRIBUTE, by, attribute, Check.NONE, null));
+	}
+
+	/**
+	 * Reads the checked state of a checkbox, radio button or option. The
+	 * value read is "true" or "false".
+	 * 
+	 * @param by
+	 *            the method of identifying the element
+	 * @return this batch
+	 */
+	public HelperBatch readChecked(final By by) {
+		return add(new Step(CHECKED, by, null, Check.NONE, null));
+	}
+
+	/**
+	 * Checks if the element is present. The value read is "true" or "false".
+	 * 
+	 * @param by
+	 *            the method of identifying the element
+	 * @return this batch
+	 */
+	public HelperBatch readPresent(final By by) {
+		return add(new Step(PRESENT, by, null, Check.NONE, null));
+	}
+
+	/**
+	 * Reads the value of a cookie.
+	 * 
+	 * @param name
+	 *            the name of the cookie
+	 * @return this batch
+	 */
+	public HelperBatch readCookie(final String name) {
+		return add(new Step(COOKIE, null, name, Check.NONE, null));
+	}
+
+	/**
+	 * Verifies that the visible text of the element is the supplied one.
+	 * 
+	 * @param by
+	 *            the method of identifying the element
+	 * @param text
+	 *            the expected text
+	 * @return this batch
+	 */
+	public HelperBatch verifyText(final By by, final String text) {
+		return add(new Step(TEXT, by, null, Check.EQUALS, text));
+	}
+
+	/**
+	 * Verifies that an attribute of the element has the supplied value.
+	 * 
+	 * @param by
+	 *            the method of identifying the element
+	 * @param attribute
+	 *            the name of the attribute
+	 * @param value
+	 *            the expected value
+	 * @return this batch
+	 */
+	public HelperBatch verifyAttribute(final By by, final String attribute,
+			final String value) {
+		return add(new Step(ATTRIBUTE, by, attribute, Check.EQUALS, value));
+	}
+
+	/**
+	 * Verifies that the checkbox, radio button or option is checked.
+	 * 
+	 * @param by
+	 *            the method of identifying the element
+	 * @return this batch
+	 */
+	public HelperBatch verifyChecked(final By by) {
+		return add(new Step(CHECKED, by, null, Check.EQUALS, "true"));
+	}
+
+	/**
+	 * Verifies that the element is present.
+	 * 
+	 * @param by
+	 *            the method of identifying the element
+	 * @return this batch
+	 */
+	public HelperBatch verifyPresent(final By by) {
+		return add(new Step(PRESENT, by, null, Check.FOUND, null));
+	}
+
+	/**
+	 * Verifies that the element is not present.
+	 * 
+	 * @param by
+	 *            the method of identifying the element
+	 * @return this batch
+	 */
+	public HelperBatch verifyAbsent(final By by) {
+		return add(new Step(PRESENT, by, null, Check.NOT_FOUND, null));
+	}
+
+	/**
+	 * Verifies that the cookie has the supplied value.
+	 * 
+	 * @param name
+	 *            the name of the cookie
+	 * @param value
+	 *            the expected value
+	 * @return this batch
+	 */
+	public HelperBatch verifyCookie(final String name, final String value) {
+		return add(new Step(COOKIE, null, name, Check.EQUALS, value));
+	}
+
+	/**
+	 * Verifies that the cookie is set.
+	 * 
+	 * @param name
+	 *            the name of the cookie
+	 * @return this batch
+	 */
+	public HelperBatch verifyCookiePresent(final String name) {
+		return add(new Step(COOKIE, null, name, Check.FOUND, null));
+	}
+
+	/**
+	 * Returns the number of recorded steps.
+	 * 
+	 * @return the number of steps
+	 */
+	public int size() {
+		return steps.size();
+	}
+
+	/**
+	 * Executes all the recorded steps. The verifications do not throw
+	 * exceptions; use {@link BatchResult#assertPassed()} to fail the test.
+	 * 
+	 * @return the outcome of every step, in the order they were recorded
+	 */
+	public BatchResult execute() {
+		Read[] reads = new Read[steps.size()];
+		readCookies(reads);
+		readWithScript(reads);
+		implicitWait.suspend();
+		try {
+			for (int i = 0; i < reads.length; i++) {
+				if (reads[i] == null) {
+					reads[i] = readWithDriver(steps.get(i));
+				}
+			}
+		} finally {
+			implicitWait.restore();
+		}
+
+		List<BatchResult.Item> items = new ArrayList<BatchResult.Item>();
+		for (int i = 0; i < reads.length; i++) {
+			items.add(steps.get(i).evaluate(reads[i]));
+		}
+		return new BatchResult(items);
+	}
+
+	/**
+	 * Reads all the cookie steps with a single call.
+	 * 
+	 * @param reads
+	 *            receives the values read
+	 */
+	private void readCookies(final Read[] reads) {
+		Map<String, String> cookies = null;
+		for (int i = 0; i < reads.length; i++) {
+			Step step = steps.get(i);
+			if (COOKIE.equals(step.operation)) {
+				if (cookies == null) {
+					cookies = getCookies();
+				}
+				reads[i] = new Read(cookies.containsKey(step.argument),
+						cookies.get(step.argument));
+			}
+		}
+	}
+
+	/**
+	 * Returns the cookies of the current domain indexed by name.
+	 * 
+	 * @return the cookie values
+	 */
+	private Map<String, String> getCookies() {
+		Set<Cookie> all = driver.manage().getCookies();
+		Map<String, String> cookies = new HashMap<String, String>();
+		for (Cookie cookie : all) {
+			cookies.put(cookie.getName(), cookie.getValue());
+		}
+		return cookies;
+	}
+
+	/**
+	 * Reads all the element steps that can be evaluated by a script with a
+	 * single script call. The steps which cannot be evaluated by the page are
+	 * left null.
+	 * 
+	 * @param reads
+	 *            receives the values read
+	 */
+	private void readWithScript(final Read[] reads) {
+		List<Integer> indexes = new ArrayList<Integer>();
+		List<List<String>> scriptSteps = new ArrayList<List<String>>();
+		for (int i = 0; i < reads.length; i++) {
+			Step step = steps.get(i);
+			if (reads[i] == null && step.script != null) {
+				indexes.add(i);
+				scriptSteps.add(step.script);
+			}
+		}
+		if (indexes.isEmpty() || !scripts.isAvailable()) {
+			return;
+		}
+
+		List<?> results;
+		try {
+			results = (List<?>) scripts.run("batch", scriptSteps);
+		} catch (UnsupportedOperationException e) {
+			return;
+		} catch (WebDriverException e) {
+			LOG.debug("Batch script failed, falling back to WebDriver calls: "
+					+ e.getMessage());
+			return;
+		}
+		for (int i = 0; i < indexes.size(); i++) {
+			List<?> result = (List<?>) results.get(i);
+			if (result == null) {
+				/**
+				 * the page cannot evaluate this locator
+				 */
+				continue;
+			}
+			boolean found = Boolean.TRUE.equals(result.get(0));
+			Object value = result.get(1);
+			reads[indexes.get(i)] = new Read(found, value == null ? null
+					: String.valueOf(value));
+		}
+	}
+
+	/**
+	 * Reads a single element step through the WebDriver API.
+	 * 
+	 * @param step
+	 *            the step to read
+	 * @return the value read
+	 */
+	private Read readWithDriver(final Step step) {
+		List<WebElement> found;
+		try {
+			found = driver.findElements(step.by);
+		} catch (WebDriverException e) {
+			LOG.debug("Unable to find " + step.by + ": " + e.getMessage());
+			return new Read(false, null);
+		}
+		if (found.isEmpty()) {
+			return new Read(false, null);
+		}
+		WebElement element = found.get(0);
+		try {
+			if (TEXT.equals(step.operation)) {
+				return new Read(true, element.getText());
+			} else if (ATTRIBUTE.equals(step.operation)) {
+				return new Read(true, element.getAttribute(step.argument));
+			} else if (CHECKED.equals(step.operation)) {
+				return new Read(true, String.valueOf(element.isSelected()));
+			}
+			return new Read(true, null);
+		} catch (StaleElementReferenceException e) {
+			return readWithDriver(step);
+		}
+	}
+
+	/**
+	 * Records a step.
+	 * 
+	 * @param step
+	 *            the step
+	 * @return this batch
+	 */
+	private HelperBatch add(final Step step) {
+		steps.add(step);
+		return this;
+	}
+
+	/**
+	 * The raw value read for a step.
+	 */
+	private static final class Read {
+		private final boolean found;
+		private final String value;
+
+		Read(final boolean found, final String value) {
+			this.found = found;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * A recorded read or verification.
+	 */
+	private static final class Step {
+		private final String operation;
+		private final By by;
+		private final String argument;
+		private final Check check;
+		private final String expected;
+
+		/**
+		 * The step as passed to the batch script or null if the locator
+		 * cannot be evaluated by a script.
+		 */
+		private final List<String> script;
+
+		Step(final String operation, final By by, final String argument,
+				final Check check, final String expected) {
+			this.operation = operation;
+			this.by = by;
+			this.argument = argument;
+			this.check = check;
+			this.expected = expected;
+
+			String[] locator = by == null ? null : PageCondition
+					.toScriptLocator(by);
+			if (locator == null) {
+				this.script = null;
+			} else {
+				List<String> values = new ArrayList<String>();
+				values.add(operation);
+				values.add(locator[0]);
+				values.add(locator[1]);
+				values.add(argument == null ? "" : argument);
+				this.script = values;
+			}
+		}
+
+		/**
+		 * Checks the value read against the expectation of the step.
+		 * 
+		 * @param read
+		 *            the value read
+		 * @return the outcome of the step
+		 */
+		BatchResult.Item evaluate(final Read read) {
+			String value = read.value;
+			if (PRESENT.equals(operation)) {
+				value = String.valueOf(read.found);
+			}
+			switch (check) {
+			case EQUALS:
+				return new BatchResult.Item(describe(), "<" + expected + ">",
+						value, read.found
+								&& (expected == null ? value == null
+										: expected.equals(value)));
+			case FOUND:
+				return new BatchResult.Item(describe(), "present", value,
+						read.found);
+			case NOT_FOUND:
+				return new BatchResult.Item(describe(), "absent", value,
+						!read.found);
+			default:
+				return new BatchResult.Item(describe(), null, value, true);
+			}
+		}
+
+		/**
+		 * Describes the step.
+		 * 
+		 * @return the description
+		 */
+		private String describe() {
+			if (COOKIE.equals(operation)) {
+				return "cookie " + argument;
+			}
+			if (ATTRIBUTE.equals(operation)) {
+				return "attribute " + argument + " of " + by;
+			}
+			return operation + " of " + by;
+		}
+	}
+}
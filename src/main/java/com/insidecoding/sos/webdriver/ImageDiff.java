@@ -0,0 +1,479 @@
+package com.insidecoding.sos.webdriver;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares screenshots against baseline images. The images are split in
+ * square tiles which are compared in parallel; tiles with identical raster
+ * data are skipped after a single array comparison, so only the tiles which
+ * actually changed are compared pixel by pixel. <br/>
+ * Two pixels match when none of their red, green and blue channels differ by
+ * more than the pixel tolerance. The images match when the ratio of
+ * different pixels does not exceed the allowed difference. Regions like
+ * clocks or ads can be excluded with {@link #ignore(Rectangle)}.
+ * 
+ * <pre>
+ * ImageDiff diff = new ImageDiff();
+ * diff.setPixelTolerance(8);
+ * diff.ignore(new Rectangle(0, 0, 200, 40));
+ * ImageDiffResult result = diff.compare(baseline, screenshot);
+ * if (!result.isMatch()) {
+ * 	result.writeDiffImage(new File(&quot;target/home-diff.png&quot;));
+ * }
+ * </pre>
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class ImageDiff {
+
+	/**
+	 * The default size of the tiles in pixels.
+	 */
+	public static final int DEFAULT_TILE_SIZE = 256;
+
+	/**
+	 * The pool shared by the instances created without an executor.
+	 */
+	private static ExecutorService sharedExecutor;
+
+	private final ExecutorService executor;
+	private final List<Rectangle> ignored = new ArrayList<Rectangle>();
+	private int tileSize = DEFAULT_TILE_SIZE;
+	private int pixelTolerance;
+	private double maxDifference;
+
+	/**
+	 * Creates a new ImageDiff which compares the tiles on a pool shared with
+	 * the other instances, with one thread per processor.
+	 */
+	public ImageDiff() {
+		this(getSharedExecutor());
+	}
+
+	/**
+	 * Creates a new ImageDiff which compares the tiles on the supplied
+	 * executor.
+	 * 
+	 * @param tileExecutor
+	 *            the executor running the tile comparisons
+	 */
+	public ImageDiff(final ExecutorService tileExecutor) {
+		this.executor = tileExecutor;
+	}
+
+	/**
+	 * Sets the size of the tiles.
+	 * 
+	 * @param size
+	 *            the width and height of the tiles in pixels
+	 */
+	public void setTileSize(final int size) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("Invalid tile size: " + size);
+		}
+		this.tileSize = size;
+	}
+
+	/**
+	 * Sets the maximum difference between the channels of matching pixels.
+	 * 
+	 * @param tolerance
+	 *            the tolerance, from 0 for exact matches to 255
+	 */
+	public void setPixelTolerance(final int tolerance) {
+		if (tolerance < 0 || tolerance > 255) {
+			throw new IllegalArgumentException("Invalid pixel tolerance: "
+					+ tolerance);
+		}
+		this.pixelTolerance = tolerance;
+	}
+
+	/**
+	 * Sets the ratio of different pixels allowed for matching images.
+	 * 
+	 * @param ratio
+	 *            the ratio, from 0 for identical images to 1
+	 */
+	public void setMaxDifference(final double ratio) {
+		if (ratio < 0 || ratio > 1) {
+			throw new IllegalArgumentException("Invalid difference ratio: "
+					+ ratio);
+		}
+		this.maxDifference = ratio;
+	}
+
+	/**
+	 * Excludes a region of the images from the comparison.
+	 * 
+	 * @param region
+	 *            the region to ignore
+	 */
+	public void ignore(final Rectangle region) {
+		ignored.add(new Rectangle(region));
+	}
+
+	/**
+	 * Compares the supplied images. When the images have different sizes the
+	 * pixels outside the common area are counted as different.
+	 * 
+	 * @param expected
+	 *            the baseline image
+	 * @param actual
+	 *            the image to check
+	 * @return the result of the comparison
+	 */
+	public ImageDiffResult compare(final BufferedImage expected,
+			final BufferedImage actual) {
+		long start = System.nanoTime();
+		List<Rectangle> regions = Collections
+				.unmodifiableList(new ArrayList<Rectangle>(ignored));
+		int commonWidth = Math.min(expected.getWidth(), actual.getWidth());
+		int commonHeight = Math.min(expected.getHeight(), actual.getHeight());
+
+		List<Future<TileResult>> futures = new ArrayList<Future<TileResult>>();
+		for (int y = 0; y < commonHeight; y += tileSize) {
+			for (int x = 0; x < commonWidth; x += tileSize) {
+				Rectangle tile = new Rectangle(x, y, Math.min(tileSize,
+						commonWidth - x), Math.min(tileSize, commonHeight - y));
+				futures.add(executor.submit(new TileComparison(expected,
+						actual, tile, regions, pixelTolerance)));
+			}
+		}
+
+		long differentPixels = 0;
+		int identicalTiles = 0;
+		List<Rectangle> differentTiles = new ArrayList<Rectangle>();
+		try {
+			for (Future<TileResult> future : futures) {
+				TileResult tile = future.get();
+				if (tile.identical) {
+					identicalTiles++;
+				}
+				if (tile.differentPixels > 0) {
+					differentPixels += tile.differentPixels;
+					differentTiles.add(tile.bounds);
+				}
+			}
+		} catch (InterruptedException e) {
+			cancel(futures);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(
+					"Interrupted while comparing images", e);
+		} catch (ExecutionException e) {
+			cancel(futures);
+			throw new IllegalStateException("Unable to compare images",
+					e.getCause());
+		}
+
+		int width = Math.max(expected.getWidth(), actual.getWidth());
+		int height = Math.max(expected.getHeight(), actual.getHeight());
+		List<Rectangle> outside = new ArrayList<Rectangle>();
+		if (width > commonWidth) {
+			outside.add(new Rectangle(commonWidth, 0, width - commonWidth,
+					height));
+		}
+		if (height > commonHeight) {
+			outside.add(new Rectangle(0, commonHeight, commonWidth, height
+					- commonHeight));
+		}
+		for (Rectangle area : outside) {
+			long count = countNotIgnored(area, regions);
+			if (count > 0) {
+				differentPixels += count;
+				differentTiles.add(area);
+			}
+		}
+
+		long comparedPixels = countNotIgnored(
+				new Rectangle(0, 0, width, height), regions);
+		return new ImageDiffResult(expected, actual, width, height,
+				comparedPixels, differentPixels, futures.size(), identicalTiles,
+				differentTiles, regions, pixelTolerance, maxDifference,
+				System.nanoTime() - start);
+	}
+
+	/**
+	 * Checks if the supplied pixels match.
+	 * 
+	 * @param expected
+	 *            the expected RGB value
+	 * @param actual
+	 *            the actual RGB value
+	 * @param tolerance
+	 *            the maximum difference between the channels
+	 * @return true if the pixels match or false otherwise
+	 */
+	static boolean matches(final int expected, final int actual,
+			final int tolerance) {
+		if (((expected ^ actual) & 0xffffff) == 0) {
+			return true;
+		}
+		return Math.abs(((expected >> 16) & 0xff) - ((actual >> 16) & 0xff)) <= tolerance
+				&& Math.abs(((expected >> 8) & 0xff) - ((actual >> 8) & 0xff)) <= tolerance
+				&& Math.abs((expected & 0xff) - (actual & 0xff)) <= tolerance;
+	}
+
+	/**
+	 * Checks if the supplied pixel is in one of the ignored regions.
+	 * 
+	 * @param regions
+	 *            the ignored regions
+	 * @param x
+	 *            the horizontal position of the pixel
+	 * @param y
+	 *            the vertical position of the pixel
+	 * @return true if the pixel is ignored or false otherwise
+	 */
+	static boolean isIgnored(final List<Rectangle> regions, final int x,
+			final int y) {
+		for (int i = 0; i < regions.size(); i++) {
+			if (regions.get(i).contains(x, y)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the ignored regions which intersect the supplied area.
+	 * 
+	 * @param area
+	 *            the area
+	 * @param regions
+	 *            the ignored regions
+	 * @return the intersecting regions
+	 */
+	private static List<Rectangle> intersecting(final Rectangle area,
+			final List<Rectangle> regions) {
+		List<Rectangle> result = new ArrayList<Rectangle>();
+		for (Rectangle region : regions) {
+			if (region.intersects(area)) {
+				result.add(region);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Counts the pixels of the area which are not ignored.
+	 * 
+	 * @param area
+	 *            the area
+	 * @param regions
+	 *            the ignored regions
+	 * @return the number of pixels
+	 */
+	private static long countNotIgnored(final Rectangle area,
+			final List<Rectangle> regions) {
+		List<Rectangle> local = intersecting(area, regions);
+		if (local.isEmpty()) {
+			return (long) area.width * area.height;
+		}
+		long count = 0;
+		for (int y = area.y; y < area.y + area.height; y++) {
+			for (int x = area.x; x < area.x + area.width; x++) {
+				if (!isIgnored(local, x, y)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Checks if images of the same type as the supplied image hold the same
+	 * pixels when their raster data is equal. This is not the case for
+	 * indexed images, whose palettes may differ.
+	 * 
+	 * @param image
+	 *            the image
+	 * @return true if the raster data can be compared directly
+	 */
+	private static boolean isRaw(final BufferedImage image) {
+		switch (image.getType()) {
+		case BufferedImage.TYPE_INT_RGB:
+		case BufferedImage.TYPE_INT_ARGB:
+		case BufferedImage.TYPE_INT_BGR:
+		case BufferedImage.TYPE_3BYTE_BGR:
+		case BufferedImage.TYPE_4BYTE_ABGR:
+		case BufferedImage.TYPE_BYTE_GRAY:
+		case BufferedImage.TYPE_USHORT_GRAY:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Checks if the raster data of the supplied image holds RGB values.
+	 * 
+	 * @param image
+	 *            the image
+	 * @return true if the data elements can be used as RGB values
+	 */
+	private static boolean isRgb(final BufferedImage image) {
+		return image.getType() == BufferedImage.TYPE_INT_RGB
+				|| image.getType() == BufferedImage.TYPE_INT_ARGB;
+	}
+
+	/**
+	 * Compares the raster data of two tiles.
+	 * 
+	 * @param expected
+	 *            the expected data elements
+	 * @param actual
+	 *            the actual data elements
+	 * @return true if the data is equal or false otherwise
+	 */
+	private static boolean sameData(final Object expected, final Object actual) {
+		if (expected instanceof int[]) {
+			return Arrays.equals((int[]) expected, (int[]) actual);
+		}
+		if (expected instanceof byte[]) {
+			return Arrays.equals((byte[]) expected, (byte[]) actual);
+		}
+		if (expected instanceof short[]) {
+			return Arrays.equals((short[]) expected, (short[]) actual);
+		}
+		return false;
+	}
+
+	/**
+	 * Cancels the pending tile comparisons.
+	 * 
+	 * @param futures
+	 *            the tile comparisons
+	 */
+	private static void cancel(final List<Future<TileResult>> futures) {
+		for (Future<TileResult> future : futures) {
+			future.cancel(true);
+		}
+	}
+
+	/**
+	 * Returns the pool shared by the instances created without an executor,
+	 * creating it on first use. The threads are daemons, so the pool never
+	 * keeps the JVM alive.
+	 * 
+	 * @return the shared pool
+	 */
+	private static synchronized ExecutorService getSharedExecutor() {
+		if (sharedExecutor == null) {
+			final AtomicInteger count = new AtomicInteger();
+			sharedExecutor = Executors.newFixedThreadPool(Runtime.getRuntime()
+					.availableProcessors(), new ThreadFactory() {
+				public Thread newThread(final Runnable runnable) {
+					Thread thread = new Thread(runnable, "image-diff-"
+							+ count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return sharedExecutor;
+	}
+
+	/**
+	 * The outcome of comparing a tile.
+	 */
+	private static final class TileResult {
+		private final Rectangle bounds;
+		private final boolean identical;
+		private final long differentPixels;
+
+		TileResult(final Rectangle tileBounds, final boolean identicalTile,
+				final long different) {
+			this.bounds = tileBounds;
+			this.identical = identicalTile;
+			this.differentPixels = different;
+		}
+	}
+
+	/**
+	 * Compares one tile of the images.
+	 */
+	private static final class TileComparison implements Callable<TileResult> {
+		private final BufferedImage expected;
+		private final BufferedImage actual;
+		private final Rectangle tile;
+		private final List<Rectangle> regions;
+		private final int tolerance;
+
+		TileComparison(final BufferedImage expectedImage,
+				final BufferedImage actualImage, final Rectangle bounds,
+				final List<Rectangle> ignoredRegions, final int pixelTolerance) {
+			this.expected = expectedImage;
+			this.actual = actualImage;
+			this.tile = bounds;
+			this.regions = ignoredRegions;
+			this.tolerance = pixelTolerance;
+		}
+
+		public TileResult call() {
+			List<Rectangle> local = intersecting(tile, regions);
+			for (Rectangle region : local) {
+				if (region.contains(tile)) {
+					return new TileResult(tile, false, 0);
+				}
+			}
+			int[] expectedPixels;
+			int[] actualPixels;
+			if (isRaw(expected) && expected.getType() == actual.getType()) {
+				/**
+				 * reading the raster directly avoids converting every pixel
+				 * to RGB, which is the slowest part for identical tiles
+				 */
+				Object expectedData = dataOf(expected);
+				Object actualData = dataOf(actual);
+				if (sameData(expectedData, actualData)) {
+					return new TileResult(tile, true, 0);
+				}
+				if (expectedData instanceof int[] && isRgb(expected)) {
+					expectedPixels = (int[]) expectedData;
+					actualPixels = (int[]) actualData;
+				} else {
+					expectedPixels = rgbOf(expected);
+					actualPixels = rgbOf(actual);
+				}
+			} else {
+				expectedPixels = rgbOf(expected);
+				actualPixels = rgbOf(actual);
+				if (Arrays.equals(expectedPixels, actualPixels)) {
+					return new TileResult(tile, true, 0);
+				}
+			}
+			long different = 0;
+			for (int i = 0; i < expectedPixels.length; i++) {
+				if (!matches(expectedPixels[i], actualPixels[i], tolerance)
+						&& (local.isEmpty() || !isIgnored(local, tile.x + i
+								% tile.width, tile.y + i / tile.width))) {
+					different++;
+				}
+			}
+			return new TileResult(tile, false, different);
+		}
+
+		private Object dataOf(final BufferedImage image) {
+			return image.getRaster().getDataElements(tile.x, tile.y,
+					tile.width, tile.height, null);
+		}
+
+		private int[] rgbOf(final BufferedImage image) {
+			return image.getRGB(tile.x, tile.y, tile.width, tile.height, null,
+					0, tile.width);
+		}
+	}
+}
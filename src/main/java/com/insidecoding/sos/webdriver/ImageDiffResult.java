@@ -0,0 +1,280 @@
+package com.insidecoding.sos.webdriver;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Holds the outcome of comparing two images with
+ * {@link ImageDiff#compare(BufferedImage, BufferedImage)}. The diff image is
+ * drawn only when requested: the actual image is faded and the different
+ * pixels are painted red.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class ImageDiffResult {
+
+	/**
+	 * The color of the different pixels in the diff image.
+	 */
+	private static final int DIFFERENT = 0xff0000;
+
+	private final BufferedImage expected;
+	private final BufferedImage actual;
+	private final int width;
+	private final int height;
+	private final long comparedPixels;
+	private final long differentPixels;
+	private final int tileCount;
+	private final int identicalTiles;
+	private final List<Rectangle> differentTiles;
+	private final List<Rectangle> ignored;
+	private final int tolerance;
+	private final double maxDifference;
+	private final long elapsedNanos;
+
+	/**
+	 * Creates a new ImageDiffResult.
+	 * 
+	 * @param expectedImage
+	 *            the baseline image
+	 * @param actualImage
+	 *            the compared image
+	 * @param diffWidth
+	 *            the width of the largest image
+	 * @param diffHeight
+	 *            the height of the largest image
+	 * @param compared
+	 *            the number of pixels outside the ignored regions
+	 * @param different
+	 *            the number of different pixels
+	 * @param tiles
+	 *            the number of compared tiles
+	 * @param identical
+	 *            the number of tiles with identical pixels
+	 * @param changedAreas
+	 *            the tiles and areas holding different pixels
+	 * @param ignoredRegions
+	 *            the regions excluded from the comparison
+	 * @param pixelTolerance
+	 *            the maximum difference between the channels of matching
+	 *            pixels
+	 * @param maxDifferenceRatio
+	 *            the ratio of different pixels allowed
+	 * @param nanos
+	 *            the time spent comparing
+	 */
+	ImageDiffResult(final BufferedImage expectedImage,
+			final BufferedImage actualImage, final int diffWidth,
+			final int diffHeight, final long compared, final long different,
+			final int tiles,
+			final int identical, final List<Rectangle> changedAreas,
+			final List<Rectangle> ignoredRegions, final int pixelTolerance,
+			final double maxDifferenceRatio, final long nanos) {
+		this.expected = expectedImage;
+		this.actual = actualImage;
+		this.width = diffWidth;
+		this.height = diffHeight;
+		this.comparedPixels = compared;
+		this.differentPixels = different;
+		this.tileCount = tiles;
+		this.identicalTiles = identical;
+		this.differentTiles = Collections.unmodifiableList(changedAreas);
+		this.ignored = ignoredRegions;
+		this.tolerance = pixelTolerance;
+		this.maxDifference = maxDifferenceRatio;
+		this.elapsedNanos = nanos;
+	}
+
+	/**
+	 * Checks if the ratio of different pixels is within the allowed
+	 * difference.
+	 * 
+	 * @return true if the images match or false otherwise
+	 */
+	public boolean isMatch() {
+		return getDifferenceRatio() <= maxDifference;
+	}
+
+	/**
+	 * Returns the number of pixels which do not match.
+	 * 
+	 * @return the number of different pixels
+	 */
+	public long getDifferentPixels() {
+		return differentPixels;
+	}
+
+	/**
+	 * Returns the number of pixels compared: the pixels of the largest image
+	 * outside the ignored regions.
+	 * 
+	 * @return the number of compared pixels
+	 */
+	public long getComparedPixels() {
+		return comparedPixels;
+	}
+
+	/**
+	 * Returns the ratio of different pixels over the compared pixels, so
+	 * that ignoring a region does not make the rest of the image more
+	 * tolerant.
+	 * 
+	 * @return the ratio, from 0 to 1
+	 */
+	public double getDifferenceRatio() {
+		return comparedPixels == 0 ? 0 : (double) differentPixels
+				/ comparedPixels;
+	}
+
+	/**
+	 * Returns the number of tiles compared.
+	 * 
+	 * @return the number of tiles
+	 */
+	public int getTileCount() {
+		return tileCount;
+	}
+
+	/**
+	 * Returns the number of tiles skipped because their pixels are identical.
+	 * 
+	 * @return the number of identical tiles
+	 */
+	public int getIdenticalTiles() {
+		return identicalTiles;
+	}
+
+	/**
+	 * Returns the tiles holding different pixels, together with the areas
+	 * covered by only one of the images.
+	 * 
+	 * @return an unmodifiable list of areas
+	 */
+	public List<Rectangle> getDifferentTiles() {
+		return differentTiles;
+	}
+
+	/**
+	 * Returns the time spent comparing the images.
+	 * 
+	 * @return the elapsed time in milliseconds
+	 */
+	public long getElapsedMillis() {
+		return elapsedNanos / 1000000;
+	}
+
+	/**
+	 * Draws the diff image: the actual image faded, with the different pixels
+	 * painted red.
+	 * 
+	 * @return the diff image
+	 */
+	public BufferedImage getDiffImage() {
+		BufferedImage diff = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				diff.setRGB(x, y, fade(pixelAt(x, y)));
+			}
+		}
+		for (Rectangle area : differentTiles) {
+			for (int y = area.y; y < area.y + area.height; y++) {
+				for (int x = area.x; x < area.x + area.width; x++) {
+					if (isDifferent(x, y)) {
+						diff.setRGB(x, y, DIFFERENT);
+					}
+				}
+			}
+		}
+		return diff;
+	}
+
+	/**
+	 * Writes the diff image as PNG.
+	 * 
+	 * @param file
+	 *            the file where the image is written
+	 * @throws IOException
+	 *             if the image cannot be written
+	 */
+	public void writeDiffImage(final File file) throws IOException {
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null) {
+			parent.mkdirs();
+		}
+		ImageIO.write(getDiffImage(), "png", file);
+	}
+
+	@Override
+	public String toString() {
+		return "ImageDiffResult[match=" + isMatch() + ", differentPixels="
+				+ differentPixels + ", tiles=" + tileCount + ", identicalTiles="
+				+ identicalTiles + ", elapsed=" + getElapsedMillis() + "ms]";
+	}
+
+	/**
+	 * Checks if the pixel at the supplied position is different.
+	 * 
+	 * @param x
+	 *            the horizontal position
+	 * @param y
+	 *            the vertical position
+	 * @return true if the pixel is different and not ignored
+	 */
+	private boolean isDifferent(final int x, final int y) {
+		if (ImageDiff.isIgnored(ignored, x, y)) {
+			return false;
+		}
+		if (!contains(expected, x, y) || !contains(actual, x, y)) {
+			return true;
+		}
+		return !ImageDiff.matches(expected.getRGB(x, y), actual.getRGB(x, y),
+				tolerance);
+	}
+
+	/**
+	 * Returns the pixel of the actual image, or of the expected image outside
+	 * the actual image.
+	 * 
+	 * @param x
+	 *            the horizontal position
+	 * @param y
+	 *            the vertical position
+	 * @return the RGB value or white if neither image has the pixel
+	 */
+	private int pixelAt(final int x, final int y) {
+		if (contains(actual, x, y)) {
+			return actual.getRGB(x, y);
+		}
+		if (contains(expected, x, y)) {
+			return expected.getRGB(x, y);
+		}
+		return 0xffffff;
+	}
+
+	/**
+	 * Fades the supplied color towards white.
+	 * 
+	 * @param rgb
+	 *            the RGB value
+	 * @return the faded RGB value
+	 */
+	private static int fade(final int rgb) {
+		int red = (((rgb >> 16) & 0xff) + 510) / 3;
+		int green = (((rgb >> 8) & 0xff) + 510) / 3;
+		int blue = ((rgb & 0xff) + 510) / 3;
+		return (red << 16) | (green << 8) | blue;
+	}
+
+	private static boolean contains(final BufferedImage image, final int x,
+			final int y) {
+		return x < image.getWidth() && y < image.getHeight();
+	}
+}
@@ -0,0 +1,95 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openqa.selenium.WebDriver;
+
+/**
+ * Keeps track of the implicit wait of a driver so that it can be suspended
+ * while checking for elements which are expected to be missing. WebDriver does
+ * not expose the current implicit wait, so the value is known only if it was
+ * set through this class; drivers start with no implicit wait. <br/>
+ * Suspensions can be nested; the implicit wait is restored when the outermost
+ * suspension ends.
+ * 
+ * @author ludovicianul
+ * 
+ */
+final class ImplicitWait {
+
+	/**
+	 * The WebDriver instance.
+	 */
+	private final WebDriver driver;
+
+	/**
+	 * The implicit wait in milliseconds.
+	 */
+	private long millis;
+
+	/**
+	 * The number of active suspensions.
+	 */
+	private int suspensions;
+
+	/**
+	 * Creates a new ImplicitWait.
+	 * 
+	 * @param d
+	 *            the WebDriver instance
+	 */
+	ImplicitWait(final WebDriver d) {
+		this.driver = d;
+	}
+
+	/**
+	 * Sets the implicit wait of the driver.
+	 * 
+	 * @param time
+	 *            the amount of time to wait
+	 * @param unit
+	 *            the unit of measure for {@code time}
+	 */
+	synchronized void set(final long time, final TimeUnit unit) {
+		millis = unit.toMillis(time);
+		if (suspensions == 0) {
+			driver.manage().timeouts()
+					.implicitlyWait(millis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Returns the implicit wait.
+	 * 
+	 * @return the implicit wait in milliseconds
+	 */
+	synchronized long getMillis() {
+		return millis;
+	}
+
+	/**
+	 * Disables the implicit wait until {@link #restore()} is called. Every
+	 * call must be paired with a call to {@link #restore()} in a finally
+	 * block.
+	 */
+	synchronized void suspend() {
+		if (suspensions == 0 && millis > 0) {
+			driver.manage().timeouts().implicitlyWait(0, TimeUnit.MILLISECONDS);
+		}
+		suspensions++;
+	}
+
+	/**
+	 * Restores the implicit wait disabled by {@link #suspend()}.
+	 */
+	synchronized void restore() {
+		if (suspensions == 0) {
+			throw new IllegalStateException("Implicit wait is not suspended!");
+		}
+		suspensions--;
+		if (suspensions == 0 && millis > 0) {
+			driver.manage().timeouts()
+					.implicitlyWait(millis, TimeUnit.MILLISECONDS);
+		}
+	}
+}
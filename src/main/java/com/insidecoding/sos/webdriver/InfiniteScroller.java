@@ -0,0 +1,197 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+import com.insidecoding.sos.webdriver.ScrollResult.Reason;
+
+/**
+ * Scrolls infinite-scroll pages until they stop loading content. Instead of
+ * sleeping a fixed time after each scroll, the page height and the number of
+ * elements are watched and the next scroll happens as soon as new content
+ * appears. Scrolling stops when nothing changes for the quiet time, when the
+ * target elements are present or when the maximum time elapses. <br/>
+ * The watching is done by an asynchronous script when possible; otherwise,
+ * for example for locators which cannot be translated to JavaScript, the page
+ * is polled through WebDriver.
+ * 
+ * @author ludovicianul
+ * 
+ */
+final class InfiniteScroller {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger.getLogger(InfiniteScroller.class);
+
+	/**
+	 * The time between two polls when the page is watched through WebDriver.
+	 */
+	private static final long POLL_MILLIS = 100;
+
+	/**
+	 * Measures the page when it is polled through WebDriver.
+	 */
+	private static final String MEASURE = "var root = document.documentElement;"
+			+ "return Math.max(document.body.scrollHeight, root.scrollHeight)"
+			+ " + ':' + document.getElementsByTagName('*').length;";
+
+	private final WebDriver driver;
+	private final ScriptRunner scripts;
+	private final ImplicitWait implicitWait;
+	private final PageReadiness readiness;
+
+	/**
+	 * Creates a new InfiniteScroller.
+	 * 
+	 * @param d
+	 *            the WebDriver instance
+	 * @param runner
+	 *            the ScriptRunner of the driver
+	 * @param implicit
+	 *            the implicit wait, suspended while counting the targets
+	 * @param pageReadiness
+	 *            installs the network tracker, so that pending requests delay
+	 *            the end of the scrolling
+	 */
+	InfiniteScroller(final WebDriver d, final ScriptRunner runner,
+			final ImplicitWait implicit, final PageReadiness pageReadiness) {
+		this.driver = d;
+		this.scripts = runner;
+		this.implicitWait = implicit;
+		this.readiness = pageReadiness;
+	}
+
+	/**
+	 * Scrolls until the page is stable or the target elements are present.
+	 * 
+	 * @param target
+	 *            the target elements or null to scroll until the page is
+	 *            stable
+	 * @param count
+	 *            the number of target elements to wait for
+	 * @param quietMillis
+	 *            stop when nothing changes for this number of milliseconds
+	 * @param maximumSeconds
+	 *            the maximum number of seconds to scroll
+	 * @return the outcome of the scrolling
+	 */
+	ScrollResult scroll(final By target, final int count,
+			final int quietMillis, final int maximumSeconds) {
+		long timeout = TimeUnit.SECONDS.toMillis(maximumSeconds);
+		String[] locator = target == null ? new String[] { "", "" }
+				: PageCondition.toScriptLocator(target);
+		if (!readiness.install()) {
+			LOG.debug("Scrolling needs JavaScript, the page is stable");
+			return new ScrollResult(0, 0,
+					isTargetReached(target, count) ? Reason.TARGET
+							: Reason.STABLE);
+		}
+		if (locator != null) {
+			try {
+				List<?> result = (List<?>) scripts.runAsync("scroll", timeout,
+						quietMillis, timeout, locator[0], locator[1], count);
+				ScrollResult scrolled = new ScrollResult(
+						((Number) result.get(0)).intValue(),
+						((Number) result.get(2)).longValue(),
+						Reason.valueOf(String.valueOf(result.get(1))
+								.toUpperCase()));
+				LOG.info("Scrolled: " + scrolled);
+				return scrolled;
+			} catch (UnsupportedOperationException e) {
+				LOG.debug("Falling back to polling while scrolling");
+			} catch (WebDriverException e) {
+				LOG.debug("Scroll script failed, polling instead: "
+						+ e.getMessage());
+			}
+		}
+		ScrollResult scrolled = poll(target, count, quietMillis, timeout);
+		LOG.info("Scrolled: " + scrolled);
+		return scrolled;
+	}
+
+	/**
+	 * Scrolls and watches the page through WebDriver.
+	 * 
+	 * @param target
+	 *            the target elements or null
+	 * @param count
+	 *            the number of target elements to wait for
+	 * @param quietMillis
+	 *            stop when nothing changes for this number of milliseconds
+	 * @param timeout
+	 *            the maximum number of milliseconds to scroll
+	 * @return the outcome of the scrolling
+	 */
+	private ScrollResult poll(final By target, final int count,
+			final int quietMillis, final long timeout) {
+		long start = System.currentTimeMillis();
+		int batches = 0;
+		while (true) {
+			if (isTargetReached(target, count)) {
+				return new ScrollResult(batches, System.currentTimeMillis()
+						- start, Reason.TARGET);
+			}
+			if (System.currentTimeMillis() - start >= timeout) {
+				return new ScrollResult(batches, System.currentTimeMillis()
+						- start, Reason.TIMEOUT);
+			}
+			Object before = scripts.execute(MEASURE);
+			scripts.execute("window.scrollTo(0, arguments[0]);",
+					Integer.valueOf(String.valueOf(before).split(":")[0]));
+			long scrolled = System.currentTimeMillis();
+			while (before.equals(scripts.execute(MEASURE))) {
+				long now = System.currentTimeMillis();
+				if (now - scrolled >= quietMillis) {
+					return new ScrollResult(batches, now - start,
+							Reason.STABLE);
+				}
+				if (now - start >= timeout) {
+					return new ScrollResult(batches, now - start,
+							Reason.TIMEOUT);
+				}
+				sleep();
+			}
+			batches++;
+		}
+	}
+
+	/**
+	 * Checks through WebDriver if the target elements are present.
+	 * 
+	 * @param target
+	 *            the target elements or null
+	 * @param count
+	 *            the number of target elements to wait for
+	 * @return true if enough target elements are present
+	 */
+	private boolean isTargetReached(final By target, final int count) {
+		if (target == null) {
+			return false;
+		}
+		implicitWait.suspend();
+		try {
+			return driver.findElements(target).size() >= count;
+		} finally {
+			implicitWait.restore();
+		}
+	}
+
+	/**
+	 * Waits before the next poll.
+	 */
+	private static void sleep() {
+		try {
+			Thread.sleep(POLL_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new WebDriverException("Interrupted while scrolling", e);
+		}
+	}
+}
@@ -0,0 +1,303 @@
+package com.insidecoding.sos.webdriver;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.interactions.Keyboard;
+import org.openqa.selenium.interactions.Mouse;
+import org.openqa.selenium.interactions.TouchScreen;
+import org.openqa.selenium.interactions.internal.Coordinates;
+import org.openqa.selenium.internal.WrapsDriver;
+import org.openqa.selenium.internal.WrapsElement;
+import org.openqa.selenium.logging.Logs;
+
+/**
+ * Reports the commands of a driver, with their duration, to a
+ * {@link CommandListener}, like the one of {@link DriverMetrics}, and counts
+ * the commands which may change the page for the DOM snapshots, see
+ * {@link #pageChangesOf(WebDriver)}. The driver is
+ * wrapped in a dynamic proxy implementing all its public interfaces, so casts
+ * to {@link org.openqa.selenium.JavascriptExecutor} or
+ * {@link org.openqa.selenium.TakesScreenshot} keep working. The elements,
+ * navigation, options and other objects returned by the driver are wrapped
+ * as well, so that their commands are timed too, and unwrapped again when
+ * they are passed back to the driver. The methods returning such objects
+ * without arguments, like {@link WebDriver#manage()} or
+ * {@link WebDriver#navigate()}, do not talk to the browser and are not
+ * reported.
+ * 
+ * @author ludovicianul
+ * 
+ */
+final class InstrumentedDriver implements InvocationHandler {
+
+	/**
+	 * The objects returned by the local accessors, which are created without
+	 * a round trip to the browser.
+	 */
+	private static final Set<Class<?>> ACCESSORS = new HashSet<Class<?>>(
+			Arrays.<Class<?>> asList(WebDriver.Options.class,
+					WebDriver.Navigation.class, WebDriver.TargetLocator.class,
+					WebDriver.Timeouts.class, WebDriver.Window.class,
+					WebDriver.ImeHandler.class, Logs.class, Keyboard.class,
+					Mouse.class, TouchScreen.class, Coordinates.class));
+
+	/**
+	 * The object receiving the commands.
+	 */
+	private final Object target;
+
+	/**
+	 * The driver at the root of the object graph.
+	 */
+	private final WebDriver driver;
+
+	/**
+	 * The proxy of the root driver.
+	 */
+	private WebDriver driverProxy;
+
+	/**
+	 * Counts the page changes and passes the commands on.
+	 */
+	private final PageChangeListener listener;
+
+	private InstrumentedDriver(final Object wrapped, final WebDriver root,
+			final WebDriver rootProxy, final PageChangeListener commandListener) {
+		this.target = wrapped;
+		this.driver = root;
+		this.driverProxy = rootProxy;
+		this.listener = commandListener;
+	}
+
+	/**
+	 * Wraps the driver.
+	 * 
+	 * @param driver
+	 *            the driver to instrument
+	 * @param listener
+	 *            receives the commands or null to only count the page changes
+	 * @return the instrumented driver
+	 */
+	static WebDriver wrap(final WebDriver driver, final CommandListener listener) {
+		Set<Class<?>> interfaces = interfacesOf(driver.getClass());
+		interfaces.add(WrapsDriver.class);
+		InstrumentedDriver handler = new InstrumentedDriver(driver, driver,
+				null, new PageChangeListener(listener));
+		handler.driverProxy = (WebDriver) Proxy.newProxyInstance(
+				InstrumentedDriver.class.getClassLoader(),
+				interfaces.toArray(new Class<?>[interfaces.size()]), handler);
+		return handler.driverProxy;
+	}
+
+	/**
+	 * Returns the object wrapped by an instrumentation proxy.
+	 * 
+	 * @param value
+	 *            any object
+	 * @return the wrapped object, or the value itself if it is not a proxy
+	 */
+	static Object unwrap(final Object value) {
+		if (value != null && Proxy.isProxyClass(value.getClass())) {
+			InvocationHandler handler = Proxy.getInvocationHandler(value);
+			if (handler instanceof InstrumentedDriver) {
+				return ((InstrumentedDriver) handler).target;
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the page change counter of an instrumented driver. The drivers
+	 * wrapping other drivers, like the lazy driver of the tests, are looked
+	 * through.
+	 * 
+	 * @param driver
+	 *            any driver
+	 * @return the number of commands which may have changed the page or null
+	 *         if the driver is not instrumented
+	 */
+	static AtomicInteger pageChangesOf(final WebDriver driver) {
+		WebDriver current = driver;
+		while (current != null) {
+			if (Proxy.isProxyClass(current.getClass())) {
+				InvocationHandler handler = Proxy.getInvocationHandler(current);
+				if (handler instanceof InstrumentedDriver) {
+					return ((InstrumentedDriver) handler).listener.getChanges();
+				}
+			}
+			if (!(current instanceof WrapsDriver)) {
+				return null;
+			}
+			WebDriver wrapped = ((WrapsDriver) current).getWrappedDriver();
+			current = wrapped == current ? null : wrapped;
+		}
+		return null;
+	}
+
+	public Object invoke(final Object proxy, final Method method,
+			final Object[] args) throws Throwable {
+		String name = method.getName();
+		if (method.getDeclaringClass() == Object.class) {
+			if ("equals".equals(name)) {
+				return target.equals(unwrap(args[0]));
+			}
+			return invokeTarget(method, args);
+		}
+		if (method.getDeclaringClass() == WrapsDriver.class
+				&& target == driver) {
+			return driver;
+		}
+		if (method.getDeclaringClass() == WrapsElement.class) {
+			return target;
+		}
+		if ((args == null || args.length == 0)
+				&& ACCESSORS.contains(method.getReturnType())) {
+			return wrapResult(invokeTarget(method, args),
+					method.getReturnType());
+		}
+		String locator = args != null && args.length > 0
+				&& args[0] instanceof By ? args[0].toString() : null;
+		long start = System.nanoTime();
+		try {
+			return wrapResult(invokeTarget(method, unwrapArguments(args)),
+					method.getReturnType());
+		} finally {
+			listener.commandRun(method.getDeclaringClass().getSimpleName()
+					+ "." + name, locator, args, System.nanoTime() - start);
+		}
+	}
+
+	private Object invokeTarget(final Method method, final Object[] args)
+			throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Wraps the objects returned by the commands.
+	 * 
+	 * @param result
+	 *            the value returned by the command
+	 * @param type
+	 *            the declared return type
+	 * @return the value to return to the caller
+	 */
+	private Object wrapResult(final Object result, final Class<?> type) {
+		if (result == null) {
+			return null;
+		}
+		if (result == driver) {
+			return driverProxy;
+		}
+		if (result instanceof WebElement) {
+			Set<Class<?>> interfaces = interfacesOf(result.getClass());
+			interfaces.add(WrapsElement.class);
+			return newProxy(result, interfaces);
+		}
+		if (result instanceof List) {
+			List<?> values = (List<?>) result;
+			List<Object> wrapped = new ArrayList<Object>(values.size());
+			boolean changed = false;
+			for (Object value : values) {
+				Object item = value instanceof WebElement ? wrapResult(value,
+						WebElement.class) : value;
+				changed |= item != value;
+				wrapped.add(item);
+			}
+			return changed ? wrapped : result;
+		}
+		if (type.isInterface()
+				&& type.getName().startsWith("org.openqa.selenium.")) {
+			return newProxy(result, interfacesOf(result.getClass()));
+		}
+		return result;
+	}
+
+	private Object newProxy(final Object wrapped, final Set<Class<?>> interfaces) {
+		return Proxy.newProxyInstance(InstrumentedDriver.class.getClassLoader(),
+				interfaces.toArray(new Class<?>[interfaces.size()]),
+				new InstrumentedDriver(wrapped, driver, driverProxy, listener));
+	}
+
+	/**
+	 * Replaces the proxies passed to a command with the objects they wrap,
+	 * including the elements passed to scripts.
+	 * 
+	 * @param args
+	 *            the command arguments
+	 * @return the arguments for the wrapped object
+	 */
+	private static Object[] unwrapArguments(final Object[] args) {
+		if (args == null) {
+			return null;
+		}
+		Object[] result = new Object[args.length];
+		for (int i = 0; i < args.length; i++) {
+			result[i] = unwrapValue(args[i]);
+		}
+		return result;
+	}
+
+	private static Object unwrapValue(final Object value) {
+		if (value instanceof Object[]) {
+			Object[] values = (Object[]) value;
+			Object[] result = (Object[]) Array.newInstance(
+					values.getClass().getComponentType(), values.length);
+			for (int i = 0; i < values.length; i++) {
+				result[i] = unwrapValue(values[i]);
+			}
+			return result;
+		}
+		if (value instanceof List) {
+			List<Object> result = new ArrayList<Object>();
+			for (Object item : (List<?>) value) {
+				result.add(unwrapValue(item));
+			}
+			return result;
+		}
+		return unwrap(value);
+	}
+
+	/**
+	 * Returns the public interfaces implemented by the class and its
+	 * superclasses.
+	 * 
+	 * @param type
+	 *            the class
+	 * @return the interfaces
+	 */
+	private static Set<Class<?>> interfacesOf(final Class<?> type) {
+		Set<Class<?>> interfaces = new LinkedHashSet<Class<?>>();
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			addInterfaces(c.getInterfaces(), interfaces);
+		}
+		return interfaces;
+	}
+
+	private static void addInterfaces(final Class<?>[] types,
+			final Set<Class<?>> interfaces) {
+		for (Class<?> type : types) {
+			if (Modifier.isPublic(type.getModifiers()) && interfaces.add(type)) {
+				addInterfaces(type.getInterfaces(), interfaces);
+			}
+		}
+	}
+}
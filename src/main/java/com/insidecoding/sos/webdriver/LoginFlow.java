@@ -0,0 +1,30 @@
+package com.insidecoding.sos.webdriver;
+
+/**
+ * Logs a user in through the UI. Used by {@link SessionStore} to create the
+ * sessions that are saved and restored into other drivers.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public interface LoginFlow {
+
+	/**
+	 * Logs the user in. When this method returns the browser must be on a page
+	 * of the application, so that the session can be captured.
+	 * 
+	 * @param helper
+	 *            the helper of the driver used to log in
+	 */
+	void login(WebDriverHelper helper);
+
+	/**
+	 * Checks if the current page belongs to a logged in session. This is used
+	 * to detect restored sessions that were rejected by the application.
+	 * 
+	 * @param helper
+	 *            the helper of the driver
+	 * @return true if the user is logged in or false otherwise
+	 */
+	boolean isLoggedIn(WebDriverHelper helper);
+}
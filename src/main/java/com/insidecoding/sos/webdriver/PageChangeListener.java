@@ -0,0 +1,96 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the commands which may change the current page, so that the DOM
+ * snapshots of the driver become stale when the page changes, whoever holds
+ * the driver. Finding and reading elements, reading the page, setting
+ * timeouts and running the read-only scripts of the helper are known not to
+ * change it; every other command, like clicking, typing, navigating,
+ * switching frames or running a script, is counted. The commands are then
+ * passed on to the next listener, if any.
+ * 
+ * @author ludovicianul
+ * 
+ */
+final class PageChangeListener implements CommandListener {
+
+	/**
+	 * The commands which change the driver settings or read the page without
+	 * a get, find or is prefix. The local accessors, like
+	 * {@link org.openqa.selenium.WebDriver#manage()}, are not reported.
+	 */
+	private static final Set<String> READ_ONLY = new HashSet<String>(
+			Arrays.asList("implicitlyWait", "setScriptTimeout",
+					"pageLoadTimeout", "alert", "activeElement"));
+
+	/**
+	 * Counts the page changes.
+	 */
+	private final AtomicInteger changes = new AtomicInteger();
+
+	/**
+	 * Receives the commands after they are counted.
+	 */
+	private final CommandListener next;
+
+	/**
+	 * Creates a new PageChangeListener.
+	 * 
+	 * @param nextListener
+	 *            receives the commands after they are counted or null
+	 */
+	PageChangeListener(final CommandListener nextListener) {
+		this.next = nextListener;
+	}
+
+	/**
+	 * Returns the number of commands which may have changed the page.
+	 * 
+	 * @return the page change counter
+	 */
+	AtomicInteger getChanges() {
+		return changes;
+	}
+
+	public void commandRun(final String command, final String locator,
+			final Object[] args, final long nanos) {
+		if (!isReadOnly(command.substring(command.lastIndexOf('.') + 1), args)) {
+			changes.incrementAndGet();
+		}
+		if (next != null) {
+			next.commandRun(command, locator, args, nanos);
+		}
+	}
+
+	/**
+	 * Checks if the command with the supplied method name and arguments
+	 * leaves the page unchanged.
+	 * 
+	 * @param name
+	 *            the method name
+	 * @param args
+	 *            the command arguments or null
+	 * @return true if the page cannot change or false otherwise
+	 */
+	static boolean isReadOnly(final String name, final Object[] args) {
+		if (name.startsWith("find") || name.startsWith("is")) {
+			return true;
+		}
+		/**
+		 * WebDriver.get loads a page
+		 */
+		if (name.startsWith("get") && !"get".equals(name)) {
+			return true;
+		}
+		if (name.startsWith("execute") && args != null && args.length > 0
+				&& args[0] instanceof String) {
+			return ((String) args[0]).startsWith(ScriptRunner.READ_ONLY);
+		}
+		return READ_ONLY.contains(name);
+	}
+}
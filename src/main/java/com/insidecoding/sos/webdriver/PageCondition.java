@@ -0,0 +1,236 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+
+/**
+ * A condition on the current page which can be evaluated both by WebDriver and
+ * inside the page. Conditions are waited for with
+ * {@link WebDriverHelper#waitFor(PageCondition, int)} or combined with
+ * {@link WebDriverHelper#waitForAllOf(int, PageCondition...)},
+ * {@link WebDriverHelper#waitForAnyOf(int, PageCondition...)} and
+ * {@link WebDriverHelper#waitForFirstOf(int, PageCondition...)}. <br/>
+ * When the driver supports JavaScript and the locator can be translated, the
+ * condition is watched inside the page and the wait returns as soon as the
+ * page changes. Otherwise the condition is polled through WebDriver.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class PageCondition implements ExpectedCondition<Boolean> {
+
+	/**
+	 * The locator strategies that can be translated to JavaScript, indexed by
+	 * the prefix of {@link By#toString()}.
+	 */
+	private static final List<String> STRATEGIES = Arrays.asList("id",
+			"name", "className", "selector", "tagName", "xpath",
+			"linkText", "partialLinkText");
+
+	/**
+	 * The description used in the timeout messages.
+	 */
+	private final String description;
+
+	/**
+	 * The condition evaluated by WebDriver.
+	 */
+	private final ExpectedCondition<?> condition;
+
+	/**
+	 * The condition passed to the in-page script or null if the condition can
+	 * only be polled.
+	 */
+	private final List<String> script;
+
+	/**
+	 * Creates a new condition.
+	 * 
+	 * @param desc
+	 *            the description of the condition
+	 * @param expected
+	 *            the condition evaluated by WebDriver
+	 * @param type
+	 *            the type of the in-page condition
+	 * @param by
+	 *            the element locator or null for the page body
+	 * @param text
+	 *            the text used by the condition
+	 */
+	private PageCondition(final String desc,
+			final ExpectedCondition<?> expected, final String type,
+			final By by, final String text) {
+		this.description = desc;
+		this.condition = expected;
+		String[] locator = by == null ? new String[] { "", "" }
+				: toScriptLocator(by);
+		if (locator == null) {
+			this.script = null;
+		} else {
+			this.script = Arrays.asList(type, locator[0], locator[1],
+					text == null ? "" : text);
+		}
+	}
+
+	/**
+	 * The element is present in the page.
+	 * 
+	 * @param by
+	 *            the method of identifying the element
+	 * @return the condition
+	 */
+	public static PageCondition present(final By by) {
+		return new PageCondition("presence of element located by " + by,
+				ExpectedConditions.presenceOfElementLocated(by), "present", by,
+				null);
+	}
+
+	/**
+	 * There is no element identified by {@code by} in the page.
+	 * 
+	 * @param by
+	 *            the method of identifying the element
+	 * @return the condition
+	 */
+	public static PageCondition absent(final By by) {
+		return new PageCondition("absence of element located by " + by,
+				new ExpectedCondition<Boolean>() {
+					public Boolean apply(final WebDriver driver) {
+						return driver.findElements(by).isEmpty();
+					}
+				}, "absent", by, null);
+	}
+
+	/**
+	 * The element is present and visible.
+	 * 
+	 * @param by
+	 *            the method of identifying the element
+	 * @return the condition
+	 */
+	public static PageCondition visible(final By by) {
+		return new PageCondition("visibility of element located by " + by,
+				ExpectedConditions.visibilityOfElementLocated(by), "visible",
+				by, null);
+	}
+
+	/**
+	 * The element is either hidden or not present in the page.
+	 * 
+	 * @param by
+	 *            the method of identifying the element
+	 * @return the condition
+	 */
+	public static PageCondition invisible(final By by) {
+		return new PageCondition("element located by " + by
+				+ " to be hidden or absent",
+				ExpectedConditions.invisibilityOfElementLocated(by),
+				"invisible", by, null);
+	}
+
+	/**
+	 * The element has some text.
+	 * 
+	 * @param by
+	 *            the method of identifying the element
+	 * @return the condition
+	 */
+	public static PageCondition hasText(final By by) {
+		return new PageCondition("text of element located by " + by,
+				new ExpectedCondition<Boolean>() {
+					public Boolean apply(final WebDriver driver) {
+						return !driver.findElement(by).getText().isEmpty();
+					}
+				}, "hasText", by, null);
+	}
+
+	/**
+	 * The text of the element contains the supplied text.
+	 * 
+	 * @param by
+	 *            the method of identifying the element
+	 * @param text
+	 *            the text to wait for
+	 * @return the condition
+	 */
+	public static PageCondition containsText(final By by, final String text) {
+		return new PageCondition("text ('" + text
+				+ "') to be present in element located by " + by,
+				ExpectedConditions.textToBePresentInElement(by, text),
+				"containsText", by, text);
+	}
+
+	/**
+	 * The text of the page contains the supplied text.
+	 * 
+	 * @param text
+	 *            the text to wait for
+	 * @return the condition
+	 */
+	public static PageCondition textInPage(final String text) {
+		return new PageCondition("text ('" + text + "') to be present in page",
+				ExpectedConditions.textToBePresentInElement(
+						By.tagName("body"), text), "containsText", null, text);
+	}
+
+	/**
+	 * Evaluates the condition through WebDriver.
+	 * 
+	 * @param driver
+	 *            the WebDriver instance
+	 * @return true if the condition is met or null otherwise
+	 */
+	@Override
+	public Boolean apply(final WebDriver driver) {
+		Object result = condition.apply(driver);
+		if (result == null || Boolean.FALSE.equals(result)) {
+			return null;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the condition passed to the in-page script.
+	 * 
+	 * @return the condition or null if it can only be polled
+	 */
+	List<String> getScriptCondition() {
+		return script;
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+
+	/**
+	 * Translates a By to a locator understood by the in-page scripts. Only the
+	 * locators created with the static methods of {@link By} are translated.
+	 * 
+	 * @param by
+	 *            the locator
+	 * @return an array holding the strategy and the value or null if the
+	 *         locator cannot be translated
+	 */
+	static String[] toScriptLocator(final By by) {
+		String value = by.toString();
+		int separator = value.indexOf(": ");
+		if (!value.startsWith("By.") || separator < 0) {
+			return null;
+		}
+		String strategy = value.substring("By.".length(), separator);
+		if (!STRATEGIES.contains(strategy)) {
+			return null;
+		}
+		if ("selector".equals(strategy)) {
+			strategy = "css";
+		}
+		return new String[] { strategy,
+				value.substring(separator + ": ".length()) };
+	}
+}
@@ -0,0 +1,162 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriverException;
+
+/**
+ * Detects when the page is ready by tracking its network activity. A tracker
+ * injected into the page counts the pending XMLHttpRequest and fetch calls and
+ * the pending short timers; the page is ready when it is loaded and nothing
+ * was pending for a given time. This replaces fixed sleeps after actions which
+ * start background work. <br/>
+ * The tracker is installed by the first wait on each page, so to track the
+ * requests started by a click install it before clicking with
+ * {@link #install()}. The requests the page started while loading, before the
+ * tracker was installed, are only seen through the resource timing API of the
+ * browser, once they complete. <br/>
+ * The time to ready of each page load, measured from the start of the
+ * navigation when the browser supports the navigation timing API, is kept as
+ * a metric.
+ * 
+ * @author ludovicianul
+ * 
+ */
+final class PageReadiness {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger.getLogger(PageReadiness.class);
+
+	/**
+	 * The longest time a single asynchronous script is allowed to wait.
+	 */
+	private static final long SLICE_MILLIS = 10000;
+
+	/**
+	 * Used to run the tracker scripts.
+	 */
+	private final ScriptRunner scripts;
+
+	/**
+	 * The last time to ready of each page load, keyed by navigation start and
+	 * URL.
+	 */
+	private final Map<String, PageReadyTime> readyTimes = new LinkedHashMap<String, PageReadyTime>();
+
+	/**
+	 * Creates a new PageReadiness.
+	 * 
+	 * @param runner
+	 *            the ScriptRunner of the driver
+	 */
+	PageReadiness(final ScriptRunner runner) {
+		this.scripts = runner;
+	}
+
+	/**
+	 * Installs the tracker on the current page, if not already installed.
+	 * 
+	 * @return true if the tracker is installed or false if the driver cannot
+	 *         run JavaScript
+	 */
+	boolean install() {
+		if (!scripts.isAvailable()) {
+			return false;
+		}
+		try {
+			scripts.run("tracker");
+			return true;
+		} catch (UnsupportedOperationException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Waits until the page is loaded and had no network activity for the
+	 * supplied time.
+	 * 
+	 * @param idleMillis
+	 *            the number of milliseconds without activity
+	 * @param maximumSeconds
+	 *            the maximum number of seconds to wait
+	 * @return the time to ready of the page in milliseconds, or 0 if the
+	 *         driver cannot run JavaScript, in which case the page has no
+	 *         background activity
+	 * @throws TimeoutException
+	 *             if the page is not idle in time
+	 */
+	long waitForIdle(final int idleMillis, final int maximumSeconds) {
+		long deadline = System.currentTimeMillis()
+				+ TimeUnit.SECONDS.toMillis(maximumSeconds);
+		long remaining = deadline - System.currentTimeMillis();
+		Object pending = null;
+		while (remaining > 0) {
+			if (!install()) {
+				LOG.debug("Network tracking needs JavaScript, the page is ready");
+				return 0;
+			}
+			long slice = Math.min(remaining, SLICE_MILLIS);
+			try {
+				Object result = scripts.runAsync("networkIdle", slice,
+						idleMillis, slice);
+				if (result instanceof List) {
+					List<?> values = (List<?>) result;
+					if (Boolean.TRUE.equals(values.get(0))) {
+						return record(new PageReadyTime(
+								String.valueOf(values.get(2)),
+								((Number) values.get(3)).longValue(),
+								((Number) values.get(1)).longValue()));
+					}
+					pending = values.get(1);
+				}
+			} catch (UnsupportedOperationException e) {
+				return 0;
+			} catch (WebDriverException e) {
+				/**
+				 * the page was probably unloaded while waiting, the tracker is
+				 * installed again on the new page
+				 */
+				LOG.debug("Network idle script failed: " + e.getMessage());
+			}
+			remaining = deadline - System.currentTimeMillis();
+		}
+		throw new TimeoutException("Timed out after " + maximumSeconds
+				+ " seconds waiting for the network to be idle for "
+				+ idleMillis + " ms"
+				+ (pending == null ? "" : ", pending activities: " + pending));
+	}
+
+	/**
+	 * Returns the last time to ready of each page load.
+	 * 
+	 * @return an unmodifiable list of times, in the order the page loads were
+	 *         first measured
+	 */
+	synchronized List<PageReadyTime> getReadyTimes() {
+		return Collections.unmodifiableList(new ArrayList<PageReadyTime>(
+				readyTimes.values()));
+	}
+
+	/**
+	 * Records the time to ready of a page load. Waiting again on the same
+	 * page load replaces its time.
+	 * 
+	 * @param time
+	 *            the time to ready
+	 * @return the time to ready in milliseconds
+	 */
+	private synchronized long record(final PageReadyTime time) {
+		readyTimes.put(time.getNavigationStart() + " " + time.getUrl(), time);
+		LOG.info("Page " + time);
+		return time.getMillis();
+	}
+}
@@ -0,0 +1,69 @@
+package com.insidecoding.sos.webdriver;
+
+/**
+ * The time a page took to be ready, measured by
+ * {@link WebDriverHelper#waitForNetworkIdle(int, int)}. There is one
+ * PageReadyTime for each page load, so loading the same URL twice gives two
+ * of them.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class PageReadyTime {
+
+	private final String url;
+	private final long navigationStart;
+	private final long millis;
+
+	/**
+	 * Creates a new PageReadyTime.
+	 * 
+	 * @param pageUrl
+	 *            the URL of the page
+	 * @param start
+	 *            the start of the navigation, in milliseconds since the epoch
+	 * @param timeToReady
+	 *            the time to ready in milliseconds
+	 */
+	PageReadyTime(final String pageUrl, final long start,
+			final long timeToReady) {
+		this.url = pageUrl;
+		this.navigationStart = start;
+		this.millis = timeToReady;
+	}
+
+	/**
+	 * Returns the URL of the page.
+	 * 
+	 * @return the URL
+	 */
+	public String getUrl() {
+		return url;
+	}
+
+	/**
+	 * Returns the start of the navigation which loaded the page, or the time
+	 * the network tracker was installed when the browser does not support the
+	 * navigation timing API.
+	 * 
+	 * @return the time in milliseconds since the epoch
+	 */
+	public long getNavigationStart() {
+		return navigationStart;
+	}
+
+	/**
+	 * Returns the time from the start of the navigation until the page was
+	 * loaded and its network activity stopped.
+	 * 
+	 * @return the time to ready in milliseconds
+	 */
+	public long getMillis() {
+		return millis;
+	}
+
+	@Override
+	public String toString() {
+		return url + " ready after " + millis + " ms";
+	}
+}
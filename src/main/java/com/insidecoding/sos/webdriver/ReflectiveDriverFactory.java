@@ -0,0 +1,111 @@
+package com.insidecoding.sos.webdriver;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+/**
+ * {@link DriverFactory} creating drivers through the constructor accepting a
+ * {@link Capabilities} argument. The driver class is loaded and its
+ * constructor resolved only once, the first time a driver is created, so
+ * browsers whose driver is not on the classpath can still be registered.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class ReflectiveDriverFactory implements DriverFactory {
+
+	/**
+	 * The browser names handled by the factory.
+	 */
+	private final String[] browserNames;
+
+	/**
+	 * The capabilities template.
+	 */
+	private final DesiredCapabilities capabilities;
+
+	/**
+	 * The fully qualified name of the driver class.
+	 */
+	private final String driverClassName;
+
+	/**
+	 * The driver constructor, resolved on first use.
+	 */
+	private Constructor<? extends WebDriver> constructor;
+
+	/**
+	 * Creates a new factory.
+	 * 
+	 * @param names
+	 *            the browser names handled by the factory
+	 * @param caps
+	 *            the capabilities template
+	 * @param className
+	 *            the fully qualified name of the driver class
+	 */
+	public ReflectiveDriverFactory(final String[] names,
+			final DesiredCapabilities caps, final String className) {
+		this.browserNames = names.clone();
+		this.capabilities = caps;
+		this.driverClassName = className;
+	}
+
+	@Override
+	public String[] getBrowserNames() {
+		return browserNames.clone();
+	}
+
+	@Override
+	public DesiredCapabilities getCapabilities() {
+		return capabilities;
+	}
+
+	@Override
+	public WebDriver newDriver(final Capabilities caps) {
+		try {
+			return getConstructor().newInstance(caps);
+		} catch (InvocationTargetException e) {
+			throw new WebDriverException("Unable to create " + driverClassName,
+					e.getCause());
+		} catch (InstantiationException e) {
+			throw new WebDriverException("Unable to create " + driverClassName,
+					e);
+		} catch (IllegalAccessException e) {
+			throw new WebDriverException("Unable to create " + driverClassName,
+					e);
+		}
+	}
+
+	/**
+	 * Returns the driver constructor, resolving it on first use.
+	 * 
+	 * @return the constructor accepting a Capabilities argument
+	 */
+	private synchronized Constructor<? extends WebDriver> getConstructor() {
+		if (constructor == null) {
+			try {
+				constructor = Class.forName(driverClassName)
+						.asSubclass(WebDriver.class)
+						.getConstructor(Capabilities.class);
+			} catch (ClassNotFoundException e) {
+				throw new WebDriverException("Driver class not found: "
+						+ driverClassName, e);
+			} catch (NoSuchMethodException e) {
+				throw new WebDriverException(driverClassName
+						+ " has no Capabilities constructor", e);
+			}
+		}
+		return constructor;
+	}
+
+	@Override
+	public String toString() {
+		return "ReflectiveDriverFactory [driverClass=" + driverClassName + "]";
+	}
+}
@@ -0,0 +1,75 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.internal.WrapsDriver;
+import org.openqa.selenium.remote.Augmenter;
+import org.openqa.selenium.remote.RemoteWebDriver;
+
+/**
+ * Finds the object taking the screenshots of a driver. The drivers wrapping
+ * other drivers are looked through, and the RemoteWebDriver instances used
+ * with the grid, which do not take screenshots themselves, are augmented once
+ * per session. All the screenshots of the library are taken through this
+ * class, so that they work the same way with every driver.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class Screenshots {
+
+	/**
+	 * Augments the drivers which cannot take screenshots themselves.
+	 */
+	private static final Augmenter AUGMENTER = new Augmenter();
+
+	/**
+	 * The augmented drivers, kept for as long as their session is in use.
+	 */
+	private static final Map<WebDriver, TakesScreenshot> AUGMENTED = new WeakHashMap<WebDriver, TakesScreenshot>();
+
+	private Screenshots() {
+
+	}
+
+	/**
+	 * Returns the object taking the screenshots of the driver.
+	 * 
+	 * @param driver
+	 *            the driver
+	 * @return the object taking the screenshots or null if the driver cannot
+	 *         take screenshots
+	 */
+	public static TakesScreenshot cameraFor(final WebDriver driver) {
+		WebDriver actual = driver;
+		while (!(actual instanceof TakesScreenshot)
+				&& actual instanceof WrapsDriver) {
+			actual = ((WrapsDriver) actual).getWrappedDriver();
+		}
+		if (actual instanceof TakesScreenshot) {
+			return (TakesScreenshot) actual;
+		}
+		/**
+		 * the Augmenter only works with the RemoteWebDriver itself, not with
+		 * the drivers wrapping it
+		 */
+		if (!(actual instanceof RemoteWebDriver)) {
+			return null;
+		}
+		synchronized (AUGMENTED) {
+			TakesScreenshot augmented = AUGMENTED.get(actual);
+			if (augmented == null) {
+				WebDriver result = AUGMENTER.augment(actual);
+				if (!(result instanceof TakesScreenshot)) {
+					return null;
+				}
+				augmented = (TakesScreenshot) result;
+				AUGMENTED.put(actual, augmented);
+			}
+			return augmented;
+		}
+	}
+}
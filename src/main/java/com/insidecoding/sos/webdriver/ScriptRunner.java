@@ -0,0 +1,257 @@
+package com.insidecoding.sos.webdriver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.HasCapabilities;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.internal.WrapsDriver;
+
+/**
+ * Runs the JavaScript snippets used to replace multiple WebDriver calls with a
+ * single round-trip. The scripts are stored as resources in the
+ * {@code com/insidecoding/sos/webdriver/scripts} folder and are loaded only
+ * once. The functions in {@code dom.js} are available to every script. <br/>
+ * Callers must check {@link #isAvailable()} and fall back to the plain
+ * WebDriver API for drivers which cannot execute JavaScript.
+ * 
+ * @author ludovicianul
+ * 
+ */
+final class ScriptRunner {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger.getLogger(ScriptRunner.class);
+
+	/**
+	 * The location of the script resources.
+	 */
+	private static final String SCRIPTS_FOLDER = "scripts/";
+
+	/**
+	 * The script holding the functions shared by all the scripts.
+	 */
+	private static final String LIBRARY = "dom";
+
+	/**
+	 * Starts the scripts which only read the page, so that running them does
+	 * not make the DOM snapshots stale.
+	 */
+	static final String READ_ONLY = "/* read-only */\n";
+
+	/**
+	 * The scripts which only read the page.
+	 */
+	private static final Set<String> READ_ONLY_SCRIPTS = new HashSet<String>(
+			Arrays.asList("batch", "networkIdle", "search", "table", "waitFor",
+					"widgets"));
+
+	/**
+	 * Added to the script timeout so that asynchronous scripts can call back
+	 * before the driver gives up on them.
+	 */
+	private static final long SCRIPT_TIMEOUT_MARGIN = 2000;
+
+	/**
+	 * The scripts already loaded indexed by name.
+	 */
+	private static final Map<String, String> SCRIPTS = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * The WebDriver running the scripts.
+	 */
+	private final WebDriver driver;
+
+	/**
+	 * Set to false once the driver proves it cannot execute JavaScript.
+	 */
+	private volatile Boolean available;
+
+	/**
+	 * The script timeout last set on the driver in milliseconds.
+	 */
+	private long scriptTimeout = -1;
+
+	/**
+	 * Creates a new ScriptRunner for the supplied driver.
+	 * 
+	 * @param d
+	 *            the WebDriver instance
+	 */
+	ScriptRunner(final WebDriver d) {
+		this.driver = d;
+	}
+
+	/**
+	 * Checks if the driver can execute JavaScript.
+	 * 
+	 * @return true if scripts can be executed or false otherwise
+	 */
+	boolean isAvailable() {
+		if (available == null) {
+			available = detectJavascript();
+		}
+		return available;
+	}
+
+	/**
+	 * Executes the script resource with the supplied name. If the driver
+	 * refuses to run JavaScript the runner is marked as unavailable and the
+	 * exception is re-thrown so that the caller can fall back.
+	 * 
+	 * @param name
+	 *            the name of the script without the {@code .js} extension
+	 * @param args
+	 *            the script arguments
+	 * @return the value returned by the script
+	 */
+	Object run(final String name, final Object... args) {
+		return execute(load(name), args);
+	}
+
+	/**
+	 * Executes the supplied script source.
+	 * 
+	 * @param script
+	 *            the JavaScript source
+	 * @param args
+	 *            the script arguments
+	 * @return the value returned by the script
+	 */
+	Object execute(final String script, final Object... args) {
+		try {
+			return ((JavascriptExecutor) driver).executeScript(script, args);
+		} catch (UnsupportedOperationException e) {
+			LOG.debug("JavaScript is not supported by the driver: "
+					+ e.getMessage());
+			available = false;
+			throw e;
+		}
+	}
+
+	/**
+	 * Executes the asynchronous script resource with the supplied name. The
+	 * driver script timeout is raised if needed so that the script can wait
+	 * for at least {@code timeoutMillis}.
+	 * 
+	 * @param name
+	 *            the name of the script without the {@code .js} extension
+	 * @param timeoutMillis
+	 *            the maximum time the script will wait before calling back
+	 * @param args
+	 *            the script arguments
+	 * @return the value passed by the script to its callback
+	 */
+	Object runAsync(final String name, final long timeoutMillis,
+			final Object... args) {
+		ensureScriptTimeout(timeoutMillis + SCRIPT_TIMEOUT_MARGIN);
+		try {
+			return ((JavascriptExecutor) driver).executeAsyncScript(
+					load(name), args);
+		} catch (UnsupportedOperationException e) {
+			LOG.debug("JavaScript is not supported by the driver: "
+					+ e.getMessage());
+			available = false;
+			throw e;
+		}
+	}
+
+	/**
+	 * Raises the driver script timeout if it is lower than the supplied value.
+	 * 
+	 * @param millis
+	 *            the minimum script timeout in milliseconds
+	 */
+	private synchronized void ensureScriptTimeout(final long millis) {
+		if (scriptTimeout < millis) {
+			driver.manage().timeouts()
+					.setScriptTimeout(millis, TimeUnit.MILLISECONDS);
+			scriptTimeout = millis;
+		}
+	}
+
+	/**
+	 * Returns the source of the script resource with the supplied name,
+	 * preceded by the functions shared by all the scripts and, for the
+	 * scripts which only read the page, by {@link #READ_ONLY}.
+	 * 
+	 * @param name
+	 *            the name of the script without the {@code .js} extension
+	 * @return the script source
+	 */
+	static String load(final String name) {
+		String script = SCRIPTS.get(name);
+		if (script == null) {
+			script = read(LIBRARY) + read(name);
+			if (READ_ONLY_SCRIPTS.contains(name)) {
+				script = READ_ONLY + script;
+			}
+			SCRIPTS.put(name, script);
+		}
+		return script;
+	}
+
+	/**
+	 * Reads the script resource with the supplied name.
+	 * 
+	 * @param name
+	 *            the name of the script without the {@code .js} extension
+	 * @return the resource contents
+	 */
+	private static String read(final String name) {
+		InputStream in = ScriptRunner.class.getResourceAsStream(SCRIPTS_FOLDER
+				+ name + ".js");
+		if (in == null) {
+			throw new IllegalArgumentException("Script not found: " + name);
+		}
+		try {
+			return IOUtils.toString(in, "UTF-8");
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to read script: " + name,
+					e);
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	/**
+	 * Checks if the driver implements JavascriptExecutor and has JavaScript
+	 * enabled.
+	 * 
+	 * @return true if JavaScript can be used
+	 */
+	private boolean detectJavascript() {
+		WebDriver actual = driver;
+		while (!(actual instanceof HasCapabilities)
+				&& actual instanceof WrapsDriver) {
+			actual = ((WrapsDriver) actual).getWrappedDriver();
+		}
+		if (!(driver instanceof JavascriptExecutor)
+				|| !(actual instanceof JavascriptExecutor)) {
+			return false;
+		}
+		if (actual instanceof HasCapabilities) {
+			try {
+				Capabilities caps = ((HasCapabilities) actual)
+						.getCapabilities();
+				return caps == null || caps.isJavascriptEnabled();
+			} catch (RuntimeException e) {
+				LOG.debug("Unable to read driver capabilities: "
+						+ e.getMessage());
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,92 @@
+package com.insidecoding.sos.webdriver;
+
+/**
+ * Holds the outcome of scrolling through an infinite-scroll page with
+ * {@link WebDriverHelper#scrollUntilStable(int, int)} or
+ * {@link WebDriverHelper#scrollUntil(org.openqa.selenium.By, int, int, int)}.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class ScrollResult {
+
+	/**
+	 * Why the scrolling stopped.
+	 */
+	enum Reason {
+		TARGET, STABLE, TIMEOUT
+	}
+
+	private final int batches;
+	private final long elapsedMillis;
+	private final Reason reason;
+
+	/**
+	 * Creates a new ScrollResult.
+	 * 
+	 * @param batches
+	 *            the number of times new content was loaded
+	 * @param elapsedMillis
+	 *            the time spent scrolling
+	 * @param reason
+	 *            why the scrolling stopped
+	 */
+	ScrollResult(final int batches, final long elapsedMillis,
+			final Reason reason) {
+		this.batches = batches;
+		this.elapsedMillis = elapsedMillis;
+		this.reason = reason;
+	}
+
+	/**
+	 * Returns the number of times new content was loaded after scrolling.
+	 * 
+	 * @return the number of batches loaded
+	 */
+	public int getBatches() {
+		return batches;
+	}
+
+	/**
+	 * Returns the time spent scrolling and waiting for new content.
+	 * 
+	 * @return the elapsed time in milliseconds
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * Checks if the target elements were found.
+	 * 
+	 * @return true if the scrolling stopped because the target was reached
+	 */
+	public boolean isTargetReached() {
+		return reason == Reason.TARGET;
+	}
+
+	/**
+	 * Checks if the scrolling stopped because no new content was loaded.
+	 * 
+	 * @return true if the page stopped growing or false otherwise
+	 */
+	public boolean isStable() {
+		return reason == Reason.STABLE;
+	}
+
+	/**
+	 * Checks if the scrolling stopped because the maximum time elapsed while
+	 * the page was still loading content.
+	 * 
+	 * @return true if the time ran out or false otherwise
+	 */
+	public boolean isTimedOut() {
+		return reason == Reason.TIMEOUT;
+	}
+
+	@Override
+	public String toString() {
+		return "ScrollResult[batches=" + batches + ", elapsed=" + elapsedMillis
+				+ " ms, reason=" + reason + "]";
+	}
+}
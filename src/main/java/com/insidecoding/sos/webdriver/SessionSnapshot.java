@@ -0,0 +1,202 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+
+import org.openqa.selenium.Cookie;
+
+/**
+ * The state of a logged in session: the cookies and the localStorage and
+ * sessionStorage entries of the page where it was captured. Snapshots are
+ * captured with {@link WebDriverHelper#captureSession()} and restored into
+ * other drivers with
+ * {@link WebDriverHelper#goToUrlWithSession(String, SessionSnapshot)}.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class SessionSnapshot {
+
+	private static final String CREATED = "created";
+	private static final String COOKIE = "cookie.";
+	private static final String LOCAL = "local.";
+	private static final String SESSION = "session.";
+
+	private final List<Cookie> cookies;
+	private final Map<String, String> localStorage;
+	private final Map<String, String> sessionStorage;
+	private final long created;
+
+	/**
+	 * Creates a new SessionSnapshot.
+	 * 
+	 * @param cookies
+	 *            the session cookies
+	 * @param localStorage
+	 *            the localStorage entries
+	 * @param sessionStorage
+	 *            the sessionStorage entries
+	 * @param created
+	 *            the time when the session was captured
+	 */
+	SessionSnapshot(final List<Cookie> cookies,
+			final Map<String, String> localStorage,
+			final Map<String, String> sessionStorage, final long created) {
+		this.cookies = Collections.unmodifiableList(new ArrayList<Cookie>(
+				cookies));
+		this.localStorage = Collections
+				.unmodifiableMap(new LinkedHashMap<String, String>(
+						localStorage));
+		this.sessionStorage = Collections
+				.unmodifiableMap(new LinkedHashMap<String, String>(
+						sessionStorage));
+		this.created = created;
+	}
+
+	/**
+	 * Returns the session cookies.
+	 * 
+	 * @return an unmodifiable list of cookies
+	 */
+	public List<Cookie> getCookies() {
+		return cookies;
+	}
+
+	/**
+	 * Returns the localStorage entries.
+	 * 
+	 * @return an unmodifiable map of the entries
+	 */
+	public Map<String, String> getLocalStorage() {
+		return localStorage;
+	}
+
+	/**
+	 * Returns the sessionStorage entries.
+	 * 
+	 * @return an unmodifiable map of the entries
+	 */
+	public Map<String, String> getSessionStorage() {
+		return sessionStorage;
+	}
+
+	/**
+	 * Returns the time when the session was captured.
+	 * 
+	 * @return the capture time in milliseconds
+	 */
+	public long getCreated() {
+		return created;
+	}
+
+	/**
+	 * Checks if the snapshot is older than the supplied time to live or if
+	 * any of its cookies expired.
+	 * 
+	 * @param ttlMillis
+	 *            the time to live in milliseconds
+	 * @param now
+	 *            the current time in milliseconds
+	 * @return true if the snapshot can no longer be used or false otherwise
+	 */
+	public boolean isExpired(final long ttlMillis, final long now) {
+		if (now - created >= ttlMillis) {
+			return true;
+		}
+		for (Cookie cookie : cookies) {
+			if (cookie.getExpiry() != null
+					&& cookie.getExpiry().getTime() <= now) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "SessionSnapshot[cookies=" + cookies.size() + ", localStorage="
+				+ localStorage.size() + ", sessionStorage="
+				+ sessionStorage.size() + ", created=" + new Date(created)
+				+ "]";
+	}
+
+	/**
+	 * Converts the snapshot to properties so that it can be saved on disk.
+	 * 
+	 * @return the snapshot as properties
+	 */
+	Properties toProperties() {
+		Properties properties = new Properties();
+		properties.setProperty(CREATED, String.valueOf(created));
+		for (int i = 0; i < cookies.size(); i++) {
+			Cookie cookie = cookies.get(i);
+			String prefix = COOKIE + i + ".";
+			properties.setProperty(prefix + "name", cookie.getName());
+			properties.setProperty(prefix + "value", cookie.getValue());
+			properties.setProperty(prefix + "path", cookie.getPath());
+			properties.setProperty(prefix + "secure",
+					String.valueOf(cookie.isSecure()));
+			if (cookie.getDomain() != null) {
+				properties.setProperty(prefix + "domain", cookie.getDomain());
+			}
+			if (cookie.getExpiry() != null) {
+				properties.setProperty(prefix + "expiry",
+						String.valueOf(cookie.getExpiry().getTime()));
+			}
+		}
+		for (Entry<String, String> entry : localStorage.entrySet()) {
+			properties.setProperty(LOCAL + entry.getKey(), entry.getValue());
+		}
+		for (Entry<String, String> entry : sessionStorage.entrySet()) {
+			properties.setProperty(SESSION + entry.getKey(), entry.getValue());
+		}
+		return properties;
+	}
+
+	/**
+	 * Creates a snapshot from the properties saved by
+	 * {@link #toProperties()}.
+	 * 
+	 * @param properties
+	 *            the saved properties
+	 * @return the snapshot
+	 * @throws IllegalArgumentException
+	 *             if the properties do not hold a valid snapshot
+	 */
+	static SessionSnapshot fromProperties(final Properties properties) {
+		String createdValue = properties.getProperty(CREATED);
+		if (createdValue == null) {
+			throw new IllegalArgumentException("Not a session snapshot!");
+		}
+		List<Cookie> cookies = new ArrayList<Cookie>();
+		for (int i = 0; properties.getProperty(COOKIE + i + ".name") != null; i++) {
+			String prefix = COOKIE + i + ".";
+			String expiry = properties.getProperty(prefix + "expiry");
+			cookies.add(new Cookie(properties.getProperty(prefix + "name"),
+					properties.getProperty(prefix + "value"), properties
+							.getProperty(prefix + "domain"), properties
+							.getProperty(prefix + "path"),
+					expiry == null ? null : new Date(Long.parseLong(expiry)),
+					Boolean.valueOf(properties.getProperty(prefix + "secure"))));
+		}
+		Map<String, String> local = new LinkedHashMap<String, String>();
+		Map<String, String> session = new LinkedHashMap<String, String>();
+		for (String name : properties.stringPropertyNames()) {
+			if (name.startsWith(LOCAL)) {
+				local.put(name.substring(LOCAL.length()),
+						properties.getProperty(name));
+			} else if (name.startsWith(SESSION)) {
+				session.put(name.substring(SESSION.length()),
+						properties.getProperty(name));
+			}
+		}
+		return new SessionSnapshot(cookies, local, session,
+				Long.parseLong(createdValue));
+	}
+}
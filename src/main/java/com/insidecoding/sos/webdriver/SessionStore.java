@@ -0,0 +1,322 @@
+package com.insidecoding.sos.webdriver;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Saves logged in sessions so that tests can skip the login flow. A session is
+ * captured once after logging in through the UI, kept in memory for the rest
+ * of the run and saved on disk for the next runs, keyed by user and
+ * environment. <br/>
+ * Sessions older than the time to live, or holding expired cookies, are
+ * discarded. Restored sessions rejected by the application are detected with
+ * {@link LoginFlow#isLoggedIn(WebDriverHelper)} and created again. <br/>
+ * The session files hold the cookies and the local storage of the users, auth
+ * tokens included, as plain text. The folder and the files are readable only
+ * by the current user where the file system allows it.
+ * 
+ * <pre>
+ * store.open(helper, &quot;http://qa.example.com/home&quot;,
+ * 		SessionStore.key(&quot;frodo&quot;, &quot;qa&quot;), new FrodoLogin());
+ * </pre>
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class SessionStore {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger.getLogger(SessionStore.class);
+
+	/**
+	 * The extension of the session files.
+	 */
+	private static final String EXTENSION = ".session";
+
+	/**
+	 * The folder holding the session files.
+	 */
+	private final File folder;
+
+	/**
+	 * The time to live of the sessions in milliseconds.
+	 */
+	private final long ttlMillis;
+
+	/**
+	 * The sessions used during this run.
+	 */
+	private final ConcurrentMap<String, SessionSnapshot> sessions = new ConcurrentHashMap<String, SessionSnapshot>();
+
+	/**
+	 * Used so that only one test logs in for a given key.
+	 */
+	private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+	/**
+	 * Creates a new SessionStore.
+	 * 
+	 * @param sessionFolder
+	 *            the folder where the sessions are saved
+	 * @param ttl
+	 *            the time to live of the sessions
+	 * @param unit
+	 *            the unit of the time to live
+	 */
+	public SessionStore(final File sessionFolder, final long ttl,
+			final TimeUnit unit) {
+		this.folder = sessionFolder;
+		this.ttlMillis = unit.toMillis(ttl);
+	}
+
+	/**
+	 * Builds the key of a session.
+	 * 
+	 * @param user
+	 *            the user name
+	 * @param environment
+	 *            the environment name
+	 * @return the session key
+	 */
+	public static String key(final String user, final String environment) {
+		return user + "@" + environment;
+	}
+
+	/**
+	 * Opens the URL as a logged in user. A saved session is restored if there
+	 * is one; otherwise, or if the application rejects the restored session,
+	 * the user logs in through the supplied flow and the new session is saved.
+	 * 
+	 * @param helper
+	 *            the helper of the driver
+	 * @param url
+	 *            the URL to open
+	 * @param key
+	 *            the session key
+	 * @param flow
+	 *            logs the user in
+	 */
+	public void open(final WebDriverHelper helper, final String url,
+			final String key, final LoginFlow flow) {
+		SessionSnapshot session = get(key);
+		if (session != null) {
+			helper.goToUrlWithSession(url, session);
+			if (flow.isLoggedIn(helper)) {
+				LOG.info("Restored session: " + key);
+				return;
+			}
+			LOG.info("Session " + key + " was rejected, logging in again");
+			remove(key, session);
+		}
+
+		synchronized (lockFor(key)) {
+			/**
+			 * another test may have logged in while we were waiting
+			 */
+			SessionSnapshot current = get(key);
+			if (current != null && current != session) {
+				helper.goToUrlWithSession(url, current);
+				if (flow.isLoggedIn(helper)) {
+					LOG.info("Restored session: " + key);
+					return;
+				}
+				remove(key, current);
+			}
+			LOG.info("Logging in: " + key);
+			flow.login(helper);
+			put(key, helper.captureSession());
+		}
+		helper.getDriver().get(url);
+	}
+
+	/**
+	 * Returns the session saved for the supplied key.
+	 * 
+	 * @param key
+	 *            the session key
+	 * @return the session or null if there is no valid session for the key
+	 */
+	public SessionSnapshot get(final String key) {
+		SessionSnapshot session = sessions.get(key);
+		if (session == null) {
+			session = read(key);
+			if (session != null) {
+				SessionSnapshot existing = sessions.putIfAbsent(key, session);
+				if (existing != null) {
+					session = existing;
+				}
+			}
+		}
+		if (session != null
+				&& session.isExpired(ttlMillis, System.currentTimeMillis())) {
+			LOG.info("Session " + key + " expired");
+			remove(key, session);
+			return null;
+		}
+		return session;
+	}
+
+	/**
+	 * Saves a session in memory and on disk.
+	 * 
+	 * @param key
+	 *            the session key
+	 * @param session
+	 *            the session
+	 */
+	public void put(final String key, final SessionSnapshot session) {
+		sessions.put(key, session);
+		write(key, session);
+	}
+
+	/**
+	 * Removes the session saved for the supplied key.
+	 * 
+	 * @param key
+	 *            the session key
+	 */
+	public void remove(final String key) {
+		sessions.remove(key);
+		fileFor(key).delete();
+	}
+
+	/**
+	 * Removes the session only if it was not replaced in the meantime.
+	 * 
+	 * @param key
+	 *            the session key
+	 * @param session
+	 *            the session to remove
+	 */
+	private void remove(final String key, final SessionSnapshot session) {
+		if (sessions.remove(key, session) || !sessions.containsKey(key)) {
+			fileFor(key).delete();
+		}
+	}
+
+	/**
+	 * Reads the session file for the supplied key.
+	 * 
+	 * @param key
+	 *            the session key
+	 * @return the session or null if there is no readable session file
+	 */
+	private SessionSnapshot read(final String key) {
+		File file = fileFor(key);
+		if (!file.isFile()) {
+			return null;
+		}
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			Properties properties = new Properties();
+			properties.load(in);
+			return SessionSnapshot.fromProperties(properties);
+		} catch (IOException e) {
+			LOG.warn("Unable to read session file " + file + ": "
+					+ e.getMessage());
+		} catch (IllegalArgumentException e) {
+			LOG.warn("Invalid session file " + file + ": " + e.getMessage());
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		return null;
+	}
+
+	/**
+	 * Writes the session file for the supplied key. The file is written under
+	 * a temporary name first so that other runs never read partial files, and
+	 * is restricted to the current user before the session is written.
+	 * 
+	 * @param key
+	 *            the session key
+	 * @param session
+	 *            the session
+	 */
+	private void write(final String key, final SessionSnapshot session) {
+		File file = fileFor(key);
+		File temp = new File(folder, file.getName() + ".tmp");
+		OutputStream out = null;
+		try {
+			if (folder.mkdirs()) {
+				restrictToOwner(folder);
+			}
+			temp.createNewFile();
+			restrictToOwner(temp);
+			out = new FileOutputStream(temp);
+			session.toProperties().store(out, "Session " + key);
+			out.close();
+			out = null;
+			file.delete();
+			if (!temp.renameTo(file)) {
+				LOG.warn("Unable to save session file " + file);
+			}
+		} catch (IOException e) {
+			LOG.warn("Unable to save session file " + file + ": "
+					+ e.getMessage());
+		} finally {
+			IOUtils.closeQuietly(out);
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Makes the supplied file or folder readable and writable only by the
+	 * current user. A warning is logged if the file system does not allow it.
+	 * 
+	 * @param file
+	 *            the file or folder
+	 */
+	private static void restrictToOwner(final File file) {
+		boolean restricted = file.setReadable(false, false)
+				&& file.setReadable(true, true)
+				&& file.setWritable(false, false)
+				&& file.setWritable(true, true);
+		if (file.isDirectory()) {
+			restricted = restricted && file.setExecutable(false, false)
+					&& file.setExecutable(true, true);
+		}
+		if (!restricted) {
+			LOG.warn("Unable to restrict the permissions of " + file
+					+ ", other users may read the saved sessions");
+		}
+	}
+
+	/**
+	 * Returns the session file for the supplied key.
+	 * 
+	 * @param key
+	 *            the session key
+	 * @return the session file
+	 */
+	private File fileFor(final String key) {
+		return new File(folder, key.replaceAll("[^A-Za-z0-9@._-]", "_")
+				+ EXTENSION);
+	}
+
+	/**
+	 * Returns the lock used when logging in for the supplied key.
+	 * 
+	 * @param key
+	 *            the session key
+	 * @return the lock
+	 */
+	private Object lockFor(final String key) {
+		Object lock = new Object();
+		Object existing = locks.putIfAbsent(key, lock);
+		return existing == null ? lock : existing;
+	}
+}
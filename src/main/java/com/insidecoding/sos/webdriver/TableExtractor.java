@@ -0,0 +1,368 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+
+/**
+ * Extracts the contents of HTML tables. When the driver supports JavaScript
+ * the whole table is read with a single script call; otherwise every row and
+ * cell is read through the WebDriver API. <br/>
+ * In both cases cells spanning multiple columns or rows are repeated in every
+ * position they cover, so the column indexes are the same for all the rows.
+ * 
+ * @author ludovicianul
+ * 
+ */
+final class TableExtractor {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger.getLogger(TableExtractor.class);
+
+	/**
+	 * Selects the rows of a table without the rows of nested tables.
+	 */
+	private static final By ROWS = By
+			.xpath("./tr|./thead/tr|./tbody/tr|./tfoot/tr");
+
+	/**
+	 * Selects the data cells of a row.
+	 */
+	private static final By DATA_CELLS = By.xpath("./td");
+
+	/**
+	 * Selects the header and data cells of a row.
+	 */
+	private static final By ALL_CELLS = By.xpath("./td|./th");
+
+	/**
+	 * The WebDriver instance.
+	 */
+	private final WebDriver driver;
+
+	/**
+	 * Used to run the extraction script.
+	 */
+	private final ScriptRunner scripts;
+
+	/**
+	 * Creates a new TableExtractor.
+	 * 
+	 * @param d
+	 *            the WebDriver instance
+	 * @param runner
+	 *            the ScriptRunner of the driver
+	 */
+	TableExtractor(final WebDriver d, final ScriptRunner runner) {
+		this.driver = d;
+		this.scripts = runner;
+	}
+
+	/**
+	 * Returns the rows of the table.
+	 * 
+	 * @param tableBy
+	 *            the method of identifying the table
+	 * @param includeHeaders
+	 *            true to include the {@code th} cells
+	 * @return the table rows
+	 */
+	List<List<String>> getRows(final By tableBy, final boolean includeHeaders) {
+		WebElement table = driver.findElement(tableBy);
+		if (scripts.isAvailable()) {
+			try {
+				return extractWithScript(table, includeHeaders);
+			} catch (UnsupportedOperationException e) {
+				LOG.debug("Falling back to per cell table extraction");
+			}
+		}
+		return extractWithElements(table, includeHeaders);
+	}
+
+	/**
+	 * Returns only the supplied columns of the table. When the driver
+	 * supports JavaScript only the text of the selected cells is read.
+	 * 
+	 * @param tableBy
+	 *            the method of identifying the table
+	 * @param includeHeaders
+	 *            true to include the {@code th} cells
+	 * @param columns
+	 *            the indexes of the columns to return
+	 * @return the table rows containing only the selected columns; missing
+	 *         cells are returned as empty strings
+	 */
+	List<List<String>> getColumns(final By tableBy,
+			final boolean includeHeaders, final int... columns) {
+		WebElement table = driver.findElement(tableBy);
+		if (scripts.isAvailable()) {
+			try {
+				List<Integer> indexes = new ArrayList<Integer>(columns.length);
+				for (int column : columns) {
+					indexes.add(column);
+				}
+				List<List<String>> rows = selectWithScript(table,
+						includeHeaders, indexes);
+				for (List<String> row : rows) {
+					for (int i = 0; i < row.size(); i++) {
+						if (row.get(i) == null) {
+							row.set(i, "");
+						}
+					}
+				}
+				return rows;
+			} catch (UnsupportedOperationException e) {
+				LOG.debug("Falling back to per cell table extraction");
+			}
+		}
+		List<List<String>> rows = extractWithElements(table, includeHeaders);
+		List<List<String>> result = new ArrayList<List<String>>(rows.size());
+		for (List<String> row : rows) {
+			List<String> selected = new ArrayList<String>(columns.length);
+			for (int column : columns) {
+				selected.add(column < row.size() ? row.get(column) : "");
+			}
+			result.add(selected);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the values below the header cell with the supplied text. When
+	 * the driver supports JavaScript only the text of the header rows and of
+	 * the cells in the column is read.
+	 * 
+	 * @param tableBy
+	 *            the method of identifying the table
+	 * @param header
+	 *            the text of the header cell
+	 * @return the values of the column or an empty list if there is no such
+	 *         header
+	 */
+	List<String> getColumn(final By tableBy, final String header) {
+		WebElement table = driver.findElement(tableBy);
+		List<String> result = new ArrayList<String>();
+		if (scripts.isAvailable()) {
+			try {
+				for (List<String> row : selectWithScript(table, true,
+						Collections.emptyList(), header)) {
+					if (row.get(0) != null) {
+						result.add(row.get(0));
+					}
+				}
+				return result;
+			} catch (UnsupportedOperationException e) {
+				LOG.debug("Falling back to per cell table extraction");
+			}
+		}
+		int column = -1;
+		for (List<String> row : extractWithElements(table, true)) {
+			if (column < 0) {
+				column = row.indexOf(header);
+			} else if (column < row.size()) {
+				result.add(row.get(column));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the selected columns of the table with a single script call.
+	 * 
+	 * @param table
+	 *            the table element
+	 * @param includeHeaders
+	 *            true to include the {@code th} cells
+	 * @param selection
+	 *            the indexes of the columns to return, or an empty list
+	 *            followed by the text of the header cell of the column to
+	 *            return
+	 * @return the selected cells of each row, null for the columns past the
+	 *         end of the row
+	 */
+	private List<List<String>> selectWithScript(final WebElement table,
+			final boolean includeHeaders, final Object... selection) {
+		Object[] args = new Object[selection.length + 2];
+		args[0] = table;
+		args[1] = includeHeaders;
+		System.arraycopy(selection, 0, args, 2, selection.length);
+		List<?> rows = (List<?>) scripts.run("table", args);
+		List<List<String>> result = new ArrayList<List<String>>(rows.size());
+		for (Object row : rows) {
+			List<String> values = new ArrayList<String>();
+			for (Object value : (List<?>) row) {
+				values.add(value == null ? null : String.valueOf(value));
+			}
+			result.add(values);
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the table with a single script call.
+	 * 
+	 * @param table
+	 *            the table element
+	 * @param includeHeaders
+	 *            true to include the {@code th} cells
+	 * @return the normalised table rows
+	 */
+	List<List<String>> extractWithScript(final WebElement table,
+			final boolean includeHeaders) {
+		List<?> rows = (List<?>) scripts.run("table", table, includeHeaders);
+		List<List<Cell>> cells = new ArrayList<List<Cell>>(rows.size());
+		for (Object row : rows) {
+			List<?> values = (List<?>) row;
+			List<Cell> rowCells = new ArrayList<Cell>(values.size() / 3);
+			for (int i = 0; i + 2 < values.size(); i += 3) {
+				rowCells.add(new Cell(String.valueOf(values.get(i)),
+						toInt(values.get(i + 1)), toInt(values.get(i + 2))));
+			}
+			cells.add(rowCells);
+		}
+		return normalise(cells);
+	}
+
+	/**
+	 * Reads the table cell by cell using the WebDriver API.
+	 * 
+	 * @param table
+	 *            the table element
+	 * @param includeHeaders
+	 *            true to include the {@code th} cells
+	 * @return the normalised table rows
+	 */
+	List<List<String>> extractWithElements(final WebElement table,
+			final boolean includeHeaders) {
+		List<List<Cell>> cells = new ArrayList<List<Cell>>();
+		for (WebElement row : table.findElements(ROWS)) {
+			List<Cell> rowCells = new ArrayList<Cell>();
+			for (WebElement cell : row.findElements(includeHeaders ? ALL_CELLS
+					: DATA_CELLS)) {
+				rowCells.add(new Cell(cell.getText(), toInt(cell
+						.getAttribute("colspan")), toInt(cell
+						.getAttribute("rowspan"))));
+			}
+			cells.add(rowCells);
+		}
+		return normalise(cells);
+	}
+
+	/**
+	 * Expands the cells spanning multiple columns or rows.
+	 * 
+	 * @param rows
+	 *            the table cells
+	 * @return the table rows
+	 */
+	static List<List<String>> normalise(final List<List<Cell>> rows) {
+		List<List<String>> result = new ArrayList<List<String>>(rows.size());
+		/**
+		 * the cells coming from previous rows through rowspan
+		 */
+		List<Cell> carried = new ArrayList<Cell>();
+		List<Integer> remaining = new ArrayList<Integer>();
+
+		for (List<Cell> row : rows) {
+			List<String> line = new ArrayList<String>(row.size());
+			int column = 0;
+			for (Cell cell : row) {
+				column = addCarried(line, column, carried, remaining, false);
+				for (int i = 0; i < cell.colspan; i++) {
+					line.add(cell.text);
+					while (carried.size() <= column) {
+						carried.add(null);
+						remaining.add(0);
+					}
+					carried.set(column, cell);
+					remaining.set(column, cell.rowspan - 1);
+					column++;
+				}
+			}
+			addCarried(line, column, carried, remaining, true);
+			result.add(line);
+		}
+		return result;
+	}
+
+	/**
+	 * Adds the cells carried from previous rows starting with the supplied
+	 * column.
+	 * 
+	 * @param line
+	 *            the current row
+	 * @param start
+	 *            the current column
+	 * @param carried
+	 *            the cells from previous rows
+	 * @param remaining
+	 *            the number of rows still covered by each carried cell
+	 * @param toEnd
+	 *            true to add all the remaining carried cells, filling the gaps
+	 *            with empty strings
+	 * @return the next free column
+	 */
+	private static int addCarried(final List<String> line, final int start,
+			final List<Cell> carried, final List<Integer> remaining,
+			final boolean toEnd) {
+		int last = remaining.size() - 1;
+		if (toEnd) {
+			while (last >= start && remaining.get(last) <= 0) {
+				last--;
+			}
+		}
+		int column = start;
+		while (column < remaining.size()
+				&& (remaining.get(column) > 0 || (toEnd && column <= last))) {
+			if (remaining.get(column) > 0) {
+				line.add(carried.get(column).text);
+				remaining.set(column, remaining.get(column) - 1);
+			} else {
+				line.add("");
+			}
+			column++;
+		}
+		return column;
+	}
+
+	/**
+	 * Converts a span value to an int.
+	 * 
+	 * @param value
+	 *            the value returned by the script or the attribute value
+	 * @return the span or 1 if the value is missing or invalid
+	 */
+	private static int toInt(final Object value) {
+		int span = 1;
+		if (value instanceof Number) {
+			span = ((Number) value).intValue();
+		} else if (value != null && StringUtils.isNumeric(value.toString())
+				&& !value.toString().isEmpty()) {
+			span = Integer.parseInt(value.toString());
+		}
+		return span < 1 ? 1 : span;
+	}
+
+	/**
+	 * A table cell.
+	 */
+	static final class Cell {
+		private final String text;
+		private final int colspan;
+		private final int rowspan;
+
+		Cell(final String t, final int cols, final int rws) {
+			this.text = t;
+			this.colspan = cols;
+			this.rowspan = rws;
+		}
+	}
+}
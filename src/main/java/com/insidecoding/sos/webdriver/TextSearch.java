@@ -0,0 +1,130 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+
+/**
+ * Searches the visible text of the page. When the driver supports JavaScript
+ * the search runs inside the browser and only the number of matches and their
+ * positions are sent back; otherwise the whole body text is read through the
+ * WebDriver API and searched on the client.
+ * 
+ * @author ludovicianul
+ * 
+ */
+final class TextSearch {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger.getLogger(TextSearch.class);
+
+	/**
+	 * The WebDriver instance.
+	 */
+	private final WebDriver driver;
+
+	/**
+	 * Used to run the search script.
+	 */
+	private final ScriptRunner scripts;
+
+	/**
+	 * Creates a new TextSearch.
+	 * 
+	 * @param d
+	 *            the WebDriver instance
+	 * @param runner
+	 *            the ScriptRunner of the driver
+	 */
+	TextSearch(final WebDriver d, final ScriptRunner runner) {
+		this.driver = d;
+		this.scripts = runner;
+	}
+
+	/**
+	 * Searches the page for the supplied text.
+	 * 
+	 * @param text
+	 *            the text to search for
+	 * @param maxCount
+	 *            stop after this number of matches, or -1 to count all of them
+	 * @param maxPositions
+	 *            the maximum number of positions to return
+	 * @return the number of matches followed by the positions of the first
+	 *         {@code maxPositions} matches
+	 */
+	List<Integer> search(final String text, final int maxCount,
+			final int maxPositions) {
+		if (text.length() > 0 && scripts.isAvailable()) {
+			try {
+				return searchWithScript(text, maxCount, maxPositions);
+			} catch (UnsupportedOperationException e) {
+				LOG.debug("Falling back to client side text search");
+			}
+		}
+		String content = driver.findElement(By.tagName("body")).getText();
+		return searchText(content, text, maxCount, maxPositions);
+	}
+
+	/**
+	 * Runs the search script.
+	 * 
+	 * @param text
+	 *            the text to search for
+	 * @param maxCount
+	 *            stop after this number of matches, or -1 to count all of them
+	 * @param maxPositions
+	 *            the maximum number of positions to return
+	 * @return the number of matches followed by the positions
+	 */
+	private List<Integer> searchWithScript(final String text,
+			final int maxCount, final int maxPositions) {
+		List<?> result = (List<?>) scripts.run("search", text, maxCount,
+				maxPositions);
+		List<Integer> matches = new ArrayList<Integer>();
+		matches.add(((Number) result.get(0)).intValue());
+		for (Object position : (List<?>) result.get(1)) {
+			matches.add(((Number) position).intValue());
+		}
+		return matches;
+	}
+
+	/**
+	 * Searches the text read from the page.
+	 * 
+	 * @param content
+	 *            the text of the page
+	 * @param text
+	 *            the text to search for
+	 * @param maxCount
+	 *            stop after this number of matches, or -1 to count all of them
+	 * @param maxPositions
+	 *            the maximum number of positions to return
+	 * @return the number of matches followed by the positions
+	 */
+	private static List<Integer> searchText(final String content, final String text,
+			final int maxCount, final int maxPositions) {
+		List<Integer> matches = new ArrayList<Integer>();
+		matches.add(0);
+		int count = 0;
+		int from = 0;
+		while ((maxCount < 0 || count < maxCount) && from <= content.length()) {
+			int index = content.indexOf(text, from);
+			if (index < 0) {
+				break;
+			}
+			count++;
+			if (matches.size() <= maxPositions) {
+				matches.add(index);
+			}
+			from = index + Math.max(text.length(), 1);
+		}
+		matches.set(0, count);
+		return matches;
+	}
+}
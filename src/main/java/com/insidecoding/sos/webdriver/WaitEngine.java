@@ -0,0 +1,303 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.NotFoundException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.support.ui.ExpectedCondition;
+import org.openqa.selenium.support.ui.WebDriverWait;
+
+/**
+ * Waits for {@link PageCondition}s. When possible the conditions are watched
+ * inside the page with an asynchronous script, which returns as soon as the
+ * conditions are met instead of polling the driver every 500 milliseconds.
+ * Several conditions are evaluated together by the same script. The script
+ * result is confirmed through WebDriver so both paths have the same
+ * semantics. <br/>
+ * Conditions which cannot be translated to JavaScript, and drivers without
+ * JavaScript, use the usual {@link WebDriverWait} polling. The implicit wait is
+ * suspended during the wait, so a missing element does not block a poll.
+ * 
+ * @author ludovicianul
+ * 
+ */
+final class WaitEngine {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger.getLogger(WaitEngine.class);
+
+	/**
+	 * The longest time a single asynchronous script is allowed to wait. Long
+	 * waits are split so that no remote command is kept open for too long.
+	 */
+	private static final long SLICE_MILLIS = 10000;
+
+	/**
+	 * The number of consecutive script failures after which the wait falls
+	 * back to polling.
+	 */
+	private static final int MAX_SCRIPT_FAILURES = 3;
+
+	/**
+	 * The WebDriver instance.
+	 */
+	private final WebDriver driver;
+
+	/**
+	 * Used to run the wait script.
+	 */
+	private final ScriptRunner scripts;
+
+	/**
+	 * The implicit wait, suspended while the conditions are evaluated through
+	 * WebDriver.
+	 */
+	private final ImplicitWait implicitWait;
+
+	/**
+	 * Creates a new WaitEngine.
+	 * 
+	 * @param d
+	 *            the WebDriver instance
+	 * @param runner
+	 *            the ScriptRunner of the driver
+	 * @param implicit
+	 *            the implicit wait of the driver
+	 */
+	WaitEngine(final WebDriver d, final ScriptRunner runner,
+			final ImplicitWait implicit) {
+		this.driver = d;
+		this.scripts = runner;
+		this.implicitWait = implicit;
+	}
+
+	/**
+	 * Waits until the conditions are met.
+	 * 
+	 * @param conditions
+	 *            the conditions to wait for
+	 * @param all
+	 *            true to wait for all the conditions or false to wait for at
+	 *            least one of them
+	 * @param maximumSeconds
+	 *            the maximum number of seconds to wait
+	 * @return the conditions which are met, in the order they were supplied
+	 * @throws TimeoutException
+	 *             if the conditions are not met in time
+	 */
+	List<PageCondition> waitFor(final List<PageCondition> conditions,
+			final boolean all, final int maximumSeconds) {
+		long deadline = System.currentTimeMillis()
+				+ TimeUnit.SECONDS.toMillis(maximumSeconds);
+		List<List<String>> scriptConditions = getScriptConditions(conditions);
+		implicitWait.suspend();
+		try {
+			if (scriptConditions != null && scripts.isAvailable()) {
+				List<PageCondition> met = waitWithScript(conditions,
+						scriptConditions, all, deadline);
+				if (met != null) {
+					return met;
+				}
+			}
+			return poll(conditions, all, deadline, maximumSeconds);
+		} finally {
+			implicitWait.restore();
+		}
+	}
+
+	/**
+	 * Watches the conditions inside the page.
+	 * 
+	 * @param conditions
+	 *            the conditions to wait for
+	 * @param scriptConditions
+	 *            the conditions translated for the script
+	 * @param all
+	 *            true to wait for all the conditions
+	 * @param deadline
+	 *            the time when the wait expires
+	 * @return the conditions which are met or null if the wait must continue
+	 *         with polling
+	 */
+	private List<PageCondition> waitWithScript(
+			final List<PageCondition> conditions,
+			final List<List<String>> scriptConditions, final boolean all,
+			final long deadline) {
+		String mode = all ? "all" : "any";
+		int failures = 0;
+		long remaining = deadline - System.currentTimeMillis();
+		while (remaining > 0 && failures < MAX_SCRIPT_FAILURES) {
+			long slice = Math.min(remaining, SLICE_MILLIS);
+			try {
+				Object states = scripts.runAsync("waitFor", slice,
+						scriptConditions, mode, slice);
+				failures = 0;
+				if (states == null) {
+					LOG.debug("The page cannot evaluate " + conditions);
+					return null;
+				}
+				if (states instanceof List) {
+					return confirm(conditions, (List<?>) states, all);
+				}
+			} catch (UnsupportedOperationException e) {
+				return null;
+			} catch (WebDriverException e) {
+				/**
+				 * the page was probably unloaded while waiting
+				 */
+				LOG.debug("Wait script failed for " + conditions + ": "
+						+ e.getMessage());
+				failures++;
+			}
+			remaining = deadline - System.currentTimeMillis();
+		}
+		return null;
+	}
+
+	/**
+	 * Checks through WebDriver the conditions reported as met by the script.
+	 * 
+	 * @param conditions
+	 *            the conditions
+	 * @param states
+	 *            the state of each condition as reported by the script
+	 * @param all
+	 *            true if all the conditions must be met
+	 * @return the confirmed conditions or null if WebDriver does not agree
+	 *         with the script
+	 */
+	private List<PageCondition> confirm(final List<PageCondition> conditions,
+			final List<?> states, final boolean all) {
+		List<PageCondition> met = new ArrayList<PageCondition>();
+		for (int i = 0; i < conditions.size(); i++) {
+			if (Boolean.TRUE.equals(states.get(i))
+					&& isMet(conditions.get(i))) {
+				met.add(conditions.get(i));
+			}
+		}
+		if (isSatisfied(met, conditions, all)) {
+			return met;
+		}
+		LOG.debug("Script and WebDriver disagree on " + conditions
+				+ ". Polling instead");
+		return null;
+	}
+
+	/**
+	 * Polls the conditions through WebDriver until the deadline. The
+	 * conditions are checked at least once.
+	 * 
+	 * @param conditions
+	 *            the conditions to wait for
+	 * @param all
+	 *            true to wait for all the conditions
+	 * @param deadline
+	 *            the time when the wait expires
+	 * @param maximumSeconds
+	 *            the total wait time, used in the timeout message
+	 * @return the conditions which are met
+	 */
+	private List<PageCondition> poll(final List<PageCondition> conditions,
+			final boolean all, final long deadline, final int maximumSeconds) {
+		long remaining = Math.max(0, deadline - System.currentTimeMillis());
+		try {
+			return new WebDriverWait(driver, 0).withTimeout(remaining,
+					TimeUnit.MILLISECONDS).until(
+					new ExpectedCondition<List<PageCondition>>() {
+						public List<PageCondition> apply(final WebDriver d) {
+							List<PageCondition> met = new ArrayList<PageCondition>();
+							for (PageCondition condition : conditions) {
+								if (isMet(condition)) {
+									met.add(condition);
+								}
+							}
+							return isSatisfied(met, conditions, all) ? met
+									: null;
+						}
+					});
+		} catch (TimeoutException e) {
+			throw new TimeoutException("Timed out after " + maximumSeconds
+					+ " seconds waiting for " + describe(conditions, all),
+					e.getCause());
+		}
+	}
+
+	/**
+	 * Evaluates a condition through WebDriver.
+	 * 
+	 * @param condition
+	 *            the condition
+	 * @return true if the condition is met
+	 */
+	private boolean isMet(final PageCondition condition) {
+		try {
+			return condition.apply(driver) != null;
+		} catch (NotFoundException e) {
+			return false;
+		} catch (StaleElementReferenceException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Checks if the met conditions satisfy the wait.
+	 * 
+	 * @param met
+	 *            the conditions which are met
+	 * @param conditions
+	 *            all the conditions
+	 * @param all
+	 *            true if all the conditions must be met
+	 * @return true if the wait is over
+	 */
+	private static boolean isSatisfied(final List<PageCondition> met,
+			final List<PageCondition> conditions, final boolean all) {
+		return all ? met.size() == conditions.size() : !met.isEmpty();
+	}
+
+	/**
+	 * Translates the conditions for the wait script.
+	 * 
+	 * @param conditions
+	 *            the conditions
+	 * @return the translated conditions or null if any of them can only be
+	 *         polled
+	 */
+	private static List<List<String>> getScriptConditions(
+			final List<PageCondition> conditions) {
+		List<List<String>> result = new ArrayList<List<String>>();
+		for (PageCondition condition : conditions) {
+			List<String> script = condition.getScriptCondition();
+			if (script == null) {
+				return null;
+			}
+			result.add(script);
+		}
+		return result;
+	}
+
+	/**
+	 * Describes the wait for the timeout message.
+	 * 
+	 * @param conditions
+	 *            the conditions
+	 * @param all
+	 *            true if all the conditions must be met
+	 * @return the description
+	 */
+	private static String describe(final List<PageCondition> conditions,
+			final boolean all) {
+		if (conditions.size() == 1) {
+			return conditions.get(0).toString();
+		}
+		return (all ? "all of " : "any of ") + conditions;
+	}
+}
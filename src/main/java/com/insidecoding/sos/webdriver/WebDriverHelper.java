@@ -1,17 +1,24 @@
 package com.insidecoding.sos.webdriver;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
+import javax.imageio.ImageIO;
+
 import junit.framework.Assert;
 
 import org.apache.commons.io.FileUtils;
@@ -23,10 +30,13 @@ import org.openqa.selenium.By;
 import org.openqa.selenium.Capabilities;
 import org.openqa.selenium.Cookie;
 import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.NoSuchElementException;
 import org.openqa.selenium.OutputType;
 import org.openqa.selenium.Proxy.ProxyType;
+import org.openqa.selenium.SearchContext;
 import org.openqa.selenium.TakesScreenshot;
 import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.chrome.ChromeOptions;
 import org.openqa.selenium.firefox.FirefoxDriver;
@@ -38,12 +48,11 @@ import org.openqa.selenium.remote.DesiredCapabilities;
 import org.openqa.selenium.remote.RemoteWebDriver;
 import org.openqa.selenium.security.Credentials;
 import org.openqa.selenium.security.UserAndPassword;
-import org.openqa.selenium.support.ui.ExpectedCondition;
-import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.Select;
-import org.openqa.selenium.support.ui.WebDriverWait;
 
+import com.google.common.base.Function;
 import com.insidecoding.sos.Constants;
+import com.insidecoding.sos.webdriver.DriverBuildTiming.Stage;
 
 /**
  * This class decorates the WebDriver API with more helper methods.
@@ -73,6 +82,66 @@ public final class WebDriverHelper {
 	 */
 	private static final Logger LOG = Logger.getLogger(WebDriverHelper.class);
 
+	/**
+	 * Runs the scripts used to reduce the number of WebDriver calls.
+	 */
+	private final ScriptRunner scripts;
+
+	/**
+	 * Extracts the contents of HTML tables.
+	 */
+	private final TableExtractor tables;
+
+	/**
+	 * Evaluates drop-down and radio button checks.
+	 */
+	private final WidgetOperations widgets;
+
+	/**
+	 * Caches the elements found by the helper methods.
+	 */
+	private final ElementCache elements = new ElementCache();
+
+	/**
+	 * Waits for conditions on the current page.
+	 */
+	private final WaitEngine waits;
+
+	/**
+	 * Tracks the implicit wait so that it can be suspended.
+	 */
+	private final ImplicitWait implicitWait;
+
+	/**
+	 * Fills forms with a single script call.
+	 */
+	private final FormFiller forms;
+
+	/**
+	 * Holds the snapshot of the session cookies.
+	 */
+	private final CookieJar cookies;
+
+	/**
+	 * Searches the text of the page.
+	 */
+	private final TextSearch search;
+
+	/**
+	 * Tracks the network activity of the page.
+	 */
+	private final PageReadiness readiness;
+
+	/**
+	 * Scrolls infinite-scroll pages.
+	 */
+	private final InfiniteScroller scroller;
+
+	/**
+	 * Records the last steps of the test, if enabled.
+	 */
+	private volatile FlightRecorder recorder;
+
 	/**
 	 * You must pass a valid WebDriver instance.
 	 * 
@@ -84,6 +153,92 @@ public final class WebDriverHelper {
 			throw new IllegalArgumentException("Driver is NULL!");
 		}
 		driver = d;
+		scripts = new ScriptRunner(d);
+		tables = new TableExtractor(d, scripts);
+		widgets = new WidgetOperations(scripts);
+		implicitWait = new ImplicitWait(d);
+		waits = new WaitEngine(d, scripts, implicitWait);
+		forms = new FormFiller(d, scripts);
+		cookies = new CookieJar(d, scripts);
+		search = new TextSearch(d, scripts);
+		readiness = new PageReadiness(scripts);
+		scroller = new InfiniteScroller(d, scripts, implicitWait, readiness);
+	}
+
+	/**
+	 * Returns the WebDriver instance being decorated.
+	 * 
+	 * @return the WebDriver instance
+	 */
+	public WebDriver getDriver() {
+		return driver;
+	}
+
+	/**
+	 * Returns the cache holding the elements found by the helper methods. The
+	 * cache is disabled by default.
+	 * 
+	 * @return the element cache
+	 */
+	public ElementCache getElementCache() {
+		return elements;
+	}
+
+	/**
+	 * Returns the view over the session cookies used by the cookie methods.
+	 * Caching the cookies between calls is disabled by default.
+	 * 
+	 * @return the cookie jar
+	 */
+	public CookieJar getCookieJar() {
+		return cookies;
+	}
+
+	/**
+	 * Starts recording a batch of reads and verifications that are executed
+	 * together, with a single script call when possible.
+	 * 
+	 * @return a new, empty batch
+	 */
+	public HelperBatch batch() {
+		return new HelperBatch(driver, scripts, implicitWait);
+	}
+
+	/**
+	 * Takes a snapshot of the current page and returns a helper working on an
+	 * in-process copy of it. The read methods of the returned helper, like
+	 * {@link #verifyText(By, String)}, {@link #isElementPresent(By)} or the
+	 * drop-down and table methods, search the copy with the same locators and
+	 * no round trip to the browser. This is useful for pages checked with many
+	 * assertions after they load. <br/>
+	 * The copy is read only and does not run scripts. It becomes stale, and
+	 * throws an IllegalStateException when searched, after any command of the
+	 * driver that may change the page, like navigating, clicking, typing,
+	 * selecting options or running scripts, whether it is sent by this helper
+	 * or by any other holder of the driver; take a new snapshot after such
+	 * actions. The commands are counted by the driver itself, so snapshots
+	 * are only available for drivers built with
+	 * {@link Builder#trackPageChanges(boolean)} or
+	 * {@link Builder#metrics(DriverMetrics)}. <br/>
+	 * The copy is parsed from the page source, which holds the markup and not
+	 * the live state of the form fields: values typed, boxes checked and
+	 * options selected after the page loaded are not seen, so methods like
+	 * {@link #verifyChecked(By)} or {@link #getSelectedValue(By)} may return
+	 * the initial state. Read such fields from this helper instead.
+	 * 
+	 * @return a helper working on the snapshot
+	 * @throws IllegalStateException
+	 *             if the driver does not count the page changes
+	 */
+	public WebDriverHelper takeSnapshot() {
+		AtomicInteger pageChanges = InstrumentedDriver.pageChangesOf(driver);
+		if (pageChanges == null) {
+			throw new IllegalStateException(
+					"DOM snapshots need a driver built with page tracking: "
+							+ driver);
+		}
+		return new WebDriverHelper(new DomSnapshotDriver(
+				driver.getPageSource(), driver.getCurrentUrl(), pageChanges));
 	}
 
 	/**
@@ -173,7 +328,10 @@ public final class WebDriverHelper {
 	 * Simulates pressing F5.
 	 */
 	public void refresh() {
+		elements.invalidate();
+		cookies.invalidate();
 		driver.navigate().refresh();
+		stepDone("refresh");
 	}
 
 	/**
@@ -185,11 +343,105 @@ public final class WebDriverHelper {
 	 *             if something goes wrong while saving the screenshot
 	 */
 	public void takeScreenshot(String filename) throws IOException {
-		File screenshot = ((TakesScreenshot) driver)
-				.getScreenshotAs(OutputType.FILE);
+		File screenshot = screenshotter().getScreenshotAs(OutputType.FILE);
 		FileUtils.copyFile(screenshot, new File(filename));
 	}
 
+	/**
+	 * Takes a screenshot of the current screen and compares it against the
+	 * baseline image. If the baseline does not exist yet the screenshot is
+	 * saved as the new baseline.
+	 * 
+	 * @param baseline
+	 *            the baseline PNG file
+	 * @param diff
+	 *            the ImageDiff holding the comparison settings
+	 * @return the result of the comparison or null if the baseline was
+	 *         created
+	 * @throws IOException
+	 *             if the images cannot be read or written
+	 */
+	public ImageDiffResult compareScreenshot(final File baseline,
+			final ImageDiff diff) throws IOException {
+		byte[] png = screenshotter().getScreenshotAs(OutputType.BYTES);
+		if (!baseline.isFile()) {
+			LOG.info("Creating baseline " + baseline);
+			FileUtils.writeByteArrayToFile(baseline, png);
+			return null;
+		}
+		BufferedImage expected = ImageIO.read(baseline);
+		if (expected == null) {
+			throw new IOException("Not an image: " + baseline);
+		}
+		ImageDiffResult result = diff.compare(expected,
+				ImageIO.read(new ByteArrayInputStream(png)));
+		LOG.debug("Compared screenshot with " + baseline + ": " + result);
+		return result;
+	}
+
+	/**
+	 * Sets the flight recorder which keeps the screenshots of the last steps.
+	 * A frame is recorded after each helper action changing the page and for
+	 * each call to {@link #recordStep(String)}.
+	 * 
+	 * @param flightRecorder
+	 *            the recorder or null to stop recording
+	 */
+	public void setFlightRecorder(final FlightRecorder flightRecorder) {
+		this.recorder = flightRecorder;
+	}
+
+	/**
+	 * Returns the flight recorder of the helper.
+	 * 
+	 * @return the recorder or null if the steps are not recorded
+	 */
+	public FlightRecorder getFlightRecorder() {
+		return recorder;
+	}
+
+	/**
+	 * Records the current page in the flight recorder, for steps done outside
+	 * of the helper like clicking a button. This does nothing if no recorder
+	 * is set.
+	 * 
+	 * @param step
+	 *            the description of the step
+	 */
+	public void recordStep(final String step) {
+		stepDone(step);
+	}
+
+	/**
+	 * Returns the driver taking the screenshots, looking through the drivers
+	 * wrapping it.
+	 * 
+	 * @return the screenshot taker
+	 * @throws WebDriverException
+	 *             if the driver cannot take screenshots
+	 */
+	private TakesScreenshot screenshotter() {
+		TakesScreenshot camera = Screenshots.cameraFor(driver);
+		if (camera == null) {
+			throw new WebDriverException("The driver cannot take screenshots: "
+					+ driver);
+		}
+		return camera;
+	}
+
+	/**
+	 * Records a frame after an action, if the flight recorder is enabled.
+	 * 
+	 * @param action
+	 *            the action just performed
+	 */
+	private void stepDone(final String action) {
+		FlightRecorder current = recorder;
+		if (current != null) {
+			current.record(driver, action);
+		}
+	}
+
 	/**
 	 * Scrolls the page to the specified coordinates.
 	 * 
@@ -201,6 +453,7 @@ public final class WebDriverHelper {
 	public void scrollTo(final int x, final int y) {
 		((JavascriptExecutor) driver).executeScript("window.scrollTo(" + x
 				+ "," + y + ");");
+		stepDone("scrollTo " + x + "," + y);
 	}
 
 	/**
@@ -209,7 +462,11 @@ public final class WebDriverHelper {
 	 * 
 	 * @param numberOfSeconds
 	 *            the duration in seconds to scroll
+	 * @deprecated this always takes the full duration; use
+	 *             {@link #scrollUntilStable(int, int)} which stops as soon as
+	 *             the page stops loading content
 	 */
+	@Deprecated
 	public void scrollContinuously(final int numberOfSeconds) {
 		for (int i = 0; i < numberOfSeconds; i += 2) {
 			((JavascriptExecutor) driver)
@@ -222,6 +479,48 @@ public final class WebDriverHelper {
 		}
 	}
 
+	/**
+	 * Scrolls to the bottom of the page until no new content is loaded. After
+	 * each scroll the method waits only until the page grows or, when the
+	 * page uses XMLHttpRequest or fetch, until the requests finish, and stops
+	 * when nothing new arrives for {@code quietMillis}.
+	 * 
+	 * @param quietMillis
+	 *            stop when nothing changes for this number of milliseconds
+	 * @param maximumSeconds
+	 *            the maximum number of seconds to scroll
+	 * @return the number of batches loaded and the time spent
+	 */
+	public ScrollResult scrollUntilStable(final int quietMillis,
+			final int maximumSeconds) {
+		return scrollUntil(null, 0, quietMillis, maximumSeconds);
+	}
+
+	/**
+	 * Scrolls to the bottom of the page until at least {@code count}
+	 * elements identified by {@code by} are present, or until no new content
+	 * is loaded.
+	 * 
+	 * @param by
+	 *            the method of identifying the target elements
+	 * @param count
+	 *            the number of target elements to wait for
+	 * @param quietMillis
+	 *            stop when nothing changes for this number of milliseconds
+	 * @param maximumSeconds
+	 *            the maximum number of seconds to scroll
+	 * @return the number of batches loaded and the time spent; check
+	 *         {@link ScrollResult#isTargetReached()} to see if the elements
+	 *         were found
+	 */
+	public ScrollResult scrollUntil(final By by, final int count,
+			final int quietMillis, final int maximumSeconds) {
+		ScrollResult result = scroller.scroll(by, count, quietMillis,
+				maximumSeconds);
+		stepDone("scroll " + result);
+		return result;
+	}
+
 	/**
 	 * Call this method before using the driver into another window. Remember to
 	 * call {@link WebDriverHelper.#dswitchBackToMainWindow()} when you want to
@@ -240,7 +539,10 @@ public final class WebDriverHelper {
 			throw new IllegalStateException(
 					"storeMainWindow() was not called!!!");
 		}
+		elements.invalidate();
+		cookies.invalidate();
 		driver.switchTo().window(mainWindow);
+		stepDone("switchBackToMainWindow");
 	}
 
 	/**
@@ -252,14 +554,11 @@ public final class WebDriverHelper {
 	 * @return true if the cookie exists or false otherwise
 	 */
 	public boolean verifyCookiePresentByName(final String cookieName) {
-		Set<Cookie> cookies = driver.manage().getCookies();
-
-		for (Cookie cookie : cookies) {
-			if (cookie.getName().equals(cookieName)) {
-				LOG.info("Cookie: " + cookieName + " was found with value: "
-						+ cookie.getValue());
-				return true;
-			}
+		Cookie cookie = cookies.get(cookieName);
+		if (cookie != null) {
+			LOG.info("Cookie: " + cookieName + " was found with value: "
+					+ cookie.getValue());
+			return true;
 		}
 
 		LOG.info("Cookie: " + cookieName + " NOT found!");
@@ -279,15 +578,11 @@ public final class WebDriverHelper {
 	 */
 	public boolean verifyCookie(final String cookieName,
 			final String cookieValue) {
-		Set<Cookie> cookies = driver.manage().getCookies();
-
-		for (Cookie cookie : cookies) {
-			if (cookie.getName().equals(cookieName)
-					&& cookie.getValue().equals(cookieValue)) {
-				LOG.info("Cookie: " + cookieName + " was found with value: "
-						+ cookie.getValue());
-				return true;
-			}
+		Cookie cookie = cookies.get(cookieName);
+		if (cookie != null && cookie.getValue().equals(cookieValue)) {
+			LOG.info("Cookie: " + cookieName + " was found with value: "
+					+ cookie.getValue());
+			return true;
 		}
 
 		LOG.info("Cookie: " + cookieName + " with value: " + cookieValue
@@ -306,18 +601,21 @@ public final class WebDriverHelper {
 	 *         otherwise
 	 */
 	public boolean verifyText(final By by, final String text) {
-		WebElement element = driver.findElement(by);
-
-		if (element.getText().equals(text)) {
-			LOG.info("Element: " + element + " contains the given text: "
-					+ text);
-			return true;
-		}
+		return elements.apply(driver, by, new Function<WebElement, Boolean>() {
+			@Override
+			public Boolean apply(final WebElement element) {
+				if (element.getText().equals(text)) {
+					LOG.info("Element: " + element
+							+ " contains the given text: " + text);
+					return true;
+				}
 
-		LOG.info("Element: " + element + " does NOT contain the given text: "
-				+ text);
+				LOG.info("Element: " + element
+						+ " does NOT contain the given text: " + text);
 
-		return false;
+				return false;
+			}
+		});
 	}
 
 	/**
@@ -328,15 +626,19 @@ public final class WebDriverHelper {
 	 * @return true if the given checkbox is checked or false otherwise
 	 */
 	public boolean verifyChecked(final By checkboxBy) {
-		WebElement element = driver.findElement(checkboxBy);
-
-		if (element.isSelected()) {
-			LOG.info("Checkbox: " + element + " is checked!");
-			return true;
-		}
-
-		LOG.info("Checkbox: " + element + " is NOT checked!");
-		return false;
+		return elements.apply(driver, checkboxBy,
+				new Function<WebElement, Boolean>() {
+					@Override
+					public Boolean apply(final WebElement element) {
+						if (element.isSelected()) {
+							LOG.info("Checkbox: " + element + " is checked!");
+							return true;
+						}
+
+						LOG.info("Checkbox: " + element + " is NOT checked!");
+						return false;
+					}
+				});
 	}
 
 	/**
@@ -349,15 +651,12 @@ public final class WebDriverHelper {
 	 * 
 	 */
 	public void assertCookiePresentByName(final String cookieName) {
-		Set<Cookie> cookies = driver.manage().getCookies();
-
-		for (Cookie cookie : cookies) {
-			if (cookie.getName().equals(cookieName)) {
-				LOG.info("Cookie: " + cookieName + " was found with value: "
-						+ cookie.getValue());
-				Assert.assertEquals(cookieName, cookie.getName());
-				return;
-			}
+		Cookie cookie = cookies.get(cookieName);
+		if (cookie != null) {
+			LOG.info("Cookie: " + cookieName + " was found with value: "
+					+ cookie.getValue());
+			Assert.assertEquals(cookieName, cookie.getName());
+			return;
 		}
 		Assert.fail("The given cookie name: " + cookieName
 				+ " is not present within the current session!");
@@ -374,15 +673,11 @@ public final class WebDriverHelper {
 	 *            the cookie value
 	 */
 	public void assertCookie(final String cookieName, final String cookieValue) {
-		Set<Cookie> cookies = driver.manage().getCookies();
-
-		for (Cookie cookie : cookies) {
-			if (cookie.getName().equals(cookieName)
-					&& cookie.getValue().equals(cookieValue)) {
-				LOG.info("Cookie: " + cookieName + " was found with value: "
-						+ cookie.getValue());
-				return;
-			}
+		Cookie cookie = cookies.get(cookieName);
+		if (cookie != null && cookie.getValue().equals(cookieValue)) {
+			LOG.info("Cookie: " + cookieName + " was found with value: "
+					+ cookie.getValue());
+			return;
 		}
 
 		Assert.fail("Cookie: " + cookieName + " with value: " + cookieValue
@@ -400,11 +695,15 @@ public final class WebDriverHelper {
 	 *            the text to be matched
 	 */
 	public void assertText(final By by, final String text) {
-		WebElement element = driver.findElement(by);
-
-		Assert.assertEquals("Element: " + element
-				+ " does NOT contain the given text: " + text, text,
-				element.getText());
+		elements.apply(driver, by, new Function<WebElement, Void>() {
+			@Override
+			public Void apply(final WebElement element) {
+				Assert.assertEquals("Element: " + element
+						+ " does NOT contain the given text: " + text, text,
+						element.getText());
+				return null;
+			}
+		});
 	}
 
 	/**
@@ -416,10 +715,14 @@ public final class WebDriverHelper {
 	 * 
 	 */
 	public void assertChecked(final By checkboxBy) {
-		WebElement element = driver.findElement(checkboxBy);
-
-		Assert.assertTrue("Checkbox: " + element + " is NOT checked!",
-				element.isSelected());
+		elements.apply(driver, checkboxBy, new Function<WebElement, Void>() {
+			@Override
+			public Void apply(final WebElement element) {
+				Assert.assertTrue("Checkbox: " + element + " is NOT checked!",
+						element.isSelected());
+				return null;
+			}
+		});
 	}
 
 	/**
@@ -430,12 +733,7 @@ public final class WebDriverHelper {
 	 * @return true if the element is present or false otherwise
 	 */
 	public boolean isElementPresent(final By by) {
-		try {
-			driver.findElement(by);
-		} catch (Exception e) {
-			return false;
-		}
-		return true;
+		return isElementPresent(driver, by);
 	}
 
 	/**
@@ -450,12 +748,59 @@ public final class WebDriverHelper {
 	 *         {@code by} or false otherwise
 	 */
 	public boolean isElementPresent(final WebElement element, final By by) {
+		return isElementPresent((SearchContext) element, by);
+	}
+
+	/**
+	 * Checks if the search context contains an element identified by
+	 * {@code by}. The implicit wait is suspended during the check so that a
+	 * missing element is reported immediately.
+	 * 
+	 * @param context
+	 *            the driver or the root element
+	 * @param by
+	 *            the method of identifying the element
+	 * @return true if the element is present or false otherwise
+	 */
+	private boolean isElementPresent(final SearchContext context, final By by) {
+		implicitWait.suspend();
 		try {
-			element.findElement(by);
-		} catch (Exception e) {
+			return !context.findElements(by).isEmpty();
+		} catch (WebDriverException e) {
+			LOG.debug("Unable to search for " + by + ": " + e.getMessage());
 			return false;
+		} finally {
+			implicitWait.restore();
 		}
-		return true;
+	}
+
+	/**
+	 * Sets the implicit wait of the driver. Always use this method instead of
+	 * {@code driver.manage().timeouts().implicitlyWait()} so that
+	 * {@link #isElementPresent(By)} and the waitFor methods can suspend it
+	 * while checking for missing elements.
+	 * 
+	 * @param time
+	 *            the amount of time to wait
+	 * @param unit
+	 *            the unit of measure for {@code time}
+	 */
+	public void setImplicitWait(final long time, final TimeUnit unit) {
+		implicitWait.set(time, unit);
+	}
+
+	/**
+	 * Waits until there is no element identified by {@code by} in the page.
+	 * 
+	 * @param by
+	 *            the method of identifying the element
+	 * @param maximumSeconds
+	 *            the maximum number of seconds to wait
+	 * @throws org.openqa.selenium.TimeoutException
+	 *             if the element is still present after the given time
+	 */
+	public void waitForElementAbsent(final By by, final int maximumSeconds) {
+		waitFor(PageCondition.absent(by), maximumSeconds);
 	}
 
 	/**
@@ -468,8 +813,7 @@ public final class WebDriverHelper {
 	 *            present
 	 */
 	public void waitForElementPresent(final By by, final int maximumSeconds) {
-		WebDriverWait wait = new WebDriverWait(driver, maximumSeconds);
-		wait.until(ExpectedConditions.presenceOfElementLocated((by)));
+		waitFor(PageCondition.present(by), maximumSeconds);
 	}
 
 	/**
@@ -482,9 +826,7 @@ public final class WebDriverHelper {
 	 */
 	public void waitForTextPresentWithinPage(final String text,
 			final int maximumSeconds) {
-		WebDriverWait wait = new WebDriverWait(driver, maximumSeconds);
-		wait.until(ExpectedConditions.textToBePresentInElement(
-				By.tagName("body"), text));
+		waitFor(PageCondition.textInPage(text), maximumSeconds);
 	}
 
 	/**
@@ -496,8 +838,7 @@ public final class WebDriverHelper {
 	 *            the maximum number of seconds to wait
 	 */
 	public void waitForElementToBeVisible(final By by, final int maximumSeconds) {
-		WebDriverWait wait = new WebDriverWait(driver, maximumSeconds);
-		wait.until(ExpectedConditions.visibilityOfElementLocated(by));
+		waitFor(PageCondition.visible(by), maximumSeconds);
 	}
 
 	/**
@@ -510,12 +851,7 @@ public final class WebDriverHelper {
 	 */
 	public void waitForElementToContainText(final By by,
 			final int maximumSeconds) {
-		(new WebDriverWait(driver, maximumSeconds))
-				.until(new ExpectedCondition<Boolean>() {
-					public Boolean apply(final WebDriver error1) {
-						return !driver.findElement(by).getText().isEmpty();
-					}
-				});
+		waitFor(PageCondition.hasText(by), maximumSeconds);
 	}
 
 	/**
@@ -530,20 +866,163 @@ public final class WebDriverHelper {
 	 */
 	public void waitForElementToContainSpecificText(final By by,
 			final String text, final int maximumSeconds) {
-		WebDriverWait wait = new WebDriverWait(driver, maximumSeconds);
-		wait.until(ExpectedConditions.textToBePresentInElement(by, text));
+		waitFor(PageCondition.containsText(by, text), maximumSeconds);
+	}
+
+	/**
+	 * Installs the network tracker on the current page. The tracker only sees
+	 * the requests and timers started after it is installed, so call this
+	 * before an action which starts background work and then
+	 * {@link #waitForNetworkIdle(int, int)}.
+	 * 
+	 * @return true if the tracker is installed or false if the driver cannot
+	 *         run JavaScript
+	 */
+	public boolean installNetworkTracker() {
+		return readiness.install();
+	}
+
+	/**
+	 * Waits until the page is loaded and had no pending XMLHttpRequest, fetch
+	 * or short timer for the supplied time. Use this instead of fixed sleeps
+	 * after actions which load data in the background.
+	 * 
+	 * @param idleMillis
+	 *            the number of milliseconds without network activity
+	 * @param maximumSeconds
+	 *            the maximum number of seconds to wait
+	 * @return the time to ready of the page in milliseconds, also available
+	 *         through {@link #getTimeToReady()}
+	 * @throws org.openqa.selenium.TimeoutException
+	 *             if the page is not idle in time
+	 */
+	public long waitForNetworkIdle(final int idleMillis,
+			final int maximumSeconds) {
+		return readiness.waitForIdle(idleMillis, maximumSeconds);
+	}
+
+	/**
+	 * Returns the time to ready measured by
+	 * {@link #waitForNetworkIdle(int, int)} for each page load. The time is
+	 * measured from the start of the navigation when the browser supports the
+	 * navigation timing API, or from the installation of the tracker
+	 * otherwise.
+	 * 
+	 * @return an unmodifiable list of times, one for each page load
+	 */
+	public List<PageReadyTime> getTimeToReady() {
+		return readiness.getReadyTimes();
+	}
+
+	/**
+	 * Waits until the supplied condition is met. The condition is watched
+	 * inside the page when the driver supports JavaScript, so the method
+	 * returns as soon as the page changes; otherwise the condition is polled.
+	 * 
+	 * @param condition
+	 *            the condition to wait for
+	 * @param maximumSeconds
+	 *            the maximum number of seconds to wait
+	 * @throws org.openqa.selenium.TimeoutException
+	 *             if the condition is not met in time
+	 */
+	public void waitFor(final PageCondition condition, final int maximumSeconds) {
+		waits.waitFor(Collections.singletonList(condition), true,
+				maximumSeconds);
 	}
 
 	/**
-	 * Checks for presence of the text in a html page.
+	 * Waits until all the supplied conditions are met at the same time. The
+	 * conditions are evaluated together, with a single script call when the
+	 * driver supports JavaScript.
+	 * 
+	 * @param maximumSeconds
+	 *            the maximum number of seconds to wait
+	 * @param conditions
+	 *            the conditions to wait for
+	 * @throws org.openqa.selenium.TimeoutException
+	 *             if the conditions are not met in time
+	 */
+	public void waitForAllOf(final int maximumSeconds,
+			final PageCondition... conditions) {
+		waits.waitFor(Arrays.asList(conditions), true, maximumSeconds);
+	}
+
+	/**
+	 * Waits until at least one of the supplied conditions is met. This is
+	 * useful for flows with several possible outcomes, like an error banner
+	 * or a success page.
+	 * 
+	 * @param maximumSeconds
+	 *            the maximum number of seconds to wait
+	 * @param conditions
+	 *            the conditions to wait for
+	 * @return all the conditions met when the wait finished, in the order
+	 *         they were supplied
+	 * @throws org.openqa.selenium.TimeoutException
+	 *             if none of the conditions is met in time
+	 */
+	public List<PageCondition> waitForAnyOf(final int maximumSeconds,
+			final PageCondition... conditions) {
+		return waits.waitFor(Arrays.asList(conditions), false, maximumSeconds);
+	}
+
+	/**
+	 * Waits until one of the supplied conditions is met and returns it. If
+	 * several conditions are met at the same time the first one in the
+	 * supplied order is returned.
+	 * 
+	 * @param maximumSeconds
+	 *            the maximum number of seconds to wait
+	 * @param conditions
+	 *            the conditions to wait for
+	 * @return the condition which was met
+	 * @throws org.openqa.selenium.TimeoutException
+	 *             if none of the conditions is met in time
+	 */
+	public PageCondition waitForFirstOf(final int maximumSeconds,
+			final PageCondition... conditions) {
+		return waitForAnyOf(maximumSeconds, conditions).get(0);
+	}
+
+	/**
+	 * Checks for presence of the text in a html page. The search runs inside
+	 * the browser when the driver supports JavaScript, so the page text is not
+	 * sent to the client.
 	 * 
 	 * @param text
 	 *            the text to be searched for
 	 * @return true if the text is present within the page or false otherwise
 	 */
 	public boolean isTextPresentInPage(final String text) {
-		WebElement body = driver.findElement(By.tagName("body"));
-		return body.getText().contains(text);
+		return search.search(text, 1, 0).get(0) > 0;
+	}
+
+	/**
+	 * Counts the occurrences of the text in the visible text of the page.
+	 * Occurrences are counted without overlapping.
+	 * 
+	 * @param text
+	 *            the text to be searched for
+	 * @return the number of occurrences
+	 */
+	public int countTextInPage(final String text) {
+		return search.search(text, -1, 0).get(0);
+	}
+
+	/**
+	 * Returns the positions of the text in the visible text of the page, as
+	 * returned by {@code getText()} for the {@code body} element.
+	 * 
+	 * @param text
+	 *            the text to be searched for
+	 * @param maxMatches
+	 *            the maximum number of positions to return
+	 * @return the offsets of the first {@code maxMatches} occurrences
+	 */
+	public List<Integer> findTextInPage(final String text, final int maxMatches) {
+		List<Integer> matches = search.search(text, maxMatches, maxMatches);
+		return matches.subList(1, matches.size());
 	}
 
 	/**
@@ -560,11 +1039,19 @@ public final class WebDriverHelper {
 	 * @return true if the text is present or false otherwise
 	 */
 	public boolean isTextPresentInDropDown(final By by, final String text) {
-		WebElement element = driver.findElement(by);
-		List<WebElement> options = element.findElements(By
-				.xpath(".//option[normalize-space(.) = " + escapeQuotes(text)
-						+ "]"));
-		return options != null && !options.isEmpty();
+		return elements.apply(driver, by, new Function<WebElement, Boolean>() {
+			@Override
+			public Boolean apply(final WebElement element) {
+				Boolean present = widgets.isTextPresent(element, text);
+				if (present != null) {
+					return present;
+				}
+				List<WebElement> options = element.findElements(By
+						.xpath(".//option[normalize-space(.) = "
+								+ escapeQuotes(text) + "]"));
+				return options != null && !options.isEmpty();
+			}
+		});
 	}
 
 	/**
@@ -581,15 +1068,23 @@ public final class WebDriverHelper {
 	 * @return true if the value is present in the drop-down or false otherwise
 	 */
 	public boolean isValuePresentInDropDown(final By by, final String value) {
-		WebElement element = driver.findElement(by);
+		return elements.apply(driver, by, new Function<WebElement, Boolean>() {
+			@Override
+			public Boolean apply(final WebElement element) {
+				Boolean present = widgets.isValuePresent(element, value);
+				if (present != null) {
+					return present;
+				}
 
-		StringBuilder builder = new StringBuilder(".//option[@value = ");
-		builder.append(escapeQuotes(value));
-		builder.append("]");
-		List<WebElement> options = element.findElements(By.xpath(builder
-				.toString()));
+				StringBuilder builder = new StringBuilder(".//option[@value = ");
+				builder.append(escapeQuotes(value));
+				builder.append("]");
+				List<WebElement> options = element.findElements(By.xpath(builder
+						.toString()));
 
-		return options != null && !options.isEmpty();
+				return options != null && !options.isEmpty();
+			}
+		});
 	}
 
 	/**
@@ -603,8 +1098,14 @@ public final class WebDriverHelper {
 	 */
 
 	public void selectOptionFromDropdownByValue(final By by, final String value) {
-		Select select = new Select(driver.findElement(by));
-		select.selectByValue(value);
+		elements.apply(driver, by, new Function<WebElement, Void>() {
+			@Override
+			public Void apply(final WebElement element) {
+				new Select(element).selectByValue(value);
+				return null;
+			}
+		});
+		stepDone("selectOptionFromDropdownByValue " + by + " " + value);
 	}
 
 	/**
@@ -618,8 +1119,14 @@ public final class WebDriverHelper {
 
 	public void selectOptionFromDropdownByDisplayText(final By by,
 			final String displayText) {
-		Select select = new Select(driver.findElement(by));
-		select.selectByVisibleText(displayText);
+		elements.apply(driver, by, new Function<WebElement, Void>() {
+			@Override
+			public Void apply(final WebElement element) {
+				new Select(element).selectByVisibleText(displayText);
+				return null;
+			}
+		});
+		stepDone("selectOptionFromDropdownByDisplayText " + by + " " + displayText);
 	}
 
 	/**
@@ -635,18 +1142,26 @@ public final class WebDriverHelper {
 
 	public boolean isTextSelectedInDropDown(final By by,
 			final String displayText) {
-		WebElement element = driver.findElement(by);
-		List<WebElement> options = element.findElements(By
-				.xpath(".//option[normalize-space(.) = "
-						+ escapeQuotes(displayText) + "]"));
+		return elements.apply(driver, by, new Function<WebElement, Boolean>() {
+			@Override
+			public Boolean apply(final WebElement element) {
+				Boolean selected = widgets.isTextSelected(element, displayText);
+				if (selected != null) {
+					return selected;
+				}
+				List<WebElement> options = element.findElements(By
+						.xpath(".//option[normalize-space(.) = "
+								+ escapeQuotes(displayText) + "]"));
 
-		for (WebElement opt : options) {
-			if (opt.isSelected()) {
-				return true;
-			}
-		}
+				for (WebElement opt : options) {
+					if (opt.isSelected()) {
+						return true;
+					}
+				}
 
-		return false;
+				return false;
+			}
+		});
 	}
 
 	/**
@@ -657,11 +1172,20 @@ public final class WebDriverHelper {
 	 * @return the first selected option from a drop-down
 	 */
 	public String getSelectedValue(final By by) {
+		return elements.apply(driver, by, new Function<WebElement, String>() {
+			@Override
+			public String apply(final WebElement element) {
+				String selectedText = widgets.getSelectedText(element);
+				if (selectedText != null) {
+					return selectedText;
+				}
 
-		Select select = new Select(driver.findElement(by));
-		String defaultSelectedValue = select.getFirstSelectedOption().getText();
-		return defaultSelectedValue;
-
+				Select select = new Select(element);
+				String defaultSelectedValue = select.getFirstSelectedOption()
+						.getText();
+				return defaultSelectedValue;
+			}
+		});
 	}
 
 	/**
@@ -675,21 +1199,29 @@ public final class WebDriverHelper {
 	 */
 
 	public boolean isValueSelectedInDropDown(final By by, final String value) {
-		WebElement element = driver.findElement(by);
+		return elements.apply(driver, by, new Function<WebElement, Boolean>() {
+			@Override
+			public Boolean apply(final WebElement element) {
+				Boolean selected = widgets.isValueSelected(element, value);
+				if (selected != null) {
+					return selected;
+				}
 
-		StringBuilder builder = new StringBuilder(".//option[@value = ");
-		builder.append(escapeQuotes(value));
-		builder.append("]");
-		List<WebElement> options = element.findElements(By.xpath(builder
-				.toString()));
+				StringBuilder builder = new StringBuilder(".//option[@value = ");
+				builder.append(escapeQuotes(value));
+				builder.append("]");
+				List<WebElement> options = element.findElements(By.xpath(builder
+						.toString()));
 
-		for (WebElement opt : options) {
-			if (opt.isSelected()) {
-				return true;
-			}
-		}
+				for (WebElement opt : options) {
+					if (opt.isSelected()) {
+						return true;
+					}
+				}
 
-		return false;
+				return false;
+			}
+		});
 	}
 
 	/**
@@ -700,7 +1232,37 @@ public final class WebDriverHelper {
 	 */
 
 	public void deselectAllDropDownOptions(final By by) {
-		new Select(driver.findElement(by)).deselectAll();
+		elements.apply(driver, by, new Function<WebElement, Void>() {
+			@Override
+			public Void apply(final WebElement element) {
+				new Select(element).deselectAll();
+				return null;
+			}
+		});
+		stepDone("deselectAllDropDownOptions " + by);
+	}
+
+	/**
+	 * Fills several form fields at once. Text inputs and text areas receive
+	 * the value, drop-downs select the option having the value or the display
+	 * text, checkboxes are checked for "true", "on", "checked" or "yes" and
+	 * radio buttons select the button of the group having the value. <br/>
+	 * The values are set by a single script which fires the {@code input},
+	 * {@code change} and {@code blur} events, so it is much faster than typing
+	 * long values. Fields listed in {@code typed} receive real keystrokes
+	 * through {@code sendKeys}, for pages which rely on key handlers; they are
+	 * filled after the other fields, in the iteration order of the map.
+	 * 
+	 * @param values
+	 *            the value of each field, keyed by the locator of the field
+	 * @param typed
+	 *            the fields which must be typed key by key
+	 * @throws NoSuchElementException
+	 *             if one of the fields cannot be found
+	 */
+	public void fillForm(final Map<By, String> values, final By... typed) {
+		forms.fill(values, Arrays.asList(typed));
+		stepDone("fillForm " + values.keySet());
 	}
 
 	/**
@@ -714,14 +1276,22 @@ public final class WebDriverHelper {
 
 	public void selectRadioButtonByValue(final String radioButtonName,
 			final String value) {
-		List<WebElement> radioGroup = driver.findElements(By
-				.name(radioButtonName));
-		for (WebElement button : radioGroup) {
-			if (button.getAttribute("value").equalsIgnoreCase(value)) {
+		List<WebElement> radio = widgets.findRadio(radioButtonName, value);
+		if (radio != null) {
+			for (WebElement button : radio) {
 				button.click();
-				break;
+			}
+		} else {
+			List<WebElement> radioGroup = driver.findElements(By
+					.name(radioButtonName));
+			for (WebElement button : radioGroup) {
+				if (button.getAttribute("value").equalsIgnoreCase(value)) {
+					button.click();
+					break;
+				}
 			}
 		}
+		stepDone("selectRadioButtonByValue " + radioButtonName + " " + value);
 	}
 
 	/**
@@ -736,6 +1306,10 @@ public final class WebDriverHelper {
 
 	public boolean isRadioButtonValueSelected(final String radioButtonName,
 			final String value) {
+		Boolean selected = widgets.isRadioSelected(radioButtonName, value);
+		if (selected != null) {
+			return selected;
+		}
 		List<WebElement> radioGroup = driver.findElements(By
 				.name(radioButtonName));
 		for (WebElement button : radioGroup) {
@@ -756,6 +1330,8 @@ public final class WebDriverHelper {
 	 *            the title of the window to switch to
 	 */
 	public void selectWindowByTitle(final String title) {
+		elements.invalidate();
+		cookies.invalidate();
 		String currentWindow = driver.getWindowHandle();
 		Set<String> handles = driver.getWindowHandles();
 		if (!handles.isEmpty()) {
@@ -766,6 +1342,7 @@ public final class WebDriverHelper {
 				}
 			}
 		}
+		stepDone("selectWindowByTitle " + title);
 	}
 
 	/**
@@ -889,74 +1466,6 @@ public final class WebDriverHelper {
 
 	}
 
-	/**
-	 * Returns a DesiredCapabilities object specific to the {@code browser}
-	 * being sent as parameter. If the browser does not exists if default to
-	 * firefox.
-	 * 
-	 * @param browser
-	 *            the browser name
-	 * @return a specific DesiredCapabilities object corresponding to the
-	 *         supplied browser
-	 */
-	private static DesiredCapabilities getCapabilitiesBrowser(
-			final String browser) {
-		DesiredCapabilities capabilities = null;
-		Method[] methods = DesiredCapabilities.class.getDeclaredMethods();
-		for (Method m : methods) {
-			if (m.getName().equalsIgnoreCase(browser)) {
-				try {
-					capabilities = (DesiredCapabilities) m.invoke(null,
-							(Object[]) null);
-				} catch (Exception e) {
-					e.printStackTrace();
-					LOG.debug("Browser: " + browser
-							+ " is not valid. Defaulting to Firefox!");
-				}
-			}
-		}
-
-		if (capabilities == null) {
-			LOG.debug("Browser: " + browser
-					+ " is not valid. Defaulting to Firefox!");
-			capabilities = DesiredCapabilities.firefox();
-		}
-
-		return capabilities;
-	}
-
-	/**
-	 * Returns a web driver instance based on capabilities.
-	 * 
-	 * @param capabilities
-	 *            the desired capabilities
-	 * @param builder
-	 *            the Builder instance
-	 * @return a new WebDriver instance with the desired capabilities specified
-	 */
-	private static WebDriver getDriverInstance(
-			final DesiredCapabilities capabilities, final Builder builder) {
-		WebDriver driver = null;
-		try {
-
-			Class<?> clazz = Class.forName("org.openqa.selenium."
-					+ builder.browserPackage + "."
-					+ StringUtils.capitalize(builder.browser + "Driver"));
-			LOG.info("Driver class to be returned: " + clazz);
-			Constructor<?> c = clazz.getConstructor(Capabilities.class);
-
-			LOG.info("Driver constructor to be called: " + c);
-			driver = (WebDriver) c.newInstance(new Object[] { capabilities });
-			LOG.info("Driver initialized: " + driver);
-		} catch (Exception e) {
-			throw new IllegalArgumentException("Browser " + builder.browser
-					+ " is not a valid name!", e);
-
-		}
-		LOG.info("Returned driver instance: " + driver);
-		return driver;
-	}
-
 	/**
 	 * This method adds browser specific capabilities like FirefoxProfile and
 	 * ChromeOptions.
@@ -1017,13 +1526,43 @@ public final class WebDriverHelper {
 	 * @return a fully configured FirefoxDriver instance
 	 */
 	private static WebDriver getDriver(final Builder builder) {
-		// this is the default value
-		DesiredCapabilities capabilities = getCapabilitiesBrowser(builder.browser);
+		DriverBuildTiming timing = new DriverBuildTiming(builder.browser,
+				builder.runMode);
+		try {
+			return createDriver(builder, timing);
+		} catch (RuntimeException e) {
+			timing.fail(e);
+			throw e;
+		} finally {
+			timing.finish();
+			DriverBuildStats.getInstance().record(timing);
+			LOG.info(timing);
+		}
+	}
+
+	/**
+	 * Creates the driver, timing each stage of the build.
+	 * 
+	 * @param builder
+	 *            the Builder used to construct the WebDriver instance
+	 * @param timing
+	 *            records the duration of each stage
+	 * @return the new WebDriver instance or null if the grid session could
+	 *         not be created
+	 */
+	private static WebDriver createDriver(final Builder builder,
+			final DriverBuildTiming timing) {
+		timing.begin(Stage.CAPABILITIES);
+		DriverFactory factory = DriverFactoryRegistry.getInstance().getFactory(
+				builder.browser);
+		DesiredCapabilities capabilities = new DesiredCapabilities(
+				factory.getCapabilities());
 		WebDriver driver = null;
 
 		/**
 		 * Setting the proxy
 		 */
+		timing.begin(Stage.PROXY);
 		LOG.info("Proxy seetings set");
 		org.openqa.selenium.Proxy proxy = new org.openqa.selenium.Proxy();
 		if (builder.proxyHost != null && !builder.proxyHost.isEmpty()) {
@@ -1044,6 +1583,7 @@ public final class WebDriverHelper {
 		/**
 		 * the Driver will take screenshots
 		 */
+		timing.begin(Stage.CAPABILITIES);
 		LOG.info("Screenshot capability set");
 		capabilities.setCapability(CapabilityType.TAKES_SCREENSHOT, true);
 
@@ -1076,6 +1616,7 @@ public final class WebDriverHelper {
 		/**
 		 * this will actually create firefox profiles, chrome options and others
 		 */
+		timing.begin(Stage.PROFILE);
 		LOG.info("Adding specific browser settings");
 		addSpecificBrowserSettings(capabilities, builder);
 
@@ -1085,16 +1626,26 @@ public final class WebDriverHelper {
 		LOG.info("Detecting running mode");
 		if (builder.runMode.equalsIgnoreCase(Constants.RunMode.GRID)) {
 			LOG.info("Run mode GRID. Setting GRID properties");
+			timing.begin(Stage.REMOTE_SESSION);
 			try {
 				driver = new RemoteWebDriver(new URL(builder.gridUrl),
 						capabilities);
 				((RemoteWebDriver) driver).setLogLevel(Level.SEVERE);
 			} catch (Exception e) {
-				LOG.debug("Exception while initiating remote driver:", e);
+				timing.fail(e);
+				LOG.error("Unable to create a session on the grid "
+						+ builder.gridUrl, e);
 			}
 		} else {
 			LOG.info("Normal run mode. Getting driver instance");
-			driver = getDriverInstance(capabilities, builder);
+			timing.begin(Stage.LOCAL_START);
+			try {
+				driver = factory.newDriver(capabilities);
+			} catch (Exception e) {
+				timing.fail(e);
+				throw new IllegalArgumentException("Browser " + builder.browser
+						+ " is not a valid name!", e);
+			}
 		}
 
 		LOG.info("Returning the following driver: " + driver);
@@ -1118,10 +1669,13 @@ public final class WebDriverHelper {
 		// domain cookie attempt
 		LOG.info("Getting: " + url + " with cookieName: " + cookieName
 				+ " and cookieValue: " + cookieValue);
+		elements.invalidate();
+		cookies.invalidate();
 		driver.get(url + "/404.html"); // this should display 404 not found
-		driver.manage().deleteAllCookies();
-		driver.manage().addCookie(new Cookie(cookieName, cookieValue));
+		cookies.deleteAllCookies();
+		cookies.addCookies(Collections.singletonMap(cookieName, cookieValue));
 		driver.get(url);
+		stepDone("goToUrlWithCookie " + url);
 	}
 
 	/**
@@ -1135,39 +1689,130 @@ public final class WebDriverHelper {
 	public void goToUrlWithCookies(final String url,
 			final Map<String, String> cookieNamesValues) {
 		LOG.info("Getting: " + url + " with cookies: " + cookieNamesValues);
+		elements.invalidate();
+		cookies.invalidate();
 		driver.get(url + "/404.html"); // this should display 404 not found
-		driver.manage().deleteAllCookies();
+		cookies.deleteAllCookies();
+		cookies.addCookies(cookieNamesValues);
+		driver.get(url);
+		stepDone("goToUrlWithCookies " + url);
+	}
 
-		Set<Entry<String, String>> entries = cookieNamesValues.entrySet();
-		for (Entry<String, String> cookieEntry : entries) {
-			driver.manage().addCookie(
-					new Cookie(cookieEntry.getKey(), cookieEntry.getValue()));
+	/**
+	 * Opens the specified URL restoring a session captured with
+	 * {@link #captureSession()}: the cookies are set on the URL domain and the
+	 * localStorage and sessionStorage entries are written before the URL is
+	 * opened.
+	 * 
+	 * @param url
+	 *            the URL you want to open
+	 * @param session
+	 *            the session to restore
+	 */
+	public void goToUrlWithSession(final String url,
+			final SessionSnapshot session) {
+		LOG.info("Getting: " + url + " with session: " + session);
+		elements.invalidate();
+		cookies.invalidate();
+		driver.get(url + "/404.html"); // this should display 404 not found
+		cookies.deleteAllCookies();
+		cookies.addCookies(session.getCookies());
+		if (!session.getLocalStorage().isEmpty()
+				|| !session.getSessionStorage().isEmpty()) {
+			if (!scripts.isAvailable()
+					|| scripts.run("storage", "write",
+							toEntries(session.getLocalStorage()),
+							toEntries(session.getSessionStorage())) == null) {
+				LOG.warn("Web storage cannot be restored on: " + url);
+			}
 		}
 		driver.get(url);
+		stepDone("goToUrlWithSession " + url);
+	}
+
+	/**
+	 * Captures the cookies and the web storage of the current page so that
+	 * the session can be restored into other drivers.
+	 * 
+	 * @return the session snapshot
+	 */
+	public SessionSnapshot captureSession() {
+		cookies.invalidate();
+		List<Cookie> sessionCookies = new ArrayList<Cookie>(cookies
+				.getCookies().values());
+		Map<String, String> local = new LinkedHashMap<String, String>();
+		Map<String, String> session = new LinkedHashMap<String, String>();
+		if (scripts.isAvailable()) {
+			List<?> storage = (List<?>) scripts.run("storage", "read");
+			if (storage != null) {
+				fromEntries((List<?>) storage.get(0), local);
+				fromEntries((List<?>) storage.get(1), session);
+			}
+		}
+		return new SessionSnapshot(sessionCookies, local, session,
+				System.currentTimeMillis());
+	}
+
+	/**
+	 * Converts the storage entries to the format expected by the storage
+	 * script.
+	 * 
+	 * @param values
+	 *            the storage entries
+	 * @return a list of [key, value] pairs
+	 */
+	private static List<List<String>> toEntries(final Map<String, String> values) {
+		List<List<String>> entries = new ArrayList<List<String>>();
+		for (Map.Entry<String, String> entry : values.entrySet()) {
+			entries.add(Arrays.asList(entry.getKey(), entry.getValue()));
+		}
+		return entries;
+	}
+
+	/**
+	 * Converts the [key, value] pairs returned by the storage script.
+	 * 
+	 * @param entries
+	 *            the pairs returned by the script
+	 * @param values
+	 *            receives the entries
+	 */
+	private static void fromEntries(final List<?> entries,
+			final Map<String, String> values) {
+		for (Object entry : entries) {
+			List<?> pair = (List<?>) entry;
+			values.put(String.valueOf(pair.get(0)), String.valueOf(pair.get(1)));
+		}
 	}
 
 	/**
 	 * Returns the contents of the table as a list. Each item in the list
-	 * contains a table row.
+	 * contains a table row. Only the {@code td} cells are returned. Cells
+	 * spanning multiple columns or rows are repeated in every position they
+	 * cover.
 	 * 
 	 * @param tableBy
 	 *            the method of identifying the table
 	 * @return a list containing all the items within the table
 	 */
 	public List<List<String>> getTableAsList(final By tableBy) {
-		List<List<String>> all = new ArrayList<List<String>>();
-		WebElement table = driver.findElement(tableBy);
-
-		List<WebElement> rows = table.findElements(By.tagName("tr"));
-		for (WebElement row : rows) {
-			List<String> toAdd = new ArrayList<String>();
-			List<WebElement> columns = row.findElements(By.tagName("td"));
-			for (WebElement column : columns) {
-				toAdd.add(column.getText());
-			}
-			all.add(toAdd);
-		}
-		return all;
+		return tables.getRows(tableBy, false);
+	}
+
+	/**
+	 * Returns the contents of the table as a list. Each item in the list
+	 * contains a table row. Cells spanning multiple columns or rows are
+	 * repeated in every position they cover.
+	 * 
+	 * @param tableBy
+	 *            the method of identifying the table
+	 * @param includeHeaders
+	 *            true to include the {@code th} cells
+	 * @return a list containing all the items within the table
+	 */
+	public List<List<String>> getTableAsList(final By tableBy,
+			final boolean includeHeaders) {
+		return tables.getRows(tableBy, includeHeaders);
 	}
 
 	/**
@@ -1177,18 +1822,49 @@ public final class WebDriverHelper {
 	 *            the way to identify the table
 	 * @param columnNumber
 	 *            the column number
-	 * @return a list with all the values corresponding to the specified column
+	 * @return a list with all the values corresponding to the specified
+	 *         column. Rows without the column return an empty string
 	 */
 	public List<String> getTableColumn(final By tableBy, final int columnNumber) {
 		List<String> result = new ArrayList<String>();
-		List<List<String>> table = this.getTableAsList(tableBy);
-
-		for (List<String> line : table) {
-			result.add(line.get(columnNumber));
+		for (List<String> line : tables.getColumns(tableBy, false,
+				columnNumber)) {
+			result.add(line.get(0));
 		}
 		return result;
 	}
 
+	/**
+	 * Returns the values found below the header cell with the supplied text.
+	 * 
+	 * @param tableBy
+	 *            the way to identify the table
+	 * @param header
+	 *            the text of the header cell
+	 * @return a list with all the values corresponding to the specified column
+	 *         or an empty list if the header does not exist
+	 */
+	public List<String> getTableColumn(final By tableBy, final String header) {
+		return tables.getColumn(tableBy, header);
+	}
+
+	/**
+	 * Returns only the specified columns from a HTML table.
+	 * 
+	 * @param tableBy
+	 *            the way to identify the table
+	 * @param includeHeaders
+	 *            true to include the {@code th} cells
+	 * @param columns
+	 *            the column numbers
+	 * @return a list containing the selected columns for each row. Missing
+	 *         cells are returned as empty strings
+	 */
+	public List<List<String>> getTableColumns(final By tableBy,
+			final boolean includeHeaders, final int... columns) {
+		return tables.getColumns(tableBy, includeHeaders, columns);
+	}
+
 	/**
 	 * Builder class used to create WebDriver instances.
 	 * 
@@ -1232,10 +1908,19 @@ public final class WebDriverHelper {
 		private String platform;
 		private String runMode = Constants.RunMode.NORMAL;
 		private String gridUrl;
-		private String browserPackage;
 		private boolean flakinessForIe;
 		private String profileLocation;
 
+		/**
+		 * Records the command latencies, if set.
+		 */
+		private DriverMetrics metrics;
+
+		/**
+		 * Counts the page changes for the DOM snapshots.
+		 */
+		private boolean trackPageChanges;
+
 		public Builder flackinessForIe(final boolean flackiness) {
 			this.flakinessForIe = flackiness;
 			return this;
@@ -1248,11 +1933,6 @@ public final class WebDriverHelper {
 
 		public Builder browser(final String b) {
 			this.browser = b;
-			if (b.startsWith("internet")) {
-				browserPackage = "ie";
-			} else {
-				browserPackage = b.toLowerCase();
-			}
 			return this;
 		}
 
@@ -1304,6 +1984,37 @@ public final class WebDriverHelper {
 			return this;
 		}
 
+		/**
+		 * Instruments the drivers so that the latency of every command is
+		 * recorded in the supplied metrics.
+		 * 
+		 * @param driverMetrics
+		 *            the metrics or null to disable the instrumentation
+		 * @return this Builder
+		 */
+		public Builder metrics(final DriverMetrics driverMetrics) {
+			this.metrics = driverMetrics;
+			return this;
+		}
+
+		/**
+		 * Instruments the drivers so that they count the commands which may
+		 * change the page, which makes {@link WebDriverHelper#takeSnapshot()}
+		 * available. The drivers built with metrics count them as well. Like
+		 * with metrics, the driver is a proxy which cannot be cast to the
+		 * concrete driver class; use
+		 * {@link org.openqa.selenium.internal.WrapsDriver#getWrappedDriver()}
+		 * for that.
+		 * 
+		 * @param track
+		 *            true to count the page changes
+		 * @return this Builder
+		 */
+		public Builder trackPageChanges(final boolean track) {
+			this.trackPageChanges = track;
+			return this;
+		}
+
 		@Override
 		public String toString() {
 			return "Builder [userAgent=" + userAgent + ", jsEnabled="
@@ -1313,21 +2024,46 @@ public final class WebDriverHelper {
 					+ ", assumeAllCertsUntrusted=" + assumeAllCertsUntrusted
 					+ ", browser=" + browser + ", browserVersion="
 					+ browserVersion + ", platform=" + platform + ", runMode="
-					+ runMode + ", gridUrl=" + gridUrl + ", browserPackage="
-					+ browserPackage + "]" + ", profileLocation="
-					+ profileLocation;
+					+ runMode + ", gridUrl=" + gridUrl + "]" + ", profileLocation="
+					+ profileLocation + ", instrumented=" + isInstrumented();
+		}
+
+		/**
+		 * Returns a key identifying the driver configuration. Two Builders with
+		 * the same key will create equivalent WebDriver instances.
+		 * 
+		 * @return the key corresponding to the current settings
+		 */
+		public String getDriverKey() {
+			return StringUtils.join(new Object[] { browser, browserVersion,
+					platform, runMode, gridUrl, proxyHost, proxyPort,
+					noProxyFor, profileLocation, userAgent, jsEnabled,
+					acceptAllCertificates, assumeAllCertsUntrusted,
+					flakinessForIe, isInstrumented() }, "|");
 		}
 
 		/**
 		 * Creates a new WebDriver instance based on the properties supplied to
-		 * the Builder.
+		 * the Builder. If metrics were supplied or the page changes are
+		 * tracked the driver is instrumented.
 		 * 
 		 * @return a fully configured WebDriver instance
 		 */
 		public WebDriver buildDriver() {
 			LOG.info("Returning a driver with the following settings: "
 					+ this.toString());
-			return getDriver(this);
+			WebDriver driver = getDriver(this);
+			if (metrics != null && driver != null) {
+				return metrics.instrument(driver);
+			}
+			if (trackPageChanges && driver != null) {
+				return InstrumentedDriver.wrap(driver, null);
+			}
+			return driver;
+		}
+
+		private boolean isInstrumented() {
+			return metrics != null || trackPageChanges;
 		}
 	}
 
@@ -0,0 +1,580 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+
+/**
+ * Default {@link DriverPool} implementation. Drivers are grouped by the
+ * settings of the Builder used to create them and are reset in place (cookies,
+ * web storage, extra windows, alerts, timeouts) before being handed to the
+ * next test. <br/>
+ * WebDriver can only clear the cookies and the web storage of the page it
+ * is showing, so the state left by the test on other domains is kept by the
+ * browser. Only pool the drivers of suites whose tests stay on one domain or
+ * do not depend on a clean browser. <br/>
+ * When all the drivers for a configuration are leased a new driver is created,
+ * so a test never waits for another one to finish. The pool size only limits
+ * the number of idle drivers kept alive.
+ * 
+ * @author ludovicianul
+ * 
+ */
+public final class WebDriverPool implements DriverPool {
+
+	/**
+	 * The page loaded after resetting a driver.
+	 */
+	private static final String BLANK_PAGE = "about:blank";
+
+	/**
+	 * Script used to clear the web storage of the current page.
+	 */
+	private static final String CLEAR_STORAGE_SCRIPT = "try { window.localStorage.clear(); } catch (e) {}"
+			+ "try { window.sessionStorage.clear(); } catch (e) {}";
+
+	/**
+	 * The script timeout of a new driver, restored after each test since the
+	 * helpers raise it for their asynchronous scripts.
+	 */
+	private static final long DEFAULT_SCRIPT_TIMEOUT = 0;
+
+	/**
+	 * The page load timeout of a new driver. A negative value means no
+	 * timeout.
+	 */
+	private static final long DEFAULT_PAGE_LOAD_TIMEOUT = -1;
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger.getLogger(WebDriverPool.class);
+
+	/**
+	 * The maximum number of idle drivers kept for each configuration.
+	 */
+	private final int maxIdle;
+
+	/**
+	 * The number of tests a driver can serve before being quit. Zero means
+	 * unlimited.
+	 */
+	private final int maxLeases;
+
+	/**
+	 * The number of milliseconds an idle driver is kept alive. Zero means
+	 * forever.
+	 */
+	private final long idleTimeoutMillis;
+
+	/**
+	 * Whether the drivers are checked before being leased.
+	 */
+	private final boolean healthCheck;
+
+	/**
+	 * The idle drivers grouped by the Builder settings.
+	 */
+	private final Map<String, LinkedList<PooledDriver>> idle = new HashMap<String, LinkedList<PooledDriver>>();
+
+	/**
+	 * The drivers currently used by tests.
+	 */
+	private final Map<WebDriver, PooledDriver> leased = new IdentityHashMap<WebDriver, PooledDriver>();
+
+	/**
+	 * Creates drivers in background when the pool is warmed up.
+	 */
+	private DriverWarmUpService warmUpService;
+
+	/**
+	 * The number of drivers created by the pool.
+	 */
+	private int created;
+
+	/**
+	 * The number of times an existing driver was reused.
+	 */
+	private int reused;
+
+	/**
+	 * Creates a new pool.
+	 * 
+	 * @param size
+	 *            the maximum number of idle drivers kept for each
+	 *            configuration
+	 * @param maxLeasesPerDriver
+	 *            the number of tests a driver can serve before being quit; 0
+	 *            means unlimited
+	 * @param idleTimeoutSeconds
+	 *            the number of seconds an idle driver is kept alive; 0 means
+	 *            forever
+	 * @param checkHealth
+	 *            true if the drivers must be checked before being reused
+	 */
+	public WebDriverPool(final int size, final int maxLeasesPerDriver,
+			final int idleTimeoutSeconds, final boolean checkHealth) {
+		if (size < 1) {
+			throw new IllegalArgumentException(
+					"Pool size must be greater than 0!");
+		}
+		this.maxIdle = size;
+		this.maxLeases = Math.max(0, maxLeasesPerDriver);
+		this.idleTimeoutMillis = Math.max(0, idleTimeoutSeconds) * 1000L;
+		this.healthCheck = checkHealth;
+	}
+
+	@Override
+	public WebDriver acquire(final WebDriverHelper.Builder builder) {
+		String key = builder.getDriverKey();
+		PooledDriver pooled = takeIdle(key);
+		while (pooled != null && healthCheck && !isHealthy(pooled.driver)) {
+			LOG.info("Discarding unhealthy driver: " + pooled.driver);
+			quietlyQuit(pooled.driver);
+			pooled = takeIdle(key);
+		}
+
+		if (pooled == null) {
+			WebDriver driver = takeWarmedDriver(key);
+			if (driver == null) {
+				driver = builder.buildDriver();
+			}
+			if (driver == null) {
+				return null;
+			}
+			pooled = new PooledDriver(key, driver);
+			synchronized (this) {
+				created++;
+			}
+		} else {
+			synchronized (this) {
+				reused++;
+			}
+			LOG.info("Reusing pooled driver: " + pooled.driver);
+		}
+
+		pooled.leases++;
+		synchronized (this) {
+			leased.put(pooled.driver, pooled);
+		}
+		return pooled.driver;
+	}
+
+	@Override
+	public void release(final WebDriver driver) {
+		if (driver == null) {
+			return;
+		}
+		PooledDriver pooled;
+		synchronized (this) {
+			pooled = leased.remove(driver);
+		}
+		if (pooled == null) {
+			LOG.warn("Driver was not leased from this pool. Quitting it: "
+					+ driver);
+			quietlyQuit(driver);
+			return;
+		}
+
+		if (maxLeases > 0 && pooled.leases >= maxLeases) {
+			LOG.info("Driver reached the maximum number of leases: " + driver);
+			quietlyQuit(driver);
+			return;
+		}
+
+		if (!resetState(driver)) {
+			quietlyQuit(driver);
+			return;
+		}
+
+		boolean kept = false;
+		synchronized (this) {
+			LinkedList<PooledDriver> drivers = idle.get(pooled.key);
+			if (drivers == null) {
+				drivers = new LinkedList<PooledDriver>();
+				idle.put(pooled.key, drivers);
+			}
+			if (drivers.size() < maxIdle) {
+				pooled.lastReleased = System.currentTimeMillis();
+				drivers.addFirst(pooled);
+				kept = true;
+			}
+		}
+		if (!kept) {
+			LOG.info("Pool is full. Quitting driver: " + driver);
+			quietlyQuit(driver);
+		}
+	}
+
+	@Override
+	public void invalidate(final WebDriver driver) {
+		if (driver == null) {
+			return;
+		}
+		synchronized (this) {
+			leased.remove(driver);
+		}
+		quietlyQuit(driver);
+	}
+
+	@Override
+	public void shutdown() {
+		DriverWarmUpService warmUp;
+		List<PooledDriver> all = new ArrayList<PooledDriver>();
+		synchronized (this) {
+			warmUp = warmUpService;
+			warmUpService = null;
+			for (List<PooledDriver> drivers : idle.values()) {
+				all.addAll(drivers);
+			}
+			all.addAll(leased.values());
+			idle.clear();
+			leased.clear();
+			LOG.info("Shutting down driver pool. Drivers created: " + created
+					+ ", reused: " + reused);
+		}
+		if (warmUp != null) {
+			warmUp.shutdown();
+		}
+		quitAll(all);
+	}
+
+	/**
+	 * Starts creating {@code count} drivers in background with the settings
+	 * of the supplied Builder. The drivers are handed to the tests calling
+	 * {@link #acquire(WebDriverHelper.Builder)} with an equivalent Builder
+	 * when no idle driver is available.
+	 * 
+	 * @param builder
+	 *            the Builder used to create the drivers
+	 * @param count
+	 *            the number of drivers to create
+	 */
+	public void warmUp(final WebDriverHelper.Builder builder, final int count) {
+		DriverWarmUpService warmUp;
+		synchronized (this) {
+			if (warmUpService == null) {
+				warmUpService = new DriverWarmUpService();
+			}
+			warmUp = warmUpService;
+		}
+		warmUp.start(builder, count);
+	}
+
+	/**
+	 * Returns the service creating the warmed drivers.
+	 * 
+	 * @return the DriverWarmUpService or null if the pool was never warmed up
+	 */
+	public synchronized DriverWarmUpService getWarmUpService() {
+		return warmUpService;
+	}
+
+	/**
+	 * Quits the drivers that have been idle for more than the idle timeout.
+	 */
+	public void evictIdleDrivers() {
+		List<PooledDriver> expired;
+		synchronized (this) {
+			expired = removeExpired();
+		}
+		quitAll(expired);
+	}
+
+	/**
+	 * Returns the number of drivers created by the pool.
+	 * 
+	 * @return the number of drivers created
+	 */
+	public synchronized int getCreatedCount() {
+		return created;
+	}
+
+	/**
+	 * Returns the number of times an existing driver was handed to a test.
+	 * 
+	 * @return the number of reuses
+	 */
+	public synchronized int getReusedCount() {
+		return reused;
+	}
+
+	/**
+	 * Returns the number of idle drivers for all configurations.
+	 * 
+	 * @return the number of idle drivers
+	 */
+	public synchronized int getIdleCount() {
+		int count = 0;
+		for (List<PooledDriver> drivers : idle.values()) {
+			count += drivers.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Resets the driver state so that it can be used by another test: dismisses
+	 * any alert, closes the extra windows, clears the cookies and web storage
+	 * of the current page, restores the timeouts and loads a blank page.
+	 * 
+	 * @param driver
+	 *            the driver to reset
+	 * @return true if the driver was reset or false if it must be discarded
+	 */
+	private boolean resetState(final WebDriver driver) {
+		try {
+			dismissAlert(driver);
+			closeExtraWindows(driver);
+			clearStorage(driver);
+			driver.manage().deleteAllCookies();
+			driver.manage().timeouts().implicitlyWait(0, TimeUnit.SECONDS);
+			restoreTimeouts(driver);
+			driver.get(BLANK_PAGE);
+			return true;
+		} catch (WebDriverException e) {
+			LOG.warn("Unable to reset driver state. Discarding driver: "
+					+ e.getMessage());
+		}
+		return false;
+	}
+
+	/**
+	 * Dismisses the alert if any is displayed.
+	 * 
+	 * @param driver
+	 *            the WebDriver instance
+	 */
+	private void dismissAlert(final WebDriver driver) {
+		try {
+			driver.switchTo().alert().dismiss();
+		} catch (RuntimeException e) {
+			LOG.debug("No alert to dismiss: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Restores the script and page load timeouts of a new driver. The drivers
+	 * which do not support a timeout keep their value.
+	 * 
+	 * @param driver
+	 *            the WebDriver instance
+	 */
+	private void restoreTimeouts(final WebDriver driver) {
+		try {
+			driver.manage().timeouts()
+					.setScriptTimeout(DEFAULT_SCRIPT_TIMEOUT, TimeUnit.SECONDS);
+		} catch (UnsupportedOperationException e) {
+			LOG.debug("Unable to restore the script timeout: " + e.getMessage());
+		}
+		try {
+			driver.manage().timeouts()
+					.pageLoadTimeout(DEFAULT_PAGE_LOAD_TIMEOUT, TimeUnit.SECONDS);
+		} catch (UnsupportedOperationException e) {
+			LOG.debug("Unable to restore the page load timeout: "
+					+ e.getMessage());
+		}
+	}
+
+	/**
+	 * Closes all the windows except the current one and switches to the top
+	 * level document.
+	 * 
+	 * @param driver
+	 *            the WebDriver instance
+	 */
+	private void closeExtraWindows(final WebDriver driver) {
+		Set<String> handles = driver.getWindowHandles();
+		if (handles.size() > 1) {
+			String current = driver.getWindowHandle();
+			for (String handle : handles) {
+				if (!handle.equals(current)) {
+					driver.switchTo().window(handle).close();
+				}
+			}
+			driver.switchTo().window(current);
+		}
+		driver.switchTo().defaultContent();
+	}
+
+	/**
+	 * Clears the localStorage and sessionStorage of the current page.
+	 * 
+	 * @param driver
+	 *            the WebDriver instance
+	 */
+	private void clearStorage(final WebDriver driver) {
+		if (!(driver instanceof JavascriptExecutor)) {
+			return;
+		}
+		try {
+			((JavascriptExecutor) driver).executeScript(CLEAR_STORAGE_SCRIPT);
+		} catch (RuntimeException e) {
+			LOG.debug("Unable to clear web storage: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Checks if the driver session is still alive.
+	 * 
+	 * @param driver
+	 *            the WebDriver instance
+	 * @return true if the driver can still be used or false otherwise
+	 */
+	private boolean isHealthy(final WebDriver driver) {
+		try {
+			return driver.getWindowHandle() != null;
+		} catch (RuntimeException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Takes a driver created by the warm-up service.
+	 * 
+	 * @param key
+	 *            the Builder key
+	 * @return a warmed driver or null if none is available
+	 */
+	private WebDriver takeWarmedDriver(final String key) {
+		DriverWarmUpService warmUp = getWarmUpService();
+		if (warmUp == null) {
+			return null;
+		}
+		return warmUp.take(key);
+	}
+
+	/**
+	 * Evicts the expired drivers and takes the most recently used idle driver
+	 * for the supplied key.
+	 * 
+	 * @param key
+	 *            the Builder key
+	 * @return an idle driver or null if there is none
+	 */
+	private PooledDriver takeIdle(final String key) {
+		List<PooledDriver> expired;
+		PooledDriver pooled;
+		synchronized (this) {
+			expired = removeExpired();
+			pooled = pollIdle(key);
+		}
+		quitAll(expired);
+		return pooled;
+	}
+
+	/**
+	 * Removes the most recently used idle driver for the supplied key. Must be
+	 * called while holding the pool lock.
+	 * 
+	 * @param key
+	 *            the Builder key
+	 * @return an idle driver or null if there is none
+	 */
+	private PooledDriver pollIdle(final String key) {
+		LinkedList<PooledDriver> drivers = idle.get(key);
+		if (drivers == null || drivers.isEmpty()) {
+			return null;
+		}
+		return drivers.removeFirst();
+	}
+
+	/**
+	 * Removes the expired idle drivers. Must be called while holding the pool
+	 * lock.
+	 * 
+	 * @return the drivers that must be quit
+	 */
+	private List<PooledDriver> removeExpired() {
+		List<PooledDriver> expired = new ArrayList<PooledDriver>();
+		if (idleTimeoutMillis == 0) {
+			return expired;
+		}
+		long now = System.currentTimeMillis();
+		for (List<PooledDriver> drivers : idle.values()) {
+			Iterator<PooledDriver> it = drivers.iterator();
+			while (it.hasNext()) {
+				PooledDriver pooled = it.next();
+				if (now - pooled.lastReleased > idleTimeoutMillis) {
+					it.remove();
+					expired.add(pooled);
+				}
+			}
+		}
+		return expired;
+	}
+
+	/**
+	 * Quits all the supplied drivers.
+	 * 
+	 * @param drivers
+	 *            the drivers to quit
+	 */
+	private void quitAll(final List<PooledDriver> drivers) {
+		for (PooledDriver pooled : drivers) {
+			quietlyQuit(pooled.driver);
+		}
+	}
+
+	/**
+	 * Quits the driver ignoring any error.
+	 * 
+	 * @param driver
+	 *            the driver to quit
+	 */
+	private void quietlyQuit(final WebDriver driver) {
+		try {
+			driver.quit();
+		} catch (Exception e) {
+			LOG.warn("Browser might be already closed!");
+		}
+	}
+
+	/**
+	 * Holds a driver together with its pool bookkeeping.
+	 */
+	private static final class PooledDriver {
+		/**
+		 * The Builder key.
+		 */
+		private final String key;
+
+		/**
+		 * The WebDriver instance.
+		 */
+		private final WebDriver driver;
+
+		/**
+		 * The number of times the driver was leased.
+		 */
+		private int leases;
+
+		/**
+		 * The time when the driver was last given back to the pool.
+		 */
+		private long lastReleased;
+
+		/**
+		 * Creates a new entry.
+		 * 
+		 * @param k
+		 *            the Builder key
+		 * @param d
+		 *            the WebDriver instance
+		 */
+		private PooledDriver(final String k, final WebDriver d) {
+			this.key = k;
+			this.driver = d;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebElement;
+
+/**
+ * Evaluates drop-down and radio button checks with a single script call
+ * instead of reading every option or radio button through WebDriver. <br/>
+ * All the methods return null if the driver cannot execute JavaScript, in
+ * which case the caller must use the WebDriver API.
+ * 
+ * @author ludovicianul
+ * 
+ */
+final class WidgetOperations {
+
+	/**
+	 * The Logger for this class.
+	 */
+	private static final Logger LOG = Logger.getLogger(WidgetOperations.class);
+
+	/**
+	 * Used to run the widget script.
+	 */
+	private final ScriptRunner scripts;
+
+	/**
+	 * Creates a new WidgetOperations instance.
+	 * 
+	 * @param runner
+	 *            the ScriptRunner of the driver
+	 */
+	WidgetOperations(final ScriptRunner runner) {
+		this.scripts = runner;
+	}
+
+	/**
+	 * Checks if the drop-down has an option with the supplied display text.
+	 * 
+	 * @param select
+	 *            the drop-down element
+	 * @param text
+	 *            the text to search for
+	 * @return the result of the check or null if scripts are not available
+	 */
+	Boolean isTextPresent(final WebElement select, final String text) {
+		return (Boolean) run("textPresent", select, text);
+	}
+
+	/**
+	 * Checks if the drop-down has an option with the supplied value.
+	 * 
+	 * @param select
+	 *            the drop-down element
+	 * @param value
+	 *            the value to search for
+	 * @return the result of the check or null if scripts are not available
+	 */
+	Boolean isValuePresent(final WebElement select, final String value) {
+		return (Boolean) run("valuePresent", select, value);
+	}
+
+	/**
+	 * Checks if an option with the supplied display text is selected.
+	 * 
+	 * @param select
+	 *            the drop-down element
+	 * @param text
+	 *            the text to search for
+	 * @return the result of the check or null if scripts are not available
+	 */
+	Boolean isTextSelected(final WebElement select, final String text) {
+		return (Boolean) run("textSelected", select, text);
+	}
+
+	/**
+	 * Checks if an option with the supplied value is selected.
+	 * 
+	 * @param select
+	 *            the drop-down element
+	 * @param value
+	 *            the value to search for
+	 * @return the result of the check or null if scripts are not available
+	 */
+	Boolean isValueSelected(final WebElement select, final String value) {
+		return (Boolean) run("valueSelected", select, value);
+	}
+
+	/**
+	 * Returns the display text of the first selected option.
+	 * 
+	 * @param select
+	 *            the drop-down element
+	 * @return the text of the option or null if scripts are not available
+	 * @throws NoSuchElementException
+	 *             if no option is selected
+	 */
+	String getSelectedText(final WebElement select) {
+		List<?> selected = (List<?>) run("selectedText", select, "");
+		if (selected == null) {
+			return null;
+		}
+		if (selected.isEmpty()) {
+			throw new NoSuchElementException("No options are selected");
+		}
+		return (String) selected.get(0);
+	}
+
+	/**
+	 * Finds the radio button having the supplied value, ignoring the case.
+	 * 
+	 * @param name
+	 *            the name of the radio button group
+	 * @param value
+	 *            the value of the radio button
+	 * @return a list holding the radio button, an empty list if there is no
+	 *         such radio button or null if scripts are not available
+	 */
+	@SuppressWarnings("unchecked")
+	List<WebElement> findRadio(final String name, final String value) {
+		return (List<WebElement>) run("findRadio", name, value);
+	}
+
+	/**
+	 * Checks if the radio button having the supplied value is selected.
+	 * 
+	 * @param name
+	 *            the name of the radio button group
+	 * @param value
+	 *            the value of the radio button
+	 * @return the result of the check or null if scripts are not available
+	 */
+	Boolean isRadioSelected(final String name, final String value) {
+		return (Boolean) run("radioSelected", name, value);
+	}
+
+	/**
+	 * Runs a widget operation.
+	 * 
+	 * @param operation
+	 *            the operation name
+	 * @param target
+	 *            the drop-down element or the radio button group name
+	 * @param expected
+	 *            the text or value to look for
+	 * @return the script result or null if scripts are not available
+	 */
+	private Object run(final String operation, final Object target,
+			final String expected) {
+		if (!scripts.isAvailable()) {
+			return null;
+		}
+		try {
+			return scripts.run("widgets", operation, target, expected);
+		} catch (UnsupportedOperationException e) {
+			LOG.debug("Falling back to WebDriver calls for " + operation);
+			return null;
+		}
+	}
+}
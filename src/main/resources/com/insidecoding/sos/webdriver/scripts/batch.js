@@ -0,0 +1,52 @@
+/*
+ * Reads the state of several elements in a single call.
+ *
+ * arguments[0] - the reads, each one as
+ *                [operation, locator strategy, locator value, attribute]
+ *
+ * Returns an array holding [found, value] for each read, or null for the reads
+ * whose locator cannot be evaluated by this browser.
+ */
+var reads = arguments[0];
+
+function attributeOf(element, name) {
+	var value = element[name];
+	if (typeof value == 'boolean') {
+		return value ? 'true' : null;
+	}
+	if (value == null || typeof value == 'object'
+			|| typeof value == 'function') {
+		value = element.getAttribute(name);
+	}
+	return value == null ? null : String(value);
+}
+
+var result = [];
+for (var i = 0; i < reads.length; i++) {
+	var read = reads[i];
+	var element;
+	try {
+		element = find(read[1], read[2]);
+	} catch (e) {
+		result.push(null);
+		continue;
+	}
+	if (element == null) {
+		result.push([ false, null ]);
+		continue;
+	}
+	var value = null;
+	switch (read[0]) {
+	case 'text':
+		value = visibleText(element);
+		break;
+	case 'attribute':
+		value = attributeOf(element, read[3]);
+		break;
+	case 'checked':
+		value = String(!!(element.checked || element.selected));
+		break;
+	}
+	result.push([ true, value ]);
+}
+return result;
@@ -0,0 +1,35 @@
+/*
+ * Sets several cookies in a single call.
+ *
+ * arguments[0] - the cookies, each one as [name, value, cookie string]
+ *
+ * Returns the names of the cookies which are not visible to the page with the
+ * expected value after being set, so that they can be added through WebDriver.
+ */
+var cookies = arguments[0];
+
+for (var i = 0; i < cookies.length; i++) {
+	document.cookie = cookies[i][2];
+}
+
+/*
+ * The same name can be listed several times, once for each matching path.
+ */
+var present = {};
+var pairs = String(document.cookie).split(';');
+for (var i = 0; i < pairs.length; i++) {
+	var pair = pairs[i].replace(/^\s+|\s+$/g, '');
+	var separator = pair.indexOf('=');
+	if (separator >= 0) {
+		present[pair.substring(0, separator) + '='
+				+ pair.substring(separator + 1)] = true;
+	}
+}
+
+var missing = [];
+for (var i = 0; i < cookies.length; i++) {
+	if (!present[cookies[i][0] + '=' + cookies[i][1]]) {
+		missing.push(cookies[i][0]);
+	}
+}
+return missing;
@@ -0,0 +1,189 @@
+/*
+ * Functions shared by all the scripts. This file is prepended to every script
+ * executed by the ScriptRunner.
+ */
+function normalise(text) {
+	return String(text).replace(/[\s\u00a0]+/g, ' ').replace(/^ | $/g, '');
+}
+
+function textOf(element) {
+	var text = element.innerText;
+	if (text == null) {
+		text = element.textContent;
+	}
+	return text == null ? '' : normalise(text);
+}
+
+/*
+ * Returns the links whose text matches, stopping after max links when max is
+ * greater than 0.
+ */
+function findLinks(value, partial, max) {
+	var links = document.getElementsByTagName('a');
+	var found = [];
+	for (var i = 0; i < links.length; i++) {
+		var text = textOf(links[i]);
+		if (partial ? text.indexOf(value) >= 0 : text == value) {
+			found.push(links[i]);
+			if (found.length == max) {
+				break;
+			}
+		}
+	}
+	return found;
+}
+
+function findLink(value, partial) {
+	return findLinks(value, partial, 1)[0] || null;
+}
+
+function toArray(nodes) {
+	var result = [];
+	for (var i = 0; i < nodes.length; i++) {
+		result.push(nodes[i]);
+	}
+	return result;
+}
+
+function find(strategy, value) {
+	switch (strategy) {
+	case 'id':
+		return document.getElementById(value);
+	case 'name':
+		return document.getElementsByName(value)[0] || null;
+	case 'className':
+		return document.querySelector('.' + value);
+	case 'css':
+		return document.querySelector(value);
+	case 'tagName':
+		return document.getElementsByTagName(value)[0] || null;
+	case 'xpath':
+		return document.evaluate(value, document, null, 9, null).singleNodeValue;
+	case 'linkText':
+		return findLink(value, false);
+	case 'partialLinkText':
+		return findLink(value, true);
+	}
+	throw new Error('Unknown locator strategy: ' + strategy);
+}
+
+/*
+ * Returns all the elements matching the locator, in document order.
+ */
+function findAll(strategy, value) {
+	switch (strategy) {
+	case 'id':
+		var element = document.getElementById(value);
+		return element ? [ element ] : [];
+	case 'name':
+		return toArray(document.getElementsByName(value));
+	case 'className':
+		return toArray(document.querySelectorAll('.' + value));
+	case 'css':
+		return toArray(document.querySelectorAll(value));
+	case 'tagName':
+		return toArray(document.getElementsByTagName(value));
+	case 'xpath':
+		var snapshot = document.evaluate(value, document, null, 7, null);
+		var nodes = [];
+		for (var i = 0; i < snapshot.snapshotLength; i++) {
+			nodes.push(snapshot.snapshotItem(i));
+		}
+		return nodes;
+	case 'linkText':
+		return findLinks(value, false, 0);
+	case 'partialLinkText':
+		return findLinks(value, true, 0);
+	}
+	throw new Error('Unknown locator strategy: ' + strategy);
+}
+
+function isVisible(element) {
+	if (element.tagName.toLowerCase() == 'input' && element.type == 'hidden') {
+		return false;
+	}
+	for (var e = element; e && e.nodeType == 1; e = e.parentNode) {
+		var style = window.getComputedStyle ? window.getComputedStyle(e, null)
+				: e.currentStyle;
+		if (style && style.display == 'none') {
+			return false;
+		}
+		if (style && e == element && style.visibility == 'hidden') {
+			return false;
+		}
+	}
+	return true;
+}
+
+var SKIPPED_TAGS = /^(script|style|noscript|template|head)$/i;
+
+function styleOf(element) {
+	return window.getComputedStyle ? window.getComputedStyle(element, null)
+			: element.currentStyle;
+}
+
+/*
+ * Collects the text rendered inside the element. Block elements are separated
+ * by new lines and table cells by spaces, as done by WebDriver. The spaces of
+ * preformatted text are kept as non breaking spaces, so that only the other
+ * white space is collapsed by visibleText.
+ */
+function collectText(element, parts, preformatted, hidden) {
+	for (var node = element.firstChild; node; node = node.nextSibling) {
+		if (node.nodeType == 3) {
+			if (!hidden) {
+				parts.push(preformatted ? node.nodeValue.replace(/[ \t]/g,
+						'\u00a0').replace(/\r\n?/g, '\n') : node.nodeValue
+						.replace(/[\t\n\r\f]/g, ' '));
+			}
+			continue;
+		}
+		if (node.nodeType != 1 || SKIPPED_TAGS.test(node.tagName)) {
+			continue;
+		}
+		if (/^br$/i.test(node.tagName)) {
+			parts.push('\n');
+			continue;
+		}
+		var style = styleOf(node);
+		var display = style ? style.display : 'inline';
+		if (display == 'none') {
+			continue;
+		}
+		var visibility = style ? style.visibility : 'inherit';
+		var nodeHidden = visibility == 'hidden' || visibility == 'collapse'
+				|| (hidden && visibility != 'visible');
+		var separator = display == 'inline' ? ''
+				: display == 'table-cell' || display == 'inline-block' ? ' '
+						: '\n';
+		parts.push(separator);
+		collectText(node, parts, preformatted
+				|| (style != null && /^pre/.test(style.whiteSpace)), nodeHidden);
+		parts.push(separator);
+	}
+	return parts;
+}
+
+/*
+ * Returns the text of the element following the rules of
+ * WebElement.getText(): hidden elements are skipped, the white space is
+ * collapsed over the whole text, the line breaks are kept and the empty lines
+ * are removed.
+ */
+function visibleText(element) {
+	if (!isVisible(element)) {
+		return '';
+	}
+	var style = styleOf(element);
+	var lines = collectText(element, [], style != null
+			&& /^pre/.test(style.whiteSpace), false).join('')
+			.replace(/ +/g, ' ').split('\n');
+	var result = [];
+	for (var i = 0; i < lines.length; i++) {
+		var line = lines[i].replace(/^ +| +$/g, '').replace(/\u00a0/g, ' ');
+		if (line.length > 0) {
+			result.push(line);
+		}
+	}
+	return result.join('\n');
+}
@@ -0,0 +1,137 @@
+/*
+ * Fills several form fields in a single call, firing the events a user would
+ * trigger so that the page scripts still react to the new values.
+ *
+ * arguments[0] - the fields, each one as [locator strategy, locator value, value]
+ *
+ * Returns an array holding, for each field, true if the value was applied,
+ * false if the element was not found or cannot be edited, or null if the
+ * locator cannot be evaluated by this browser.
+ */
+var fields = arguments[0];
+
+function fire(element, type) {
+	try {
+		if (document.createEvent) {
+			var event = document.createEvent('HTMLEvents');
+			event.initEvent(type, true, false);
+			element.dispatchEvent(event);
+		} else if (element.fireEvent) {
+			element.fireEvent('on' + type);
+		}
+	} catch (e) {
+		// events unknown to this browser are ignored
+	}
+}
+
+/*
+ * Sets a property through the setter of the element prototype, like the
+ * browser does when the user edits the field. Frameworks which define the
+ * property on the element itself to track its changes, like React, then see
+ * the new value.
+ */
+function setProperty(element, type, property, value) {
+	try {
+		var constructor = window[type];
+		var descriptor = constructor && Object.getOwnPropertyDescriptor
+				&& Object.getOwnPropertyDescriptor(constructor.prototype,
+						property);
+		if (descriptor && descriptor.set) {
+			descriptor.set.call(element, value);
+			return;
+		}
+	} catch (e) {
+		// older browsers without property descriptors
+	}
+	element[property] = value;
+}
+
+/*
+ * Checks or unchecks a checkbox or radio button and fires the click a user
+ * would make, only if the state changes.
+ */
+function setChecked(element, checked) {
+	if (element.checked == checked) {
+		return;
+	}
+	setProperty(element, 'HTMLInputElement', 'checked', checked);
+	fire(element, 'click');
+}
+
+function isChecked(value) {
+	return /^(true|on|checked|yes)$/i.test(value);
+}
+
+function selectOption(select, value) {
+	var options = select.options || select.getElementsByTagName('option');
+	for (var i = 0; i < options.length; i++) {
+		if (options[i].getAttribute('value') == value) {
+			return options[i];
+		}
+	}
+	for (var i = 0; i < options.length; i++) {
+		if (textOf(options[i]) == value) {
+			return options[i];
+		}
+	}
+	return null;
+}
+
+function findRadio(radio, value) {
+	var radios = document.getElementsByName(radio.name);
+	var lower = String(value).toLowerCase();
+	for (var i = 0; i < radios.length; i++) {
+		if (radios[i].value != null
+				&& String(radios[i].value).toLowerCase() == lower) {
+			return radios[i];
+		}
+	}
+	return null;
+}
+
+function fill(element, value) {
+	if (element.disabled || element.readOnly) {
+		return false;
+	}
+	var tag = element.tagName.toLowerCase();
+	var type = String(element.type).toLowerCase();
+	var target = element;
+	if (tag == 'select') {
+		var option = selectOption(element, value);
+		if (option == null) {
+			return false;
+		}
+		option.selected = true;
+	} else if (type == 'checkbox') {
+		setChecked(element, isChecked(value));
+	} else if (type == 'radio') {
+		target = findRadio(element, value);
+		if (target == null || target.disabled) {
+			return false;
+		}
+		setChecked(target, true);
+	} else if (tag == 'input' || tag == 'textarea') {
+		fire(element, 'focus');
+		setProperty(element, tag == 'input' ? 'HTMLInputElement'
+				: 'HTMLTextAreaElement', 'value', value);
+	} else {
+		return false;
+	}
+	fire(target, 'input');
+	fire(target, 'change');
+	fire(target, 'blur');
+	return true;
+}
+
+var result = [];
+for (var i = 0; i < fields.length; i++) {
+	var element;
+	try {
+		element = find(fields[i][0], fields[i][1]);
+	} catch (e) {
+		result.push(null);
+		continue;
+	}
+	result.push(element == null ? false : fill(element, fields[i][2]));
+}
+return result;
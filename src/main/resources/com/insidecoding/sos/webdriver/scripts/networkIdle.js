@@ -0,0 +1,49 @@
+/*
+ * Waits until the page is loaded and the network tracker saw no activity for
+ * the supplied time.
+ *
+ * arguments[0] - the number of milliseconds without activity
+ * arguments[1] - the maximum number of milliseconds to wait
+ * arguments[2] - the callback
+ *
+ * Calls back [true, time to ready in milliseconds, page URL, navigation start]
+ * when the page is idle, [false, number of pending activities] on timeout, or
+ * null if the tracker is not installed on this page. The navigation start
+ * identifies the page load the time was measured for.
+ */
+var idleMillis = arguments[0];
+var timeout = arguments[1];
+var callback = arguments[arguments.length - 1];
+
+var state = window.__sosNetwork;
+if (!state) {
+	callback(null);
+	return;
+}
+
+function now() {
+	return new Date().getTime();
+}
+
+var start = now();
+function check() {
+	state.poll();
+	var time = now();
+	var complete = document.readyState == 'complete';
+	if (complete && state.loaded == null) {
+		state.loaded = time;
+	}
+	if (complete && state.pending == 0
+			&& time - state.lastActivity >= idleMillis) {
+		var readyAt = Math.max(state.lastActivity, state.loaded);
+		callback([ true, Math.max(0, readyAt - state.navigation),
+				String(window.location.href), state.navigation ]);
+		return;
+	}
+	if (time - start >= timeout) {
+		callback([ false, state.pending ]);
+		return;
+	}
+	state.setTimeout.call(window, check, 50);
+}
+check();
@@ -0,0 +1,80 @@
+/*
+ * Scrolls to the bottom of the page until no new content is loaded or the
+ * target elements are present. After each scroll the script waits only until
+ * the page grows, and stops when nothing changes for the quiet time. When the
+ * network tracker is installed pending requests also keep the page busy.
+ *
+ * arguments[0] - the quiet time in milliseconds
+ * arguments[1] - the maximum number of milliseconds to scroll
+ * arguments[2] - the locator strategy of the target, or '' for no target
+ * arguments[3] - the locator value of the target
+ * arguments[4] - the number of target elements to wait for
+ * arguments[5] - the callback
+ *
+ * Calls back [number of batches loaded, 'target', 'stable' or 'timeout',
+ * elapsed milliseconds].
+ */
+var quietMillis = arguments[0];
+var timeout = arguments[1];
+var strategy = arguments[2];
+var value = arguments[3];
+var targetCount = arguments[4];
+var callback = arguments[arguments.length - 1];
+
+var network = window.__sosNetwork;
+var schedule = network ? network.setTimeout : window.setTimeout;
+
+function now() {
+	return new Date().getTime();
+}
+
+function measure() {
+	var root = document.documentElement;
+	var height = Math.max(document.body.scrollHeight, root.scrollHeight);
+	return [ height, document.getElementsByTagName('*').length ];
+}
+
+var start = now();
+var batches = 0;
+
+function done(reason) {
+	callback([ batches, reason, now() - start ]);
+}
+
+function isTargetReached() {
+	return strategy != '' && findAll(strategy, value).length >= targetCount;
+}
+
+function scroll() {
+	if (isTargetReached()) {
+		done('target');
+		return;
+	}
+	if (now() - start >= timeout) {
+		done('timeout');
+		return;
+	}
+	var before = measure();
+	var scrolled = now();
+	window.scrollTo(0, before[0]);
+
+	function check() {
+		var time = now();
+		var current = measure();
+		var busy = network && network.pending > 0;
+		var lastActivity = network ? Math.max(scrolled, network.lastActivity)
+				: scrolled;
+		if (!busy && (current[0] != before[0] || current[1] != before[1])) {
+			batches++;
+			scroll();
+		} else if (!busy && time - lastActivity >= quietMillis) {
+			done('stable');
+		} else if (time - start >= timeout) {
+			done('timeout');
+		} else {
+			schedule.call(window, check, 50);
+		}
+	}
+	check();
+}
+scroll();
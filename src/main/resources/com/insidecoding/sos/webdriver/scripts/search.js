@@ -0,0 +1,34 @@
+/*
+ * Searches the visible text of the page without sending it to the client.
+ *
+ * arguments[0] - the text to search for
+ * arguments[1] - stop after this number of matches, or -1 to count all
+ * arguments[2] - the maximum number of match positions to return
+ *
+ * Returns [number of matches, [positions]] where the positions are offsets in
+ * the page text, with the white space normalised as WebDriver does.
+ */
+var text = arguments[0];
+var maxCount = arguments[1];
+var maxPositions = arguments[2];
+
+function pageText() {
+	return document.body ? visibleText(document.body) : '';
+}
+
+var content = pageText();
+var count = 0;
+var positions = [];
+var from = 0;
+while ((maxCount < 0 || count < maxCount) && from <= content.length) {
+	var index = content.indexOf(text, from);
+	if (index < 0) {
+		break;
+	}
+	count++;
+	if (positions.length < maxPositions) {
+		positions.push(index);
+	}
+	from = index + Math.max(text.length, 1);
+}
+return [ count, positions ];
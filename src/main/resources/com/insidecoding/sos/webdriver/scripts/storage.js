@@ -0,0 +1,44 @@
+/*
+ * Reads or writes the web storage of the current page.
+ *
+ * arguments[0] - 'read' or 'write'
+ * arguments[1] - when writing, the localStorage entries as [key, value] pairs
+ * arguments[2] - when writing, the sessionStorage entries as [key, value] pairs
+ *
+ * When reading, returns [localStorage entries, sessionStorage entries]. Returns
+ * null if the page has no web storage.
+ */
+var operation = arguments[0];
+
+var local, session;
+try {
+	local = window.localStorage;
+	session = window.sessionStorage;
+} catch (e) {
+	return null;
+}
+if (!local || !session) {
+	return null;
+}
+
+function entries(storage) {
+	var result = [];
+	for (var i = 0; i < storage.length; i++) {
+		var key = storage.key(i);
+		result.push([ key, storage.getItem(key) ]);
+	}
+	return result;
+}
+
+function write(storage, values) {
+	for (var i = 0; i < values.length; i++) {
+		storage.setItem(values[i][0], values[i][1]);
+	}
+}
+
+if (operation == 'read') {
+	return [ entries(local), entries(session) ];
+}
+write(local, arguments[1]);
+write(session, arguments[2]);
+return [];
@@ -0,0 +1,142 @@
+/*
+ * Returns the cells of a table as an array of rows. Each row is a flat array
+ * of [text, colspan, rowspan] triplets. Only the rows and cells belonging to
+ * the table itself are returned, nested tables are ignored. The text of the
+ * cells follows the rules of WebElement.getText().
+ *
+ * When columns or a header are supplied, the cells spanning multiple columns
+ * or rows are expanded like TableExtractor.normalise() does and only the text
+ * of the selected cells is read. Each row is then an array holding the text
+ * of the selected columns, with null for the columns past the end of the row.
+ * With a header, only the rows below the row holding the header are returned,
+ * each with the single column of the header.
+ *
+ * arguments[0] - the table element
+ * arguments[1] - true to include the th cells
+ * arguments[2] - the indexes of the columns to return, ignored with a header
+ * arguments[3] - the text of the header cell of the column to return
+ */
+var table = arguments[0];
+var includeHeaders = arguments[1];
+var header = arguments[3];
+var columns = header == null ? arguments[2] : null;
+var result = [];
+var rows = table.rows;
+
+function span(value) {
+	return value > 1 ? value : 1;
+}
+
+if (columns == null && header == null) {
+	for (var i = 0; i < rows.length; i++) {
+		var cells = rows[i].cells;
+		var row = [];
+		for (var j = 0; j < cells.length; j++) {
+			var cell = cells[j];
+			if (!includeHeaders && cell.tagName.toLowerCase() == 'th') {
+				continue;
+			}
+			row.push(visibleText(cell), cell.colSpan || 1, cell.rowSpan || 1);
+		}
+		result.push(row);
+	}
+	return result;
+}
+
+/*
+ * the texts already read, the cells carried to the next rows through rowspan
+ * and the number of rows each carried cell still covers
+ */
+var texts = [];
+var carried = [];
+var remaining = [];
+
+function textOf(cell) {
+	for (var i = 0; i < texts.length; i += 2) {
+		if (texts[i] === cell) {
+			return texts[i + 1];
+		}
+	}
+	var text = visibleText(cell);
+	texts.push(cell, text);
+	return text;
+}
+
+/*
+ * Lays out one row and returns the selected columns, or every column when
+ * no columns are selected yet.
+ */
+function layout(cells) {
+	var line = [];
+	var column = 0;
+	var size = 0;
+
+	function place(cell, position) {
+		if (columns == null) {
+			line[position] = textOf(cell);
+			return;
+		}
+		for (var k = 0; k < columns.length; k++) {
+			if (columns[k] == position) {
+				line[k] = textOf(cell);
+			}
+		}
+	}
+
+	function addCarried() {
+		while (column < remaining.length && remaining[column] > 0) {
+			place(carried[column], column);
+			remaining[column]--;
+			column++;
+		}
+	}
+
+	for (var j = 0; j < cells.length; j++) {
+		var cell = cells[j];
+		if (!includeHeaders && cell.tagName.toLowerCase() == 'th') {
+			continue;
+		}
+		addCarried();
+		var colspan = span(cell.colSpan);
+		for (var c = 0; c < colspan; c++) {
+			place(cell, column);
+			carried[column] = cell;
+			remaining[column] = span(cell.rowSpan) - 1;
+			column++;
+		}
+	}
+	size = column;
+	for (var c = column; c < remaining.length; c++) {
+		if (remaining[c] > 0) {
+			place(carried[c], c);
+			remaining[c]--;
+			size = c + 1;
+		}
+	}
+
+	var count = columns == null ? size : columns.length;
+	for (var k = 0; k < count; k++) {
+		if (columns != null && columns[k] >= size) {
+			line[k] = null;
+		} else if (line[k] == null) {
+			line[k] = '';
+		}
+	}
+	line.length = count;
+	return line;
+}
+
+for (var i = 0; i < rows.length; i++) {
+	if (columns != null) {
+		result.push(layout(rows[i].cells));
+		continue;
+	}
+	var line = layout(rows[i].cells);
+	for (var k = 0; k < line.length; k++) {
+		if (line[k] == header) {
+			columns = [ k ];
+			break;
+		}
+	}
+}
+return result;
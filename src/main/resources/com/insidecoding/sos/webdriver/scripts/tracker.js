@@ -0,0 +1,177 @@
+/*
+ * Installs the network tracker on the current page. The tracker counts the
+ * pending XMLHttpRequest and fetch calls and the pending short timers, and
+ * records the time of the last activity. Installing it again has no effect.
+ *
+ * The tracker is installed once the page is loaded, so it cannot count the
+ * requests started before. When the browser supports the timing APIs, the
+ * load time and the resources completed before, or completed later but
+ * started before, are taken from window.performance instead.
+ *
+ * Returns true.
+ */
+if (window.__sosNetwork) {
+	return true;
+}
+
+/*
+ * Timers longer than this are not considered page activity.
+ */
+var MAX_TRACKED_TIMER = 1000;
+
+function now() {
+	return new Date().getTime();
+}
+
+var perf = window.performance;
+var timing = perf && perf.timing && perf.timing.navigationStart ? perf.timing
+		: null;
+
+var state = {
+	pending : 0,
+	requests : 0,
+	installed : now(),
+	navigation : null,
+	lastActivity : now(),
+	loaded : null,
+	resources : 0,
+	setTimeout : window.setTimeout,
+	clearTimeout : window.clearTimeout
+};
+state.navigation = timing ? timing.navigationStart : state.installed;
+window.__sosNetwork = state;
+
+/*
+ * Moves the last activity to the end of the newest resource reported by the
+ * browser, including the requests started before the tracker was installed.
+ */
+state.poll = function() {
+	if (!timing || !perf.getEntriesByType) {
+		return;
+	}
+	var entries = perf.getEntriesByType('resource');
+	if (entries.length == state.resources) {
+		return;
+	}
+	state.resources = entries.length;
+	for (var i = 0; i < entries.length; i++) {
+		var end = timing.navigationStart + entries[i].responseEnd;
+		if (end > state.lastActivity && end <= now()) {
+			state.lastActivity = end;
+		}
+	}
+};
+
+function begin() {
+	state.pending++;
+	state.lastActivity = now();
+	var done = false;
+	return function() {
+		if (!done) {
+			done = true;
+			state.pending = Math.max(0, state.pending - 1);
+			state.lastActivity = now();
+		}
+	};
+}
+
+try {
+	var proto = window.XMLHttpRequest && window.XMLHttpRequest.prototype;
+	if (proto && proto.send) {
+		var send = proto.send;
+		proto.send = function() {
+			var xhr = this;
+			var end = begin();
+			state.requests++;
+			var previous = xhr.onreadystatechange;
+			if (xhr.addEventListener) {
+				xhr.addEventListener('readystatechange', function() {
+					if (xhr.readyState == 4) {
+						end();
+					}
+				}, false);
+			} else {
+				xhr.onreadystatechange = function() {
+					if (xhr.readyState == 4) {
+						end();
+					}
+					if (previous) {
+						return previous.apply(xhr, arguments);
+					}
+				};
+			}
+			try {
+				return send.apply(xhr, arguments);
+			} catch (e) {
+				end();
+				throw e;
+			} finally {
+				if (xhr.readyState == 4) {
+					end();
+				}
+			}
+		};
+	}
+} catch (e) {
+	// requests are not tracked in this browser
+}
+
+if (window.fetch) {
+	var fetch = window.fetch;
+	window.fetch = function() {
+		var end = begin();
+		state.requests++;
+		try {
+			var promise = fetch.apply(window, arguments);
+			promise.then(end, end);
+			return promise;
+		} catch (e) {
+			end();
+			throw e;
+		}
+	};
+}
+
+var timers = {};
+window.setTimeout = function(callback, delay) {
+	var args = Array.prototype.slice.call(arguments);
+	if (typeof callback != 'function' || delay > MAX_TRACKED_TIMER) {
+		return state.setTimeout.apply(window, args);
+	}
+	var id;
+	var end = begin();
+	args[0] = function() {
+		delete timers[id];
+		try {
+			return callback.apply(this, arguments);
+		} finally {
+			end();
+		}
+	};
+	id = state.setTimeout.apply(window, args);
+	timers[id] = end;
+	return id;
+};
+window.clearTimeout = function(id) {
+	if (timers[id]) {
+		timers[id]();
+		delete timers[id];
+	}
+	return state.clearTimeout.apply(window, arguments);
+};
+
+if (document.readyState == 'complete') {
+	state.loaded = timing && timing.loadEventEnd ? timing.loadEventEnd
+			: state.installed;
+	state.lastActivity = state.loaded;
+	state.poll();
+} else if (window.addEventListener) {
+	window.addEventListener('load', function() {
+		state.loaded = now();
+	}, false);
+} else if (window.attachEvent) {
+	window.attachEvent('onload', function() {
+		state.loaded = now();
+	});
+}
+return true;
@@ -0,0 +1,112 @@
+/*
+ * Waits inside the page until a set of conditions becomes true. A
+ * MutationObserver re-evaluates the conditions on every DOM change; a slow
+ * timer covers the changes which do not mutate the DOM (like style sheet
+ * changes) and the browsers without MutationObserver.
+ *
+ * arguments[0] - the conditions, each one as
+ *                [type, locator strategy, locator value, text]
+ * arguments[1] - 'all' to wait for all the conditions or 'any' to wait for
+ *                at least one of them
+ * arguments[2] - the maximum number of milliseconds to wait
+ * arguments[3] - the callback receiving an array with the state of each
+ *                condition once the wait is satisfied, false if the wait
+ *                timed out or null if a condition cannot be evaluated by this
+ *                browser
+ */
+var conditions = arguments[0];
+var mode = arguments[1];
+var timeout = arguments[2];
+var callback = arguments[arguments.length - 1];
+
+function check(c) {
+	var element = c[1] ? find(c[1], c[2]) : document.body;
+	if (element == null) {
+		return c[0] == 'invisible' || c[0] == 'absent';
+	}
+	switch (c[0]) {
+	case 'present':
+		return true;
+	case 'absent':
+		return false;
+	case 'visible':
+		return isVisible(element);
+	case 'invisible':
+		return !isVisible(element);
+	case 'hasText':
+		return textOf(element).length > 0;
+	case 'containsText':
+		return textOf(element).indexOf(c[3]) >= 0;
+	}
+	throw new Error('Unknown condition: ' + c[0]);
+}
+
+function evaluate(strict) {
+	var states = [];
+	var met = 0;
+	for (var i = 0; i < conditions.length; i++) {
+		var state = false;
+		try {
+			state = check(conditions[i]);
+		} catch (e) {
+			if (strict) {
+				throw e;
+			}
+		}
+		states.push(state);
+		if (state) {
+			met++;
+		}
+	}
+	var satisfied = mode == 'all' ? met == conditions.length : met > 0;
+	return satisfied ? states : false;
+}
+
+var initial = null;
+try {
+	initial = evaluate(true);
+} catch (e) {
+	/*
+	 * a locator is not supported by this browser
+	 */
+}
+if (initial !== false) {
+	callback(initial);
+} else {
+	var done = false;
+	var observer = null;
+	var timer = null;
+	var poller = null;
+	var finish = function(result) {
+		if (done) {
+			return;
+		}
+		done = true;
+		if (observer) {
+			observer.disconnect();
+		}
+		clearTimeout(timer);
+		clearInterval(poller);
+		callback(result);
+	};
+	var onChange = function() {
+		var states = evaluate(false);
+		if (states) {
+			finish(states);
+		}
+	};
+	var Observer = window.MutationObserver || window.WebKitMutationObserver;
+	if (Observer) {
+		observer = new Observer(onChange);
+		observer.observe(document.documentElement || document, {
+			childList : true,
+			subtree : true,
+			attributes : true,
+			characterData : true
+		});
+	}
+	poller = setInterval(onChange, Observer ? 250 : 50);
+	timer = setTimeout(function() {
+		finish(evaluate(false));
+	}, timeout);
+}
@@ -0,0 +1,66 @@
+/*
+ * Evaluates a drop-down or radio button operation in a single call.
+ *
+ * arguments[0] - the operation name
+ * arguments[1] - the select element or the name of the radio button group
+ * arguments[2] - the text or value to look for
+ */
+var operation = arguments[0];
+var target = arguments[1];
+var expected = arguments[2];
+
+function optionText(option) {
+	return normalise(option.textContent != null ? option.textContent
+			: option.text);
+}
+
+function findOption(byText, selectedOnly) {
+	var options = target.options || target.getElementsByTagName('option');
+	for (var i = 0; i < options.length; i++) {
+		var option = options[i];
+		var matches = byText ? optionText(option) == expected
+				: option.getAttribute('value') == expected;
+		if (matches && (!selectedOnly || option.selected)) {
+			return true;
+		}
+	}
+	return false;
+}
+
+function findRadio(selectedOnly) {
+	var radios = document.getElementsByName(target);
+	var lower = String(expected).toLowerCase();
+	for (var i = 0; i < radios.length; i++) {
+		var radio = radios[i];
+		if (radio.value != null && String(radio.value).toLowerCase() == lower
+				&& (!selectedOnly || radio.checked)) {
+			return radio;
+		}
+	}
+	return null;
+}
+
+switch (operation) {
+case 'textPresent':
+	return findOption(true, false);
+case 'valuePresent':
+	return findOption(false, false);
+case 'textSelected':
+	return findOption(true, true);
+case 'valueSelected':
+	return findOption(false, true);
+case 'selectedText':
+	var options = target.options || target.getElementsByTagName('option');
+	for (var i = 0; i < options.length; i++) {
+		if (options[i].selected) {
+			return [ optionText(options[i]) ];
+		}
+	}
+	return [];
+case 'findRadio':
+	var radio = findRadio(false);
+	return radio == null ? [] : [ radio ];
+case 'radioSelected':
+	return findRadio(true) != null;
+}
+throw new Error('Unknown widget operation: ' + operation);
@@ -0,0 +1,171 @@
+package com.insidecoding.sos.junit;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.openqa.selenium.By;
+import org.openqa.selenium.HasCapabilities;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.openqa.selenium.internal.WrapsDriver;
+
+import com.insidecoding.sos.webdriver.DriverPool;
+import com.insidecoding.sos.webdriver.WebDriverHelper;
+
+public class TestLazyDriver {
+	private final CountingPool pool = new CountingPool();
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void testDriverIsCreatedOnFirstUse() {
+		WebDriver driver = LazyDriver.create(new WebDriverHelper.Builder(),
+				pool);
+		WebDriverHelper helper = new WebDriverHelper(driver);
+		final AtomicInteger created = new AtomicInteger();
+		Assert.assertTrue(LazyDriver.whenCreated(driver, new Runnable() {
+			public void run() {
+				created.incrementAndGet();
+			}
+		}));
+		Assert.assertNull(LazyDriver.getCreated(driver));
+		Assert.assertEquals(0, pool.acquired.get());
+		Assert.assertTrue(driver.toString().contains("not created"));
+
+		driver.get(new File("files/bree.html").toURI().toString());
+		Assert.assertEquals(1, pool.acquired.get());
+		Assert.assertEquals(1, created.get());
+		Assert.assertSame(pool.drivers.get(0), LazyDriver.getCreated(driver));
+		Assert.assertSame(pool.drivers.get(0),
+				((WrapsDriver) driver).getWrappedDriver());
+		Assert.assertTrue(helper.isElementPresent(By.id("name")));
+		Assert.assertEquals("Mr. Underhill", ((JavascriptExecutor) driver)
+				.executeScript("return document.getElementById('name').value;"));
+		Assert.assertEquals(1, pool.acquired.get());
+
+		Assert.assertFalse(LazyDriver.whenCreated(pool.drivers.get(0),
+				new Runnable() {
+					public void run() {
+					}
+				}));
+		Assert.assertSame(pool.drivers.get(0),
+				LazyDriver.getCreated(pool.drivers.get(0)));
+	}
+
+	@Test
+	public void testCapabilitiesAndScreenshotsAreDelegated() {
+		WebDriver driver = LazyDriver.create(new WebDriverHelper.Builder(),
+				pool);
+		Assert.assertTrue(driver instanceof TakesScreenshot);
+		Assert.assertTrue(driver instanceof HasCapabilities);
+		Assert.assertEquals(0, pool.acquired.get());
+
+		Assert.assertEquals("htmlunit", ((HasCapabilities) driver)
+				.getCapabilities().getBrowserName());
+		Assert.assertEquals(1, pool.acquired.get());
+		try {
+			((TakesScreenshot) driver).getScreenshotAs(OutputType.BYTES);
+			Assert.fail("HtmlUnit cannot take screenshots");
+		} catch (WebDriverException e) {
+			Assert.assertTrue(e.getMessage().contains("cannot take screenshots"));
+		}
+	}
+
+	@Test
+	public void testUnusedDriverIsNeverCreated() throws Throwable {
+		WebDriver driver = LazyDriver.create(new WebDriverHelper.Builder(),
+				pool);
+		driver.quit();
+
+		ScreenshotWriter writer = new ScreenshotWriter(2);
+		TakeScreenshotOnFailureRule rule = new TakeScreenshotOnFailureRule();
+		rule.setScreenshotFolder(new File("target/lazy-driver-test"));
+		rule.setTakeScreenshot(true);
+		rule.setDriver(driver);
+		rule.setDriverPool(pool);
+		rule.setScreenshotWriter(writer);
+		try {
+			rule.apply(new Statement() {
+				@Override
+				public void evaluate() {
+					Assert.fail("Backend only");
+				}
+			}, Description.createTestDescription(getClass(), "backend"))
+					.evaluate();
+			Assert.fail("The failure must be rethrown");
+		} catch (AssertionError e) {
+			Assert.assertEquals("Backend only", e.getMessage());
+		}
+		Assert.assertTrue(writer.flush(10000));
+		writer.shutdown(1000);
+
+		Assert.assertNull(LazyDriver.getCreated(driver));
+		Assert.assertEquals(0, pool.acquired.get());
+		Assert.assertEquals(0, pool.released.get());
+		Assert.assertEquals(0, writer.getWrittenCount());
+	}
+
+	@Test
+	public void testUsedDriverIsReleased() throws Throwable {
+		final WebDriver driver = LazyDriver.create(
+				new WebDriverHelper.Builder(), pool);
+		TakeScreenshotOnFailureRule rule = new TakeScreenshotOnFailureRule();
+		rule.setDriver(driver);
+		rule.setDriverPool(pool);
+		rule.apply(new Statement() {
+			@Override
+			public void evaluate() {
+				driver.get(new File("files/bree.html").toURI().toString());
+			}
+		}, Description.createTestDescription(getClass(), "frontend"))
+				.evaluate();
+
+		Assert.assertEquals(1, pool.acquired.get());
+		Assert.assertEquals(1, pool.released.get());
+		Assert.assertSame(pool.drivers.get(0), pool.lastReleased);
+	}
+
+	private static final class CountingPool implements DriverPool {
+		private final AtomicInteger acquired = new AtomicInteger();
+		private final AtomicInteger released = new AtomicInteger();
+		private final List<WebDriver> drivers = new ArrayList<WebDriver>();
+		private WebDriver lastReleased;
+
+		public WebDriver acquire(final WebDriverHelper.Builder builder) {
+			acquired.incrementAndGet();
+			WebDriver driver = new HtmlUnitDriver(true);
+			drivers.add(driver);
+			return driver;
+		}
+
+		public void release(final WebDriver driver) {
+			released.incrementAndGet();
+			lastReleased = driver;
+		}
+
+		public void invalidate(final WebDriver driver) {
+			driver.quit();
+		}
+
+		public void shutdown() {
+			for (WebDriver driver : drivers) {
+				driver.quit();
+			}
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package com.insidecoding.sos.junit;
+
+import java.io.File;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openqa.selenium.By;
+
+@RunWith(ParallelSoSRunner.class)
+public class TestParallelSoSRunner extends AbstractSoSBase {
+
+	@Test
+	public void testFirstThread() throws Exception {
+		verifyPageOnCurrentThread();
+	}
+
+	@Test
+	public void testSecondThread() throws Exception {
+		verifyPageOnCurrentThread();
+	}
+
+	@Test
+	public void testThirdThread() throws Exception {
+		verifyPageOnCurrentThread();
+	}
+
+	@Test
+	public void testFourthThread() throws Exception {
+		verifyPageOnCurrentThread();
+	}
+
+	private void verifyPageOnCurrentThread() {
+		Assert.assertSame(driver, getCurrentDriver());
+		Assert.assertSame(helper, getCurrentHelper());
+
+		driver.get(new File("files/shire.html").toURI().toString());
+		Assert.assertTrue(helper.verifyText(By.id("title"),
+				"Welcome to the Shire"));
+	}
+
+	@Override
+	protected void doAdditionalSetUp() {
+		// no need
+	}
+
+	@Override
+	protected void doAdditionalTearDown() {
+		// no need
+	}
+}
@@ -0,0 +1,129 @@
+package com.insidecoding.sos.junit;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+
+public class TestScreenshotStore {
+	private static final byte[] ERROR_PAGE = { (byte) 0x89, 'P', 'N', 'G',
+			'4', '0', '4' };
+	private static final byte[] MORDOR = { (byte) 0x89, 'P', 'N', 'G', 'M' };
+
+	private File folder;
+	private ScreenshotWriter writer;
+
+	@Before
+	public void setUp() {
+		folder = new File("target/screenshot-store-test");
+		FileUtils.deleteQuietly(folder);
+		folder.mkdirs();
+		writer = new ScreenshotWriter(2);
+	}
+
+	@After
+	public void tearDown() {
+		writer.shutdown(1000);
+		FileUtils.deleteQuietly(folder);
+	}
+
+	@Test
+	public void testHash() {
+		Assert.assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d",
+				ScreenshotStore.hash("abc".getBytes()));
+	}
+
+	@Test
+	public void testDuplicatesAreWrittenOnce() throws Exception {
+		ScreenshotStore store = new ScreenshotStore(folder, writer);
+		File first = store.store("frodo.png", ERROR_PAGE);
+		File second = store.store("sam.png", ERROR_PAGE);
+		File third = store.store("gollum.png", MORDOR);
+		Assert.assertEquals(first, second);
+		Assert.assertFalse(first.equals(third));
+
+		Assert.assertTrue(writer.flush(10000));
+		Assert.assertEquals(2, writer.getWrittenCount());
+		Assert.assertEquals(1, store.getDuplicateCount());
+		Assert.assertEquals(ERROR_PAGE.length, store.getSavedBytes());
+
+		Map<String, String> index = store.getIndex();
+		Assert.assertEquals(3, index.size());
+		Assert.assertEquals(first.getName(), index.get("sam.png"));
+
+		File indexFile = store.writeIndex();
+		String html = FileUtils.readFileToString(indexFile, "UTF-8");
+		Assert.assertTrue(html.contains("frodo.png"));
+		Assert.assertTrue(html.contains("<a href=\"" + third.getName()
+				+ "\">"));
+		Assert.assertEquals(3, folder.list().length);
+
+		ScreenshotStore nextRun = new ScreenshotStore(folder, writer);
+		nextRun.store("pippin.png", MORDOR);
+		Assert.assertEquals(1, nextRun.getDuplicateCount());
+	}
+
+	@Test
+	public void testNothingToIndex() throws Exception {
+		Assert.assertNull(new ScreenshotStore(folder, writer).writeIndex());
+	}
+
+	@Test
+	public void testRuleUsesStore() throws Throwable {
+		WebDriver driver = (WebDriver) Proxy.newProxyInstance(getClass()
+				.getClassLoader(), new Class<?>[] { WebDriver.class,
+				TakesScreenshot.class }, new InvocationHandler() {
+			public Object invoke(final Object proxy, final Method method,
+					final Object[] args) {
+				if ("getScreenshotAs".equals(method.getName())) {
+					return ERROR_PAGE;
+				}
+				return null;
+			}
+		});
+		ScreenshotStore store = new ScreenshotStore(folder, writer);
+		Statement failing = new Statement() {
+			@Override
+			public void evaluate() {
+				Assert.fail("You shall not pass!");
+			}
+		};
+		for (int i = 0; i < 3; i++) {
+			TakeScreenshotOnFailureRule rule = new TakeScreenshotOnFailureRule();
+			rule.setScreenshotFolder(folder);
+			rule.setTakeScreenshot(true);
+			rule.setDriver(driver);
+			rule.setScreenshotStore(store);
+			try {
+				rule.apply(failing,
+						Description.createTestDescription(getClass(), "balrog"))
+						.evaluate();
+				Assert.fail("The failure must be rethrown");
+			} catch (AssertionError e) {
+				Assert.assertEquals("You shall not pass!", e.getMessage());
+			}
+		}
+		Assert.assertTrue(writer.flush(10000));
+		Assert.assertEquals(1, writer.getWrittenCount());
+		Assert.assertEquals(2, store.getDuplicateCount());
+		Assert.assertEquals(3, store.getIndex().size());
+		String baseName = getClass().getName() + "_balrog";
+		Assert.assertTrue(store.getIndex().containsKey(baseName + ".png"));
+		for (String name : store.getIndex().keySet()) {
+			Assert.assertTrue(name.equals(baseName + ".png")
+					|| name.startsWith(baseName + "_t"));
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package com.insidecoding.sos.junit;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.WebDriver;
+
+public class TestScreenshotWriter {
+	private static final byte[] PNG = { (byte) 0x89, 'P', 'N', 'G' };
+
+	private File folder;
+
+	@Before
+	public void setUp() {
+		folder = new File("target/screenshot-writer-test");
+		FileUtils.deleteQuietly(folder);
+		folder.mkdirs();
+	}
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteQuietly(folder);
+	}
+
+	@Test
+	public void testScreenshotsAreWritten() throws Exception {
+		ScreenshotWriter writer = new ScreenshotWriter(2);
+		for (int i = 0; i < 50; i++) {
+			writer.write(PNG, new File(folder, "shot" + i + ".png"));
+		}
+		Assert.assertTrue(writer.flush(10000));
+		Assert.assertEquals(0, writer.getPendingCount());
+		Assert.assertEquals(50, writer.getWrittenCount());
+		Assert.assertEquals(50, folder.list().length);
+		Assert.assertTrue(Arrays.equals(PNG,
+				FileUtils.readFileToByteArray(new File(folder, "shot49.png"))));
+		writer.shutdown(1000);
+
+		writer.write(PNG, new File(folder, "late.png"));
+		Assert.assertTrue(new File(folder, "late.png").isFile());
+		Assert.assertTrue(writer.getCallerWriteCount() > 0);
+	}
+
+	@Test
+	public void testFailedWritesAreCounted() {
+		ScreenshotWriter writer = new ScreenshotWriter(2);
+		writer.write(PNG, new File(folder, "missing/shot.png"));
+		Assert.assertTrue(writer.flush(10000));
+		Assert.assertEquals(0, writer.getWrittenCount());
+		Assert.assertEquals(1, writer.getFailedCount());
+		writer.shutdown(1000);
+	}
+
+	@Test
+	public void testRuleHandsScreenshotToWriter() throws Throwable {
+		WebDriver driver = (WebDriver) Proxy.newProxyInstance(getClass()
+				.getClassLoader(), new Class<?>[] { WebDriver.class,
+				TakesScreenshot.class }, new InvocationHandler() {
+			public Object invoke(final Object proxy, final Method method,
+					final Object[] args) {
+				if ("getScreenshotAs".equals(method.getName())) {
+					return PNG;
+				}
+				return null;
+			}
+		});
+		ScreenshotWriter writer = new ScreenshotWriter(2);
+		TakeScreenshotOnFailureRule rule = new TakeScreenshotOnFailureRule();
+		rule.setScreenshotFolder(folder);
+		rule.setTakeScreenshot(true);
+		rule.setDriver(driver);
+		rule.setScreenshotWriter(writer);
+
+		Statement failing = new Statement() {
+			@Override
+			public void evaluate() {
+				Assert.fail("Fly, you fools!");
+			}
+		};
+		try {
+			rule.apply(failing,
+					Description.createTestDescription(getClass(), "gandalf"))
+					.evaluate();
+			Assert.fail("The failure must be rethrown");
+		} catch (AssertionError e) {
+			Assert.assertEquals("Fly, you fools!", e.getMessage());
+		}
+		Assert.assertTrue(writer.flush(10000));
+		Assert.assertEquals(1, writer.getWrittenCount());
+		String[] files = folder.list();
+		Assert.assertEquals(1, files.length);
+		Assert.assertEquals(getClass().getName() + "_gandalf.png", files[0]);
+		writer.shutdown(1000);
+	}
+}
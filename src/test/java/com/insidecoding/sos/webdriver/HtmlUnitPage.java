@@ -0,0 +1,111 @@
+package com.insidecoding.sos.webdriver;
+
+import java.io.File;
+
+import org.junit.rules.ExternalResource;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+/**
+ * Opens the test pages in HtmlUnit and quits the driver when the test ends.
+ * Each call to one of the {@code open} methods quits the driver of the
+ * previous call, so a test can open the same page with and without
+ * JavaScript.
+ *
+ * @author ludovicianul
+ *
+ */
+public final class HtmlUnitPage extends ExternalResource {
+
+	/**
+	 * The folder holding the test pages.
+	 */
+	private static final String FILES = "files/";
+
+	private HtmlUnitDriver driver;
+
+	/**
+	 * Opens a page from the {@code files} folder in a new driver.
+	 *
+	 * @param js
+	 *            true to enable JavaScript
+	 * @param page
+	 *            the file name of the page, for example {@code shire.html}
+	 * @return a helper for the new driver
+	 */
+	public WebDriverHelper open(final boolean js, final String page) {
+		return open(new HtmlUnitDriver(js), page);
+	}
+
+	/**
+	 * Opens a page from the {@code files} folder in the supplied driver.
+	 *
+	 * @param newDriver
+	 *            the driver, quit when the test ends
+	 * @param page
+	 *            the file name of the page, for example {@code shire.html}
+	 * @return a helper for the driver
+	 */
+	public WebDriverHelper open(final HtmlUnitDriver newDriver,
+			final String page) {
+		return openUrl(newDriver, new File(FILES + page).toURI().toString());
+	}
+
+	/**
+	 * Opens a page from the {@code files} folder in a new driver with
+	 * JavaScript enabled, wrapped so that it counts the page changes like the
+	 * drivers built with {@link WebDriverHelper.Builder#trackPageChanges(boolean)}.
+	 *
+	 * @param page
+	 *            the file name of the page, for example {@code shire.html}
+	 * @return a helper for the wrapped driver
+	 */
+	public WebDriverHelper openTracked(final String page) {
+		open(true, page);
+		return new WebDriverHelper(InstrumentedDriver.wrap(driver, null));
+	}
+
+	/**
+	 * Opens the supplied URL in a new driver.
+	 *
+	 * @param js
+	 *            true to enable JavaScript
+	 * @param url
+	 *            the URL to open
+	 * @return a helper for the new driver
+	 */
+	public WebDriverHelper openUrl(final boolean js, final String url) {
+		return openUrl(new HtmlUnitDriver(js), url);
+	}
+
+	private WebDriverHelper openUrl(final HtmlUnitDriver newDriver,
+			final String url) {
+		quit();
+		driver = newDriver;
+		driver.get(url);
+		return new WebDriverHelper(driver);
+	}
+
+	/**
+	 * Returns the driver opened last.
+	 *
+	 * @return the driver or null if no page was opened
+	 */
+	public HtmlUnitDriver getDriver() {
+		return driver;
+	}
+
+	/**
+	 * Quits the driver opened last, if any.
+	 */
+	public void quit() {
+		if (driver != null) {
+			driver.quit();
+			driver = null;
+		}
+	}
+
+	@Override
+	protected void after() {
+		quit();
+	}
+}
@@ -0,0 +1,140 @@
+package com.insidecoding.sos.webdriver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestCookieJar {
+	private HttpServer server;
+	private String url;
+	@Rule
+	public HtmlUnitPage page = new HtmlUnitPage();
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				byte[] body = "<html><body>The Green Dragon</body></html>"
+						.getBytes("UTF-8");
+				exchange.getResponseHeaders().add("Content-Type", "text/html");
+				if (exchange.getRequestURI().getPath().startsWith("/login")) {
+					exchange.getResponseHeaders().add("Set-Cookie",
+							"session=baggins; Path=/");
+				}
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.start();
+		url = "http://localhost:" + server.getAddress().getPort();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	private Map<String, String> cookies() {
+		Map<String, String> cookies = new LinkedHashMap<String, String>();
+		for (int i = 0; i < 20; i++) {
+			cookies.put("hobbit" + i, "pipeweed" + i);
+		}
+		return cookies;
+	}
+
+	private void checkCookies(final WebDriverHelper helper) {
+		for (int i = 0; i < 20; i++) {
+			Assert.assertTrue(helper.verifyCookie("hobbit" + i, "pipeweed" + i));
+			helper.assertCookiePresentByName("hobbit" + i);
+		}
+		Assert.assertFalse(helper.verifyCookie("hobbit1", "pipeweed2"));
+		Assert.assertFalse(helper.verifyCookiePresentByName("orc"));
+	}
+
+	@Test
+	public void testBulkCookiesWithJavascript() {
+		WebDriverHelper helper = page.openUrl(true, url + "/inn");
+		helper.getCookieJar().addCookies(cookies());
+		checkCookies(helper);
+	}
+
+	@Test
+	public void testBulkCookiesWithoutJavascript() {
+		WebDriverHelper helper = page.openUrl(false, url + "/inn");
+		helper.getCookieJar().addCookies(cookies());
+		checkCookies(helper);
+	}
+
+	@Test
+	public void testSpecialValues() {
+		Map<String, String> cookies = new LinkedHashMap<String, String>();
+		cookies.put("riddle", "what have I got; in my pocket");
+		cookies.put("road", "goes ever, on");
+		cookies.put("hole", "in the ground");
+		for (boolean js : new boolean[] { true, false }) {
+			WebDriverHelper helper = page.openUrl(js, url + "/inn");
+			HtmlUnitDriver driver = page.getDriver();
+			helper.getCookieJar().addCookies(cookies);
+			for (Map.Entry<String, String> cookie : cookies.entrySet()) {
+				Assert.assertEquals(cookie.getValue(), driver.manage()
+						.getCookieNamed(cookie.getKey()).getValue());
+			}
+			Assert.assertEquals(cookies.size(), driver.manage().getCookies()
+					.size());
+		}
+	}
+
+	@Test
+	public void testSnapshotIsReused() {
+		WebDriverHelper helper = page.openUrl(true, url + "/inn");
+		CookieJar jar = helper.getCookieJar();
+		jar.setEnabled(true);
+		jar.addCookies(cookies());
+		long before = jar.getSnapshotCount();
+		checkCookies(helper);
+		Assert.assertEquals(before + 1, jar.getSnapshotCount());
+
+		jar.deleteCookie("hobbit0");
+		Assert.assertFalse(helper.verifyCookiePresentByName("hobbit0"));
+		Assert.assertEquals(before + 2, jar.getSnapshotCount());
+	}
+
+	@Test
+	public void testSnapshotIsNotReusedByDefault() {
+		WebDriverHelper helper = page.openUrl(true, url + "/inn");
+		CookieJar jar = helper.getCookieJar();
+		jar.addCookies(cookies());
+		long before = jar.getSnapshotCount();
+		checkCookies(helper);
+		Assert.assertEquals(before + 42, jar.getSnapshotCount());
+	}
+
+	@Test
+	public void testNavigationInvalidatesSnapshot() {
+		WebDriverHelper helper = page.openUrl(true, url + "/inn");
+		helper.getCookieJar().setEnabled(true);
+		Assert.assertFalse(helper.verifyCookiePresentByName("session"));
+		helper.goToUrlWithCookies(url + "/login", cookies());
+		Assert.assertEquals("baggins",
+				helper.getCookieJar().getValue("session"));
+		checkCookies(helper);
+	}
+}
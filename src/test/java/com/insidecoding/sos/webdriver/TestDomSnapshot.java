@@ -0,0 +1,134 @@
+package com.insidecoding.sos.webdriver;
+
+import junit.framework.Assert;
+
+import org.apache.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.internal.WrapsDriver;
+
+public class TestDomSnapshot {
+	private static final Logger LOG = Logger.getLogger(TestDomSnapshot.class);
+
+	@Rule
+	public HtmlUnitPage page = new HtmlUnitPage();
+
+	private void checkShire(final WebDriverHelper helper) {
+		Assert.assertTrue(helper.verifyText(By.id("title"),
+				"Welcome to the Shire"));
+		Assert.assertTrue(helper.isElementPresent(By.name("ring")));
+		Assert.assertTrue(helper.isElementPresent(By.cssSelector("#hobbit input")));
+		Assert.assertFalse(helper.isElementPresent(By.id("mordor")));
+		Assert.assertTrue(helper.verifyChecked(By.xpath("//input[@id='ring']")));
+		Assert.assertTrue(helper.isTextSelectedInDropDown(By.id("home"),
+				"Rivendell"));
+		Assert.assertTrue(helper.isValuePresentInDropDown(By.tagName("select"),
+				"3"));
+		Assert.assertEquals("Rivendell", helper.getSelectedValue(By.id("home")));
+		Assert.assertTrue(helper.isRadioButtonValueSelected("race", "hobbit"));
+		Assert.assertTrue(helper.isTextPresentInPage("Welcome"));
+	}
+
+	@Test
+	public void testSnapshotReads() {
+		WebDriverHelper helper = page.openTracked("shire.html");
+		WebDriverHelper snapshot = helper.takeSnapshot();
+		checkShire(helper);
+		checkShire(snapshot);
+	}
+
+	@Test
+	public void testSnapshotTables() {
+		WebDriverHelper helper = page.openTracked("fellowship.html");
+		By table = By.id("fellowship");
+		Assert.assertEquals(helper.getTableAsList(table, true), helper
+				.takeSnapshot().getTableAsList(table, true));
+	}
+
+	@Test
+	public void testSnapshotIsInvalidated() {
+		WebDriverHelper helper = page.openTracked("shire.html");
+		WebDriverHelper snapshot = helper.takeSnapshot();
+		Assert.assertTrue(snapshot.isElementPresent(By.id("home")));
+
+		helper.selectOptionFromDropdownByValue(By.id("home"), "3");
+		try {
+			snapshot.getSelectedValue(By.id("home"));
+			Assert.fail("The snapshot should be stale");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		Assert.assertEquals("Minas Tirith",
+				helper.takeSnapshot().getSelectedValue(By.id("home")));
+	}
+
+	@Test
+	public void testSnapshotIsInvalidatedThroughDriver() {
+		WebDriverHelper helper = page.openTracked("shire.html");
+		WebDriver driver = helper.getDriver();
+		WebDriverHelper snapshot = helper.takeSnapshot();
+		Assert.assertTrue(driver.findElement(By.id("ring")).isSelected());
+		Assert.assertEquals("The Shire", driver.getTitle());
+		Assert.assertTrue(snapshot.verifyChecked(By.id("ring")));
+
+		driver.findElement(By.id("ring")).click();
+		try {
+			snapshot.verifyChecked(By.id("ring"));
+			Assert.fail("The snapshot should be stale");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		Assert.assertSame(page.getDriver(),
+				((WrapsDriver) driver).getWrappedDriver());
+	}
+
+	@Test
+	public void testSnapshotNeedsTrackedDriver() {
+		WebDriverHelper helper = page.open(true, "shire.html");
+		Assert.assertSame(page.getDriver(), helper.getDriver());
+		try {
+			helper.takeSnapshot();
+			Assert.fail("The driver does not track the page changes");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testSnapshotIsReadOnly() {
+		page.openTracked("shire.html").takeSnapshot().getDriver()
+				.findElement(By.id("ring")).click();
+	}
+
+	@Test
+	public void testBenchmarkAssertions() {
+		WebDriverHelper helper = page.openTracked("largeTable.html");
+
+		long start = System.currentTimeMillis();
+		int live = countPresent(helper);
+		long liveMillis = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+		int offline = countPresent(helper.takeSnapshot());
+		long snapshotMillis = System.currentTimeMillis() - start;
+
+		LOG.info("50 assertions on a 501x10 table: live=" + liveMillis
+				+ "ms, snapshot=" + snapshotMillis + "ms (including capture)");
+		Assert.assertEquals(live, offline);
+		Assert.assertEquals(50, live);
+	}
+
+	private int countPresent(final WebDriverHelper helper) {
+		int found = 0;
+		for (int i = 0; i < 50; i++) {
+			By cell = By.xpath("//tr[" + (i * 10 + 2) + "]/td[" + (i % 10 + 1)
+					+ "]");
+			if (helper.verifyText(cell, "r" + (i * 10) + "c" + (i % 10))) {
+				found++;
+			}
+		}
+		return found;
+	}
+}
@@ -0,0 +1,101 @@
+package com.insidecoding.sos.webdriver;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+import com.insidecoding.sos.Constants;
+import com.insidecoding.sos.webdriver.DriverBuildTiming.Stage;
+
+public class TestDriverBuildTiming {
+
+	public static class BrokenFactory implements DriverFactory {
+
+		@Override
+		public String[] getBrowserNames() {
+			return new String[] { "brokenBrowser" };
+		}
+
+		@Override
+		public DesiredCapabilities getCapabilities() {
+			return DesiredCapabilities.htmlUnit();
+		}
+
+		@Override
+		public WebDriver newDriver(final Capabilities capabilities) {
+			throw new IllegalStateException("The browser would not start");
+		}
+	}
+
+	@Test
+	public void testLocalBuildIsTimed() {
+		DriverBuildStats stats = DriverBuildStats.getInstance();
+		int builds = stats.getBuildCount();
+		long starts = stats.getStageLatency(Stage.LOCAL_START).getCount();
+		WebDriver driver = new WebDriverHelper.Builder()
+				.browser(Constants.Browsers.HTML_UNIT).jsEnabled(false)
+				.proxy("direct", null, null).buildDriver();
+		try {
+			DriverBuildTiming timing = stats.getLastBuild();
+			Assert.assertEquals(builds + 1, stats.getBuildCount());
+			Assert.assertFalse(timing.isFailed());
+			Assert.assertEquals(Constants.Browsers.HTML_UNIT,
+					timing.getBrowser());
+			Assert.assertTrue(timing.getStageNanos().containsKey(
+					Stage.CAPABILITIES));
+			Assert.assertTrue(timing.getStageNanos().containsKey(Stage.PROXY));
+			Assert.assertTrue(timing.getStageNanos()
+					.containsKey(Stage.PROFILE));
+			Assert.assertTrue(timing.getStageNanos().containsKey(
+					Stage.LOCAL_START));
+			Assert.assertFalse(timing.getStageNanos().containsKey(
+					Stage.REMOTE_SESSION));
+			double stages = 0;
+			for (Stage stage : Stage.values()) {
+				stages += timing.getStageMillis(stage);
+			}
+			Assert.assertTrue(stages <= timing.getTotalMillis());
+			Assert.assertEquals(starts + 1,
+					stats.getStageLatency(Stage.LOCAL_START).getCount());
+			Assert.assertTrue(timing.toString().contains("local_start="));
+		} finally {
+			driver.quit();
+		}
+	}
+
+	@Test
+	public void testFailedLocalStart() {
+		DriverFactoryRegistry.getInstance().register(new BrokenFactory());
+		DriverBuildStats stats = DriverBuildStats.getInstance();
+		int failures = stats.getFailureCount();
+		try {
+			new WebDriverHelper.Builder().browser("brokenBrowser")
+					.buildDriver();
+			Assert.fail("The build should fail");
+		} catch (IllegalArgumentException e) {
+			DriverBuildTiming timing = stats.getLastBuild();
+			Assert.assertTrue(timing.isFailed());
+			Assert.assertTrue(timing.getFailure().startsWith("LOCAL_START: "));
+			Assert.assertEquals(failures + 1, stats.getFailureCount());
+		}
+	}
+
+	@Test
+	public void testFailedGridSession() {
+		DriverBuildStats stats = DriverBuildStats.getInstance();
+		WebDriver driver = new WebDriverHelper.Builder()
+				.browser(Constants.Browsers.HTML_UNIT)
+				.runMode(Constants.RunMode.GRID)
+				.grid("http://localhost:1/wd/hub").buildDriver();
+		Assert.assertNull(driver);
+		DriverBuildTiming timing = stats.getLastBuild();
+		Assert.assertTrue(timing.isFailed());
+		Assert.assertTrue(timing.getFailure().startsWith("REMOTE_SESSION: "));
+		Assert.assertTrue(timing.getStageNanos().containsKey(
+				Stage.REMOTE_SESSION));
+		Assert.assertTrue(stats.getReport().contains("remote_session mean="));
+	}
+}
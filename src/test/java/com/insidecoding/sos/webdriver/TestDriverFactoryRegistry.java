@@ -0,0 +1,86 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openqa.selenium.Capabilities;
+import org.openqa.selenium.Platform;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.openqa.selenium.remote.CapabilityType;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+import com.insidecoding.sos.Constants;
+
+public class TestDriverFactoryRegistry {
+
+	public static class CountingHtmlUnitFactory implements DriverFactory {
+		static final AtomicInteger CREATED = new AtomicInteger();
+
+		@Override
+		public String[] getBrowserNames() {
+			return new String[] { "countingHtmlUnit" };
+		}
+
+		@Override
+		public DesiredCapabilities getCapabilities() {
+			return DesiredCapabilities.htmlUnit();
+		}
+
+		@Override
+		public WebDriver newDriver(final Capabilities capabilities) {
+			CREATED.incrementAndGet();
+			return new HtmlUnitDriver(capabilities);
+		}
+	}
+
+	@Test
+	public void testDefaultBrowsersAreRegistered() {
+		DriverFactoryRegistry registry = DriverFactoryRegistry.getInstance();
+		Assert.assertSame(registry.getFactory("htmlUnit"),
+				registry.getFactory("HTMLUNIT"));
+		Assert.assertSame(registry.getFactory("ie"),
+				registry.getFactory("internetExplorer"));
+		Assert.assertEquals("firefox", registry.getFactory("firefox")
+				.getCapabilities().getBrowserName());
+	}
+
+	@Test
+	public void testCapabilitiesTemplateIsNotModifiedByBuild() {
+		DriverFactory factory = DriverFactoryRegistry.getInstance()
+				.getFactory(Constants.Browsers.HTML_UNIT);
+		WebDriver driver = new WebDriverHelper.Builder()
+				.browser(Constants.Browsers.HTML_UNIT).jsEnabled(false)
+				.platform(Constants.Platform.LINUX).buildDriver();
+		try {
+			Assert.assertTrue(driver instanceof HtmlUnitDriver);
+			Assert.assertEquals(Platform.ANY, factory.getCapabilities()
+					.getPlatform());
+			Assert.assertNull(factory.getCapabilities().getCapability(
+					CapabilityType.SUPPORTS_JAVASCRIPT));
+		} finally {
+			driver.quit();
+		}
+	}
+
+	@Test
+	public void testServiceLoaderFactoryIsUsed() {
+		int before = CountingHtmlUnitFactory.CREATED.get();
+		WebDriver driver = new WebDriverHelper.Builder()
+				.browser("countingHtmlUnit").buildDriver();
+		try {
+			Assert.assertTrue(driver instanceof HtmlUnitDriver);
+			Assert.assertEquals(before + 1,
+					CountingHtmlUnitFactory.CREATED.get());
+		} finally {
+			driver.quit();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownBrowserFails() {
+		new WebDriverHelper.Builder().browser("netscape").buildDriver();
+	}
+}
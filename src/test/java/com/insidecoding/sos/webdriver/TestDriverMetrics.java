@@ -0,0 +1,156 @@
+package com.insidecoding.sos.webdriver;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.openqa.selenium.internal.WrapsDriver;
+import org.openqa.selenium.internal.WrapsElement;
+
+public class TestDriverMetrics {
+	private HtmlUnitDriver actual;
+
+	@After
+	public void tearDown() {
+		if (actual != null) {
+			actual.quit();
+		}
+	}
+
+	private WebDriver open(final DriverMetrics metrics) {
+		actual = new HtmlUnitDriver(true);
+		WebDriver driver = metrics.instrument(actual);
+		driver.get(new File("files/bree.html").toURI().toString());
+		return driver;
+	}
+
+	@Test
+	public void testCommandsAreRecorded() {
+		DriverMetrics metrics = new DriverMetrics();
+		metrics.startTest("TestDriverMetrics.testCommandsAreRecorded");
+		WebDriver driver = open(metrics);
+
+		Assert.assertTrue(driver instanceof JavascriptExecutor);
+		Assert.assertSame(actual, ((WrapsDriver) driver).getWrappedDriver());
+
+		WebElement name = driver.findElement(By.id("name"));
+		Assert.assertTrue(name instanceof WrapsElement);
+		Assert.assertEquals("Mr. Underhill", name.getAttribute("value"));
+		Assert.assertEquals(name, driver.findElement(By.id("name")));
+		Assert.assertEquals("Mr. Underhill", ((JavascriptExecutor) driver)
+				.executeScript("return arguments[0].value;", name));
+		List<WebElement> options = driver.findElements(By.tagName("option"));
+		Assert.assertEquals(2, options.size());
+		Assert.assertEquals("Hobbit room", options.get(1).getText());
+		driver.manage().getCookies();
+
+		Assert.assertEquals(8, metrics.endTest());
+		Assert.assertEquals(8, metrics.getRoundTrips());
+
+		Map<String, DriverMetrics.Latency> commands = metrics
+				.getCommandLatencies();
+		Assert.assertEquals(2, commands.get("WebDriver.findElement").getCount());
+		Assert.assertEquals(1, commands.get("WebDriver.findElements")
+				.getCount());
+		Assert.assertEquals(1, commands.get("WebElement.getText").getCount());
+		Assert.assertEquals(1, commands.get("JavascriptExecutor.executeScript")
+				.getCount());
+		Assert.assertNull(commands.get("WebDriver.manage"));
+		Assert.assertEquals(1, commands.get("Options.getCookies").getCount());
+
+		Map<String, DriverMetrics.Latency> locators = metrics
+				.getLocatorLatencies();
+		Assert.assertEquals(2, locators.get("By.id: name").getCount());
+		Assert.assertEquals(1, locators.get("By.tagName: option").getCount());
+
+		DriverMetrics.Latency get = commands.get("WebDriver.get");
+		Assert.assertTrue(get.getPercentileMillis(50) <= get.getMaxMillis());
+		Assert.assertTrue(get.getMinMillis() <= get.getMeanMillis());
+		long total = 0;
+		for (long count : get.getBucketCounts()) {
+			total += count;
+		}
+		Assert.assertEquals(1, total);
+	}
+
+	@Test
+	public void testResetWhileTestRuns() {
+		DriverMetrics metrics = new DriverMetrics();
+		metrics.startTest("TestDriverMetrics.testResetWhileTestRuns");
+		WebDriver driver = open(metrics);
+		metrics.reset();
+		driver.findElement(By.id("name"));
+
+		Assert.assertEquals(1, metrics.endTest());
+		Assert.assertEquals(1, metrics.getRoundTrips());
+	}
+
+	@Test
+	public void testHelperOnInstrumentedDriver() {
+		DriverMetrics metrics = new DriverMetrics();
+		WebDriver driver = open(metrics);
+		WebDriverHelper helper = new WebDriverHelper(driver);
+		Map<By, String> values = new LinkedHashMap<By, String>();
+		values.put(By.id("name"), "Strider");
+		helper.fillForm(values);
+		Assert.assertEquals("Strider", actual.findElement(By.id("name"))
+				.getAttribute("value"));
+		Assert.assertTrue(helper.isTextPresentInPage("Common room"));
+		Assert.assertEquals(0, metrics.getRoundTripsPerTest().size());
+		Assert.assertTrue(metrics.getCommandLatencies().containsKey(
+				"JavascriptExecutor.executeScript"));
+	}
+
+	@Test
+	public void testReport() throws Exception {
+		DriverMetrics metrics = new DriverMetrics();
+		metrics.startTest("a \"quoted\", test");
+		WebDriver driver = open(metrics);
+		driver.findElement(By.cssSelector("#name"));
+		metrics.endTest();
+
+		String json = metrics.toJson();
+		Assert.assertTrue(json.contains("\"roundTrips\": 2"));
+		Assert.assertTrue(json.contains("\"By.selector: #name\": {\"count\": 1"));
+		Assert.assertTrue(json.contains("\"a \\\"quoted\\\", test\": 2"));
+
+		String csv = metrics.toCsv();
+		Assert.assertTrue(csv.startsWith("type,name,count,"));
+		Assert.assertTrue(csv.contains("\ncommand,WebDriver.get,1,"));
+		Assert.assertTrue(csv.contains("\nlocator,By.selector: #name,1,"));
+		Assert.assertTrue(csv.contains("\ntest,\"a \"\"quoted\"\", test\",2,"));
+
+		File folder = new File("target/metrics-test");
+		FileUtils.deleteQuietly(folder);
+		metrics.writeReport(folder);
+		Assert.assertEquals(json, FileUtils.readFileToString(new File(folder,
+				"driver-metrics.json"), "UTF-8"));
+		Assert.assertEquals(csv, FileUtils.readFileToString(new File(folder,
+				"driver-metrics.csv"), "UTF-8"));
+
+		metrics.reset();
+		Assert.assertEquals(0, metrics.getRoundTrips());
+		Assert.assertTrue(metrics.getCommandLatencies().isEmpty());
+	}
+
+	@Test
+	public void testBuilderInstrumentsDriver() {
+		DriverMetrics metrics = new DriverMetrics();
+		WebDriverHelper.Builder plain = new WebDriverHelper.Builder();
+		WebDriverHelper.Builder instrumented = new WebDriverHelper.Builder()
+				.metrics(metrics);
+		Assert.assertFalse(plain.getDriverKey().equals(
+				instrumented.getDriverKey()));
+	}
+}
@@ -0,0 +1,91 @@
+package com.insidecoding.sos.webdriver;
+
+import java.io.File;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+public class TestElementCache {
+	private HtmlUnitDriver driver;
+
+	private WebDriverHelper helper;
+
+	private String page;
+
+	@Before
+	public void setUp() {
+		driver = new HtmlUnitDriver(true);
+		page = new File("files/shire.html").toURI().toString();
+		driver.get(page);
+		helper = new WebDriverHelper(driver);
+	}
+
+	@After
+	public void tearDown() {
+		driver.quit();
+	}
+
+	@Test
+	public void testCacheIsDisabledByDefault() {
+		Assert.assertTrue(helper.verifyText(By.id("title"),
+				"Welcome to the Shire"));
+		Assert.assertTrue(helper.verifyText(By.id("title"),
+				"Welcome to the Shire"));
+		ElementCache cache = helper.getElementCache();
+		Assert.assertFalse(cache.isEnabled());
+		Assert.assertEquals(0, cache.getHitCount());
+		Assert.assertEquals(0, cache.getMissCount());
+	}
+
+	@Test
+	public void testRepeatedLookupsAreCached() {
+		ElementCache cache = helper.getElementCache();
+		cache.setEnabled(true);
+		Assert.assertTrue(helper.verifyText(By.id("title"),
+				"Welcome to the Shire"));
+		Assert.assertTrue(helper.verifyChecked(By.id("ring")));
+		Assert.assertTrue(helper.verifyText(By.id("title"),
+				"Welcome to the Shire"));
+		Assert.assertTrue(helper.isValueSelectedInDropDown(By.id("home"), "2"));
+		helper.selectOptionFromDropdownByValue(By.id("home"), "3");
+		Assert.assertEquals("Minas Tirith",
+				helper.getSelectedValue(By.id("home")));
+
+		Assert.assertEquals(3, cache.getHitCount());
+		Assert.assertEquals(3, cache.getMissCount());
+		Assert.assertEquals(0, cache.getStaleCount());
+	}
+
+	@Test
+	public void testStaleElementIsResolvedAgain() {
+		ElementCache cache = helper.getElementCache();
+		cache.setEnabled(true);
+		helper.assertText(By.id("title"), "Welcome to the Shire");
+
+		driver.get(page);
+		helper.assertText(By.id("title"), "Welcome to the Shire");
+		Assert.assertEquals(1, cache.getStaleCount());
+
+		helper.assertText(By.id("title"), "Welcome to the Shire");
+		Assert.assertEquals(2, cache.getHitCount());
+		Assert.assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testRefreshClearsTheCache() {
+		ElementCache cache = helper.getElementCache();
+		cache.setEnabled(true);
+		helper.assertChecked(By.id("ring"));
+		helper.refresh();
+		helper.assertChecked(By.id("ring"));
+
+		Assert.assertEquals(0, cache.getHitCount());
+		Assert.assertEquals(2, cache.getMissCount());
+		Assert.assertEquals(0, cache.getStaleCount());
+	}
+}
@@ -0,0 +1,77 @@
+package com.insidecoding.sos.webdriver;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+public class TestElementPresence {
+	private HtmlUnitDriver driver;
+
+	private WebDriverHelper helper;
+
+	@Before
+	public void setUp() {
+		driver = new HtmlUnitDriver(true);
+		driver.get(new File("files/rivendell.html").toURI().toString());
+		helper = new WebDriverHelper(driver);
+		helper.setImplicitWait(5, TimeUnit.SECONDS);
+	}
+
+	@After
+	public void tearDown() {
+		driver.quit();
+	}
+
+	@Test
+	public void testMissingElementIsReportedImmediately() {
+		long start = System.currentTimeMillis();
+		Assert.assertFalse(helper.isElementPresent(By.id("mordor")));
+		Assert.assertFalse(helper.isElementPresent(
+				driver.findElement(By.tagName("body")), By.id("isengard")));
+		Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+
+		Assert.assertTrue(helper.isElementPresent(By.id("title")));
+	}
+
+	@Test
+	public void testImplicitWaitIsRestored() {
+		Assert.assertFalse(helper.isElementPresent(By.id("council")));
+		long start = System.currentTimeMillis();
+		driver.findElement(By.id("council"));
+		Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+	}
+
+	@Test
+	public void testWaitForElementAbsent() {
+		helper.waitForElementAbsent(By.id("mordor"), 1);
+		try {
+			helper.waitForElementAbsent(By.id("title"), 1);
+			Assert.fail("The wait should time out");
+		} catch (TimeoutException e) {
+			Assert.assertTrue(e.getMessage().contains("absence"));
+		}
+	}
+
+	@Test
+	public void testWaitForElementAbsentWithoutJavascript() {
+		driver.setJavascriptEnabled(false);
+		helper = new WebDriverHelper(driver);
+		helper.setImplicitWait(5, TimeUnit.SECONDS);
+		long start = System.currentTimeMillis();
+		helper.waitForElementAbsent(By.id("mordor"), 1);
+		Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRestoreWithoutSuspendFails() {
+		new ImplicitWait(driver).restore();
+	}
+}
@@ -0,0 +1,99 @@
+package com.insidecoding.sos.webdriver;
+
+import java.io.File;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+public class TestFlightRecorder {
+	private HtmlUnitDriver driver;
+
+	@After
+	public void tearDown() {
+		if (driver != null) {
+			driver.quit();
+		}
+	}
+
+	private static FlightRecorder.Frame frame(final String action,
+			final int size) {
+		return new FlightRecorder.Frame(action, "http://bree/" + action,
+				action, System.currentTimeMillis(), size > 0 ? new byte[size]
+						: null);
+	}
+
+	@Test
+	public void testOldestFramesAreEvicted() {
+		FlightRecorder.Budget budget = new FlightRecorder.Budget(1000);
+		FlightRecorder recorder = new FlightRecorder(3, budget);
+		for (int i = 1; i <= 5; i++) {
+			recorder.add(frame("step" + i, 10));
+		}
+
+		List<FlightRecorder.Frame> frames = recorder.getFrames();
+		Assert.assertEquals(3, frames.size());
+		Assert.assertEquals("step3", frames.get(0).getAction());
+		Assert.assertEquals("step5", frames.get(2).getAction());
+		Assert.assertEquals(30, budget.getUsedBytes());
+
+		recorder.clear();
+		Assert.assertTrue(recorder.getFrames().isEmpty());
+		Assert.assertEquals(0, budget.getUsedBytes());
+	}
+
+	@Test
+	public void testBudgetIsSharedBetweenRecorders() {
+		FlightRecorder.Budget budget = new FlightRecorder.Budget(100);
+		FlightRecorder first = new FlightRecorder(10, budget);
+		FlightRecorder second = new FlightRecorder(10, budget);
+
+		first.add(frame("first1", 40));
+		first.add(frame("first2", 40));
+		second.add(frame("second1", 40));
+
+		Assert.assertEquals(80, budget.getUsedBytes());
+		Assert.assertEquals(2, first.getFrames().size());
+		Assert.assertNull(second.getFrames().get(0).getScreenshot());
+		Assert.assertEquals(1, second.getDroppedCount());
+
+		first.add(frame("first3", 40));
+		Assert.assertNull(first.getFrames().get(0).getScreenshot());
+		Assert.assertNotNull(first.getFrames().get(2).getScreenshot());
+		Assert.assertEquals(80, budget.getUsedBytes());
+
+		first.clear();
+		second.add(frame("second2", 40));
+		Assert.assertEquals(40, budget.getUsedBytes());
+		Assert.assertNotNull(second.getFrames().get(1).getScreenshot());
+	}
+
+	@Test
+	public void testHelperRecordsSteps() {
+		driver = new HtmlUnitDriver(true);
+		WebDriverHelper helper = new WebDriverHelper(driver);
+		FlightRecorder recorder = new FlightRecorder(5,
+				new FlightRecorder.Budget(1024));
+		helper.setFlightRecorder(recorder);
+		Assert.assertSame(recorder, helper.getFlightRecorder());
+
+		driver.get(new File("files/bree.html").toURI().toString());
+		helper.recordStep("opened Bree");
+		helper.refresh();
+
+		List<FlightRecorder.Frame> frames = recorder.getFrames();
+		Assert.assertEquals(2, frames.size());
+		Assert.assertEquals("opened Bree", frames.get(0).getAction());
+		Assert.assertTrue(frames.get(1).getUrl().endsWith("bree.html"));
+		Assert.assertNull(frames.get(1).getScreenshot());
+		Assert.assertTrue(recorder.getStepLog().contains("opened Bree"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSize() {
+		new FlightRecorder(0, new FlightRecorder.Budget(1024));
+	}
+}
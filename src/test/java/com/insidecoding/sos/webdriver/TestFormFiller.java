@@ -0,0 +1,96 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.commons.lang.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+public class TestFormFiller {
+	@Rule
+	public HtmlUnitPage page = new HtmlUnitPage();
+
+	private Map<By, String> guest() {
+		Map<By, String> values = new LinkedHashMap<By, String>();
+		values.put(By.id("name"), "Strider");
+		values.put(By.name("story"), StringUtils.repeat("One ring. ", 1000));
+		values.put(By.id("room"), "Hobbit room");
+		values.put(By.id("pony"), "true");
+		values.put(By.id("ride"), "RIDE");
+		return values;
+	}
+
+	private void checkValues(final WebDriver d) {
+		Assert.assertEquals("Strider", d.findElement(By.id("name"))
+				.getAttribute("value"));
+		Assert.assertEquals(StringUtils.repeat("One ring. ", 1000), d
+				.findElement(By.id("story")).getAttribute("value"));
+		Assert.assertTrue(d.findElement(By.xpath("//option[@value='2']"))
+				.isSelected());
+		Assert.assertTrue(d.findElement(By.id("pony")).isSelected());
+		Assert.assertTrue(d.findElement(By.id("ride")).isSelected());
+		Assert.assertFalse(d.findElement(By.id("walk")).isSelected());
+	}
+
+	@Test
+	public void testFillWithJavascript() {
+		WebDriverHelper helper = page.open(true, "bree.html");
+		HtmlUnitDriver driver = page.getDriver();
+		Map<By, String> values = guest();
+		values.put(By.id("password"), "mellon");
+		helper.fillForm(values, By.id("password"));
+
+		checkValues(driver);
+		Assert.assertEquals("mellon", driver.findElement(By.id("password"))
+				.getAttribute("value"));
+		String events = driver.findElement(By.id("events")).getAttribute(
+				"value");
+		Assert.assertTrue(events, events.contains("name:change;"));
+		Assert.assertTrue(events, events.contains("name:blur;"));
+		Assert.assertTrue(events, events.contains("room:change;"));
+		Assert.assertTrue(events, events.contains("pony:click:true;"));
+		Assert.assertTrue(events, events.contains("pony:change;"));
+		Assert.assertTrue(events, events.contains("ride:click:true;"));
+		Assert.assertTrue(events, events.contains("ride:change;"));
+		Assert.assertEquals(events, events.indexOf("pony:click"),
+				events.lastIndexOf("pony:click"));
+		Assert.assertTrue(events, events.contains("password:keyup;"));
+	}
+
+	@Test
+	public void testFillWithoutJavascript() {
+		WebDriverHelper helper = page.open(false, "bree.html");
+		HtmlUnitDriver driver = page.getDriver();
+		helper.fillForm(guest());
+		checkValues(driver);
+	}
+
+	@Test
+	public void testUncheck() {
+		WebDriverHelper helper = page.open(true, "bree.html");
+		HtmlUnitDriver driver = page.getDriver();
+		Map<By, String> values = new LinkedHashMap<By, String>();
+		values.put(By.id("pony"), "true");
+		helper.fillForm(values);
+		Assert.assertTrue(driver.findElement(By.id("pony")).isSelected());
+		values.put(By.id("pony"), "false");
+		helper.fillForm(values);
+		Assert.assertFalse(driver.findElement(By.id("pony")).isSelected());
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void testMissingField() {
+		WebDriverHelper helper = page.open(true, "bree.html");
+		Map<By, String> values = new LinkedHashMap<By, String>();
+		values.put(By.id("name"), "Strider");
+		values.put(By.id("bill"), "ferny");
+		helper.fillForm(values);
+	}
+}
@@ -0,0 +1,100 @@
+package com.insidecoding.sos.webdriver;
+
+import junit.framework.Assert;
+import junit.framework.AssertionFailedError;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openqa.selenium.By;
+
+public class TestHelperBatch {
+	@Rule
+	public HtmlUnitPage page = new HtmlUnitPage();
+
+	private void checkBatch(final WebDriverHelper helper) {
+		BatchResult result = helper.batch().readText(By.id("title"))
+				.readAttribute(By.id("name"), "value")
+				.readChecked(By.id("ring")).readPresent(By.id("mordor"))
+				.verifyText(By.tagName("h1"), "Welcome to the Shire")
+				.verifyAttribute(By.name("name"), "value", "Frodo")
+				.verifyChecked(By.id("ring")).verifyPresent(By.id("home"))
+				.verifyAbsent(By.id("mordor"))
+				.verifyText(By.cssSelector("#title"), "Welcome to the Shire")
+				.execute();
+
+		Assert.assertEquals(10, result.getItems().size());
+		Assert.assertEquals("Welcome to the Shire", result.getValue(0));
+		Assert.assertEquals("Frodo", result.getValue(1));
+		Assert.assertEquals("true", result.getValue(2));
+		Assert.assertEquals("false", result.getValue(3));
+		Assert.assertTrue(result.toString(), result.isPassed());
+		result.assertPassed();
+	}
+
+	private void checkFailures(final WebDriverHelper helper) {
+		BatchResult result = helper.batch()
+				.verifyText(By.id("title"), "Welcome to Mordor")
+				.verifyAttribute(By.id("name"), "value", "Frodo")
+				.verifyPresent(By.id("mordor"))
+				.verifyChecked(By.xpath("//input[@value='elf']")).execute();
+
+		Assert.assertFalse(result.isPassed());
+		Assert.assertEquals(3, result.getFailures().size());
+		Assert.assertFalse(result.get(0).isPassed());
+		Assert.assertTrue(result.get(1).isPassed());
+		Assert.assertFalse(result.get(2).isPassed());
+		Assert.assertFalse(result.get(3).isPassed());
+		try {
+			result.assertPassed();
+			Assert.fail("The batch should fail");
+		} catch (AssertionFailedError e) {
+			Assert.assertTrue(e.getMessage(),
+					e.getMessage().startsWith("3 of 4"));
+		}
+	}
+
+	@Test
+	public void testBatchWithJavascript() {
+		checkBatch(page.open(true, "shire.html"));
+	}
+
+	@Test
+	public void testBatchWithoutJavascript() {
+		checkBatch(page.open(false, "shire.html"));
+	}
+
+	@Test
+	public void testFailuresWithJavascript() {
+		checkFailures(page.open(true, "shire.html"));
+	}
+
+	@Test
+	public void testFailuresWithoutJavascript() {
+		checkFailures(page.open(false, "shire.html"));
+	}
+
+	@Test
+	public void testReadTextMatchesGetText() {
+		WebDriverHelper helper = page.open(false, "shire.html");
+		String expected = page.getDriver().findElement(By.id("letter"))
+				.getText();
+		Assert.assertEquals(expected,
+				helper.batch().readText(By.id("letter")).execute().getValue(0));
+		helper = page.open(true, "shire.html");
+		BatchResult result = helper.batch().readText(By.id("letter"))
+				.verifyText(By.id("letter"), expected).execute();
+		Assert.assertEquals(expected, result.getValue(0));
+		Assert.assertTrue(result.get(1).isPassed());
+		Assert.assertEquals("Dear Bilbo,\nHappy birthday!", expected);
+	}
+
+	@Test
+	public void testCookies() {
+		WebDriverHelper helper = page.open(true, "shire.html");
+		BatchResult result = helper.batch().readCookie("second breakfast")
+				.verifyCookiePresent("second breakfast").execute();
+		Assert.assertNull(result.getValue(0));
+		Assert.assertFalse(result.get(1).isPassed());
+		Assert.assertTrue(result.get(0).isPassed());
+	}
+}
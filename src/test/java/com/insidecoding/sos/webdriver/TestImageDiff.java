@@ -0,0 +1,160 @@
+package com.insidecoding.sos.webdriver;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.Assert;
+
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+public class TestImageDiff {
+	private static final Logger LOG = Logger.getLogger(TestImageDiff.class);
+
+	private static BufferedImage page(final int width, final int height) {
+		BufferedImage image = new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, ((x * 7) & 0xff) << 16 | ((y * 3) & 0xff) << 8
+						| ((x + y) & 0xff));
+			}
+		}
+		return image;
+	}
+
+	private static BufferedImage copy(final BufferedImage image) {
+		BufferedImage copy = new BufferedImage(image.getWidth(),
+				image.getHeight(), BufferedImage.TYPE_INT_RGB);
+		copy.setData(image.getData());
+		return copy;
+	}
+
+	private static void paint(final BufferedImage image, final Rectangle area,
+			final int rgb) {
+		for (int y = area.y; y < area.y + area.height; y++) {
+			for (int x = area.x; x < area.x + area.width; x++) {
+				image.setRGB(x, y, rgb);
+			}
+		}
+	}
+
+	@Test
+	public void testIdenticalImages() {
+		BufferedImage expected = page(300, 200);
+		ImageDiff diff = new ImageDiff();
+		diff.setTileSize(64);
+		ImageDiffResult result = diff.compare(expected, copy(expected));
+
+		Assert.assertTrue(result.isMatch());
+		Assert.assertEquals(0, result.getDifferentPixels());
+		Assert.assertEquals(20, result.getTileCount());
+		Assert.assertEquals(20, result.getIdenticalTiles());
+		Assert.assertTrue(result.getDifferentTiles().isEmpty());
+	}
+
+	@Test
+	public void testDifferencesToleranceAndIgnoredRegions() throws Exception {
+		BufferedImage expected = page(300, 200);
+		BufferedImage actual = copy(expected);
+		paint(actual, new Rectangle(10, 10, 20, 10), 0xff0000);
+		paint(actual, new Rectangle(200, 150, 30, 30), 0x00ff00);
+		actual.setRGB(100, 100, expected.getRGB(100, 100) ^ 0x010101);
+
+		ImageDiff diff = new ImageDiff();
+		diff.setTileSize(64);
+		ImageDiffResult result = diff.compare(expected, actual);
+		Assert.assertFalse(result.isMatch());
+		Assert.assertTrue(result.getDifferentPixels() > 1000);
+		Assert.assertEquals(17, result.getIdenticalTiles());
+
+		diff.setPixelTolerance(1);
+		diff.ignore(new Rectangle(190, 140, 50, 50));
+		result = diff.compare(expected, actual);
+		long red = result.getDifferentPixels();
+		Assert.assertTrue(red > 0 && red <= 200);
+		Assert.assertEquals(1, result.getDifferentTiles().size());
+
+		diff.setMaxDifference(0.01);
+		result = diff.compare(expected, actual);
+		Assert.assertTrue(result.isMatch());
+
+		File file = new File("target/image-diff-test/diff.png");
+		result.writeDiffImage(file);
+		BufferedImage written = ImageIO.read(file);
+		Assert.assertEquals(300, written.getWidth());
+		Assert.assertEquals(0xff0000, written.getRGB(15, 15) & 0xffffff);
+		Assert.assertFalse((written.getRGB(210, 160) & 0xffffff) == 0xff0000);
+		file.delete();
+	}
+
+	@Test
+	public void testRatioExcludesIgnoredRegions() {
+		BufferedImage expected = page(100, 100);
+		BufferedImage actual = copy(expected);
+		paint(actual, new Rectangle(60, 0, 10, 50), 0xff0000);
+
+		ImageDiff diff = new ImageDiff();
+		diff.ignore(new Rectangle(0, 0, 50, 100));
+		diff.setMaxDifference(0.08);
+		ImageDiffResult result = diff.compare(expected, actual);
+		Assert.assertEquals(500, result.getDifferentPixels());
+		Assert.assertEquals(5000, result.getComparedPixels());
+		Assert.assertEquals(0.1, result.getDifferenceRatio(), 1e-9);
+		Assert.assertFalse(result.isMatch());
+	}
+
+	@Test
+	public void testDifferentSizes() {
+		BufferedImage expected = page(100, 100);
+		BufferedImage actual = page(100, 120);
+		ImageDiffResult result = new ImageDiff().compare(expected, actual);
+		Assert.assertEquals(2000, result.getDifferentPixels());
+		Assert.assertEquals(new Rectangle(0, 100, 100, 20), result
+				.getDifferentTiles().get(0));
+		Assert.assertEquals(120, result.getDiffImage().getHeight());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidTolerance() {
+		new ImageDiff().setPixelTolerance(256);
+	}
+
+	@Test
+	public void testBenchmarkLargeImages() {
+		BufferedImage expected = page(3840, 2160);
+		BufferedImage same = copy(expected);
+		BufferedImage changed = copy(expected);
+		paint(changed, new Rectangle(1000, 500, 800, 600), 0x123456);
+		double megapixels = 3840 * 2160 / 1000000.0;
+
+		ExecutorService single = Executors.newSingleThreadExecutor();
+		try {
+			ImageDiff[] diffs = { new ImageDiff(single), new ImageDiff() };
+			String[] names = { "1 thread", "shared pool" };
+			for (int i = 0; i < diffs.length; i++) {
+				diffs[i].compare(expected, changed);
+				long start = System.nanoTime();
+				ImageDiffResult identical = diffs[i].compare(expected, same);
+				long identicalNanos = System.nanoTime() - start;
+				start = System.nanoTime();
+				ImageDiffResult different = diffs[i].compare(expected, changed);
+				long differentNanos = System.nanoTime() - start;
+
+				LOG.info(String.format(
+						"4K image diff (%s): identical=%.0f MP/s, changed=%.0f MP/s",
+						names[i], megapixels * 1e9 / identicalNanos, megapixels
+								* 1e9 / differentNanos));
+				Assert.assertTrue(identical.isMatch());
+				Assert.assertEquals(800 * 600, different.getDifferentPixels());
+			}
+		} finally {
+			single.shutdownNow();
+		}
+	}
+}
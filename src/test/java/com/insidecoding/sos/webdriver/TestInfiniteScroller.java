@@ -0,0 +1,66 @@
+package com.insidecoding.sos.webdriver;
+
+import junit.framework.Assert;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+public class TestInfiniteScroller {
+	@Rule
+	public HtmlUnitPage page = new HtmlUnitPage();
+
+	@Test
+	public void testScrollUntilStable() {
+		WebDriverHelper helper = page.open(true, "helmsdeep.html");
+		HtmlUnitDriver driver = page.getDriver();
+		ScrollResult result = helper.scrollUntilStable(500, 20);
+		Assert.assertTrue(result.isStable());
+		Assert.assertEquals(4, result.getBatches());
+		Assert.assertEquals(21, driver.findElements(By.className("uruk"))
+				.size());
+		Assert.assertTrue(result.getElapsedMillis() < 5000);
+	}
+
+	@Test
+	public void testScrollUntilTarget() {
+		WebDriverHelper helper = page.open(true, "helmsdeep.html");
+		HtmlUnitDriver driver = page.getDriver();
+		ScrollResult result = helper.scrollUntil(By.tagName("li"), 10, 500,
+				20);
+		Assert.assertTrue(result.isTargetReached());
+		Assert.assertEquals(2, result.getBatches());
+		Assert.assertEquals(11, driver.findElements(By.tagName("li")).size());
+
+		result = helper.scrollUntil(By.id("theoden"), 1, 300, 20);
+		Assert.assertTrue(result.isStable());
+		Assert.assertFalse(result.isTargetReached());
+		Assert.assertEquals(2, result.getBatches());
+	}
+
+	@Test
+	public void testScrollWithWebDriverLocator() {
+		WebDriverHelper helper = page.open(true, "helmsdeep.html");
+		ScrollResult result = helper.scrollUntil(
+				By.xpath("//li[text()='Uruk-hai 15']"), 1, 500, 20);
+		Assert.assertTrue(result.isTargetReached());
+		Assert.assertEquals(3, result.getBatches());
+	}
+
+	@Test
+	public void testTimeout() {
+		WebDriverHelper helper = page.open(true, "helmsdeep.html");
+		ScrollResult result = helper.scrollUntilStable(500, 0);
+		Assert.assertTrue(result.isTimedOut());
+		Assert.assertEquals(0, result.getBatches());
+	}
+
+	@Test
+	public void testWithoutJavascript() {
+		WebDriverHelper helper = page.open(false, "helmsdeep.html");
+		ScrollResult result = helper.scrollUntilStable(500, 5);
+		Assert.assertTrue(result.isStable());
+		Assert.assertEquals(0, result.getBatches());
+	}
+}
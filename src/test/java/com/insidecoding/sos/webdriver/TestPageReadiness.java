@@ -0,0 +1,98 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+public class TestPageReadiness {
+	@Rule
+	public HtmlUnitPage page = new HtmlUnitPage();
+
+	@Test
+	public void testWaitForBackgroundWork() {
+		WebDriverHelper helper = page.open(true, "weathertop.html");
+		HtmlUnitDriver driver = page.getDriver();
+		Assert.assertTrue(helper.installNetworkTracker());
+		driver.findElement(By.id("light")).click();
+		Assert.assertEquals("Gathering wood", driver.findElement(By.id("beacon"))
+				.getText());
+
+		long ready = helper.waitForNetworkIdle(100, 10);
+		Assert.assertEquals("Lit", driver.findElement(By.id("beacon"))
+				.getText());
+		Assert.assertTrue(ready >= 500);
+		Assert.assertEquals(1, helper.getTimeToReady().size());
+		Assert.assertEquals(ready, helper.getTimeToReady().get(0).getMillis());
+	}
+
+	@Test
+	public void testWaitForRequest() {
+		WebDriverHelper helper = page.open(true, "weathertop.html");
+		HtmlUnitDriver driver = page.getDriver();
+		Assert.assertTrue(helper.installNetworkTracker());
+		driver.findElement(By.id("ask")).click();
+
+		helper.waitForNetworkIdle(100, 10);
+		Assert.assertEquals("Answered", driver.findElement(By.id("riddle"))
+				.getText());
+		Assert.assertEquals(1L, ((Number) driver
+				.executeScript("return window.__sosNetwork.requests;"))
+				.longValue());
+	}
+
+	@Test
+	public void testOneTimePerPageLoad() {
+		WebDriverHelper helper = page.open(true, "weathertop.html");
+		HtmlUnitDriver driver = page.getDriver();
+		helper.waitForNetworkIdle(100, 10);
+		helper.waitForNetworkIdle(100, 10);
+		Assert.assertEquals(1, helper.getTimeToReady().size());
+
+		driver.get(driver.getCurrentUrl());
+		helper.waitForNetworkIdle(100, 10);
+		List<PageReadyTime> times = helper.getTimeToReady();
+		Assert.assertEquals(2, times.size());
+		Assert.assertEquals(times.get(0).getUrl(), times.get(1).getUrl());
+		Assert.assertTrue(times.get(0).getNavigationStart() < times.get(1)
+				.getNavigationStart());
+	}
+
+	@Test
+	public void testIdlePage() {
+		WebDriverHelper helper = page.open(true, "weathertop.html");
+		HtmlUnitDriver driver = page.getDriver();
+		long start = System.currentTimeMillis();
+		helper.waitForNetworkIdle(100, 10);
+		Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+		Assert.assertEquals("Dark", driver.findElement(By.id("beacon"))
+				.getText());
+	}
+
+	@Test
+	public void testTimeout() {
+		WebDriverHelper helper = page.open(true, "weathertop.html");
+		HtmlUnitDriver driver = page.getDriver();
+		helper.installNetworkTracker();
+		driver.findElement(By.id("watch")).click();
+		try {
+			helper.waitForNetworkIdle(300, 1);
+			Assert.fail("The page keeps scheduling timers");
+		} catch (TimeoutException e) {
+			Assert.assertTrue(e.getMessage().contains("pending activities: 1"));
+		}
+	}
+
+	@Test
+	public void testWithoutJavascript() {
+		WebDriverHelper helper = page.open(false, "weathertop.html");
+		Assert.assertFalse(helper.installNetworkTracker());
+		Assert.assertEquals(0, helper.waitForNetworkIdle(100, 1));
+		Assert.assertTrue(helper.getTimeToReady().isEmpty());
+	}
+}
@@ -0,0 +1,178 @@
+package com.insidecoding.sos.webdriver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestSessionStore {
+	private HttpServer server;
+	private String url;
+	private File folder;
+	private volatile String token = "mellon";
+	private HtmlUnitDriver driver;
+
+	private final CountingLogin flow = new CountingLogin();
+
+	private final class CountingLogin implements LoginFlow {
+		private int logins;
+
+		@Override
+		public void login(final WebDriverHelper helper) {
+			logins++;
+			helper.getDriver().get(url + "/login");
+		}
+
+		@Override
+		public boolean isLoggedIn(final WebDriverHelper helper) {
+			return helper.isElementPresent(By.id("welcome"));
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		folder = new File("target/sessions-test");
+		FileUtils.deleteDirectory(folder);
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				String body;
+				if (exchange.getRequestURI().getPath().startsWith("/login")) {
+					exchange.getResponseHeaders().add("Set-Cookie",
+							"token=" + token + "; Path=/");
+					body = "<html><body><script>"
+							+ "localStorage.setItem('theme', 'elvish');"
+							+ "sessionStorage.setItem('tab', 'maps');"
+							+ "</script>Logged in</body></html>";
+				} else {
+					String cookie = exchange.getRequestHeaders().getFirst(
+							"Cookie");
+					if (cookie != null && cookie.contains("token=" + token)) {
+						body = "<html><body><div id='welcome'>Welcome</div>"
+								+ "</body></html>";
+					} else {
+						body = "<html><body>Please log in</body></html>";
+					}
+				}
+				byte[] bytes = body.getBytes("UTF-8");
+				exchange.getResponseHeaders().add("Content-Type", "text/html");
+				exchange.sendResponseHeaders(200, bytes.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(bytes);
+				out.close();
+			}
+		});
+		server.start();
+		url = "http://localhost:" + server.getAddress().getPort();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		quit();
+		server.stop(0);
+		FileUtils.deleteDirectory(folder);
+	}
+
+	private void quit() {
+		if (driver != null) {
+			driver.quit();
+			driver = null;
+		}
+	}
+
+	private WebDriverHelper newHelper() {
+		quit();
+		driver = new HtmlUnitDriver(BrowserVersion.FIREFOX_17);
+		driver.setJavascriptEnabled(true);
+		return new WebDriverHelper(driver);
+	}
+
+	private SessionStore newStore(final long ttl, final TimeUnit unit) {
+		return new SessionStore(folder, ttl, unit);
+	}
+
+	@Test
+	public void testSessionIsRestored() {
+		SessionStore store = newStore(30, TimeUnit.MINUTES);
+		String key = SessionStore.key("frodo", "shire");
+
+		WebDriverHelper helper = newHelper();
+		store.open(helper, url + "/app", key, flow);
+		Assert.assertTrue(flow.isLoggedIn(helper));
+		Assert.assertEquals(1, flow.logins);
+
+		SessionSnapshot session = store.get(key);
+		Assert.assertEquals("elvish", session.getLocalStorage().get("theme"));
+		Assert.assertEquals("maps", session.getSessionStorage().get("tab"));
+
+		helper = newHelper();
+		store.open(helper, url + "/app", key, flow);
+		Assert.assertTrue(flow.isLoggedIn(helper));
+		Assert.assertEquals(1, flow.logins);
+		Assert.assertEquals("elvish", driver.executeScript(
+				"return localStorage.getItem('theme');"));
+	}
+
+	@Test
+	public void testSessionIsReadFromDisk() {
+		String key = SessionStore.key("sam", "shire");
+		store(newStore(30, TimeUnit.MINUTES), key);
+		Assert.assertTrue(new File(folder, "sam@shire.session").isFile());
+
+		WebDriverHelper helper = newHelper();
+		newStore(30, TimeUnit.MINUTES).open(helper, url + "/app", key, flow);
+		Assert.assertTrue(flow.isLoggedIn(helper));
+		Assert.assertEquals(1, flow.logins);
+	}
+
+	@Test
+	public void testRejectedSessionIsRecreated() {
+		SessionStore store = newStore(30, TimeUnit.MINUTES);
+		String key = SessionStore.key("merry", "shire");
+		store(store, key);
+
+		token = "speak friend";
+		WebDriverHelper helper = newHelper();
+		store.open(helper, url + "/app", key, flow);
+		Assert.assertTrue(flow.isLoggedIn(helper));
+		Assert.assertEquals(2, flow.logins);
+	}
+
+	@Test
+	public void testExpiredSessionIsRecreated() throws InterruptedException {
+		SessionStore store = newStore(50, TimeUnit.MILLISECONDS);
+		String key = SessionStore.key("pippin", "shire");
+		store(store, key);
+		Thread.sleep(100);
+		Assert.assertNull(store.get(key));
+		Assert.assertFalse(new File(folder, "pippin@shire.session").exists());
+
+		WebDriverHelper helper = newHelper();
+		store.open(helper, url + "/app", key, flow);
+		Assert.assertTrue(flow.isLoggedIn(helper));
+		Assert.assertEquals(2, flow.logins);
+	}
+
+	private void store(final SessionStore store, final String key) {
+		WebDriverHelper helper = newHelper();
+		store.open(helper, url + "/app", key, flow);
+		Assert.assertEquals(1, flow.logins);
+		quit();
+	}
+}
@@ -0,0 +1,134 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.apache.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+
+public class TestTableExtractor {
+	private static final Logger LOG = Logger
+			.getLogger(TestTableExtractor.class);
+
+	@Rule
+	public HtmlUnitPage page = new HtmlUnitPage();
+
+	private void checkFellowship(final WebDriverHelper helper) {
+		By table = By.id("fellowship");
+		List<List<String>> rows = helper.getTableAsList(table);
+		Assert.assertEquals(5, rows.size());
+		Assert.assertTrue(rows.get(0).isEmpty());
+		Assert.assertEquals(Arrays.asList("Frodo", "Hobbit", "Bag End"),
+				rows.get(1));
+		Assert.assertEquals(Arrays.asList("Sam", "Hobbit", "Hobbiton"),
+				rows.get(2));
+		Assert.assertEquals(Arrays.asList("Legolas", "Elf", "Mirkwood"),
+				rows.get(3));
+		Assert.assertEquals(Arrays.asList("Gandalf", "Unknown", "Unknown"),
+				rows.get(4));
+
+		Assert.assertEquals(Arrays.asList("Name", "Race", "Home"), helper
+				.getTableAsList(table, true).get(0));
+		Assert.assertEquals(
+				Arrays.asList("Bag End", "Hobbiton", "Mirkwood", "Unknown"),
+				helper.getTableColumn(table, "Home"));
+		Assert.assertEquals(Arrays.asList("", "Hobbit", "Hobbit", "Elf",
+				"Unknown"), helper.getTableColumn(table, 1));
+		Assert.assertEquals(Arrays.asList("Frodo", "Frodo", "Frodo"),
+				helper.getTableColumn(By.id("spans"), "Bearer"));
+		Assert.assertEquals(Arrays.asList(Arrays.asList("Race", "Name"),
+				Arrays.asList("Hobbit", "Frodo")),
+				helper.getTableColumns(table, true, 1, 0).subList(0, 2));
+	}
+
+	@Test
+	public void testTableWithJavascript() {
+		checkFellowship(page.open(true, "fellowship.html"));
+	}
+
+	@Test
+	public void testTableWithoutJavascript() {
+		checkFellowship(page.open(false, "fellowship.html"));
+	}
+
+	@Test
+	public void testScriptMatchesWebDriverText() {
+		page.open(true, "fellowship.html");
+		HtmlUnitDriver driver = page.getDriver();
+		TableExtractor extractor = new TableExtractor(driver,
+				new ScriptRunner(driver));
+		WebElement table = driver.findElement(By.id("riddles"));
+
+		List<List<String>> script = extractor.extractWithScript(table, true);
+		Assert.assertEquals(extractor.extractWithElements(table, true), script);
+		Assert.assertEquals(Arrays.asList("Thirty white horses\non a red hill",
+				"", "Voiceless it cries"), script.get(0));
+	}
+
+	@Test
+	public void testSelectedColumnsMatchFullTable() {
+		page.open(true, "fellowship.html");
+		HtmlUnitDriver driver = page.getDriver();
+		TableExtractor extractor = new TableExtractor(driver,
+				new ScriptRunner(driver));
+		for (String id : new String[] { "fellowship", "riddles", "spans" }) {
+			WebElement table = driver.findElement(By.id(id));
+			for (boolean headers : new boolean[] { true, false }) {
+				List<List<String>> rows = extractor.extractWithElements(table,
+						headers);
+				List<List<String>> selected = extractor.getColumns(By.id(id),
+						headers, 2, 0, 5);
+				Assert.assertEquals(rows.size(), selected.size());
+				for (int i = 0; i < rows.size(); i++) {
+					List<String> row = rows.get(i);
+					Assert.assertEquals(id + " row " + i, Arrays.asList(
+							row.size() > 2 ? row.get(2) : "",
+							row.size() > 0 ? row.get(0) : "", ""),
+							selected.get(i));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testNormaliseTrailingRowspan() {
+		List<List<TableExtractor.Cell>> cells = Arrays.asList(
+				Arrays.asList(new TableExtractor.Cell("a", 1, 1),
+						new TableExtractor.Cell("b", 1, 3)),
+				Arrays.<TableExtractor.Cell> asList(),
+				Arrays.asList(new TableExtractor.Cell("c", 1, 1)));
+		List<List<String>> rows = TableExtractor.normalise(cells);
+		Assert.assertEquals(Arrays.asList("", "b"), rows.get(1));
+		Assert.assertEquals(Arrays.asList("c", "b"), rows.get(2));
+	}
+
+	@Test
+	public void testBenchmarkLargeTable() {
+		page.open(true, "largeTable.html");
+		HtmlUnitDriver driver = page.getDriver();
+		ScriptRunner scripts = new ScriptRunner(driver);
+		TableExtractor extractor = new TableExtractor(driver, scripts);
+		WebElement table = driver.findElement(By.id("large"));
+
+		long start = System.currentTimeMillis();
+		List<List<String>> perCell = extractor
+				.extractWithElements(table, true);
+		long perCellMillis = System.currentTimeMillis() - start;
+
+		start = System.currentTimeMillis();
+		List<List<String>> script = extractor.extractWithScript(table, true);
+		long scriptMillis = System.currentTimeMillis() - start;
+
+		LOG.info("Table 501x10: per cell=" + perCellMillis + "ms, script="
+				+ scriptMillis + "ms");
+		Assert.assertEquals(perCell, script);
+		Assert.assertEquals(501, script.size());
+		Assert.assertEquals("r499c9", script.get(500).get(9));
+	}
+}
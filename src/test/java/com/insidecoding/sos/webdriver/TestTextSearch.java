@@ -0,0 +1,72 @@
+package com.insidecoding.sos.webdriver;
+
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openqa.selenium.By;
+
+public class TestTextSearch {
+	@Rule
+	public HtmlUnitPage page = new HtmlUnitPage();
+
+	private void checkSearch(final WebDriverHelper helper) {
+		Assert.assertTrue(helper.isTextPresentInPage("The Black Gate"));
+		Assert.assertTrue(helper.isTextPresentInPage("One ring to bring"));
+		Assert.assertTrue(helper.isTextPresentInPage(""));
+		Assert.assertFalse(helper.isTextPresentInPage("walk into Mordor"));
+		Assert.assertFalse(helper.isTextPresentInPage("Mount Doom"));
+		Assert.assertEquals(0, helper.countTextInPage("Mount Doom"));
+
+		String text = page.getDriver().findElement(By.tagName("body"))
+				.getText();
+		List<Integer> positions = helper.findTextInPage(" ring ", 10);
+		Assert.assertEquals(3, positions.size());
+		Assert.assertEquals(text.indexOf(" ring "), positions.get(0).intValue());
+		Assert.assertEquals(text.lastIndexOf(" ring "), positions.get(2)
+				.intValue());
+		Assert.assertEquals(2, helper.findTextInPage(" ring ", 2).size());
+	}
+
+	@Test
+	public void testSearchWithJavascript() {
+		WebDriverHelper helper = page.open(true, "mordor.html");
+		checkSearch(helper);
+		Assert.assertFalse(helper.isTextPresentInPage("hidden in the dark"));
+		Assert.assertEquals(3, helper.countTextInPage(" ring "));
+	}
+
+	@Test
+	public void testSearchWithoutJavascript() {
+		checkSearch(page.open(false, "mordor.html"));
+	}
+
+	@Test
+	public void testJavascriptMatchesWebDriverText() {
+		String[] probes = { "Speak friend and enter", "friend and",
+				"The Eye is watching", "watching", "One ring to bring",
+				"them.\nSpeak" };
+		boolean[] expected = new boolean[probes.length];
+		WebDriverHelper helper = page.open(false, "mordor.html");
+		for (int i = 0; i < probes.length; i++) {
+			expected[i] = helper.isTextPresentInPage(probes[i]);
+		}
+		helper = page.open(true, "mordor.html");
+		for (int i = 0; i < probes.length; i++) {
+			Assert.assertEquals(probes[i], expected[i],
+					helper.isTextPresentInPage(probes[i]));
+		}
+		Assert.assertTrue(helper.isTextPresentInPage("Speak friend and enter"));
+		Assert.assertFalse(helper.isTextPresentInPage("watching"));
+	}
+
+	@Test
+	public void testCountInLargePage() {
+		WebDriverHelper helper = page.open(true, "largeTable.html");
+		Assert.assertEquals(500, helper.countTextInPage("c9"));
+		Assert.assertTrue(helper.isTextPresentInPage("r499c9"));
+		Assert.assertFalse(helper.isTextPresentInPage("r500c0"));
+	}
+}
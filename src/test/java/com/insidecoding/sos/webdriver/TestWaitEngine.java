@@ -0,0 +1,139 @@
+package com.insidecoding.sos.webdriver;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.htmlunit.HtmlUnitDriver;
+import org.openqa.selenium.support.pagefactory.ByChained;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+
+public class TestWaitEngine {
+	@Rule
+	public HtmlUnitPage page = new HtmlUnitPage();
+
+	@Test
+	public void testWaitsReturnWhenThePageChanges() {
+		WebDriverHelper helper = page.open(true, "rivendell.html");
+		HtmlUnitDriver driver = page.getDriver();
+		long start = System.currentTimeMillis();
+		helper.waitForElementPresent(By.id("council"), 5);
+		helper.waitForElementToContainSpecificText(By.cssSelector("#council"),
+				"Elrond", 5);
+		helper.waitForTextPresentWithinPage("Council of Elrond", 5);
+		helper.waitForElementToBeVisible(By.id("ring"), 5);
+		helper.waitForElementToContainText(By.xpath("//div[@id='ring']"), 5);
+		Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+		Assert.assertTrue(driver.findElement(By.id("ring")).isDisplayed());
+	}
+
+	@Test
+	public void testWaitsWithFirefoxEmulation() {
+		HtmlUnitDriver driver = new HtmlUnitDriver(BrowserVersion.FIREFOX_17);
+		driver.setJavascriptEnabled(true);
+		WebDriverHelper helper = page.open(driver, "rivendell.html");
+		helper.waitForElementToContainSpecificText(By.cssSelector("#council"),
+				"Elrond", 5);
+		helper.waitForElementToBeVisible(By.xpath("//div[@id='ring']"), 5);
+	}
+
+	@Test
+	public void testWaitTimesOut() {
+		WebDriverHelper helper = page.open(true, "rivendell.html");
+		try {
+			helper.waitForElementPresent(By.id("mordor"), 1);
+			Assert.fail("The wait should time out");
+		} catch (TimeoutException e) {
+			Assert.assertTrue(e.getMessage().startsWith(
+					"Timed out after 1 seconds"));
+		}
+	}
+
+	@Test
+	public void testWaitWithoutJavascriptPolls() {
+		WebDriverHelper helper = page.open(false, "rivendell.html");
+		helper.waitForElementPresent(By.id("title"), 1);
+		helper.waitForElementToContainSpecificText(By.id("title"), "Homely", 1);
+		try {
+			helper.waitForElementToBeVisible(By.id("council"), 1);
+			Assert.fail("The wait should time out");
+		} catch (TimeoutException e) {
+			Assert.assertTrue(e.getMessage().contains("council"));
+		}
+	}
+
+	@Test
+	public void testWaitForAllOf() {
+		WebDriverHelper helper = page.open(true, "rivendell.html");
+		HtmlUnitDriver driver = page.getDriver();
+		Assert.assertTrue(driver.findElements(By.id("council")).isEmpty());
+		helper.waitForAllOf(5, PageCondition.present(By.id("council")),
+				PageCondition.visible(By.id("ring")),
+				PageCondition.textInPage("One Ring"),
+				PageCondition.invisible(By.id("mordor")));
+		Assert.assertTrue(driver.findElement(By.id("ring")).isDisplayed());
+	}
+
+	@Test
+	public void testWaitForFirstOfReturnsTheWinner() {
+		WebDriverHelper helper = page.open(true, "rivendell.html");
+		PageCondition ring = PageCondition.visible(By.id("ring"));
+		PageCondition council = PageCondition.present(By.id("council"));
+		Assert.assertSame(council, helper.waitForFirstOf(5, ring, council));
+	}
+
+	@Test
+	public void testWaitForAnyOfReportsTheMetConditions() {
+		WebDriverHelper helper = page.open(true, "rivendell.html");
+		PageCondition mordor = PageCondition.present(By.id("mordor"));
+		PageCondition title = PageCondition.containsText(By.id("title"),
+				"Homely");
+		PageCondition hidden = PageCondition.invisible(By.id("ring"));
+		List<PageCondition> met = helper.waitForAnyOf(5, mordor, title,
+				hidden);
+		Assert.assertEquals(Arrays.asList(title, hidden), met);
+
+		try {
+			helper.waitForAnyOf(1, mordor,
+					PageCondition.present(By.id("isengard")));
+			Assert.fail("The wait should time out");
+		} catch (TimeoutException e) {
+			Assert.assertTrue(e.getMessage().contains("any of"));
+		}
+	}
+
+	@Test
+	public void testCompositeWaitWithoutJavascript() {
+		WebDriverHelper helper = page.open(false, "rivendell.html");
+		PageCondition title = PageCondition.present(By.id("title"));
+		Assert.assertSame(title, helper.waitForFirstOf(1,
+				PageCondition.present(By.id("council")), title));
+	}
+
+	@Test
+	public void testUntranslatableLocatorIsPolled() {
+		WebDriverHelper helper = page.open(true, "rivendell.html");
+		By chained = new ByChained(By.tagName("body"), By.id("council"));
+		Assert.assertNull(PageCondition.toScriptLocator(chained));
+		helper.waitFor(PageCondition.present(chained), 5);
+	}
+
+	@Test
+	public void testScriptLocators() {
+		Assert.assertEquals("css",
+				PageCondition.toScriptLocator(By.cssSelector("div > p"))[0]);
+		Assert.assertEquals("div > p",
+				PageCondition.toScriptLocator(By.cssSelector("div > p"))[1]);
+		Assert.assertEquals("partialLinkText",
+				PageCondition.toScriptLocator(By.partialLinkText("Ring"))[0]);
+		Assert.assertEquals("//a[text()='a: b']",
+				PageCondition.toScriptLocator(By.xpath("//a[text()='a: b']"))[1]);
+	}
+}
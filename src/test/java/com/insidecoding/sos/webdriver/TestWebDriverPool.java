@@ -0,0 +1,124 @@
+package com.insidecoding.sos.webdriver;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.JavascriptExecutor;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+
+import com.insidecoding.sos.Constants;
+
+public class TestWebDriverPool {
+	private WebDriverPool pool;
+
+	private String page;
+
+	@Before
+	public void setUp() {
+		pool = new WebDriverPool(2, 3, 0, true);
+		page = new File("files/shire.html").toURI().toString();
+	}
+
+	@After
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void testDriverIsReusedAndReset() throws Exception {
+		WebDriver driver = pool.acquire(htmlUnit(true));
+		driver.get(page);
+		Assert.assertEquals("The Shire", driver.getTitle());
+		pool.release(driver);
+
+		WebDriver reused = pool.acquire(htmlUnit(true));
+		Assert.assertSame(driver, reused);
+		Assert.assertEquals("about:blank", reused.getCurrentUrl());
+		Assert.assertEquals(1, pool.getCreatedCount());
+		Assert.assertEquals(1, pool.getReusedCount());
+	}
+
+	@Test
+	public void testScriptTimeoutIsRestored() throws Exception {
+		WebDriver driver = pool.acquire(htmlUnit(true));
+		driver.get(page);
+		driver.manage().timeouts().setScriptTimeout(30, TimeUnit.SECONDS);
+		pool.release(driver);
+
+		WebDriver reused = pool.acquire(htmlUnit(true));
+		Assert.assertSame(driver, reused);
+		reused.get(page);
+		long start = System.currentTimeMillis();
+		try {
+			((JavascriptExecutor) reused).executeAsyncScript("");
+			Assert.fail("The script never calls back");
+		} catch (TimeoutException e) {
+			Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+		}
+	}
+
+	@Test
+	public void testDriversAreKeyedByBuilderSettings() throws Exception {
+		WebDriver withJs = pool.acquire(htmlUnit(true));
+		pool.release(withJs);
+
+		WebDriver withoutJs = pool.acquire(htmlUnit(false));
+		Assert.assertNotSame(withJs, withoutJs);
+		pool.release(withoutJs);
+
+		Assert.assertEquals(2, pool.getIdleCount());
+	}
+
+	@Test
+	public void testDriverIsQuitAfterMaxLeases() throws Exception {
+		WebDriver first = null;
+		for (int i = 0; i < 3; i++) {
+			WebDriver driver = pool.acquire(htmlUnit(true));
+			if (first == null) {
+				first = driver;
+			}
+			Assert.assertSame(first, driver);
+			pool.release(driver);
+		}
+
+		Assert.assertNotSame(first, pool.acquire(htmlUnit(true)));
+		Assert.assertEquals(2, pool.getCreatedCount());
+	}
+
+	@Test
+	public void testUnhealthyDriverIsReplaced() throws Exception {
+		WebDriver driver = pool.acquire(htmlUnit(true));
+		pool.release(driver);
+		driver.quit();
+
+		WebDriver replacement = pool.acquire(htmlUnit(true));
+		Assert.assertNotSame(driver, replacement);
+		replacement.get(page);
+		Assert.assertEquals("The Shire", replacement.getTitle());
+	}
+
+	@Test
+	public void testWarmedDriversAreHandedOut() throws Exception {
+		pool.warmUp(htmlUnit(true), 2);
+
+		WebDriver first = pool.acquire(htmlUnit(true));
+		WebDriver second = pool.acquire(htmlUnit(true));
+		Assert.assertNotSame(first, second);
+
+		DriverWarmUpService warmUp = pool.getWarmUpService();
+		Assert.assertEquals(2, warmUp.getReadyCount() + warmUp.getWaitCount());
+		Assert.assertTrue(warmUp.getTimeToFirstDriver() >= 0);
+		Assert.assertNull(warmUp.take(htmlUnit(true).getDriverKey()));
+	}
+
+	private WebDriverHelper.Builder htmlUnit(final boolean jsEnabled) {
+		return new WebDriverHelper.Builder()
+				.browser(Constants.Browsers.HTML_UNIT).jsEnabled(jsEnabled);
+	}
+}
@@ -0,0 +1,53 @@
+package com.insidecoding.sos.webdriver;
+
+import junit.framework.Assert;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.openqa.selenium.By;
+
+public class TestWidgetOperations {
+	@Rule
+	public HtmlUnitPage page = new HtmlUnitPage();
+
+	private void checkDropDown(final WebDriverHelper helper) {
+		By home = By.id("home");
+		Assert.assertTrue(helper.isTextPresentInDropDown(home, "Minas Tirith"));
+		Assert.assertFalse(helper.isTextPresentInDropDown(home, "Mordor"));
+		Assert.assertTrue(helper.isValuePresentInDropDown(home, "3"));
+		Assert.assertFalse(helper.isValuePresentInDropDown(home, "4"));
+		Assert.assertTrue(helper.isTextSelectedInDropDown(home, "Rivendell"));
+		Assert.assertFalse(helper.isTextSelectedInDropDown(home, "Bag End"));
+		Assert.assertTrue(helper.isValueSelectedInDropDown(home, "2"));
+		Assert.assertFalse(helper.isValueSelectedInDropDown(home, "1"));
+		Assert.assertEquals("Rivendell", helper.getSelectedValue(home));
+	}
+
+	private void checkRadio(final WebDriverHelper helper) {
+		Assert.assertTrue(helper.isRadioButtonValueSelected("race", "hobbit"));
+		Assert.assertFalse(helper.isRadioButtonValueSelected("race", "elf"));
+		helper.selectRadioButtonByValue("race", "ELF");
+		Assert.assertTrue(helper.isRadioButtonValueSelected("race", "elf"));
+		Assert.assertFalse(helper.isRadioButtonValueSelected("race", "hobbit"));
+	}
+
+	@Test
+	public void testDropDownWithJavascript() {
+		checkDropDown(page.open(true, "shire.html"));
+	}
+
+	@Test
+	public void testDropDownWithoutJavascript() {
+		checkDropDown(page.open(false, "shire.html"));
+	}
+
+	@Test
+	public void testRadioWithJavascript() {
+		checkRadio(page.open(true, "shire.html"));
+	}
+
+	@Test
+	public void testRadioWithoutJavascript() {
+		checkRadio(page.open(false, "shire.html"));
+	}
+}